@@ -0,0 +1,58 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * The standard kalman filter correction that processes the complete measurement at once. It inverts the {@code m x m}
+ * innovation covariance and updates the error covariance with the Joseph form which costs {@code O(n^3)}.
+ */
+public class BatchedMeasurementUpdate implements MeasurementUpdate
+{
+   private final FilterMatrixOps filterMatrixOps;
+   private StageLatencies stageLatencies = StageLatencies.getDisabled();
+
+   public BatchedMeasurementUpdate(FilterMatrixOps filterMatrixOps)
+   {
+      this.filterMatrixOps = filterMatrixOps;
+   }
+
+   @Override
+   public boolean supportsDenseR()
+   {
+      return true;
+   }
+
+   @Override
+   public void setStageLatencies(StageLatencies stageLatencies)
+   {
+      this.stageLatencies = stageLatencies;
+   }
+
+   @Override
+   public boolean update(DenseMatrix64F xPosterior, DenseMatrix64F Pposterior, DenseMatrix64F K, DenseMatrix64F xPrior, DenseMatrix64F Pprior,
+                         DenseMatrix64F H, DenseMatrix64F residual, DenseMatrix64F R, boolean diagonalR, boolean computeGain)
+   {
+      stageLatencies.start(EstimatorStage.GAIN);
+      boolean gainComputed = diagonalR ? filterMatrixOps.computeKalmanGainDiagonalR(K, Pprior, H, R) : filterMatrixOps.computeKalmanGain(K, Pprior, H, R);
+      if (!gainComputed)
+      {
+         return false;
+      }
+
+      stageLatencies.next(EstimatorStage.GAIN, EstimatorStage.STATE_UPDATE);
+      filterMatrixOps.updateState(xPosterior, K, residual, xPrior);
+
+      stageLatencies.next(EstimatorStage.STATE_UPDATE, EstimatorStage.COVARIANCE_UPDATE);
+      if (diagonalR)
+      {
+         filterMatrixOps.updateErrorCovarianceDiagonalR(Pposterior, K, H, R, Pprior);
+      }
+      else
+      {
+         filterMatrixOps.updateErrorCovariance(Pposterior, K, H, R, Pprior);
+      }
+
+      stageLatencies.stop(EstimatorStage.COVARIANCE_UPDATE);
+      return true;
+   }
+}
@@ -0,0 +1,197 @@
+package us.ihmc.ekf.filter;
+
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * A {@link MatrixMultiplier} for large filter states that splits the rows of the result among the threads of a
+ * {@link WorkerPool}. Within each band of rows the product is computed in blocks that fit the cache.
+ * <p>
+ * Products where all dimensions are below the size threshold are computed with the single threaded
+ * {@link EjmlMatrixMultiplier} as the overhead of waking up the workers is larger than the gain for small robots.
+ * No memory is allocated when computing a product.
+ * </p>
+ */
+public class BlockedMatrixMultiplier implements MatrixMultiplier
+{
+   public static final int DEFAULT_BLOCK_SIZE = 64;
+   public static final int DEFAULT_SIZE_THRESHOLD = 64;
+
+   private final EjmlMatrixMultiplier smallMatrixMultiplier = new EjmlMatrixMultiplier();
+
+   private final WorkerPool workerPool;
+   private final int blockSize;
+   private final int sizeThreshold;
+
+   private final WorkerPool.Task multTask = this::multRows;
+   private final WorkerPool.Task multTransBTask = this::multTransBRows;
+   private DenseMatrix64F A;
+   private DenseMatrix64F B;
+   private DenseMatrix64F result;
+   private int rowsPerTask;
+
+   public BlockedMatrixMultiplier(WorkerPool workerPool)
+   {
+      this(workerPool, DEFAULT_BLOCK_SIZE, DEFAULT_SIZE_THRESHOLD);
+   }
+
+   /**
+    * Creates a new multiplier.
+    *
+    * @param workerPool the threads used to compute the products.
+    * @param blockSize the size of the blocks of the product in each dimension.
+    * @param sizeThreshold the dimension at which the blocked parallel product is used.
+    */
+   public BlockedMatrixMultiplier(WorkerPool workerPool, int blockSize, int sizeThreshold)
+   {
+      if (blockSize < 1)
+      {
+         throw new RuntimeException("Block size must be positive. Got " + blockSize);
+      }
+
+      this.workerPool = workerPool;
+      this.blockSize = blockSize;
+      this.sizeThreshold = sizeThreshold;
+   }
+
+   @Override
+   public void mult(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      if (isSmall(A.getNumRows(), A.getNumCols(), B.getNumCols()))
+      {
+         smallMatrixMultiplier.mult(A, B, result);
+         return;
+      }
+
+      if (A.getNumCols() != B.getNumRows())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+      result.reshape(A.getNumRows(), B.getNumCols());
+      run(multTask, A, B, result);
+   }
+
+   @Override
+   public void multTransB(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      if (isSmall(A.getNumRows(), A.getNumCols(), B.getNumRows()))
+      {
+         smallMatrixMultiplier.multTransB(A, B, result);
+         return;
+      }
+
+      if (A.getNumCols() != B.getNumCols())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+      result.reshape(A.getNumRows(), B.getNumRows());
+      run(multTransBTask, A, B, result);
+   }
+
+   private boolean isSmall(int rows, int inner, int cols)
+   {
+      return rows < sizeThreshold && inner < sizeThreshold && cols < sizeThreshold;
+   }
+
+   private void run(WorkerPool.Task task, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      int rows = result.getNumRows();
+      if (rows == 0)
+      {
+         return;
+      }
+
+      this.A = A;
+      this.B = B;
+      this.result = result;
+
+      // Use two bands of rows per thread for a better balance between the threads.
+      int bands = Math.min(rows, 2 * workerPool.getParallelism());
+      rowsPerTask = (rows + bands - 1) / bands;
+      workerPool.run(task, (rows + rowsPerTask - 1) / rowsPerTask);
+
+      this.A = null;
+      this.B = null;
+      this.result = null;
+   }
+
+   /**
+    * Computes the rows of {@code result = A * B} for one task.
+    */
+   private void multRows(int taskIndex)
+   {
+      int rowStart = taskIndex * rowsPerTask;
+      int rowEnd = Math.min(rowStart + rowsPerTask, result.getNumRows());
+      int inner = A.getNumCols();
+      int cols = B.getNumCols();
+      double[] a = A.data;
+      double[] b = B.data;
+      double[] c = result.data;
+
+      Arrays.fill(c, rowStart * cols, rowEnd * cols, 0.0);
+
+      for (int kStart = 0; kStart < inner; kStart += blockSize)
+      {
+         int kEnd = Math.min(kStart + blockSize, inner);
+         for (int jStart = 0; jStart < cols; jStart += blockSize)
+         {
+            int jEnd = Math.min(jStart + blockSize, cols);
+            for (int i = rowStart; i < rowEnd; i++)
+            {
+               int cRow = i * cols;
+               int aRow = i * inner;
+               for (int k = kStart; k < kEnd; k++)
+               {
+                  double aik = a[aRow + k];
+                  int bRow = k * cols;
+                  for (int j = jStart; j < jEnd; j++)
+                  {
+                     c[cRow + j] += aik * b[bRow + j];
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Computes the rows of {@code result = A * B'} for one task.
+    */
+   private void multTransBRows(int taskIndex)
+   {
+      int rowStart = taskIndex * rowsPerTask;
+      int rowEnd = Math.min(rowStart + rowsPerTask, result.getNumRows());
+      int inner = A.getNumCols();
+      int cols = B.getNumRows();
+      double[] a = A.data;
+      double[] b = B.data;
+      double[] c = result.data;
+
+      Arrays.fill(c, rowStart * cols, rowEnd * cols, 0.0);
+
+      for (int jStart = 0; jStart < cols; jStart += blockSize)
+      {
+         int jEnd = Math.min(jStart + blockSize, cols);
+         for (int kStart = 0; kStart < inner; kStart += blockSize)
+         {
+            int kEnd = Math.min(kStart + blockSize, inner);
+            for (int i = rowStart; i < rowEnd; i++)
+            {
+               int cRow = i * cols;
+               int aRow = i * inner;
+               for (int j = jStart; j < jEnd; j++)
+               {
+                  int bRow = j * inner;
+                  double sum = 0.0;
+                  for (int k = kStart; k < kEnd; k++)
+                  {
+                     sum += a[aRow + k] * b[bRow + k];
+                  }
+                  c[cRow + j] += sum;
+               }
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,84 @@
+package us.ihmc.ekf.filter;
+
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * A Schmidt-Kalman correction that treats the states at the end of the state vector as consider states: their
+ * uncertainty and their correlation with the other states is taken into account when correcting the other states but
+ * they are not corrected themselves. This is done by setting the rows of the kalman gain that belong to the consider
+ * states to zero.
+ * <p>
+ * As the gain is not optimal the error covariance is updated with the expanded Joseph form that is valid for any
+ * gain:</br>
+ * P = P - K * A' - A * K' + K * S * K'</br>
+ * where {@code A = P * H'} and {@code S = H * A + R}. This costs {@code O(n^2 * m)} instead of the {@code O(n^3)} of
+ * the batched update (see {@link FilterMatrixOps#updateErrorCovarianceExpanded}). The covariance of the consider states
+ * is not modified by the correction.
+ * </p>
+ */
+public class ConsiderMeasurementUpdate implements MeasurementUpdate
+{
+   private final FilterMatrixOps filterMatrixOps;
+   private final int considerStartIndex;
+   private StageLatencies stageLatencies = StageLatencies.getDisabled();
+
+   /**
+    * Creates a new update with consider states.
+    *
+    * @param filterMatrixOps the matrix operations used for the gain and the error covariance.
+    * @param considerStartIndex the index of the first consider state. All following states are consider states.
+    */
+   public ConsiderMeasurementUpdate(FilterMatrixOps filterMatrixOps, int considerStartIndex)
+   {
+      this.filterMatrixOps = filterMatrixOps;
+      this.considerStartIndex = considerStartIndex;
+   }
+
+   @Override
+   public boolean supportsDenseR()
+   {
+      return true;
+   }
+
+   @Override
+   public void setStageLatencies(StageLatencies stageLatencies)
+   {
+      this.stageLatencies = stageLatencies;
+   }
+
+   @Override
+   public boolean update(DenseMatrix64F xPosterior, DenseMatrix64F Pposterior, DenseMatrix64F K, DenseMatrix64F xPrior, DenseMatrix64F Pprior,
+                         DenseMatrix64F H, DenseMatrix64F residual, DenseMatrix64F R, boolean diagonalR, boolean computeGain)
+   {
+      int size = Pprior.getNumRows();
+      int measurements = H.getNumRows();
+
+      stageLatencies.start(EstimatorStage.GAIN);
+      // Compute the optimal gain and remove the correction of the consider states.
+      boolean gainComputed = diagonalR ? filterMatrixOps.computeKalmanGainDiagonalR(K, Pprior, H, R) : filterMatrixOps.computeKalmanGain(K, Pprior, H, R);
+      if (!gainComputed)
+      {
+         return false;
+      }
+      int considerStart = Math.min(considerStartIndex, size);
+      Arrays.fill(K.data, considerStart * measurements, size * measurements, 0.0);
+
+      stageLatencies.next(EstimatorStage.GAIN, EstimatorStage.STATE_UPDATE);
+      filterMatrixOps.updateState(xPosterior, K, residual, xPrior);
+
+      stageLatencies.next(EstimatorStage.STATE_UPDATE, EstimatorStage.COVARIANCE_UPDATE);
+      if (diagonalR)
+      {
+         filterMatrixOps.updateErrorCovarianceExpandedDiagonalR(Pposterior, K, H, R, Pprior);
+      }
+      else
+      {
+         filterMatrixOps.updateErrorCovarianceExpanded(Pposterior, K, H, R, Pprior);
+      }
+
+      stageLatencies.stop(EstimatorStage.COVARIANCE_UPDATE);
+      return true;
+   }
+}
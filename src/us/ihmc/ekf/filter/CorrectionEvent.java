@@ -0,0 +1,40 @@
+package us.ihmc.ekf.filter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the correction of a filter tick. See {@link StateEstimator#correct()}.
+ */
+@Name("us.ihmc.ekf.Correction")
+@Label("Estimator Correction")
+@Category({"IHMC", "State Estimator"})
+@Description("Correction of the state and error covariance of the estimator with the measurement of a tick")
+@StackTrace(false)
+final class CorrectionEvent extends Event
+{
+   @Label("Tick")
+   long tick;
+
+   @Label("State Size")
+   int stateSize;
+
+   @Label("Measurement Size")
+   @Description("Size of the measurement after removing outliers")
+   int measurementSize;
+
+   @Label("Gated Sensors")
+   @Description("Number of sensors removed from the measurement as outliers")
+   int gatedSensors;
+
+   @Label("Update Strategy")
+   String updateStrategy;
+
+   @Label("Covariance Trace")
+   @Description("Trace of the corrected error covariance")
+   double covarianceTrace;
+}
@@ -0,0 +1,269 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+import us.ihmc.yoVariables.parameters.DoubleParameter;
+import us.ihmc.yoVariables.parameters.IntegerParameter;
+import us.ihmc.yoVariables.providers.DoubleProvider;
+import us.ihmc.yoVariables.providers.IntegerProvider;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoInteger;
+
+/**
+ * Propagates and updates the error covariance only every few ticks. In between the gain of the last full update is
+ * reused and only the state is corrected: {@code x = x + K * r}.
+ * <p>
+ * On a full tick the covariance is propagated over all ticks since the last full update at once:</br>
+ * Pprior = F^k * Pposterior * F^k' + Qk</br>
+ * where {@code Qk} is the process noise integrated over the {@code k} ticks. Both are computed from the current
+ * {@code F} and {@code Q} by repeated squaring in {@code O(log(k) * n^3)} assuming the model did not change in
+ * between. This is a good approximation in quasi-static phases. The corrections of the skipped ticks are not applied
+ * to the covariance so it is conservative.
+ * </p>
+ * <p>
+ * To guard the accuracy the normalized innovation squared {@code r' * S^-1 * r} of every correction is monitored
+ * using the innovation covariance {@code S} of the last full update. It is divided by the measurement size and low
+ * pass filtered such that its expected value is one for a consistent filter. If it exceeds the threshold the
+ * covariance is updated every tick until the filter is consistent again.
+ * </p>
+ */
+public class CovarianceDecimation
+{
+   private final FilterMatrixOps filterMatrixOps;
+
+   private final IntegerProvider decimationTicks;
+   private final DoubleProvider nisThreshold;
+   private final DoubleProvider nisAlpha;
+
+   private final YoInteger ticksSinceCovarianceUpdate;
+   private final YoDouble normalizedInnovationSquared;
+   private final YoDouble averageNormalizedInnovationSquared;
+   private final YoBoolean degraded;
+
+   /** Whether the covariance prediction of the current tick was skipped. */
+   private boolean skipping = false;
+   private boolean hasGain = false;
+
+   /** The gain and inverse innovation covariance of the last full update. */
+   private final DenseMatrix64F K = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F innovationCovarianceInverse = new DenseMatrix64F(0, 0);
+
+   private final DenseMatrix64F Fk = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Qk = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Fpower = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Qpower = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F tempF = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F tempQ = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F innovationCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F weightedResidual = new DenseMatrix64F(0, 0);
+
+   public CovarianceDecimation(FilterMatrixOps filterMatrixOps, YoVariableRegistry registry)
+   {
+      this.filterMatrixOps = filterMatrixOps;
+
+      decimationTicks = new IntegerParameter("covarianceDecimationTicks", registry, 1);
+      nisThreshold = new DoubleParameter("decimationNisThreshold", registry, 3.0);
+      nisAlpha = new DoubleParameter("decimationNisAlpha", registry, 0.99);
+
+      ticksSinceCovarianceUpdate = new YoInteger("ticksSinceCovarianceUpdate", registry);
+      normalizedInnovationSquared = new YoDouble("normalizedInnovationSquared", registry);
+      averageNormalizedInnovationSquared = new YoDouble("averageNormalizedInnovationSquared", registry);
+      averageNormalizedInnovationSquared.set(1.0);
+      degraded = new YoBoolean("covarianceDecimationDegraded", registry);
+   }
+
+   /**
+    * Whether the decimation is enabled, i.e. the {@code covarianceDecimationTicks} parameter is larger than one.
+    */
+   public boolean isEnabled()
+   {
+      return decimationTicks.getValue() > 1;
+   }
+
+   /**
+    * Must be called once per tick before the covariance prediction.
+    *
+    * @return whether the covariance prediction is skipped in this tick.
+    */
+   public boolean skipPrediction()
+   {
+      if (!isEnabled())
+      {
+         // Only count ticks while decimating. Otherwise the next full prediction would cover the ticks in which the
+         // covariance was propagated elsewhere, e.g. by the fast ticks of the multi rate partition.
+         ticksSinceCovarianceUpdate.set(0);
+         skipping = false;
+         return false;
+      }
+
+      ticksSinceCovarianceUpdate.increment();
+      skipping = hasGain && !degraded.getValue() && ticksSinceCovarianceUpdate.getIntegerValue() < decimationTicks.getValue();
+      return skipping;
+   }
+
+   /**
+    * Whether the covariance prediction of this tick was skipped. If so the gain of the last full update can be used
+    * with {@link #correctState(DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F)}.
+    * If that is not possible {@link #predictErrorCovariance(DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F)}
+    * must be called before using the prior covariance.
+    */
+   public boolean isSkipping()
+   {
+      return skipping;
+   }
+
+   /**
+    * Propagates the covariance over all ticks since the last full update:</br>
+    * Pprior = F^k * Pposterior * F^k' + Qk
+    */
+   public void predictErrorCovariance(DenseMatrix64F Pprior, DenseMatrix64F F, DenseMatrix64F Pposterior, DenseMatrix64F Q)
+   {
+      int ticks = Math.max(ticksSinceCovarianceUpdate.getIntegerValue(), 1);
+      if (ticks == 1)
+      {
+         filterMatrixOps.predictErrorCovariance(Pprior, F, Pposterior, Q);
+      }
+      else
+      {
+         computeTransition(F, Q, ticks);
+         filterMatrixOps.predictErrorCovariance(Pprior, Fk, Pposterior, Qk);
+      }
+
+      ticksSinceCovarianceUpdate.set(0);
+      skipping = false;
+   }
+
+   /**
+    * Corrects the state with the gain of the last full update. Not possible if the size of the measurement changed.
+    *
+    * @return whether the state was corrected.
+    */
+   public boolean correctState(DenseMatrix64F xPosterior, DenseMatrix64F Kused, DenseMatrix64F xPrior, DenseMatrix64F H, DenseMatrix64F residual)
+   {
+      if (!hasGain || K.getNumRows() != H.getNumCols() || K.getNumCols() != H.getNumRows())
+      {
+         return false;
+      }
+
+      updateMonitor(residual);
+      Kused.set(K);
+      filterMatrixOps.updateState(xPosterior, K, residual, xPrior);
+      return true;
+   }
+
+   /**
+    * Must be called after every full update with the prior covariance, the measurement model, and the gain of that
+    * update. Stores the gain for the following ticks and updates the consistency monitor.
+    */
+   public void update(DenseMatrix64F Pprior, DenseMatrix64F H, DenseMatrix64F R, boolean diagonalR, DenseMatrix64F residual, DenseMatrix64F K)
+   {
+      if (!isEnabled())
+      {
+         reset();
+         return;
+      }
+
+      int measurements = H.getNumRows();
+      if (diagonalR)
+      {
+         filterMatrixOps.computeABAtrans(innovationCovariance, H, Pprior);
+         for (int i = 0; i < measurements; i++)
+         {
+            innovationCovariance.add(i, i, R.get(i));
+         }
+      }
+      else
+      {
+         filterMatrixOps.computeABAtransPlusC(innovationCovariance, H, Pprior, R);
+      }
+
+      if (!filterMatrixOps.invertMatrix(innovationCovarianceInverse, innovationCovariance))
+      {
+         reset();
+         return;
+      }
+
+      this.K.set(K);
+      hasGain = true;
+      updateMonitor(residual);
+   }
+
+   /**
+    * Drops the stored gain such that the next tick is a full update. Must only be called if the prior covariance is
+    * up to date.
+    */
+   public void reset()
+   {
+      hasGain = false;
+      skipping = false;
+      ticksSinceCovarianceUpdate.set(0);
+   }
+
+   private void updateMonitor(DenseMatrix64F residual)
+   {
+      int measurements = residual.getNumRows();
+      weightedResidual.reshape(measurements, 1);
+      CommonOps.mult(innovationCovarianceInverse, residual, weightedResidual);
+      double nis = 0.0;
+      for (int i = 0; i < measurements; i++)
+      {
+         nis += residual.get(i) * weightedResidual.get(i);
+      }
+      normalizedInnovationSquared.set(nis / measurements);
+
+      double alpha = nisAlpha.getValue();
+      double average = alpha * averageNormalizedInnovationSquared.getDoubleValue() + (1.0 - alpha) * normalizedInnovationSquared.getDoubleValue();
+      averageNormalizedInnovationSquared.set(average);
+      degraded.set(average > nisThreshold.getValue());
+   }
+
+   /**
+    * Computes {@code Fk = F^ticks} and {@code Qk = sum(F^i * Q * F^i')} for {@code i < ticks} by repeated squaring.
+    * Two segments of {@code a} and {@code b} ticks combine to {@code F^(a+b) = F^b * F^a} and
+    * {@code Q(a+b) = F^b * Q(a) * F^b' + Q(b)}.
+    */
+   private void computeTransition(DenseMatrix64F F, DenseMatrix64F Q, int ticks)
+   {
+      int size = F.getNumRows();
+      Fpower.set(F);
+      Qpower.set(Q);
+      boolean first = true;
+      int remaining = ticks;
+
+      while (true)
+      {
+         if ((remaining & 1) != 0)
+         {
+            if (first)
+            {
+               Fk.set(Fpower);
+               Qk.set(Qpower);
+               first = false;
+            }
+            else
+            {
+               filterMatrixOps.computeABAtransPlusC(tempQ, Fpower, Qk, Qpower);
+               Qk.set(tempQ);
+               tempF.reshape(size, size);
+               CommonOps.mult(Fpower, Fk, tempF);
+               Fk.set(tempF);
+            }
+         }
+
+         remaining >>= 1;
+         if (remaining == 0)
+         {
+            break;
+         }
+
+         filterMatrixOps.computeABAtransPlusC(tempQ, Fpower, Qpower, Qpower);
+         Qpower.set(tempQ);
+         tempF.reshape(size, size);
+         CommonOps.mult(Fpower, Fpower, tempF);
+         Fpower.set(tempF);
+      }
+   }
+}
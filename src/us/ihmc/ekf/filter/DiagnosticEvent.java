@@ -0,0 +1,84 @@
+package us.ihmc.ekf.filter;
+
+/**
+ * The warnings the estimator reports at runtime through the {@link DiagnosticRing}. Every event carries the estimator
+ * tick it occurred in and up to two numeric values that are described by the value names of the event.
+ */
+public enum DiagnosticEvent
+{
+   /** The innovation covariance of a correction could not be inverted. The filter only integrated in that tick. */
+   INVERSION_FAILURE("Inversion failed integrating only", "measurementSize", null),
+   /** The innovation covariance of a delayed measurement could not be inverted. The measurement was dropped. */
+   DELAYED_INVERSION_FAILURE("Inversion failed dropping delayed measurement", "measurementSize", "ticksOfDelay"),
+   /** A tick of the estimator runtime ended after the deadline of the next tick. */
+   ESTIMATOR_OVERRUN("Estimator tick overran its period", "executionTimeMicros", "skippedTicks"),
+   /** A tick of the estimator runtime threw an exception and the runtime stopped. */
+   ESTIMATOR_FAILURE("Estimator tick failed stopping the runtime", null, null),
+   /** The telemetry ring buffer was full and the values of a tick were dropped. */
+   TELEMETRY_TICK_DROPPED("Dropped telemetry tick", "droppedTicks", null),
+   /** Writing the telemetry file failed and the telemetry writer stopped. */
+   TELEMETRY_FAILURE("Stopped writing telemetry after an I/O error", "writtenTicks", null),
+   /** The filter flight recorder wrote the ticks before an anomaly to a file. The tick is the tick of the trigger. */
+   FILTER_DUMP("Wrote filter dump", "trigger", "numberOfTicks"),
+   /** Writing a dump of the filter flight recorder failed. The tick is the tick of the trigger. */
+   FILTER_DUMP_FAILURE("Failed to write filter dump", "trigger", null);
+
+   private final String message;
+   private final String firstValueName;
+   private final String secondValueName;
+
+   private DiagnosticEvent(String message, String firstValueName, String secondValueName)
+   {
+      this.message = message;
+      this.firstValueName = firstValueName;
+      this.secondValueName = secondValueName;
+   }
+
+   public String getMessage()
+   {
+      return message;
+   }
+
+   /**
+    * @return the name of the first value or {@code null} if the event does not use it.
+    */
+   public String getFirstValueName()
+   {
+      return firstValueName;
+   }
+
+   /**
+    * @return the name of the second value or {@code null} if the event does not use it.
+    */
+   public String getSecondValueName()
+   {
+      return secondValueName;
+   }
+
+   /**
+    * Formats an occurrence of this event for printing. This allocates and must not be called on the estimator thread.
+    */
+   public String format(long tick, double firstValue, double secondValue)
+   {
+      StringBuilder builder = new StringBuilder(message);
+      builder.append(" (tick ").append(tick);
+      if (firstValueName != null)
+      {
+         builder.append(", ").append(firstValueName).append(' ').append(formatValue(firstValue));
+      }
+      if (secondValueName != null)
+      {
+         builder.append(", ").append(secondValueName).append(' ').append(formatValue(secondValue));
+      }
+      return builder.append(')').toString();
+   }
+
+   private static String formatValue(double value)
+   {
+      if (value == Math.rint(value) && Math.abs(value) < 1.0e15)
+      {
+         return Long.toString((long) value);
+      }
+      return String.format("%.3g", value);
+   }
+}
@@ -0,0 +1,268 @@
+package us.ihmc.ekf.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import us.ihmc.commons.PrintTools;
+
+/**
+ * Collects the runtime warnings of the estimator without allocating, formatting, or doing I/O on the thread that
+ * reports them. A warning is a {@link DiagnosticEvent} code with the estimator tick and up to two numeric values that
+ * is copied into a preallocated ring buffer by {@link #report(DiagnosticEvent, long, double, double)}. If the ring is
+ * full the event is counted as lost rather than waiting.
+ * <p>
+ * The events are taken out of the ring by a single consumer with {@link #drain(DiagnosticConsumer)}. The ring returned
+ * by {@link #getDefault()} is drained by a background thread that prints the events. The printing is rate limited per
+ * event code: if a warning repeats every tick only the first few occurrences per interval are printed followed by the
+ * number of suppressed ones.
+ * </p>
+ * <p>
+ * Any number of threads can report events. The slots of the ring carry a sequence number so a slot is only read
+ * after it was completely written (see Vyukov's bounded queue).
+ * </p>
+ */
+public class DiagnosticRing
+{
+   public static final int defaultCapacity = 1 << 10;
+   private static final long pollPeriodNanos = 10000000L;
+   private static final long printIntervalNanos = 1000000000L;
+   private static final int maximumPrintsPerInterval = 5;
+
+   private static final DiagnosticEvent[] events = DiagnosticEvent.values();
+
+   /**
+    * Receives the events taken out of the ring.
+    */
+   public static interface DiagnosticConsumer
+   {
+      public void accept(DiagnosticEvent event, long tick, long timestamp, double firstValue, double secondValue);
+   }
+
+   private static class DefaultHolder
+   {
+      private static final DiagnosticRing instance = createDefault();
+
+      private static DiagnosticRing createDefault()
+      {
+         DiagnosticRing ring = new DiagnosticRing(defaultCapacity);
+         ring.startPrinting();
+         return ring;
+      }
+   }
+
+   /**
+    * @return the ring used by the estimator. It is created with a background thread printing its events on first use.
+    */
+   public static DiagnosticRing getDefault()
+   {
+      return DefaultHolder.instance;
+   }
+
+   private final int capacity;
+   private final int mask;
+   private final AtomicLongArray sequences;
+   private final int[] codes;
+   private final long[] ticks;
+   private final long[] timestamps;
+   private final double[] firstValues;
+   private final double[] secondValues;
+
+   private final AtomicLong head = new AtomicLong();
+   private long tail = 0;
+   private final AtomicLong lostEvents = new AtomicLong();
+
+   private Thread printThread = null;
+
+   /**
+    * Creates a new ring that is not drained until {@link #drain(DiagnosticConsumer)} or {@link #startPrinting()} is
+    * called.
+    *
+    * @param capacity the number of events the ring can hold. Must be a power of two.
+    */
+   public DiagnosticRing(int capacity)
+   {
+      if (capacity < 1 || Integer.bitCount(capacity) != 1)
+      {
+         throw new RuntimeException("The capacity must be a power of two. Got " + capacity);
+      }
+
+      this.capacity = capacity;
+      mask = capacity - 1;
+      sequences = new AtomicLongArray(capacity);
+      for (int slot = 0; slot < capacity; slot++)
+      {
+         sequences.set(slot, slot);
+      }
+      codes = new int[capacity];
+      ticks = new long[capacity];
+      timestamps = new long[capacity];
+      firstValues = new double[capacity];
+      secondValues = new double[capacity];
+   }
+
+   public boolean report(DiagnosticEvent event, long tick)
+   {
+      return report(event, tick, Double.NaN, Double.NaN);
+   }
+
+   public boolean report(DiagnosticEvent event, long tick, double firstValue)
+   {
+      return report(event, tick, firstValue, Double.NaN);
+   }
+
+   /**
+    * Adds an event to the ring. Does not allocate and never blocks.
+    *
+    * @param event the code of the event.
+    * @param tick the estimator tick the event occurred in.
+    * @param firstValue the value described by {@link DiagnosticEvent#getFirstValueName()}.
+    * @param secondValue the value described by {@link DiagnosticEvent#getSecondValueName()}.
+    * @return whether the event was added. If not the ring was full and the event is counted as lost.
+    */
+   public boolean report(DiagnosticEvent event, long tick, double firstValue, double secondValue)
+   {
+      long position = head.get();
+      int slot;
+      while (true)
+      {
+         slot = (int) (position & mask);
+         long difference = sequences.get(slot) - position;
+         if (difference == 0L)
+         {
+            if (head.compareAndSet(position, position + 1))
+            {
+               break;
+            }
+            position = head.get();
+         }
+         else if (difference < 0L)
+         {
+            // The consumer did not yet take the event that was written to this slot one round earlier.
+            lostEvents.incrementAndGet();
+            return false;
+         }
+         else
+         {
+            // Another thread claimed this position.
+            position = head.get();
+         }
+      }
+
+      codes[slot] = event.ordinal();
+      ticks[slot] = tick;
+      timestamps[slot] = System.nanoTime();
+      firstValues[slot] = firstValue;
+      secondValues[slot] = secondValue;
+      sequences.lazySet(slot, position + 1);
+      return true;
+   }
+
+   /**
+    * Takes all completely written events out of the ring. Must only be called by a single consumer thread.
+    *
+    * @return the number of events passed to the consumer.
+    */
+   public int drain(DiagnosticConsumer consumer)
+   {
+      int drained = 0;
+      while (true)
+      {
+         int slot = (int) (tail & mask);
+         if (sequences.get(slot) != tail + 1)
+         {
+            return drained;
+         }
+
+         consumer.accept(events[codes[slot]], ticks[slot], timestamps[slot], firstValues[slot], secondValues[slot]);
+         sequences.lazySet(slot, tail + capacity);
+         tail++;
+         drained++;
+      }
+   }
+
+   /**
+    * @return the number of events that were not added because the ring was full.
+    */
+   public long getLostEvents()
+   {
+      return lostEvents.get();
+   }
+
+   /**
+    * Starts a background thread that drains this ring and prints the events. The ring must not be drained by another
+    * consumer afterwards.
+    */
+   public synchronized void startPrinting()
+   {
+      if (printThread != null)
+      {
+         return;
+      }
+
+      printThread = new Thread(new EventPrinter(), getClass().getSimpleName());
+      printThread.setDaemon(true);
+      printThread.start();
+   }
+
+   private class EventPrinter implements Runnable, DiagnosticConsumer
+   {
+      private final int[] printed = new int[events.length];
+      private final long[] suppressed = new long[events.length];
+      private long intervalStart = System.nanoTime();
+      private long reportedLostEvents = 0;
+
+      @Override
+      public void run()
+      {
+         while (true)
+         {
+            drain(this);
+
+            long now = System.nanoTime();
+            if (now - intervalStart >= printIntervalNanos)
+            {
+               finishInterval();
+               intervalStart = now;
+            }
+
+            LockSupport.parkNanos(pollPeriodNanos);
+         }
+      }
+
+      @Override
+      public void accept(DiagnosticEvent event, long tick, long timestamp, double firstValue, double secondValue)
+      {
+         int code = event.ordinal();
+         if (printed[code] < maximumPrintsPerInterval)
+         {
+            printed[code]++;
+            PrintTools.warn(event.format(tick, firstValue, secondValue));
+         }
+         else
+         {
+            suppressed[code]++;
+         }
+      }
+
+      private void finishInterval()
+      {
+         for (int code = 0; code < events.length; code++)
+         {
+            if (suppressed[code] > 0)
+            {
+               PrintTools.warn("Suppressed " + suppressed[code] + " more '" + events[code].getMessage() + "' warnings.");
+            }
+            printed[code] = 0;
+            suppressed[code] = 0;
+         }
+
+         long lost = getLostEvents();
+         if (lost > reportedLostEvents)
+         {
+            PrintTools.warn("Lost " + (lost - reportedLostEvents) + " warnings because the diagnostic ring was full.");
+            reportedLostEvents = lost;
+         }
+      }
+   }
+}
@@ -0,0 +1,207 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolverFactory;
+import org.ejml.interfaces.linsol.LinearSolver;
+import org.ejml.ops.CommonOps;
+
+/**
+ * The default {@link FilterMatrixOps} using EJML. The matrix products can be computed by a different
+ * {@link MatrixMultiplier}, e.g. to use multiple threads for large robots.
+ */
+public class EjmlFilterMatrixOps implements FilterMatrixOps
+{
+   private final LinearSolver<DenseMatrix64F> solver = LinearSolverFactory.linear(0);
+   private final MatrixMultiplier multiplier;
+
+   private final DenseMatrix64F indentityToInvert = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F BAtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F ABAtransPlusC = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F inverse = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F PHtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F innovation = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F identity = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F IKH = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F KRKtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F KR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F HPHtransPlusR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F KSminusPHtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F KPHtransTrans = new DenseMatrix64F(0, 0);
+
+   public EjmlFilterMatrixOps()
+   {
+      this(new EjmlMatrixMultiplier());
+   }
+
+   /**
+    * Creates the filter operations using the provided implementation for the matrix products. The products of
+    * full state sized matrices dominate the computation time for large robots.
+    *
+    * @param multiplier used to compute all matrix products.
+    */
+   public EjmlFilterMatrixOps(MatrixMultiplier multiplier)
+   {
+      this.multiplier = multiplier;
+   }
+
+   @Override
+   public void setIdentity(DenseMatrix64F matrix, int size)
+   {
+      matrix.reshape(size, size);
+      CommonOps.setIdentity(matrix);
+   }
+
+   @Override
+   public void computeABAtrans(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B)
+   {
+      multiplier.multTransB(B, A, BAtrans);
+      multiplier.mult(A, BAtrans, result);
+   }
+
+   @Override
+   public void computeABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
+   {
+      computeABAtrans(result, A, B);
+      CommonOps.add(result, C, result);
+   }
+
+   @Override
+   public boolean invertMatrix(DenseMatrix64F result, DenseMatrix64F A)
+   {
+      setIdentity(indentityToInvert, A.getNumRows());
+
+      if (!solver.setA(A))
+      {
+         CommonOps.fill(result, 0.0);
+         return false;
+      }
+
+      result.reshape(A.getNumRows(), A.getNumCols());
+      solver.solve(indentityToInvert, result);
+      return true;
+   }
+
+   @Override
+   public boolean computeInverseOfABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
+   {
+      computeABAtransPlusC(ABAtransPlusC, A, B, C);
+      return invertMatrix(result, ABAtransPlusC);
+   }
+
+   @Override
+   public void predictErrorCovariance(DenseMatrix64F result, DenseMatrix64F F, DenseMatrix64F Pposterior, DenseMatrix64F Q)
+   {
+      computeABAtransPlusC(result, F, Pposterior, Q);
+   }
+
+   @Override
+   public boolean computeKalmanGain(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F R)
+   {
+      if (!computeInverseOfABAtransPlusC(inverse, H, P, R))
+      {
+         CommonOps.fill(result, 0.0);
+         return false;
+      }
+
+      multiplier.multTransB(P, H, PHtrans);
+
+      multiplier.mult(PHtrans, inverse, result);
+      return true;
+   }
+
+   @Override
+   public boolean computeKalmanGainDiagonalR(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F Rdiagonal)
+   {
+      multiplier.multTransB(P, H, PHtrans);
+
+      multiplier.mult(H, PHtrans, HPHtransPlusR);
+      for (int i = 0; i < H.getNumRows(); i++)
+      {
+         HPHtransPlusR.add(i, i, Rdiagonal.get(i));
+      }
+
+      if (!invertMatrix(inverse, HPHtransPlusR))
+      {
+         CommonOps.fill(result, 0.0);
+         return false;
+      }
+
+      multiplier.mult(PHtrans, inverse, result);
+      return true;
+   }
+
+   @Override
+   public void updateState(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F residual, DenseMatrix64F xPrior)
+   {
+      innovation.reshape(xPrior.getNumRows(), 1);
+      CommonOps.mult(K, residual, innovation);
+      result.reshape(xPrior.getNumRows(), 1);
+      CommonOps.add(xPrior, innovation, result);
+   }
+
+   @Override
+   public void updateErrorCovariance(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior)
+   {
+      computeABAtrans(KRKtrans, K, R);
+      setIdentity(identity, pPrior.getNumRows());
+      multiplier.mult(K, H, IKH);
+      CommonOps.subtract(identity, IKH, IKH);
+      computeABAtransPlusC(result, IKH, pPrior, KRKtrans);
+   }
+
+   @Override
+   public void updateErrorCovarianceDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal, DenseMatrix64F pPrior)
+   {
+      KR.reshape(K.getNumRows(), K.getNumCols());
+      for (int row = 0; row < K.getNumRows(); row++)
+      {
+         for (int col = 0; col < K.getNumCols(); col++)
+         {
+            KR.unsafe_set(row, col, K.unsafe_get(row, col) * Rdiagonal.get(col));
+         }
+      }
+      multiplier.multTransB(KR, K, KRKtrans);
+
+      setIdentity(identity, pPrior.getNumRows());
+      multiplier.mult(K, H, IKH);
+      CommonOps.subtract(identity, IKH, IKH);
+      computeABAtransPlusC(result, IKH, pPrior, KRKtrans);
+   }
+
+   @Override
+   public void updateErrorCovarianceExpanded(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior)
+   {
+      multiplier.multTransB(pPrior, H, PHtrans);
+      multiplier.mult(H, PHtrans, HPHtransPlusR);
+      CommonOps.addEquals(HPHtransPlusR, R);
+      computeExpandedForm(result, K, pPrior);
+   }
+
+   @Override
+   public void updateErrorCovarianceExpandedDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal,
+                                                      DenseMatrix64F pPrior)
+   {
+      multiplier.multTransB(pPrior, H, PHtrans);
+      multiplier.mult(H, PHtrans, HPHtransPlusR);
+      for (int i = 0; i < H.getNumRows(); i++)
+      {
+         HPHtransPlusR.add(i, i, Rdiagonal.get(i));
+      }
+      computeExpandedForm(result, K, pPrior);
+   }
+
+   /**
+    * Computes {@code pPrior + (K * S - A) * K' - K * A'} from the {@code A = P * H'} and {@code S = H * P * H' + R}
+    * temporary matrices.
+    */
+   private void computeExpandedForm(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F pPrior)
+   {
+      multiplier.mult(K, HPHtransPlusR, KSminusPHtrans);
+      CommonOps.subtractEquals(KSminusPHtrans, PHtrans);
+      multiplier.multTransB(KSminusPHtrans, K, KRKtrans);
+      multiplier.multTransB(K, PHtrans, KPHtransTrans);
+      result.reshape(pPrior.getNumRows(), pPrior.getNumCols());
+      CommonOps.add(pPrior, KRKtrans, result);
+      CommonOps.subtractEquals(result, KPHtransTrans);
+   }
+}
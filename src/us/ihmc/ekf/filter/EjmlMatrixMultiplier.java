@@ -0,0 +1,24 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+/**
+ * The default {@link MatrixMultiplier} using the single threaded EJML implementation.
+ */
+public class EjmlMatrixMultiplier implements MatrixMultiplier
+{
+   @Override
+   public void mult(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      result.reshape(A.getNumRows(), B.getNumCols());
+      CommonOps.mult(A, B, result);
+   }
+
+   @Override
+   public void multTransB(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      result.reshape(A.getNumRows(), B.getNumRows());
+      CommonOps.multTransB(A, B, result);
+   }
+}
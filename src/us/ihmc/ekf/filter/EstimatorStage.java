@@ -0,0 +1,39 @@
+package us.ihmc.ekf.filter;
+
+/**
+ * The stages of an estimator tick that are timed by the {@link StageLatencies}.
+ */
+public enum EstimatorStage
+{
+   /** Reading the measurements from the robot. */
+   SENSOR_READ,
+   /** Integrating the state. */
+   STATE_PREDICT,
+   /** Assembling the linearized plant model {@code F} and the process noise {@code Q}. */
+   FQ_ASSEMBLY,
+   /** Predicting the error covariance. */
+   COVARIANCE_PREDICT,
+   /** Selecting the active sensors, assembling the measurement jacobian and residual, and gating the measurement. */
+   JACOBIAN_ASSEMBLY,
+   /** Computing the kalman gain. */
+   GAIN,
+   /** Correcting the state. */
+   STATE_UPDATE,
+   /** Correcting the error covariance. */
+   COVARIANCE_UPDATE,
+   /** Writing the estimate to the robot model. */
+   MODEL_UPDATE;
+
+   /**
+    * @return the name of this stage in camel case for use in variable names, e.g. {@code sensorRead}.
+    */
+   public String getCamelCaseName()
+   {
+      StringBuilder builder = new StringBuilder();
+      for (String word : name().toLowerCase().split("_"))
+      {
+         builder.append(builder.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+      }
+      return builder.toString();
+   }
+}
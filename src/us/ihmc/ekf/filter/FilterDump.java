@@ -0,0 +1,255 @@
+package us.ihmc.ekf.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.MatrixFeatures;
+
+import us.ihmc.commons.PrintTools;
+
+/**
+ * Reads a file written by the {@link FilterFlightRecorder} so the corrections leading up to an anomaly can be
+ * inspected and replayed offline.
+ * <p>
+ * The file is little endian. It starts with a header of {@link #headerSize} bytes (magic number, version, trigger,
+ * state size, trigger tick, number of ticks) followed by one record per tick with the oldest tick first. A record
+ * holds the tick, the timestamp, the measurement size {@code m}, whether R is diagonal, and the NIS followed by the
+ * row major elements of xPrior, Pprior, xPosterior, H, R (m elements if diagonal), the residual, and K.
+ * </p>
+ */
+public class FilterDump
+{
+   public static final String fileExtension = ".ekfdump";
+   static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+   static final int magicNumber = 0x44464b45; // "EKFD" in little endian
+   static final int version = 1;
+   static final int headerSize = 32;
+   private static final int recordHeaderSize = 32;
+
+   private final FilterFlightRecorder.Trigger trigger;
+   private final long triggerTick;
+   private final int stateSize;
+
+   private final long[] ticks;
+   private final long[] timestamps;
+   private final double[] nis;
+   private final boolean[] diagonalR;
+   private final DenseMatrix64F[] xPrior;
+   private final DenseMatrix64F[] Pprior;
+   private final DenseMatrix64F[] xPosterior;
+   private final DenseMatrix64F[] H;
+   private final DenseMatrix64F[] R;
+   private final DenseMatrix64F[] residual;
+   private final DenseMatrix64F[] K;
+
+   public FilterDump(Path file) throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(byteOrder);
+      if (buffer.remaining() < headerSize || buffer.getInt() != magicNumber)
+      {
+         throw new RuntimeException(file + " is not a filter dump.");
+      }
+      int fileVersion = buffer.getInt();
+      if (fileVersion != version)
+      {
+         throw new RuntimeException("Unsupported filter dump version " + fileVersion + " in " + file);
+      }
+      trigger = FilterFlightRecorder.Trigger.values()[buffer.getInt()];
+      stateSize = buffer.getInt();
+      triggerTick = buffer.getLong();
+      int numberOfTicks = buffer.getInt();
+      buffer.getInt();
+
+      ticks = new long[numberOfTicks];
+      timestamps = new long[numberOfTicks];
+      nis = new double[numberOfTicks];
+      diagonalR = new boolean[numberOfTicks];
+      xPrior = new DenseMatrix64F[numberOfTicks];
+      Pprior = new DenseMatrix64F[numberOfTicks];
+      xPosterior = new DenseMatrix64F[numberOfTicks];
+      H = new DenseMatrix64F[numberOfTicks];
+      R = new DenseMatrix64F[numberOfTicks];
+      residual = new DenseMatrix64F[numberOfTicks];
+      K = new DenseMatrix64F[numberOfTicks];
+      for (int index = 0; index < numberOfTicks; index++)
+      {
+         ticks[index] = buffer.getLong();
+         timestamps[index] = buffer.getLong();
+         int measurementSize = buffer.getInt();
+         diagonalR[index] = buffer.getInt() != 0;
+         nis[index] = buffer.getDouble();
+         xPrior[index] = readMatrix(buffer, stateSize, 1);
+         Pprior[index] = readMatrix(buffer, stateSize, stateSize);
+         xPosterior[index] = readMatrix(buffer, stateSize, 1);
+         H[index] = readMatrix(buffer, measurementSize, stateSize);
+         R[index] = diagonalR[index] ? readMatrix(buffer, measurementSize, 1) : readMatrix(buffer, measurementSize, measurementSize);
+         residual[index] = readMatrix(buffer, measurementSize, 1);
+         K[index] = readMatrix(buffer, stateSize, measurementSize);
+      }
+   }
+
+   private static DenseMatrix64F readMatrix(ByteBuffer buffer, int rows, int cols)
+   {
+      DenseMatrix64F matrix = new DenseMatrix64F(rows, cols);
+      for (int i = 0; i < rows * cols; i++)
+      {
+         matrix.data[i] = buffer.getDouble();
+      }
+      return matrix;
+   }
+
+   /**
+    * @return the size in bytes of the record of a tick.
+    */
+   static int computeRecordSize(int stateSize, int measurementSize, boolean diagonalR)
+   {
+      int noiseSize = diagonalR ? measurementSize : measurementSize * measurementSize;
+      int elements = 2 * stateSize + stateSize * stateSize + 2 * measurementSize * stateSize + noiseSize + measurementSize;
+      return recordHeaderSize + 8 * elements;
+   }
+
+   /**
+    * Runs the correction of a recorded tick again with the recorded prior and measurement.
+    *
+    * @param index the index of the tick in this dump (0 is the oldest).
+    * @param measurementUpdate the update to replay the correction with.
+    * @param xPosterior the replayed corrected state (modified).
+    * @param Pposterior the replayed corrected error covariance (modified).
+    * @param K the replayed kalman gain (modified).
+    * @return whether the replayed correction succeeded.
+    */
+   public boolean replayCorrection(int index, MeasurementUpdate measurementUpdate, DenseMatrix64F xPosterior, DenseMatrix64F Pposterior,
+                                   DenseMatrix64F K)
+   {
+      if (H[index].getNumRows() == 0)
+      {
+         xPosterior.set(xPrior[index]);
+         Pposterior.set(Pprior[index]);
+         K.reshape(stateSize, 0);
+         return true;
+      }
+      return measurementUpdate.update(xPosterior, Pposterior, K, xPrior[index], Pprior[index], H[index], residual[index], R[index], diagonalR[index], true);
+   }
+
+   public FilterFlightRecorder.Trigger getTrigger()
+   {
+      return trigger;
+   }
+
+   public long getTriggerTick()
+   {
+      return triggerTick;
+   }
+
+   public int getStateSize()
+   {
+      return stateSize;
+   }
+
+   public int getNumberOfTicks()
+   {
+      return ticks.length;
+   }
+
+   public long getTick(int index)
+   {
+      return ticks[index];
+   }
+
+   /**
+    * @return the value of {@link System#nanoTime()} when the tick was recorded.
+    */
+   public long getTimestamp(int index)
+   {
+      return timestamps[index];
+   }
+
+   /**
+    * @return the normalized innovation squared of the tick or {@code NaN} if the innovation covariance was singular.
+    */
+   public double getNis(int index)
+   {
+      return nis[index];
+   }
+
+   public DenseMatrix64F getStatePrior(int index)
+   {
+      return xPrior[index];
+   }
+
+   public DenseMatrix64F getCovariancePrior(int index)
+   {
+      return Pprior[index];
+   }
+
+   public DenseMatrix64F getStatePosterior(int index)
+   {
+      return xPosterior[index];
+   }
+
+   public DenseMatrix64F getMeasurementJacobian(int index)
+   {
+      return H[index];
+   }
+
+   /**
+    * @return the measurement noise covariance or its diagonal as a column vector (see
+    *         {@link #isMeasurementNoiseDiagonal(int)}).
+    */
+   public DenseMatrix64F getMeasurementNoise(int index)
+   {
+      return R[index];
+   }
+
+   public boolean isMeasurementNoiseDiagonal(int index)
+   {
+      return diagonalR[index];
+   }
+
+   public DenseMatrix64F getResidual(int index)
+   {
+      return residual[index];
+   }
+
+   /**
+    * @return the kalman gain of the tick. It is zero if the gain was not computed in that tick.
+    */
+   public DenseMatrix64F getKalmanGain(int index)
+   {
+      return K[index];
+   }
+
+   /**
+    * Prints a summary of a dump and replays every recorded correction with the {@link BatchedMeasurementUpdate}
+    * comparing the replayed state with the recorded one.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length != 1)
+      {
+         PrintTools.info("Usage: FilterDump <dumpFile>");
+         return;
+      }
+
+      FilterDump dump = new FilterDump(Paths.get(args[0]));
+      PrintTools.info("Dump triggered by " + dump.getTrigger() + " at tick " + dump.getTriggerTick() + " with " + dump.getNumberOfTicks()
+            + " ticks of state size " + dump.getStateSize());
+
+      MeasurementUpdate measurementUpdate = UpdateStrategyType.BATCHED.create(FilterMatrixOpsType.EJML.create(0));
+      DenseMatrix64F xPosterior = new DenseMatrix64F(0, 0);
+      DenseMatrix64F Pposterior = new DenseMatrix64F(0, 0);
+      DenseMatrix64F K = new DenseMatrix64F(0, 0);
+      for (int index = 0; index < dump.getNumberOfTicks(); index++)
+      {
+         boolean success = dump.replayCorrection(index, measurementUpdate, xPosterior, Pposterior, K);
+         boolean matches = success && MatrixFeatures.isIdentical(xPosterior, dump.getStatePosterior(index), 1.0e-9);
+         PrintTools.info("Tick " + dump.getTick(index) + ": measurementSize " + dump.getMeasurementJacobian(index).getNumRows() + ", nis "
+               + String.format("%.3g", dump.getNis(index)) + (success ? (matches ? "" : ", replayed state differs") : ", replay failed"));
+      }
+   }
+}
@@ -0,0 +1,426 @@
+package us.ihmc.ekf.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolverFactory;
+import org.ejml.interfaces.linsol.LinearSolver;
+import org.ejml.ops.CommonOps;
+
+import us.ihmc.yoVariables.parameters.DoubleParameter;
+import us.ihmc.yoVariables.providers.DoubleProvider;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoInteger;
+
+/**
+ * Keeps the matrices of the last corrections of the {@link StateEstimator} in memory and writes them to a file when
+ * the filter misbehaves. The file can be read with {@link FilterDump} to replay the failing corrections offline.
+ * <p>
+ * For every tick the recorder stores the predicted state and error covariance, the measurement jacobian, noise, and
+ * residual, the kalman gain, and the corrected state in a ring buffer that is allocated when the recorder is created.
+ * A dump is triggered by a failed inversion, a state that is not finite, a normalized innovation squared (NIS) that
+ * exceeds the chi-square quantile at {@code filterDumpNisSigma}, or by setting {@code requestFilterDump}. The
+ * recorder keeps recording for a quarter of its depth after the trigger and then hands the ring to a background
+ * thread that writes the file. No ticks are recorded while the file is written.
+ * </p>
+ * <p>
+ * Computing the NIS costs {@code O(n^2 * m)} per tick in addition to the copies of the matrices so the recorder is
+ * only created on request (see {@link StateEstimator#enableFlightRecorder(int, Path, YoVariableRegistry)}).
+ * </p>
+ */
+public class FilterFlightRecorder implements AutoCloseable
+{
+   /** The reasons for a dump. */
+   public enum Trigger
+   {
+      INVERSION_FAILURE, NIS_SPIKE, INVALID_STATE, REQUESTED
+   }
+
+   private final int depth;
+   private final int stateSize;
+   private final int postTriggerTicks;
+   private final Path directory;
+
+   private final long[] ticks;
+   private final long[] timestamps;
+   private final double[] nis;
+   private final boolean[] diagonalR;
+   private final DenseMatrix64F[] xPrior;
+   private final DenseMatrix64F[] Pprior;
+   private final DenseMatrix64F[] xPosterior;
+   private final DenseMatrix64F[] H;
+   private final DenseMatrix64F[] R;
+   private final DenseMatrix64F[] residual;
+   private final DenseMatrix64F[] K;
+
+   private int newestIndex = -1;
+   private int numberOfRecordedTicks = 0;
+
+   private Trigger trigger = null;
+   private long triggerTick = -1;
+   private int remainingPostTriggerTicks = 0;
+
+   private final DoubleProvider nisSigma;
+   private final YoBoolean requestDump;
+   private final YoDouble lastNis;
+   private final YoInteger dumpTriggers;
+
+   private final LinearSolver<DenseMatrix64F> solver = LinearSolverFactory.symmPosDef(0);
+   private final DenseMatrix64F PHtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F innovationCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F weightedResidual = new DenseMatrix64F(0, 0);
+
+   // Set by the estimator thread to hand the ring to the writer thread and cleared by the writer once the file is
+   // written.
+   private volatile boolean dumping = false;
+   private volatile boolean running = true;
+   private volatile Path lastDumpFile = null;
+   private volatile int completedDumps = 0;
+   private final Thread writerThread;
+   private final DiagnosticRing diagnosticRing = DiagnosticRing.getDefault();
+
+   /**
+    * Creates a new recorder and starts the thread that writes the dumps.
+    *
+    * @param depth the number of ticks kept in memory.
+    * @param stateSize the size of the full filter state.
+    * @param maximumMeasurementSize the maximum size of the measurement vector in any tick.
+    * @param directory the directory the dumps are written to.
+    */
+   public FilterFlightRecorder(int depth, int stateSize, int maximumMeasurementSize, Path directory, YoVariableRegistry registry)
+   {
+      if (depth < 1)
+      {
+         throw new RuntimeException("Recorder depth must be at least one. Got " + depth);
+      }
+
+      this.depth = depth;
+      this.stateSize = stateSize;
+      this.directory = directory;
+      postTriggerTicks = depth / 4;
+
+      ticks = new long[depth];
+      timestamps = new long[depth];
+      nis = new double[depth];
+      diagonalR = new boolean[depth];
+      xPrior = new DenseMatrix64F[depth];
+      Pprior = new DenseMatrix64F[depth];
+      xPosterior = new DenseMatrix64F[depth];
+      H = new DenseMatrix64F[depth];
+      R = new DenseMatrix64F[depth];
+      residual = new DenseMatrix64F[depth];
+      K = new DenseMatrix64F[depth];
+      for (int i = 0; i < depth; i++)
+      {
+         xPrior[i] = new DenseMatrix64F(stateSize, 1);
+         Pprior[i] = new DenseMatrix64F(stateSize, stateSize);
+         xPosterior[i] = new DenseMatrix64F(stateSize, 1);
+         H[i] = new DenseMatrix64F(maximumMeasurementSize, stateSize);
+         R[i] = new DenseMatrix64F(maximumMeasurementSize, maximumMeasurementSize);
+         residual[i] = new DenseMatrix64F(maximumMeasurementSize, 1);
+         K[i] = new DenseMatrix64F(stateSize, maximumMeasurementSize);
+      }
+
+      nisSigma = new DoubleParameter("filterDumpNisSigma", registry, 10.0);
+      requestDump = new YoBoolean("requestFilterDump", registry);
+      lastNis = new YoDouble("filterNis", registry);
+      dumpTriggers = new YoInteger("filterDumpTriggers", registry);
+
+      writerThread = new Thread(this::writeDumps, getClass().getSimpleName());
+      writerThread.setDaemon(true);
+      writerThread.start();
+   }
+
+   /**
+    * Stores the correction of a tick and triggers a dump if the tick is anomalous. Must be called from the estimator
+    * thread after every correction.
+    *
+    * @param tick the number of the estimator tick.
+    * @param xPrior the predicted state.
+    * @param Pprior the predicted error covariance.
+    * @param H the measurement jacobian (may have zero rows).
+    * @param R the measurement noise covariance or its diagonal as a column vector.
+    * @param diagonalR whether {@code R} is the diagonal of the measurement noise covariance.
+    * @param residual the measurement residual. Only the rows of the measurement are used.
+    * @param K the kalman gain (may have zero columns if it was not computed).
+    * @param xPosterior the corrected state.
+    * @param inversionFailed whether the correction failed and the filter only integrated.
+    */
+   public void record(long tick, DenseMatrix64F xPrior, DenseMatrix64F Pprior, DenseMatrix64F H, DenseMatrix64F R, boolean diagonalR,
+                      DenseMatrix64F residual, DenseMatrix64F K, DenseMatrix64F xPosterior, boolean inversionFailed)
+   {
+      if (dumping)
+      {
+         // The writer thread owns the ring.
+         return;
+      }
+
+      int measurementSize = H.getNumRows();
+      newestIndex = (newestIndex + 1) % depth;
+      numberOfRecordedTicks = Math.min(numberOfRecordedTicks + 1, depth);
+      ticks[newestIndex] = tick;
+      timestamps[newestIndex] = System.nanoTime();
+      this.diagonalR[newestIndex] = diagonalR;
+      this.xPrior[newestIndex].set(xPrior);
+      this.Pprior[newestIndex].set(Pprior);
+      this.xPosterior[newestIndex].set(xPosterior);
+      this.H[newestIndex].set(H);
+      this.R[newestIndex].set(R);
+      this.residual[newestIndex].reshape(measurementSize, 1);
+      System.arraycopy(residual.data, 0, this.residual[newestIndex].data, 0, measurementSize);
+      this.K[newestIndex].set(K);
+
+      double tickNis = computeNis(Pprior, H, R, diagonalR, this.residual[newestIndex]);
+      nis[newestIndex] = tickNis;
+      lastNis.set(tickNis);
+
+      if (trigger != null)
+      {
+         if (--remainingPostTriggerTicks <= 0)
+         {
+            startDump();
+         }
+         return;
+      }
+
+      Trigger newTrigger = null;
+      if (inversionFailed)
+      {
+         newTrigger = Trigger.INVERSION_FAILURE;
+      }
+      else if (!isFinite(xPosterior))
+      {
+         newTrigger = Trigger.INVALID_STATE;
+      }
+      else if (measurementSize > 0 && !(tickNis <= MeasurementGate.computeChiSquareThreshold(measurementSize, nisSigma.getValue())))
+      {
+         newTrigger = Trigger.NIS_SPIKE;
+      }
+      else if (requestDump.getValue())
+      {
+         newTrigger = Trigger.REQUESTED;
+      }
+
+      if (newTrigger != null)
+      {
+         requestDump.set(false);
+         dumpTriggers.increment();
+         trigger = newTrigger;
+         triggerTick = tick;
+         remainingPostTriggerTicks = postTriggerTicks;
+         if (remainingPostTriggerTicks <= 0)
+         {
+            startDump();
+         }
+      }
+   }
+
+   private void startDump()
+   {
+      dumping = true;
+      LockSupport.unpark(writerThread);
+   }
+
+   /**
+    * Computes {@code r' * inverse(H * P * H' + R) * r}. Returns {@code NaN} if the innovation covariance is not
+    * positive definite and zero if there is no measurement.
+    */
+   private double computeNis(DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F R, boolean diagonalR, DenseMatrix64F residual)
+   {
+      int measurementSize = H.getNumRows();
+      if (measurementSize == 0)
+      {
+         return 0.0;
+      }
+
+      PHtrans.reshape(P.getNumRows(), measurementSize);
+      CommonOps.multTransB(P, H, PHtrans);
+      innovationCovariance.reshape(measurementSize, measurementSize);
+      CommonOps.mult(H, PHtrans, innovationCovariance);
+      if (diagonalR)
+      {
+         for (int i = 0; i < measurementSize; i++)
+         {
+            innovationCovariance.add(i, i, R.get(i));
+         }
+      }
+      else
+      {
+         CommonOps.addEquals(innovationCovariance, R);
+      }
+
+      if (!solver.setA(innovationCovariance))
+      {
+         return Double.NaN;
+      }
+      weightedResidual.reshape(measurementSize, 1);
+      solver.solve(residual, weightedResidual);
+      double distance = 0.0;
+      for (int i = 0; i < measurementSize; i++)
+      {
+         distance += residual.get(i) * weightedResidual.get(i);
+      }
+      return distance;
+   }
+
+   private static boolean isFinite(DenseMatrix64F vector)
+   {
+      for (int i = 0; i < vector.getNumElements(); i++)
+      {
+         if (!Double.isFinite(vector.data[i]))
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void writeDumps()
+   {
+      while (running)
+      {
+         if (!dumping)
+         {
+            LockSupport.park(this);
+            continue;
+         }
+
+         Path file = directory.resolve("filterDump" + triggerTick + FilterDump.fileExtension);
+         try
+         {
+            writeDump(file);
+            lastDumpFile = file;
+            completedDumps++;
+            diagnosticRing.report(DiagnosticEvent.FILTER_DUMP, triggerTick, trigger.ordinal(), numberOfRecordedTicks);
+         }
+         catch (IOException e)
+         {
+            diagnosticRing.report(DiagnosticEvent.FILTER_DUMP_FAILURE, triggerTick, trigger.ordinal());
+         }
+
+         newestIndex = -1;
+         numberOfRecordedTicks = 0;
+         trigger = null;
+         dumping = false;
+      }
+   }
+
+   private void writeDump(Path file) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+      {
+         ByteBuffer header = ByteBuffer.allocate(FilterDump.headerSize).order(FilterDump.byteOrder);
+         header.putInt(FilterDump.magicNumber);
+         header.putInt(FilterDump.version);
+         header.putInt(trigger.ordinal());
+         header.putInt(stateSize);
+         header.putLong(triggerTick);
+         header.putInt(numberOfRecordedTicks);
+         header.putInt(0);
+         writeFully(channel, header);
+
+         int maximumMeasurementSize = 0;
+         for (int index = 0; index < numberOfRecordedTicks; index++)
+         {
+            maximumMeasurementSize = Math.max(maximumMeasurementSize, H[index].getNumRows());
+         }
+         int maximumRecordSize = FilterDump.computeRecordSize(stateSize, maximumMeasurementSize, false);
+         ByteBuffer record = ByteBuffer.allocate(maximumRecordSize).order(FilterDump.byteOrder);
+         for (int age = numberOfRecordedTicks - 1; age >= 0; age--)
+         {
+            int index = (newestIndex - age + depth) % depth;
+            int measurementSize = H[index].getNumRows();
+            record.clear();
+            record.putLong(ticks[index]);
+            record.putLong(timestamps[index]);
+            record.putInt(measurementSize);
+            record.putInt(diagonalR[index] ? 1 : 0);
+            record.putDouble(nis[index]);
+            putMatrix(record, xPrior[index], stateSize);
+            putMatrix(record, Pprior[index], stateSize * stateSize);
+            putMatrix(record, xPosterior[index], stateSize);
+            putMatrix(record, H[index], measurementSize * stateSize);
+            putMatrix(record, R[index], diagonalR[index] ? measurementSize : measurementSize * measurementSize);
+            putMatrix(record, residual[index], measurementSize);
+            // The gain is written with the measurement size columns. It is zero if it was not computed in this tick.
+            DenseMatrix64F gain = K[index];
+            for (int row = 0; row < stateSize; row++)
+            {
+               for (int col = 0; col < measurementSize; col++)
+               {
+                  record.putDouble(gain.getNumCols() == measurementSize && gain.getNumRows() == stateSize ? gain.get(row, col) : 0.0);
+               }
+            }
+            record.flip();
+            writeFully(channel, record);
+         }
+      }
+   }
+
+   private static void putMatrix(ByteBuffer buffer, DenseMatrix64F matrix, int numberOfElements)
+   {
+      if (matrix.getNumElements() != numberOfElements)
+      {
+         throw new RuntimeException("Unexpected matrix size " + matrix.getNumRows() + "x" + matrix.getNumCols() + " for " + numberOfElements + " elements.");
+      }
+      for (int i = 0; i < numberOfElements; i++)
+      {
+         buffer.putDouble(matrix.data[i]);
+      }
+   }
+
+   private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+   {
+      buffer.rewind();
+      while (buffer.hasRemaining())
+      {
+         channel.write(buffer);
+      }
+   }
+
+   /**
+    * @return the number of dumps that were written since the recorder was created.
+    */
+   public int getCompletedDumps()
+   {
+      return completedDumps;
+   }
+
+   /**
+    * @return the file of the last dump or {@code null} if none was written yet.
+    */
+   public Path getLastDumpFile()
+   {
+      return lastDumpFile;
+   }
+
+   public int getDepth()
+   {
+      return depth;
+   }
+
+   /**
+    * Stops the writer thread. A dump that is being written is completed first.
+    */
+   @Override
+   public void close()
+   {
+      running = false;
+      LockSupport.unpark(writerThread);
+      try
+      {
+         writerThread.join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+}
@@ -0,0 +1,199 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.euclid.tuple4D.Quaternion;
+import us.ihmc.euclid.tuple4D.interfaces.QuaternionReadOnly;
+
+/**
+ * A fixed size ring buffer of past filter ticks. It is used by the {@link StateEstimator} to correct the
+ * state with measurements that arrive with a delay.
+ * <p>
+ * For each tick the buffer stores the linearized state evolution {@code F} that was used to predict the state
+ * into that tick, the kalman gain {@code K}, measurement jacobian {@code H}, residual, and inverse of the innovation
+ * covariance used in the correction, as well as the resulting state vector and error covariance. The state vector
+ * does not contain the orientation of a floating base since it is an error state (see
+ * {@link us.ihmc.ekf.filter.state.PoseState}) so the root orientation is stored separately. All memory is allocated
+ * when the buffer is created such that storing a tick does not cause any garbage.
+ * </p>
+ */
+public class FilterHistory
+{
+   private final int depth;
+
+   private final DenseMatrix64F[] F;
+   private final DenseMatrix64F[] K;
+   private final DenseMatrix64F[] H;
+   private final DenseMatrix64F[] residual;
+   private final DenseMatrix64F[] innovationCovarianceInverse;
+   private final DenseMatrix64F[] x;
+   private final DenseMatrix64F[] P;
+   private final Quaternion[] rootOrientation;
+
+   private int newestIndex = -1;
+   private int numberOfStoredTicks = 0;
+
+   /**
+    * Creates a new history.
+    *
+    * @param depth the number of ticks that will be stored.
+    * @param stateSize the size of the full filter state.
+    * @param maximumMeasurementSize the maximum size of the measurement vector in any tick.
+    */
+   public FilterHistory(int depth, int stateSize, int maximumMeasurementSize)
+   {
+      if (depth < 1)
+      {
+         throw new RuntimeException("History depth must be at least one. Got " + depth);
+      }
+
+      this.depth = depth;
+      F = new DenseMatrix64F[depth];
+      K = new DenseMatrix64F[depth];
+      H = new DenseMatrix64F[depth];
+      residual = new DenseMatrix64F[depth];
+      innovationCovarianceInverse = new DenseMatrix64F[depth];
+      x = new DenseMatrix64F[depth];
+      P = new DenseMatrix64F[depth];
+      rootOrientation = new Quaternion[depth];
+
+      for (int i = 0; i < depth; i++)
+      {
+         F[i] = new DenseMatrix64F(stateSize, stateSize);
+         K[i] = new DenseMatrix64F(stateSize, maximumMeasurementSize);
+         H[i] = new DenseMatrix64F(maximumMeasurementSize, stateSize);
+         residual[i] = new DenseMatrix64F(maximumMeasurementSize, 1);
+         innovationCovarianceInverse[i] = new DenseMatrix64F(maximumMeasurementSize, maximumMeasurementSize);
+         x[i] = new DenseMatrix64F(stateSize, 1);
+         P[i] = new DenseMatrix64F(stateSize, stateSize);
+         rootOrientation[i] = new Quaternion();
+      }
+   }
+
+   /**
+    * Stores a new tick in the history. If the history is full the oldest tick is overwritten.
+    *
+    * @param F is the matrix that was used to predict the error covariance into this tick.
+    * @param K is the kalman gain used in the correction of this tick (may have zero columns).
+    * @param H is the measurement jacobian used in the correction of this tick (may have zero rows).
+    * @param residual is the measurement residual used in the correction of this tick.
+    * @param innovationCovarianceInverse is the inverse of {@code H * Pprior * H' + R} of this tick.
+    * @param xPosterior is the state vector after the correction.
+    * @param pPosterior is the error covariance after the correction.
+    * @param rootOrientation is the orientation of the floating base after the correction or {@code null} if the robot
+    *        does not have a floating base.
+    */
+   public void store(DenseMatrix64F F, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F residual, DenseMatrix64F innovationCovarianceInverse,
+                     DenseMatrix64F xPosterior, DenseMatrix64F pPosterior, QuaternionReadOnly rootOrientation)
+   {
+      newestIndex = (newestIndex + 1) % depth;
+      numberOfStoredTicks = Math.min(numberOfStoredTicks + 1, depth);
+
+      this.F[newestIndex].set(F);
+      this.K[newestIndex].set(K);
+      this.H[newestIndex].set(H);
+      this.residual[newestIndex].set(residual);
+      this.innovationCovarianceInverse[newestIndex].set(innovationCovarianceInverse);
+      this.x[newestIndex].set(xPosterior);
+      this.P[newestIndex].set(pPosterior);
+      setRootOrientation(rootOrientation);
+   }
+
+   /**
+    * Overwrites the state, covariance, and root orientation of the newest tick. This is used after the newest tick
+    * was corrected with a delayed measurement.
+    */
+   public void updateNewest(DenseMatrix64F xPosterior, DenseMatrix64F pPosterior, QuaternionReadOnly rootOrientation)
+   {
+      checkAge(0);
+      x[newestIndex].set(xPosterior);
+      P[newestIndex].set(pPosterior);
+      setRootOrientation(rootOrientation);
+   }
+
+   private void setRootOrientation(QuaternionReadOnly rootOrientation)
+   {
+      if (rootOrientation == null)
+      {
+         this.rootOrientation[newestIndex].setToZero();
+      }
+      else
+      {
+         this.rootOrientation[newestIndex].set(rootOrientation);
+      }
+   }
+
+   /**
+    * Provides the number of ticks that can be accessed. This is the depth of the history once it was filled.
+    */
+   public int getNumberOfStoredTicks()
+   {
+      return numberOfStoredTicks;
+   }
+
+   public int getDepth()
+   {
+      return depth;
+   }
+
+   /**
+    * The matrices returned by the following methods are owned by the history and must not be modified. The
+    * {@code age} is the number of ticks that have passed since the tick was stored: the newest tick has age zero.
+    */
+   public DenseMatrix64F getFMatrix(int age)
+   {
+      return F[getIndex(age)];
+   }
+
+   public DenseMatrix64F getKalmanGain(int age)
+   {
+      return K[getIndex(age)];
+   }
+
+   public DenseMatrix64F getMeasurementJacobian(int age)
+   {
+      return H[getIndex(age)];
+   }
+
+   public DenseMatrix64F getResidual(int age)
+   {
+      return residual[getIndex(age)];
+   }
+
+   public DenseMatrix64F getInnovationCovarianceInverse(int age)
+   {
+      return innovationCovarianceInverse[getIndex(age)];
+   }
+
+   public DenseMatrix64F getStateVector(int age)
+   {
+      return x[getIndex(age)];
+   }
+
+   public DenseMatrix64F getCovariance(int age)
+   {
+      return P[getIndex(age)];
+   }
+
+   /**
+    * @return the orientation of the floating base. This is the identity if the robot does not have a floating base.
+    */
+   public QuaternionReadOnly getRootOrientation(int age)
+   {
+      return rootOrientation[getIndex(age)];
+   }
+
+   private int getIndex(int age)
+   {
+      checkAge(age);
+      return (newestIndex - age + depth) % depth;
+   }
+
+   private void checkAge(int age)
+   {
+      if (age < 0 || age >= numberOfStoredTicks)
+      {
+         throw new RuntimeException("Tick with age " + age + " is not in the history. Stored ticks: " + numberOfStoredTicks);
+      }
+   }
+}
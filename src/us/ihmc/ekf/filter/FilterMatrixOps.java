@@ -1,59 +1,37 @@
 package us.ihmc.ekf.filter;
 
 import org.ejml.data.DenseMatrix64F;
-import org.ejml.factory.LinearSolverFactory;
-import org.ejml.interfaces.linsol.LinearSolver;
-import org.ejml.ops.CommonOps;
 
-public class FilterMatrixOps
+/**
+ * The matrix operations performed by the {@link StateEstimator}. Different implementations allow to pick the fastest
+ * linear algebra backend for a given robot (see {@link FilterMatrixOpsType}) without changing the filter.
+ * <p>
+ * All result matrices are reshaped by the implementations and must not be an input of the same operation.
+ * Implementations are not thread safe as they use internal temporary matrices.
+ * </p>
+ */
+public interface FilterMatrixOps
 {
-   private final LinearSolver<DenseMatrix64F> solver = LinearSolverFactory.linear(0);
-
-   private final DenseMatrix64F indentityToInvert = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F BAtrans = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F ABAtransPlusC = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F inverse = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F PHtrans = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F innovation = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F identity = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F IKH = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F KRKtrans = new DenseMatrix64F(0, 0);
-
    /**
     * Sets the provided matrix to a square identity matrix of the given size.
     *
     * @param matrix (modified)
     * @param size is the the desired number of rows and columns for the matrix
     */
-   public void setIdentity(DenseMatrix64F matrix, int size)
-   {
-      matrix.reshape(size, size);
-      CommonOps.setIdentity(matrix);
-   }
+   public void setIdentity(DenseMatrix64F matrix, int size);
 
    /**
     * Sets the provided matrix to</br>
     * result = A * B * A'</br>
     * Note, that B must be square.
     */
-   public void computeABAtrans(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B)
-   {
-      BAtrans.reshape(B.getNumRows(), A.getNumRows());
-      CommonOps.multTransB(B, A, BAtrans);
-
-      result.reshape(A.getNumRows(), A.getNumRows());
-      CommonOps.mult(A, BAtrans, result);
-   }
+   public void computeABAtrans(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B);
 
    /**
     * Sets the provided matrix to</br>
     * result = A * B * A' + C
     */
-   public void computeABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
-   {
-      computeABAtrans(result, A, B);
-      CommonOps.add(result, C, result);
-   }
+   public void computeABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C);
 
    /**
     * Sets the provided matrix to</br>
@@ -62,20 +40,7 @@ public class FilterMatrixOps
     *
     * @return whether the inversion succeeded
     */
-   public boolean invertMatrix(DenseMatrix64F result, DenseMatrix64F A)
-   {
-      setIdentity(indentityToInvert, A.getNumRows());
-
-      if (!solver.setA(A))
-      {
-         CommonOps.fill(result, 0.0);
-         return false;
-      }
-
-      result.reshape(A.getNumRows(), A.getNumCols());
-      solver.solve(indentityToInvert, result);
-      return true;
-   }
+   public boolean invertMatrix(DenseMatrix64F result, DenseMatrix64F A);
 
    /**
     * Sets the provided matrix to</br>
@@ -84,11 +49,7 @@ public class FilterMatrixOps
     *
     * @return whether the inversion succeeded
     */
-   public boolean computeInverseOfABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
-   {
-      computeABAtransPlusC(ABAtransPlusC, A, B, C);
-      return invertMatrix(result, ABAtransPlusC);
-   }
+   public boolean computeInverseOfABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C);
 
    /**
     * Sets the provided matrix to</br>
@@ -99,10 +60,7 @@ public class FilterMatrixOps
     * @param Pposterior is the previous error covariance
     * @param Q is the covariance matrix of the state evolution
     */
-   public void predictErrorCovariance(DenseMatrix64F result, DenseMatrix64F F, DenseMatrix64F Pposterior, DenseMatrix64F Q)
-   {
-      computeABAtransPlusC(result, F, Pposterior, Q);
-   }
+   public void predictErrorCovariance(DenseMatrix64F result, DenseMatrix64F F, DenseMatrix64F Pposterior, DenseMatrix64F Q);
 
    /**
     * Sets the provided matrix to</br>
@@ -115,21 +73,22 @@ public class FilterMatrixOps
     * @param H is the measurement jacobian
     * @param R is the measurement covariance
     */
-   public boolean computeKalmanGain(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F R)
-   {
-      if (!computeInverseOfABAtransPlusC(inverse, H, P, R))
-      {
-         CommonOps.fill(result, 0.0);
-         return false;
-      }
-
-      PHtrans.reshape(P.getNumRows(), H.getNumRows());
-      CommonOps.multTransB(P, H, PHtrans);
+   public boolean computeKalmanGain(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F R);
 
-      result.reshape(P.getNumRows(), R.getNumCols());
-      CommonOps.mult(PHtrans, inverse, result);
-      return true;
-   }
+   /**
+    * Sets the provided matrix to</br>
+    * result = P * H' * inverse(H * P * H' + diag(R))</br>
+    * This is equivalent to {@link #computeKalmanGain(DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F)}
+    * for a diagonal measurement covariance. The product {@code P * H'} is only computed once and the measurement
+    * covariance is added along the diagonal. Will return whether the inversion succeeded.
+    *
+    * @return whether the inversion succeeded
+    * @param result (modified)
+    * @param P is the error covariance
+    * @param H is the measurement jacobian
+    * @param Rdiagonal is the diagonal of the measurement covariance as a column vector
+    */
+   public boolean computeKalmanGainDiagonalR(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F Rdiagonal);
 
    /**
     * Sets the provided matrix to</br>
@@ -140,13 +99,7 @@ public class FilterMatrixOps
     * @param residual is the measurement residual
     * @param xPrior is the state before the measurement update
     */
-   public void updateState(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F residual, DenseMatrix64F xPrior)
-   {
-      innovation.reshape(xPrior.getNumRows(), 1);
-      CommonOps.mult(K, residual, innovation);
-      result.reshape(xPrior.getNumRows(), 1);
-      CommonOps.add(xPrior, innovation, result);
-   }
+   public void updateState(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F residual, DenseMatrix64F xPrior);
 
    /**
     * Sets the provided matrix to</br>
@@ -158,13 +111,53 @@ public class FilterMatrixOps
     * @param R
     * @param pPrior is the error covariance before the update
     */
-   public void updateErrorCovariance(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior)
-   {
-      computeABAtrans(KRKtrans, K, R);
-      IKH.reshape(pPrior.getNumRows(), pPrior.getNumRows());
-      setIdentity(identity, pPrior.getNumRows());
-      CommonOps.mult(K, H, IKH);
-      CommonOps.subtract(identity, IKH, IKH);
-      computeABAtransPlusC(result, IKH, pPrior, KRKtrans);
-   }
+   public void updateErrorCovariance(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior);
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = (identity - K * H) * pPrior * (identity - K * H)' + K * diag(R) * K'</br>
+    * This is equivalent to
+    * {@link #updateErrorCovariance(DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F)}
+    * for a diagonal measurement covariance. Instead of a dense triple product {@code K * R * K'} is computed by scaling
+    * the columns of {@code K}.
+    *
+    * @param result (modified)
+    * @param K is the kalman gain
+    * @param H is the measurement jacobian
+    * @param Rdiagonal is the diagonal of the measurement covariance as a column vector
+    * @param pPrior is the error covariance before the update
+    */
+   public void updateErrorCovarianceDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal, DenseMatrix64F pPrior);
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = pPrior - K * A' - A * K' + K * (H * A + R) * K'</br>
+    * where {@code A = pPrior * H'}. This is the Joseph form of
+    * {@link #updateErrorCovariance(DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F)}
+    * multiplied out. It is valid for any gain but only costs {@code O(n^2 * m)} as {@code identity - K * H} is never
+    * formed.
+    *
+    * @param result (modified)
+    * @param K is the kalman gain
+    * @param H is the measurement jacobian
+    * @param R is the measurement covariance
+    * @param pPrior is the error covariance before the update
+    */
+   public void updateErrorCovarianceExpanded(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior);
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = pPrior - K * A' - A * K' + K * (H * A + diag(R)) * K'</br>
+    * This is equivalent to
+    * {@link #updateErrorCovarianceExpanded(DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F)}
+    * for a diagonal measurement covariance.
+    *
+    * @param result (modified)
+    * @param K is the kalman gain
+    * @param H is the measurement jacobian
+    * @param Rdiagonal is the diagonal of the measurement covariance as a column vector
+    * @param pPrior is the error covariance before the update
+    */
+   public void updateErrorCovarianceExpandedDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal,
+                                                      DenseMatrix64F pPrior);
 }
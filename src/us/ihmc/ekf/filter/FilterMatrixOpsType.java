@@ -0,0 +1,53 @@
+package us.ihmc.ekf.filter;
+
+/**
+ * The available implementations of the {@link FilterMatrixOps}. Which one is the fastest depends on the size of the
+ * filter state and on the machine the estimator is running on.
+ */
+public enum FilterMatrixOpsType
+{
+   /** The default implementation using EJML (see {@link EjmlFilterMatrixOps}). */
+   EJML,
+   /** Fused loops on the row major matrix data (see {@link RowMajorFilterMatrixOps}). */
+   ROW_MAJOR,
+   /** EJML with cache blocked matrix products on multiple threads (see {@link BlockedMatrixMultiplier}). */
+   BLOCKED_PARALLEL,
+   /** Covariance math in single precision (see {@link FloatFilterMatrixOps}). */
+   FLOAT,
+   /**
+    * EJML with matrix products that the compiler can vectorize (see {@link VectorizedMatrixMultiplier}). Falls back
+    * to the scalar EJML products if the virtual machine does not vectorize loops.
+    */
+   VECTORIZED;
+
+   /**
+    * Creates a new instance of the filter matrix operations of this type.
+    *
+    * @param workerThreads the number of threads in addition to the estimator thread. Only used by parallel
+    *           implementations.
+    * @return the new filter matrix operations.
+    */
+   public FilterMatrixOps create(int workerThreads)
+   {
+      switch (this)
+      {
+      case EJML:
+         return new EjmlFilterMatrixOps();
+      case ROW_MAJOR:
+         return new RowMajorFilterMatrixOps();
+      case BLOCKED_PARALLEL:
+         WorkerPool workerPool = new WorkerPool(getClass().getSimpleName(), workerThreads);
+         return new EjmlFilterMatrixOps(new BlockedMatrixMultiplier(workerPool));
+      case FLOAT:
+         return new FloatFilterMatrixOps();
+      case VECTORIZED:
+         if (VectorizedMatrixMultiplier.isSupported())
+         {
+            return new EjmlFilterMatrixOps(new VectorizedMatrixMultiplier());
+         }
+         return new EjmlFilterMatrixOps();
+      default:
+         throw new RuntimeException("Unknown type " + this);
+      }
+   }
+}
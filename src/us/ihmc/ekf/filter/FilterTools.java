@@ -1,5 +1,6 @@
 package us.ihmc.ekf.filter;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.ejml.data.DenseMatrix64F;
@@ -14,50 +15,72 @@ public class FilterTools
 {
    public static void insertForVelocity(DenseMatrix64F matrixToPack, List<String> oneDofJointNames, DenseMatrix64F matrixToInsert,
                                         RobotStateIndexProvider indexProvider)
+   {
+      matrixToPack.reshape(matrixToInsert.getNumRows(), indexProvider.getSize());
+      insertForVelocity(matrixToPack, 0, oneDofJointNames, matrixToInsert, indexProvider);
+   }
+
+   /**
+    * Inserts the provided matrix into the rows of {@code matrixToPack} starting at {@code startRow}. Only the rows of
+    * the provided matrix and the columns corresponding to the robot state are modified. Columns of the robot state that
+    * are not affected by the inserted matrix are set to zero.
+    */
+   public static void insertForVelocity(DenseMatrix64F matrixToPack, int startRow, List<String> oneDofJointNames, DenseMatrix64F matrixToInsert,
+                                        RobotStateIndexProvider indexProvider)
    {
       int rows = matrixToInsert.getNumRows();
-      matrixToPack.reshape(rows, indexProvider.getSize());
-      matrixToPack.zero();
+      setZero(matrixToPack, startRow, rows, 0, indexProvider.getSize());
       int index = 0;
 
       if (indexProvider.isFloating())
       {
          int angularIndex = indexProvider.findAngularVelocityIndex();
          int linearIndex = indexProvider.findLinearVelocityIndex();
-         CommonOps.extract(matrixToInsert, 0, rows, 0, 3, matrixToPack, 0, angularIndex);
-         CommonOps.extract(matrixToInsert, 0, rows, 3, 6, matrixToPack, 0, linearIndex);
+         CommonOps.extract(matrixToInsert, 0, rows, 0, 3, matrixToPack, startRow, angularIndex);
+         CommonOps.extract(matrixToInsert, 0, rows, 3, 6, matrixToPack, startRow, linearIndex);
          index += Twist.SIZE;
       }
 
       for (int jointIndex = 0; jointIndex < oneDofJointNames.size(); jointIndex++)
       {
          int indexInState = indexProvider.findJointVelocityIndex(oneDofJointNames.get(jointIndex));
-         CommonOps.extract(matrixToInsert, 0, rows, index, index + 1, matrixToPack, 0, indexInState);
+         CommonOps.extract(matrixToInsert, 0, rows, index, index + 1, matrixToPack, startRow, indexInState);
          index++;
       }
    }
 
    public static void insertForAcceleration(DenseMatrix64F matrixToPack, List<String> oneDofJointNames, DenseMatrix64F matrixToInsert,
                                             RobotStateIndexProvider indexProvider)
+   {
+      matrixToPack.reshape(matrixToInsert.getNumRows(), indexProvider.getSize());
+      insertForAcceleration(matrixToPack, 0, oneDofJointNames, matrixToInsert, indexProvider);
+   }
+
+   /**
+    * Inserts the provided matrix into the rows of {@code matrixToPack} starting at {@code startRow}. Only the rows of
+    * the provided matrix and the columns corresponding to the robot state are modified. Columns of the robot state that
+    * are not affected by the inserted matrix are set to zero.
+    */
+   public static void insertForAcceleration(DenseMatrix64F matrixToPack, int startRow, List<String> oneDofJointNames, DenseMatrix64F matrixToInsert,
+                                            RobotStateIndexProvider indexProvider)
    {
       int rows = matrixToInsert.getNumRows();
-      matrixToPack.reshape(rows, indexProvider.getSize());
-      matrixToPack.zero();
+      setZero(matrixToPack, startRow, rows, 0, indexProvider.getSize());
       int index = 0;
 
       if (indexProvider.isFloating())
       {
          int angularIndex = indexProvider.findAngularAccelerationIndex();
          int linearIndex = indexProvider.findLinearAccelerationIndex();
-         CommonOps.extract(matrixToInsert, 0, rows, 0, 3, matrixToPack, 0, angularIndex);
-         CommonOps.extract(matrixToInsert, 0, rows, 3, 6, matrixToPack, 0, linearIndex);
+         CommonOps.extract(matrixToInsert, 0, rows, 0, 3, matrixToPack, startRow, angularIndex);
+         CommonOps.extract(matrixToInsert, 0, rows, 3, 6, matrixToPack, startRow, linearIndex);
          index += Twist.SIZE;
       }
 
       for (int jointIndex = 0; jointIndex < oneDofJointNames.size(); jointIndex++)
       {
          int indexInState = indexProvider.findJointAccelerationIndex(oneDofJointNames.get(jointIndex));
-         CommonOps.extract(matrixToInsert, 0, rows, index, index + 1, matrixToPack, 0, indexInState);
+         CommonOps.extract(matrixToInsert, 0, rows, index, index + 1, matrixToPack, startRow, indexInState);
          index++;
       }
    }
@@ -106,6 +129,19 @@ public class FilterTools
       }
    }
 
+   /**
+    * Sets the block of the matrix that starts at the given row and column and spans the given number of rows and
+    * columns to zero. The matrix is not reshaped.
+    */
+   public static void setZero(DenseMatrix64F matrix, int startRow, int rows, int startCol, int cols)
+   {
+      for (int row = startRow; row < startRow + rows; row++)
+      {
+         int rowStart = row * matrix.getNumCols() + startCol;
+         Arrays.fill(matrix.data, rowStart, rowStart + cols, 0.0);
+      }
+   }
+
    public static void checkVectorDimensions(DenseMatrix64F A, DenseMatrix64F B)
    {
       if (A.getNumRows() != B.getNumRows())
@@ -0,0 +1,374 @@
+package us.ihmc.ekf.filter;
+
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * A {@link FilterMatrixOps} implementation that performs the covariance math in single precision.
+ * <p>
+ * The products of state sized matrices in the prediction, the kalman gain, and the covariance update are computed on
+ * {@code float} copies of the operands. This halves the memory traffic of the {@code n^3} products that dominate the
+ * filter for large robots. The small innovation covariance is inverted in double precision and the state update
+ * {@code x + K * r} is also done in double such that the state vector itself keeps full precision. Inputs and results
+ * are double precision matrices so this implementation can be used in place of any other.
+ * </p>
+ * <p>
+ * The result is only accurate to about the precision of a {@code float} relative to the largest entries of the
+ * covariance. Use the {@link us.ihmc.ekf.robots.FilterPrecisionComparison} to check whether this is sufficient for a
+ * robot before deploying.
+ * </p>
+ */
+public class FloatFilterMatrixOps implements FilterMatrixOps
+{
+   private final RowMajorFilterMatrixOps doubleOps = new RowMajorFilterMatrixOps();
+
+   private final FloatMatrix floatA = new FloatMatrix();
+   private final FloatMatrix floatB = new FloatMatrix();
+   private final FloatMatrix floatC = new FloatMatrix();
+   private final FloatMatrix floatK = new FloatMatrix();
+   private final FloatMatrix floatH = new FloatMatrix();
+   private final FloatMatrix floatP = new FloatMatrix();
+   private final FloatMatrix floatBAtrans = new FloatMatrix();
+   private final FloatMatrix floatResult = new FloatMatrix();
+   private final FloatMatrix floatPHtrans = new FloatMatrix();
+   private final FloatMatrix floatInverse = new FloatMatrix();
+   private final FloatMatrix floatIKH = new FloatMatrix();
+   private final FloatMatrix floatKR = new FloatMatrix();
+   private final FloatMatrix floatKRKtrans = new FloatMatrix();
+   private final FloatMatrix floatKSminusPHtrans = new FloatMatrix();
+   private final FloatMatrix floatKPHtransTrans = new FloatMatrix();
+
+   private final DenseMatrix64F ABAtransPlusC = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F HPHtransPlusR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F inverse = new DenseMatrix64F(0, 0);
+
+   @Override
+   public void setIdentity(DenseMatrix64F matrix, int size)
+   {
+      doubleOps.setIdentity(matrix, size);
+   }
+
+   @Override
+   public void computeABAtrans(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B)
+   {
+      floatA.set(A);
+      floatB.set(B);
+      computeABAtrans(floatResult, floatA, floatB);
+      floatResult.get(result);
+   }
+
+   @Override
+   public void computeABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
+   {
+      computeABAtrans(result, A, B);
+      addEquals(result, C);
+   }
+
+   @Override
+   public boolean invertMatrix(DenseMatrix64F result, DenseMatrix64F A)
+   {
+      return doubleOps.invertMatrix(result, A);
+   }
+
+   @Override
+   public boolean computeInverseOfABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
+   {
+      computeABAtransPlusC(ABAtransPlusC, A, B, C);
+      return invertMatrix(result, ABAtransPlusC);
+   }
+
+   @Override
+   public void predictErrorCovariance(DenseMatrix64F result, DenseMatrix64F F, DenseMatrix64F Pposterior, DenseMatrix64F Q)
+   {
+      computeABAtransPlusC(result, F, Pposterior, Q);
+   }
+
+   @Override
+   public boolean computeKalmanGain(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F R)
+   {
+      computeInnovationCovarianceWithoutR(P, H);
+      addEquals(HPHtransPlusR, R);
+      return computeGain(result, P.getNumRows(), H.getNumRows());
+   }
+
+   @Override
+   public boolean computeKalmanGainDiagonalR(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F Rdiagonal)
+   {
+      computeInnovationCovarianceWithoutR(P, H);
+      int measurements = H.getNumRows();
+      for (int i = 0; i < measurements; i++)
+      {
+         HPHtransPlusR.data[i * measurements + i] += Rdiagonal.data[i];
+      }
+      return computeGain(result, P.getNumRows(), measurements);
+   }
+
+   /**
+    * Computes {@code P * H'} in single precision and {@code H * P * H'} into the double precision temporary matrix.
+    */
+   private void computeInnovationCovarianceWithoutR(DenseMatrix64F P, DenseMatrix64F H)
+   {
+      floatP.set(P);
+      floatH.set(H);
+      multTransB(floatP, floatH, floatPHtrans);
+      mult(floatH, floatPHtrans, floatResult);
+      floatResult.get(HPHtransPlusR);
+   }
+
+   private boolean computeGain(DenseMatrix64F result, int stateSize, int measurements)
+   {
+      if (!invertMatrix(inverse, HPHtransPlusR))
+      {
+         result.reshape(stateSize, measurements);
+         Arrays.fill(result.data, 0, stateSize * measurements, 0.0);
+         return false;
+      }
+
+      floatInverse.set(inverse);
+      mult(floatPHtrans, floatInverse, floatResult);
+      floatResult.get(result);
+      return true;
+   }
+
+   @Override
+   public void updateState(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F residual, DenseMatrix64F xPrior)
+   {
+      doubleOps.updateState(result, K, residual, xPrior);
+   }
+
+   @Override
+   public void updateErrorCovariance(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior)
+   {
+      floatK.set(K);
+      floatC.set(R);
+      computeABAtrans(floatKRKtrans, floatK, floatC);
+      computeJosephForm(result, H, pPrior);
+   }
+
+   @Override
+   public void updateErrorCovarianceDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal, DenseMatrix64F pPrior)
+   {
+      floatK.set(K);
+      int rows = K.getNumRows();
+      int cols = K.getNumCols();
+      floatKR.reshape(rows, cols);
+      for (int row = 0; row < rows; row++)
+      {
+         int start = row * cols;
+         for (int col = 0; col < cols; col++)
+         {
+            floatKR.data[start + col] = floatK.data[start + col] * (float) Rdiagonal.data[col];
+         }
+      }
+      multTransB(floatKR, floatK, floatKRKtrans);
+      computeJosephForm(result, H, pPrior);
+   }
+
+   /**
+    * Computes {@code (I - K * H) * P * (I - K * H)' + K * R * K'} where the kalman gain and {@code K * R * K'} were
+    * already converted to single precision.
+    */
+   private void computeJosephForm(DenseMatrix64F result, DenseMatrix64F H, DenseMatrix64F pPrior)
+   {
+      floatH.set(H);
+      mult(floatK, floatH, floatIKH);
+      int size = floatIKH.rows;
+      for (int i = 0; i < size * size; i++)
+      {
+         floatIKH.data[i] = -floatIKH.data[i];
+      }
+      for (int i = 0; i < size; i++)
+      {
+         floatIKH.data[i * size + i] += 1.0f;
+      }
+
+      floatP.set(pPrior);
+      computeABAtrans(floatResult, floatIKH, floatP);
+      for (int i = 0; i < size * size; i++)
+      {
+         floatResult.data[i] += floatKRKtrans.data[i];
+      }
+      floatResult.get(result);
+   }
+
+   @Override
+   public void updateErrorCovarianceExpanded(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior)
+   {
+      computeInnovationCovarianceWithoutR(pPrior, H);
+      int length = HPHtransPlusR.getNumElements();
+      for (int i = 0; i < length; i++)
+      {
+         floatResult.data[i] += (float) R.data[i];
+      }
+      computeExpandedForm(result, K);
+   }
+
+   @Override
+   public void updateErrorCovarianceExpandedDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal,
+                                                      DenseMatrix64F pPrior)
+   {
+      computeInnovationCovarianceWithoutR(pPrior, H);
+      int measurements = H.getNumRows();
+      for (int i = 0; i < measurements; i++)
+      {
+         floatResult.data[i * measurements + i] += (float) Rdiagonal.data[i];
+      }
+      computeExpandedForm(result, K);
+   }
+
+   /**
+    * Computes {@code P + (K * S - A) * K' - K * A'} where {@code P}, {@code A = P * H'}, and
+    * {@code S = H * P * H' + R} were already computed in single precision.
+    */
+   private void computeExpandedForm(DenseMatrix64F result, DenseMatrix64F K)
+   {
+      floatK.set(K);
+      mult(floatK, floatResult, floatKSminusPHtrans);
+      int length = floatPHtrans.rows * floatPHtrans.cols;
+      for (int i = 0; i < length; i++)
+      {
+         floatKSminusPHtrans.data[i] -= floatPHtrans.data[i];
+      }
+      multTransB(floatKSminusPHtrans, floatK, floatKRKtrans);
+      multTransB(floatK, floatPHtrans, floatKPHtransTrans);
+
+      int size = floatP.rows;
+      for (int i = 0; i < size * size; i++)
+      {
+         floatKRKtrans.data[i] += floatP.data[i] - floatKPHtransTrans.data[i];
+      }
+      floatKRKtrans.get(result);
+   }
+
+   private void computeABAtrans(FloatMatrix result, FloatMatrix A, FloatMatrix B)
+   {
+      multTransB(B, A, floatBAtrans);
+      mult(A, floatBAtrans, result);
+   }
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = A * B
+    */
+   private static void mult(FloatMatrix A, FloatMatrix B, FloatMatrix result)
+   {
+      int rows = A.rows;
+      int inner = A.cols;
+      int cols = B.cols;
+      if (inner != B.rows)
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+      result.reshape(rows, cols);
+
+      float[] a = A.data;
+      float[] b = B.data;
+      float[] c = result.data;
+      Arrays.fill(c, 0, rows * cols, 0.0f);
+
+      for (int i = 0; i < rows; i++)
+      {
+         int cRow = i * cols;
+         int aRow = i * inner;
+         for (int k = 0; k < inner; k++)
+         {
+            float aik = a[aRow + k];
+            int bRow = k * cols;
+            for (int j = 0; j < cols; j++)
+            {
+               c[cRow + j] += aik * b[bRow + j];
+            }
+         }
+      }
+   }
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = A * B'
+    */
+   private static void multTransB(FloatMatrix A, FloatMatrix B, FloatMatrix result)
+   {
+      int rows = A.rows;
+      int inner = A.cols;
+      int cols = B.rows;
+      if (inner != B.cols)
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+      result.reshape(rows, cols);
+
+      float[] a = A.data;
+      float[] b = B.data;
+      float[] c = result.data;
+
+      for (int i = 0; i < rows; i++)
+      {
+         int aRow = i * inner;
+         for (int j = 0; j < cols; j++)
+         {
+            int bRow = j * inner;
+            float sum = 0.0f;
+            for (int k = 0; k < inner; k++)
+            {
+               sum += a[aRow + k] * b[bRow + k];
+            }
+            c[i * cols + j] = sum;
+         }
+      }
+   }
+
+   private static void addEquals(DenseMatrix64F result, DenseMatrix64F A)
+   {
+      if (result.getNumRows() != A.getNumRows() || result.getNumCols() != A.getNumCols())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+
+      int length = result.getNumElements();
+      for (int i = 0; i < length; i++)
+      {
+         result.data[i] += A.data[i];
+      }
+   }
+
+   /**
+    * A minimal row major single precision matrix that only grows its storage.
+    */
+   private static class FloatMatrix
+   {
+      private float[] data = new float[0];
+      private int rows;
+      private int cols;
+
+      private void reshape(int rows, int cols)
+      {
+         if (data.length < rows * cols)
+         {
+            data = new float[rows * cols];
+         }
+         this.rows = rows;
+         this.cols = cols;
+      }
+
+      private void set(DenseMatrix64F matrix)
+      {
+         reshape(matrix.getNumRows(), matrix.getNumCols());
+         int length = rows * cols;
+         for (int i = 0; i < length; i++)
+         {
+            data[i] = (float) matrix.data[i];
+         }
+      }
+
+      private void get(DenseMatrix64F matrixToPack)
+      {
+         matrixToPack.reshape(rows, cols);
+         int length = rows * cols;
+         for (int i = 0; i < length; i++)
+         {
+            matrixToPack.data[i] = data[i];
+         }
+      }
+   }
+}
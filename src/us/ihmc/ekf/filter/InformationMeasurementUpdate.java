@@ -0,0 +1,92 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+/**
+ * The information form of the kalman filter correction:</br>
+ * Pposterior = inverse(inverse(Pprior) + H' * inverse(R) * H)</br>
+ * K = Pposterior * H' * inverse(R)
+ * <p>
+ * This inverts two {@code n x n} matrices but only an {@code m x m} matrix for a dense {@code R}. It can be faster
+ * than the batched update if the measurement is much larger than the state since its cost only grows with
+ * {@code O(n^2 * m)} in the measurement size. The computation of the posterior error covariance is recorded as the
+ * covariance update stage.
+ * </p>
+ */
+public class InformationMeasurementUpdate implements MeasurementUpdate
+{
+   private final FilterMatrixOps filterMatrixOps;
+   private StageLatencies stageLatencies = StageLatencies.getDisabled();
+
+   private final DenseMatrix64F information = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Rinverse = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F HtransRinverse = new DenseMatrix64F(0, 0);
+
+   public InformationMeasurementUpdate(FilterMatrixOps filterMatrixOps)
+   {
+      this.filterMatrixOps = filterMatrixOps;
+   }
+
+   @Override
+   public boolean supportsDenseR()
+   {
+      return true;
+   }
+
+   @Override
+   public void setStageLatencies(StageLatencies stageLatencies)
+   {
+      this.stageLatencies = stageLatencies;
+   }
+
+   @Override
+   public boolean update(DenseMatrix64F xPosterior, DenseMatrix64F Pposterior, DenseMatrix64F K, DenseMatrix64F xPrior, DenseMatrix64F Pprior,
+                         DenseMatrix64F H, DenseMatrix64F residual, DenseMatrix64F R, boolean diagonalR, boolean computeGain)
+   {
+      int size = Pprior.getNumRows();
+      int measurements = H.getNumRows();
+
+      stageLatencies.start(EstimatorStage.COVARIANCE_UPDATE);
+      HtransRinverse.reshape(size, measurements);
+      if (diagonalR)
+      {
+         for (int i = 0; i < measurements; i++)
+         {
+            double inverseVariance = 1.0 / R.get(i);
+            for (int col = 0; col < size; col++)
+            {
+               HtransRinverse.unsafe_set(col, i, H.unsafe_get(i, col) * inverseVariance);
+            }
+         }
+      }
+      else
+      {
+         if (!filterMatrixOps.invertMatrix(Rinverse, R))
+         {
+            return false;
+         }
+         CommonOps.multTransA(H, Rinverse, HtransRinverse);
+      }
+
+      if (!filterMatrixOps.invertMatrix(information, Pprior))
+      {
+         return false;
+      }
+      CommonOps.multAdd(HtransRinverse, H, information);
+      if (!filterMatrixOps.invertMatrix(Pposterior, information))
+      {
+         return false;
+      }
+
+      stageLatencies.next(EstimatorStage.COVARIANCE_UPDATE, EstimatorStage.GAIN);
+      K.reshape(size, measurements);
+      CommonOps.mult(Pposterior, HtransRinverse, K);
+
+      stageLatencies.next(EstimatorStage.GAIN, EstimatorStage.STATE_UPDATE);
+      filterMatrixOps.updateState(xPosterior, K, residual, xPrior);
+
+      stageLatencies.stop(EstimatorStage.STATE_UPDATE);
+      return true;
+   }
+}
@@ -0,0 +1,32 @@
+package us.ihmc.ekf.filter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a correction of the filter that failed because a matrix could not be inverted.
+ */
+@Name("us.ihmc.ekf.InversionFailure")
+@Label("Estimator Inversion Failure")
+@Category({"IHMC", "State Estimator"})
+@Description("A correction of the estimator failed because a matrix was not invertible")
+@StackTrace(false)
+final class InversionFailureEvent extends Event
+{
+   @Label("Tick")
+   long tick;
+
+   @Label("State Size")
+   int stateSize;
+
+   @Label("Measurement Size")
+   int measurementSize;
+
+   @Label("Delayed")
+   @Description("Whether the failed correction was for a delayed measurement")
+   boolean delayed;
+}
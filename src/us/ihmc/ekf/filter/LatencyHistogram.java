@@ -0,0 +1,163 @@
+package us.ihmc.ekf.filter;
+
+import java.util.Arrays;
+
+/**
+ * Records a distribution of durations in nanoseconds without allocating, e.g. the latency of a stage of the estimator
+ * or the jitter of a periodic loop.
+ * <p>
+ * Like an HDR histogram the buckets have a constant relative width: values below {@code 2^subBucketBits} ns are
+ * counted exactly and larger values in buckets of a relative width of at most {@code 2^(1 - subBucketBits)}. This
+ * keeps the percentiles in the tail accurate with a small fixed number of buckets. The reported percentiles are the
+ * largest value that falls into the bucket so they are never optimistic. The maximum is tracked exactly.
+ * </p>
+ * <p>
+ * A histogram is recorded by a single thread. It can be read from another thread while recording but the result
+ * might then not include the latest values.
+ * </p>
+ */
+public class LatencyHistogram
+{
+   private static final int subBucketBits = 8;
+   private static final int subBucketCount = 1 << subBucketBits;
+   private static final int halfSubBucketCount = subBucketCount / 2;
+   // Values of 2^maximumBits ns (about 18 minutes) or more are counted in an additional last bucket.
+   private static final int maximumBits = 40;
+   private static final int numberOfBuckets = subBucketCount + (maximumBits - subBucketBits) * halfSubBucketCount + 1;
+
+   private final long[] counts = new long[numberOfBuckets];
+   private long count = 0;
+   private long sum = 0;
+   private long min = Long.MAX_VALUE;
+   private long max = 0;
+
+   /**
+    * Adds a value to the histogram. Negative values are counted as zero.
+    *
+    * @param nanos the duration in nanoseconds.
+    */
+   public void record(long nanos)
+   {
+      long value = Math.max(nanos, 0L);
+      counts[computeIndex(value)]++;
+      count++;
+      sum += value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+   }
+
+   /**
+    * Adds all values of the other histogram to this one.
+    */
+   public void add(LatencyHistogram other)
+   {
+      for (int i = 0; i < numberOfBuckets; i++)
+      {
+         counts[i] += other.counts[i];
+      }
+      count += other.count;
+      sum += other.sum;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+   }
+
+   public void reset()
+   {
+      Arrays.fill(counts, 0L);
+      count = 0;
+      sum = 0;
+      min = Long.MAX_VALUE;
+      max = 0;
+   }
+
+   public long getCount()
+   {
+      return count;
+   }
+
+   /**
+    * @return the smallest recorded value or zero if the histogram is empty.
+    */
+   public long getMin()
+   {
+      return count > 0 ? min : 0L;
+   }
+
+   public long getMax()
+   {
+      return max;
+   }
+
+   public double getMean()
+   {
+      return count > 0 ? (double) sum / count : 0.0;
+   }
+
+   /**
+    * @param percentile the percentile between 0 and 100, e.g. 99.9.
+    * @return the value that is not exceeded by the given percentage of the recorded values or zero if the histogram
+    *         is empty.
+    */
+   public long getValueAtPercentile(double percentile)
+   {
+      if (count == 0)
+      {
+         return 0L;
+      }
+
+      long rank = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+      long cumulativeCount = 0;
+      for (int i = 0; i < numberOfBuckets; i++)
+      {
+         cumulativeCount += counts[i];
+         if (cumulativeCount >= rank)
+         {
+            return Math.min(computeHighestValue(i), max);
+         }
+      }
+      return max;
+   }
+
+   /**
+    * @return a summary of the distribution in microseconds.
+    */
+   public String getSummary()
+   {
+      return String.format("n %d, mean %.1f, p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f us", count, getMean() * 1.0e-3, getValueAtPercentile(50.0) * 1.0e-3,
+                           getValueAtPercentile(99.0) * 1.0e-3, getValueAtPercentile(99.9) * 1.0e-3, max * 1.0e-3);
+   }
+
+   private static int computeIndex(long value)
+   {
+      if (value < subBucketCount)
+      {
+         return (int) value;
+      }
+
+      int mostSignificantBit = 63 - Long.numberOfLeadingZeros(value);
+      if (mostSignificantBit >= maximumBits)
+      {
+         return numberOfBuckets - 1;
+      }
+      int shift = mostSignificantBit - subBucketBits + 1;
+      int subBucket = (int) (value >>> shift);
+      return subBucketCount + (shift - 1) * halfSubBucketCount + subBucket - halfSubBucketCount;
+   }
+
+   private static long computeHighestValue(int index)
+   {
+      if (index < subBucketCount)
+      {
+         return index;
+      }
+      if (index == numberOfBuckets - 1)
+      {
+         return Long.MAX_VALUE;
+      }
+
+      int offset = index - subBucketCount;
+      int shift = offset / halfSubBucketCount + 1;
+      long subBucket = offset % halfSubBucketCount + halfSubBucketCount;
+      return ((subBucket + 1) << shift) - 1;
+   }
+}
@@ -0,0 +1,25 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * The matrix products used by the {@link FilterMatrixOps}. This allows to exchange the implementation of the
+ * products that dominate the computation time of the filter for large states.
+ * <p>
+ * Implementations reshape the result and must not be called with a result matrix that is also an input.
+ * </p>
+ */
+public interface MatrixMultiplier
+{
+   /**
+    * Sets the provided matrix to</br>
+    * result = A * B
+    */
+   public void mult(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result);
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = A * B'
+    */
+   public void multTransB(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result);
+}
@@ -0,0 +1,191 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolverFactory;
+import org.ejml.interfaces.linsol.LinearSolver;
+import org.ejml.ops.CommonOps;
+
+import us.ihmc.ekf.filter.sensor.ComposedSensor;
+import us.ihmc.ekf.filter.sensor.Sensor;
+import us.ihmc.yoVariables.parameters.BooleanParameter;
+import us.ihmc.yoVariables.parameters.DoubleParameter;
+import us.ihmc.yoVariables.providers.BooleanProvider;
+import us.ihmc.yoVariables.providers.DoubleProvider;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoInteger;
+
+/**
+ * Rejects outliers from the measurement of the filter before the kalman gain is computed.
+ * <p>
+ * For every active sensor the squared Mahalanobis distance {@code d = r' * inverse(S) * r} of its residual {@code r}
+ * is computed where {@code S = H * P * H' + R} is the block of the innovation covariance that belongs to the sensor.
+ * If the measurement is consistent with the filter {@code d} is chi-square distributed with the measurement size as
+ * degrees of freedom. Sensors that exceed the threshold are removed from the measurement of that tick.
+ * </p>
+ * <p>
+ * The threshold is computed with the Wilson-Hilferty approximation of the chi-square quantile for a gate that is
+ * given in standard deviations of a normal distribution: a value of three rejects about one in a thousand
+ * consistent measurements.
+ * </p>
+ */
+public class MeasurementGate
+{
+   private final BooleanProvider enableGating;
+   private final DoubleProvider gateSigma;
+
+   private final YoInteger[] rejectedMeasurements;
+   private final boolean[] sensorsToRemove;
+   private int rejectedSensors = 0;
+
+   private final LinearSolver<DenseMatrix64F> solver = LinearSolverFactory.symmPosDef(0);
+
+   private final DenseMatrix64F sensorJacobian = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F sensorResidual = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F sensorR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F PHtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F innovationCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F weightedResidual = new DenseMatrix64F(0, 0);
+
+   public MeasurementGate(ComposedSensor sensor, YoVariableRegistry registry)
+   {
+      enableGating = new BooleanParameter("enableOutlierGating", registry, false);
+      gateSigma = new DoubleParameter("outlierGateSigma", registry, 5.0);
+
+      rejectedMeasurements = new YoInteger[sensor.getNumberOfSensors()];
+      for (int i = 0; i < sensor.getNumberOfSensors(); i++)
+      {
+         rejectedMeasurements[i] = new YoInteger(sensor.getSensor(i).getName() + "RejectedMeasurements", registry);
+      }
+      sensorsToRemove = new boolean[sensor.getNumberOfSensors()];
+   }
+
+   public boolean isEnabled()
+   {
+      return enableGating.getValue();
+   }
+
+   /**
+    * Tests the measurement of all active sensors and removes the outliers from the measurement. See
+    * {@link ComposedSensor#removeSensors(boolean[], DenseMatrix64F, DenseMatrix64F)}.
+    *
+    * @param sensor the sensor of the filter with the active sensors of this tick.
+    * @param P the predicted error covariance.
+    * @param H the full measurement jacobian (modified).
+    * @param residual the measurement residual (modified).
+    * @return the size of the measurement after gating.
+    */
+   public int gate(ComposedSensor sensor, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F residual)
+   {
+      rejectedSensors = 0;
+      double sigma = gateSigma.getValue();
+
+      for (int i = 0; i < sensor.getNumberOfSensors(); i++)
+      {
+         sensorsToRemove[i] = false;
+         if (!sensor.isSensorActive(i))
+         {
+            continue;
+         }
+
+         Sensor subSensor = sensor.getSensor(i);
+         int startIndex = sensor.getMeasurementStartIndex(i);
+         int size = subSensor.getMeasurementSize();
+
+         double distance = computeSquaredMahalanobisDistance(subSensor, startIndex, size, P, H, residual);
+         double threshold = computeChiSquareThreshold(size, sigma);
+         if (!(distance <= threshold))
+         {
+            sensorsToRemove[i] = true;
+            rejectedMeasurements[i].increment();
+            rejectedSensors++;
+
+            MeasurementRejectedEvent event = new MeasurementRejectedEvent();
+            if (event.shouldCommit())
+            {
+               event.sensor = subSensor.getName();
+               event.measurementSize = size;
+               event.distance = distance;
+               event.threshold = threshold;
+               event.commit();
+            }
+         }
+      }
+
+      if (rejectedSensors == 0)
+      {
+         return sensor.getMeasurementSize();
+      }
+      return sensor.removeSensors(sensorsToRemove, H, residual);
+   }
+
+   /**
+    * @return the number of sensors that were removed from the measurement by the last call to
+    *         {@link #gate(ComposedSensor, DenseMatrix64F, DenseMatrix64F, DenseMatrix64F)}.
+    */
+   public int getRejectedSensors()
+   {
+      return rejectedSensors;
+   }
+
+   /**
+    * Computes {@code r' * inverse(H * P * H' + R) * r} for the rows of a single sensor. Returns {@code NaN} if the
+    * innovation covariance is not positive definite.
+    */
+   private double computeSquaredMahalanobisDistance(Sensor subSensor, int startIndex, int size, DenseMatrix64F P, DenseMatrix64F H,
+                                                    DenseMatrix64F residual)
+   {
+      sensorJacobian.reshape(size, H.getNumCols());
+      CommonOps.extract(H, startIndex, startIndex + size, 0, H.getNumCols(), sensorJacobian, 0, 0);
+      sensorResidual.reshape(size, 1);
+      CommonOps.extract(residual, startIndex, startIndex + size, 0, 1, sensorResidual, 0, 0);
+
+      PHtrans.reshape(P.getNumRows(), size);
+      CommonOps.multTransB(P, sensorJacobian, PHtrans);
+      innovationCovariance.reshape(size, size);
+      CommonOps.mult(sensorJacobian, PHtrans, innovationCovariance);
+
+      if (subSensor.isRMatrixDiagonal())
+      {
+         sensorR.reshape(size, 1);
+         subSensor.getRMatrixDiagonal(sensorR, 0);
+         for (int i = 0; i < size; i++)
+         {
+            innovationCovariance.add(i, i, sensorR.get(i));
+         }
+      }
+      else
+      {
+         subSensor.getRMatrix(sensorR);
+         CommonOps.add(innovationCovariance, sensorR, innovationCovariance);
+      }
+
+      if (!solver.setA(innovationCovariance))
+      {
+         return Double.NaN;
+      }
+      weightedResidual.reshape(size, 1);
+      solver.solve(sensorResidual, weightedResidual);
+
+      double distance = 0.0;
+      for (int i = 0; i < size; i++)
+      {
+         distance += sensorResidual.get(i) * weightedResidual.get(i);
+      }
+      return distance;
+   }
+
+   /**
+    * Approximates the quantile of the chi-square distribution with the given degrees of freedom that corresponds to
+    * the quantile of the standard normal distribution at {@code sigma} (Wilson-Hilferty).
+    *
+    * @param degreesOfFreedom the degrees of freedom of the distribution (the measurement size).
+    * @param sigma the gate in standard deviations.
+    * @return the gate threshold for the squared Mahalanobis distance.
+    */
+   public static double computeChiSquareThreshold(int degreesOfFreedom, double sigma)
+   {
+      double a = 2.0 / (9.0 * degreesOfFreedom);
+      double cubeRoot = 1.0 - a + sigma * Math.sqrt(a);
+      return degreesOfFreedom * cubeRoot * cubeRoot * cubeRoot;
+   }
+}
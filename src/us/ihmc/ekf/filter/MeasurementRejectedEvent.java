@@ -0,0 +1,31 @@
+package us.ihmc.ekf.filter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a sensor measurement that was rejected as an outlier. See {@link MeasurementGate}.
+ */
+@Name("us.ihmc.ekf.MeasurementRejected")
+@Label("Estimator Measurement Rejected")
+@Category({"IHMC", "State Estimator"})
+@Description("A sensor measurement was removed from the correction as an outlier")
+@StackTrace(false)
+final class MeasurementRejectedEvent extends Event
+{
+   @Label("Sensor")
+   String sensor;
+
+   @Label("Measurement Size")
+   int measurementSize;
+
+   @Label("Squared Mahalanobis Distance")
+   double distance;
+
+   @Label("Threshold")
+   double threshold;
+}
@@ -0,0 +1,46 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * Computes the corrected state and error covariance of the filter from a measurement. The implementations are
+ * equivalent for a linear measurement model but have a different computational cost depending on the size of the
+ * state {@code n}, the size of the measurement {@code m}, and the sparsity of the measurement jacobian (see
+ * {@link UpdateStrategyType}).
+ * <p>
+ * All result matrices are reshaped by the implementations and must not be an input of the same operation.
+ * </p>
+ */
+public interface MeasurementUpdate
+{
+   /**
+    * Whether this implementation can handle a measurement noise covariance that is not diagonal. If not the
+    * {@link StateEstimator} uses the batched update for such measurements.
+    */
+   public boolean supportsDenseR();
+
+   /**
+    * Sets the latencies the gain, state update, and covariance update stages of this implementation are recorded to.
+    * Stages that this implementation does not compute separately are recorded as part of another stage. By default
+    * nothing is recorded (see {@link StageLatencies#getDisabled()}).
+    */
+   public void setStageLatencies(StageLatencies stageLatencies);
+
+   /**
+    * Corrects the state and error covariance with the provided measurement.
+    *
+    * @param xPosterior is the corrected state (modified)
+    * @param Pposterior is the corrected error covariance (modified)
+    * @param K is the kalman gain of the correction (modified). Only computed if {@code computeGain} is set.
+    * @param xPrior is the predicted state
+    * @param Pprior is the predicted error covariance
+    * @param H is the linearized measurement model
+    * @param residual is the measurement residual
+    * @param R is the measurement noise covariance or its diagonal as a column vector
+    * @param diagonalR whether {@code R} is the diagonal of the measurement noise covariance
+    * @param computeGain whether the kalman gain is needed by the caller
+    * @return whether the correction succeeded. If not the result matrices are not valid.
+    */
+   public boolean update(DenseMatrix64F xPosterior, DenseMatrix64F Pposterior, DenseMatrix64F K, DenseMatrix64F xPrior, DenseMatrix64F Pprior,
+                         DenseMatrix64F H, DenseMatrix64F residual, DenseMatrix64F R, boolean diagonalR, boolean computeGain);
+}
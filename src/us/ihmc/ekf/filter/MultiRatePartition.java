@@ -0,0 +1,246 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+/**
+ * Splits the filter state into a fast partition at the start of the state vector (the robot state) and a slow
+ * partition at the end (the sensor states such as IMU biases). On fast ticks only the fast states are corrected. If
+ * the slow states are not observed in a fast tick only the covariance of the fast states is predicted and corrected
+ * which costs {@code O(nf^3)} for a fast partition of size {@code nf}.
+ * <p>
+ * This relies on the block diagonal structure of {@code F} and {@code Q} of a
+ * {@link us.ihmc.ekf.filter.state.ComposedState}: the fast and slow states do not influence each other in the
+ * prediction. On fast ticks the slow states are consider states (see {@link ConsiderMeasurementUpdate}): their
+ * uncertainty is taken into account when correcting the fast states but they are not corrected themselves.
+ * </p>
+ * <p>
+ * If the measurement does not observe the slow states the gain of the fast states only depends on the fast
+ * covariance. The cross covariance is then propagated with the accumulated fast transition {@code (I - Kf * Hf) * Ff}
+ * and the slow covariance with the accumulated slow prediction when they are needed. If the measurement observes the
+ * slow states, e.g. the bias of an IMU, the cross and slow covariance are brought up to date first and the consider
+ * update is done with the complete covariance. This costs {@code O(n^2 * m)} for a measurement of size {@code m}.
+ * </p>
+ * <p>
+ * In both cases the fast covariance and the cross covariance are the true covariances of the estimate. Compared to
+ * the full filter the slow states are only corrected on full ticks so their estimate deviates from the full filter
+ * and their covariance is larger. If the slow states are observed on fast ticks this also applies to the fast states.
+ * </p>
+ */
+public class MultiRatePartition
+{
+   private final FilterMatrixOps filterMatrixOps;
+   private final int fastSize;
+   /** Used on fast ticks in which the measurement observes the slow states. */
+   private final ConsiderMeasurementUpdate considerUpdate;
+
+   /** The product of the fast transitions {@code (I - Kf * Hf) * Ff} since the last full tick. */
+   private final DenseMatrix64F fastTransition = new DenseMatrix64F(0, 0);
+   /** The product of the slow state transitions {@code Fs} since the last full tick. */
+   private final DenseMatrix64F slowTransition = new DenseMatrix64F(0, 0);
+   /** The process noise of the slow states accumulated since the last full tick. */
+   private final DenseMatrix64F slowNoise = new DenseMatrix64F(0, 0);
+   /** Whether fast ticks were performed since the last full tick. */
+   private boolean stale = false;
+
+   private final DenseMatrix64F Fff = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Fss = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Qff = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Qss = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Pff = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Pfs = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Pss = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F PffUpdated = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Hf = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Kf = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F IKH = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F tempTransition = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F tempCross = new DenseMatrix64F(0, 0);
+
+   /**
+    * Creates a new partition of the state.
+    *
+    * @param filterMatrixOps the matrix operations used for the fast partition.
+    * @param fastSize the number of states in the fast partition. All following states are slow.
+    */
+   public MultiRatePartition(FilterMatrixOps filterMatrixOps, int fastSize)
+   {
+      this.filterMatrixOps = filterMatrixOps;
+      this.fastSize = fastSize;
+      // Records no stage latencies: the estimator times the whole fast correction as one stage.
+      considerUpdate = new ConsiderMeasurementUpdate(filterMatrixOps, fastSize);
+   }
+
+   /**
+    * Predicts the covariance of the fast states only:</br>
+    * Pprior(ff) = Ff * Pposterior(ff) * Ff' + Qff</br>
+    * The other blocks of {@code Pprior} are copied from {@code Pposterior} and are not up to date until the next
+    * call to {@link #synchronize(DenseMatrix64F)}.
+    */
+   public void predictFast(DenseMatrix64F Pprior, DenseMatrix64F F, DenseMatrix64F Pposterior, DenseMatrix64F Q)
+   {
+      int size = F.getNumRows();
+      int slowSize = size - fastSize;
+      resetTransitionsIfSynchronized(slowSize);
+
+      extract(F, 0, fastSize, 0, fastSize, Fff);
+      extract(Q, 0, fastSize, 0, fastSize, Qff);
+      extract(Pposterior, 0, fastSize, 0, fastSize, Pff);
+      filterMatrixOps.predictErrorCovariance(PffUpdated, Fff, Pff, Qff);
+      Pprior.set(Pposterior);
+      CommonOps.insert(PffUpdated, Pprior, 0, 0);
+
+      // Accumulate the transitions of both partitions.
+      tempTransition.reshape(fastSize, fastSize);
+      CommonOps.mult(Fff, fastTransition, tempTransition);
+      fastTransition.set(tempTransition);
+
+      extract(F, fastSize, size, fastSize, size, Fss);
+      extract(Q, fastSize, size, fastSize, size, Qss);
+      tempTransition.reshape(slowSize, slowSize);
+      CommonOps.mult(Fss, slowTransition, tempTransition);
+      slowTransition.set(tempTransition);
+      filterMatrixOps.computeABAtransPlusC(tempTransition, Fss, slowNoise, Qss);
+      slowNoise.set(tempTransition);
+   }
+
+   /**
+    * Corrects the fast states. The gain of the slow states is zero. If the measurement does not observe the slow
+    * states only the fast covariance is corrected and the other blocks of {@code Pposterior} are copied from
+    * {@code Pprior}. Otherwise {@code Pprior} is brought up to date (see {@link #synchronize(DenseMatrix64F)}) and
+    * the fast and cross covariance are corrected.
+    *
+    * @return whether the correction succeeded.
+    */
+   public boolean correctFast(DenseMatrix64F xPosterior, DenseMatrix64F Pposterior, DenseMatrix64F K, DenseMatrix64F xPrior, DenseMatrix64F Pprior,
+                              DenseMatrix64F H, DenseMatrix64F residual, DenseMatrix64F R, boolean diagonalR)
+   {
+      int size = Pprior.getNumRows();
+      int measurements = H.getNumRows();
+
+      if (observesSlowStates(H))
+      {
+         synchronize(Pprior);
+         return considerUpdate.update(xPosterior, Pposterior, K, xPrior, Pprior, H, residual, R, diagonalR, true);
+      }
+
+      extract(H, 0, measurements, 0, fastSize, Hf);
+      extract(Pprior, 0, fastSize, 0, fastSize, Pff);
+      if (diagonalR)
+      {
+         if (!filterMatrixOps.computeKalmanGainDiagonalR(Kf, Pff, Hf, R))
+         {
+            return false;
+         }
+         filterMatrixOps.updateErrorCovarianceDiagonalR(PffUpdated, Kf, Hf, R, Pff);
+      }
+      else
+      {
+         if (!filterMatrixOps.computeKalmanGain(Kf, Pff, Hf, R))
+         {
+            return false;
+         }
+         filterMatrixOps.updateErrorCovariance(PffUpdated, Kf, Hf, R, Pff);
+      }
+
+      K.reshape(size, measurements);
+      CommonOps.fill(K, 0.0);
+      CommonOps.insert(Kf, K, 0, 0);
+      filterMatrixOps.updateState(xPosterior, K, residual, xPrior);
+
+      Pposterior.set(Pprior);
+      CommonOps.insert(PffUpdated, Pposterior, 0, 0);
+
+      // Accumulate the correction in the fast transition: (I - Kf * Hf) * transition
+      resetTransitionsIfSynchronized(size - fastSize);
+      IKH.reshape(fastSize, fastSize);
+      CommonOps.mult(Kf, Hf, IKH);
+      CommonOps.scale(-1.0, IKH);
+      for (int i = 0; i < fastSize; i++)
+      {
+         IKH.add(i, i, 1.0);
+      }
+      tempTransition.reshape(fastSize, fastSize);
+      CommonOps.mult(IKH, fastTransition, tempTransition);
+      fastTransition.set(tempTransition);
+      return true;
+   }
+
+   /**
+    * Brings the cross covariance and the slow covariance of the provided matrix up to date after fast ticks:</br>
+    * Pfs = fastTransition * Pfs * slowTransition'</br>
+    * Pss = slowTransition * Pss * slowTransition' + slowNoise</br>
+    * Must be called before the next full tick. Does nothing if no fast ticks were performed.
+    *
+    * @param P the error covariance (modified).
+    */
+   public void synchronize(DenseMatrix64F P)
+   {
+      if (!stale)
+      {
+         return;
+      }
+
+      int size = P.getNumRows();
+      int slowSize = size - fastSize;
+
+      extract(P, 0, fastSize, fastSize, size, Pfs);
+      tempCross.reshape(fastSize, slowSize);
+      CommonOps.mult(fastTransition, Pfs, tempCross);
+      Pfs.reshape(fastSize, slowSize);
+      CommonOps.multTransB(tempCross, slowTransition, Pfs);
+      CommonOps.insert(Pfs, P, 0, fastSize);
+      tempCross.reshape(slowSize, fastSize);
+      CommonOps.transpose(Pfs, tempCross);
+      CommonOps.insert(tempCross, P, fastSize, 0);
+
+      extract(P, fastSize, size, fastSize, size, Pss);
+      filterMatrixOps.computeABAtransPlusC(tempTransition, slowTransition, Pss, slowNoise);
+      CommonOps.insert(tempTransition, P, fastSize, fastSize);
+
+      stale = false;
+   }
+
+   /**
+    * Starts accumulating the transitions if the covariance is up to date, e.g. at the first fast tick after a full
+    * tick or if the prior was synchronized before the correction.
+    */
+   private void resetTransitionsIfSynchronized(int slowSize)
+   {
+      if (!stale)
+      {
+         filterMatrixOps.setIdentity(fastTransition, fastSize);
+         filterMatrixOps.setIdentity(slowTransition, slowSize);
+         slowNoise.reshape(slowSize, slowSize);
+         CommonOps.fill(slowNoise, 0.0);
+         stale = true;
+      }
+   }
+
+   private boolean observesSlowStates(DenseMatrix64F H)
+   {
+      int cols = H.getNumCols();
+      for (int row = 0; row < H.getNumRows(); row++)
+      {
+         for (int col = fastSize; col < cols; col++)
+         {
+            if (H.unsafe_get(row, col) != 0.0)
+            {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   public int getFastSize()
+   {
+      return fastSize;
+   }
+
+   private static void extract(DenseMatrix64F source, int rowStart, int rowEnd, int colStart, int colEnd, DenseMatrix64F destination)
+   {
+      destination.reshape(rowEnd - rowStart, colEnd - colStart);
+      CommonOps.extract(source, rowStart, rowEnd, colStart, colEnd, destination, 0, 0);
+   }
+}
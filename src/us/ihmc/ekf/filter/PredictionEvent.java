@@ -0,0 +1,29 @@
+package us.ihmc.ekf.filter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the prediction of a filter tick. See {@link StateEstimator#predict()}.
+ */
+@Name("us.ihmc.ekf.Prediction")
+@Label("Estimator Prediction")
+@Category({"IHMC", "State Estimator"})
+@Description("Prediction of the state and error covariance of the estimator")
+@StackTrace(false)
+final class PredictionEvent extends Event
+{
+   @Label("Tick")
+   long tick;
+
+   @Label("State Size")
+   int stateSize;
+
+   @Label("Covariance Trace")
+   @Description("Trace of the predicted error covariance")
+   double covarianceTrace;
+}
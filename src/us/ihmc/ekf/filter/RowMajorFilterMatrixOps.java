@@ -0,0 +1,404 @@
+package us.ihmc.ekf.filter;
+
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * A {@link FilterMatrixOps} implementation that works directly on the row major {@code double[]} data of the
+ * matrices. It avoids the generic EJML code paths (dimension checks, solver objects, extra identity matrices) and
+ * fuses the steps of the filter operations where possible, e.g. {@code identity - K * H} is formed in a single pass.
+ * The inversion is a Gauss-Jordan elimination with partial pivoting.
+ */
+public class RowMajorFilterMatrixOps implements FilterMatrixOps
+{
+   private final DenseMatrix64F BAtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F ABAtransPlusC = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F inverse = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F toInvert = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F PHtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F HPHtransPlusR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F IKH = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F KR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F KRKtrans = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F KSminusPHtrans = new DenseMatrix64F(0, 0);
+
+   @Override
+   public void setIdentity(DenseMatrix64F matrix, int size)
+   {
+      matrix.reshape(size, size);
+      Arrays.fill(matrix.data, 0, size * size, 0.0);
+      for (int i = 0; i < size; i++)
+      {
+         matrix.data[i * size + i] = 1.0;
+      }
+   }
+
+   @Override
+   public void computeABAtrans(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B)
+   {
+      multTransB(B, A, BAtrans);
+      mult(A, BAtrans, result);
+   }
+
+   @Override
+   public void computeABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
+   {
+      computeABAtrans(result, A, B);
+      addEquals(result, C);
+   }
+
+   @Override
+   public boolean invertMatrix(DenseMatrix64F result, DenseMatrix64F A)
+   {
+      int size = A.getNumRows();
+      if (size != A.getNumCols())
+      {
+         throw new RuntimeException("Can only invert square matrices.");
+      }
+
+      toInvert.set(A);
+      setIdentity(result, size);
+      double[] a = toInvert.data;
+      double[] inv = result.data;
+
+      for (int col = 0; col < size; col++)
+      {
+         // Find the pivot row.
+         int pivotRow = col;
+         double pivotMagnitude = Math.abs(a[col * size + col]);
+         for (int row = col + 1; row < size; row++)
+         {
+            double magnitude = Math.abs(a[row * size + col]);
+            if (magnitude > pivotMagnitude)
+            {
+               pivotMagnitude = magnitude;
+               pivotRow = row;
+            }
+         }
+
+         if (!(pivotMagnitude > 0.0) || Double.isInfinite(pivotMagnitude))
+         {
+            Arrays.fill(inv, 0, size * size, 0.0);
+            return false;
+         }
+
+         if (pivotRow != col)
+         {
+            swapRows(a, size, pivotRow, col);
+            swapRows(inv, size, pivotRow, col);
+         }
+
+         // Normalize the pivot row.
+         double scale = 1.0 / a[col * size + col];
+         int pivotStart = col * size;
+         for (int j = 0; j < size; j++)
+         {
+            a[pivotStart + j] *= scale;
+            inv[pivotStart + j] *= scale;
+         }
+
+         // Eliminate the column from all other rows.
+         for (int row = 0; row < size; row++)
+         {
+            if (row == col)
+            {
+               continue;
+            }
+            int rowStart = row * size;
+            double factor = a[rowStart + col];
+            if (factor == 0.0)
+            {
+               continue;
+            }
+            for (int j = 0; j < size; j++)
+            {
+               a[rowStart + j] -= factor * a[pivotStart + j];
+               inv[rowStart + j] -= factor * inv[pivotStart + j];
+            }
+         }
+      }
+
+      return true;
+   }
+
+   @Override
+   public boolean computeInverseOfABAtransPlusC(DenseMatrix64F result, DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F C)
+   {
+      computeABAtransPlusC(ABAtransPlusC, A, B, C);
+      return invertMatrix(result, ABAtransPlusC);
+   }
+
+   @Override
+   public void predictErrorCovariance(DenseMatrix64F result, DenseMatrix64F F, DenseMatrix64F Pposterior, DenseMatrix64F Q)
+   {
+      computeABAtransPlusC(result, F, Pposterior, Q);
+   }
+
+   @Override
+   public boolean computeKalmanGain(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F R)
+   {
+      multTransB(P, H, PHtrans);
+      mult(H, PHtrans, HPHtransPlusR);
+      addEquals(HPHtransPlusR, R);
+      return computeGain(result, P.getNumRows(), H.getNumRows());
+   }
+
+   @Override
+   public boolean computeKalmanGainDiagonalR(DenseMatrix64F result, DenseMatrix64F P, DenseMatrix64F H, DenseMatrix64F Rdiagonal)
+   {
+      multTransB(P, H, PHtrans);
+      mult(H, PHtrans, HPHtransPlusR);
+      int measurements = H.getNumRows();
+      for (int i = 0; i < measurements; i++)
+      {
+         HPHtransPlusR.data[i * measurements + i] += Rdiagonal.data[i];
+      }
+      return computeGain(result, P.getNumRows(), measurements);
+   }
+
+   /**
+    * Computes the kalman gain from the {@code P * H'} and {@code H * P * H' + R} temporary matrices.
+    */
+   private boolean computeGain(DenseMatrix64F result, int stateSize, int measurements)
+   {
+      if (!invertMatrix(inverse, HPHtransPlusR))
+      {
+         result.reshape(stateSize, measurements);
+         Arrays.fill(result.data, 0, stateSize * measurements, 0.0);
+         return false;
+      }
+
+      mult(PHtrans, inverse, result);
+      return true;
+   }
+
+   @Override
+   public void updateState(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F residual, DenseMatrix64F xPrior)
+   {
+      int size = xPrior.getNumRows();
+      int measurements = residual.getNumRows();
+      result.reshape(size, 1);
+
+      double[] k = K.data;
+      double[] r = residual.data;
+      double[] x = xPrior.data;
+      double[] res = result.data;
+      for (int i = 0; i < size; i++)
+      {
+         double sum = x[i];
+         int kRow = i * measurements;
+         for (int j = 0; j < measurements; j++)
+         {
+            sum += k[kRow + j] * r[j];
+         }
+         res[i] = sum;
+      }
+   }
+
+   @Override
+   public void updateErrorCovariance(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior)
+   {
+      computeABAtrans(KRKtrans, K, R);
+      computeIdentityMinusKH(K, H);
+      computeABAtransPlusC(result, IKH, pPrior, KRKtrans);
+   }
+
+   @Override
+   public void updateErrorCovarianceDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal, DenseMatrix64F pPrior)
+   {
+      int rows = K.getNumRows();
+      int cols = K.getNumCols();
+      KR.reshape(rows, cols);
+      for (int row = 0; row < rows; row++)
+      {
+         int start = row * cols;
+         for (int col = 0; col < cols; col++)
+         {
+            KR.data[start + col] = K.data[start + col] * Rdiagonal.data[col];
+         }
+      }
+      multTransB(KR, K, KRKtrans);
+
+      computeIdentityMinusKH(K, H);
+      computeABAtransPlusC(result, IKH, pPrior, KRKtrans);
+   }
+
+   @Override
+   public void updateErrorCovarianceExpanded(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F pPrior)
+   {
+      multTransB(pPrior, H, PHtrans);
+      mult(H, PHtrans, HPHtransPlusR);
+      addEquals(HPHtransPlusR, R);
+      computeExpandedForm(result, K, pPrior);
+   }
+
+   @Override
+   public void updateErrorCovarianceExpandedDiagonalR(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F H, DenseMatrix64F Rdiagonal,
+                                                      DenseMatrix64F pPrior)
+   {
+      multTransB(pPrior, H, PHtrans);
+      mult(H, PHtrans, HPHtransPlusR);
+      int measurements = H.getNumRows();
+      for (int i = 0; i < measurements; i++)
+      {
+         HPHtransPlusR.data[i * measurements + i] += Rdiagonal.data[i];
+      }
+      computeExpandedForm(result, K, pPrior);
+   }
+
+   /**
+    * Computes {@code pPrior + (K * S - A) * K' - K * A'} from the {@code A = P * H'} and {@code S = H * P * H' + R}
+    * temporary matrices. The two products and the sum are fused into a single pass over the result.
+    */
+   private void computeExpandedForm(DenseMatrix64F result, DenseMatrix64F K, DenseMatrix64F pPrior)
+   {
+      mult(K, HPHtransPlusR, KSminusPHtrans);
+      int size = K.getNumRows();
+      int measurements = K.getNumCols();
+      double[] b = KSminusPHtrans.data;
+      double[] a = PHtrans.data;
+      double[] k = K.data;
+      for (int i = 0; i < size * measurements; i++)
+      {
+         b[i] -= a[i];
+      }
+
+      result.reshape(size, size);
+      double[] p = pPrior.data;
+      double[] res = result.data;
+      for (int i = 0; i < size; i++)
+      {
+         int iRow = i * measurements;
+         for (int j = 0; j < size; j++)
+         {
+            int jRow = j * measurements;
+            double sum = p[i * size + j];
+            for (int l = 0; l < measurements; l++)
+            {
+               sum += b[iRow + l] * k[jRow + l] - k[iRow + l] * a[jRow + l];
+            }
+            res[i * size + j] = sum;
+         }
+      }
+   }
+
+   /**
+    * Packs {@code identity - K * H} into the {@link #IKH} temporary matrix.
+    */
+   private void computeIdentityMinusKH(DenseMatrix64F K, DenseMatrix64F H)
+   {
+      mult(K, H, IKH);
+      int size = IKH.getNumRows();
+      double[] ikh = IKH.data;
+      for (int i = 0; i < size * size; i++)
+      {
+         ikh[i] = -ikh[i];
+      }
+      for (int i = 0; i < size; i++)
+      {
+         ikh[i * size + i] += 1.0;
+      }
+   }
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = A * B
+    */
+   private static void mult(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      int rows = A.getNumRows();
+      int inner = A.getNumCols();
+      int cols = B.getNumCols();
+      if (inner != B.getNumRows())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+      result.reshape(rows, cols);
+
+      double[] a = A.data;
+      double[] b = B.data;
+      double[] c = result.data;
+      Arrays.fill(c, 0, rows * cols, 0.0);
+
+      for (int i = 0; i < rows; i++)
+      {
+         int cRow = i * cols;
+         int aRow = i * inner;
+         for (int k = 0; k < inner; k++)
+         {
+            double aik = a[aRow + k];
+            int bRow = k * cols;
+            for (int j = 0; j < cols; j++)
+            {
+               c[cRow + j] += aik * b[bRow + j];
+            }
+         }
+      }
+   }
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = A * B'
+    */
+   private static void multTransB(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      int rows = A.getNumRows();
+      int inner = A.getNumCols();
+      int cols = B.getNumRows();
+      if (inner != B.getNumCols())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+      result.reshape(rows, cols);
+
+      double[] a = A.data;
+      double[] b = B.data;
+      double[] c = result.data;
+
+      for (int i = 0; i < rows; i++)
+      {
+         int aRow = i * inner;
+         for (int j = 0; j < cols; j++)
+         {
+            int bRow = j * inner;
+            double sum = 0.0;
+            for (int k = 0; k < inner; k++)
+            {
+               sum += a[aRow + k] * b[bRow + k];
+            }
+            c[i * cols + j] = sum;
+         }
+      }
+   }
+
+   /**
+    * Sets the provided matrix to</br>
+    * result = result + A
+    */
+   private static void addEquals(DenseMatrix64F result, DenseMatrix64F A)
+   {
+      if (result.getNumRows() != A.getNumRows() || result.getNumCols() != A.getNumCols())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+
+      int length = result.getNumElements();
+      for (int i = 0; i < length; i++)
+      {
+         result.data[i] += A.data[i];
+      }
+   }
+
+   private static void swapRows(double[] data, int cols, int row1, int row2)
+   {
+      int start1 = row1 * cols;
+      int start2 = row2 * cols;
+      for (int j = 0; j < cols; j++)
+      {
+         double temp = data[start1 + j];
+         data[start1 + j] = data[start2 + j];
+         data[start2 + j] = temp;
+      }
+   }
+}
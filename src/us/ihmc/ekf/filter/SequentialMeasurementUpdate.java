@@ -0,0 +1,154 @@
+package us.ihmc.ekf.filter;
+
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * Processes the measurement one scalar at a time. This requires uncorrelated measurement noise (a diagonal
+ * {@code R}) and is equivalent to the batched update for a linear measurement model.
+ * <p>
+ * Every scalar measurement costs {@code O(n * k + n^2)} where {@code k} is the number of non-zero entries in its row
+ * of the measurement jacobian. No matrix is inverted and the error covariance is updated with the rank one update
+ * {@code P = P - a * a' / s} where {@code a = P * h'} and {@code s = h * P * h' + r}. For a small measurement this is
+ * a lot cheaper than the {@code O(n^3)} Joseph form of the batched update.
+ * </p>
+ * <p>
+ * The kalman gain is not formed while processing the measurement. If it is needed it is computed after the update
+ * as {@code K = P * H' * inverse(R)} which is the gain of the equivalent batched update. The processing of the
+ * measurements is recorded as the covariance update stage and computing the gain afterwards as the gain stage.
+ * </p>
+ */
+public class SequentialMeasurementUpdate implements MeasurementUpdate
+{
+   private double[] PhTrans = new double[0];
+   private double[] stateChange = new double[0];
+   private int[] nonZeroIndices = new int[0];
+   private StageLatencies stageLatencies = StageLatencies.getDisabled();
+
+   @Override
+   public boolean supportsDenseR()
+   {
+      return false;
+   }
+
+   @Override
+   public void setStageLatencies(StageLatencies stageLatencies)
+   {
+      this.stageLatencies = stageLatencies;
+   }
+
+   @Override
+   public boolean update(DenseMatrix64F xPosterior, DenseMatrix64F Pposterior, DenseMatrix64F K, DenseMatrix64F xPrior, DenseMatrix64F Pprior,
+                         DenseMatrix64F H, DenseMatrix64F residual, DenseMatrix64F R, boolean diagonalR, boolean computeGain)
+   {
+      if (!diagonalR)
+      {
+         throw new RuntimeException("The sequential update requires a diagonal measurement noise covariance.");
+      }
+
+      int size = Pprior.getNumRows();
+      int measurements = H.getNumRows();
+      if (PhTrans.length < size)
+      {
+         PhTrans = new double[size];
+         stateChange = new double[size];
+         nonZeroIndices = new int[size];
+      }
+
+      stageLatencies.start(EstimatorStage.COVARIANCE_UPDATE);
+      Pposterior.set(Pprior);
+      Arrays.fill(stateChange, 0, size, 0.0);
+      double[] P = Pposterior.data;
+      double[] h = H.data;
+
+      for (int i = 0; i < measurements; i++)
+      {
+         int hRow = i * size;
+         int nonZeros = 0;
+         for (int col = 0; col < size; col++)
+         {
+            if (h[hRow + col] != 0.0)
+            {
+               nonZeroIndices[nonZeros++] = col;
+            }
+         }
+
+         // a = P * h' and s = h * a + r
+         for (int row = 0; row < size; row++)
+         {
+            int pRow = row * size;
+            double sum = 0.0;
+            for (int j = 0; j < nonZeros; j++)
+            {
+               int col = nonZeroIndices[j];
+               sum += P[pRow + col] * h[hRow + col];
+            }
+            PhTrans[row] = sum;
+         }
+         double innovationVariance = R.get(i);
+         double predictedChange = 0.0;
+         for (int j = 0; j < nonZeros; j++)
+         {
+            int col = nonZeroIndices[j];
+            innovationVariance += h[hRow + col] * PhTrans[col];
+            predictedChange += h[hRow + col] * stateChange[col];
+         }
+         if (!(innovationVariance > 0.0) || Double.isInfinite(innovationVariance))
+         {
+            return false;
+         }
+
+         // The residual was computed at the prior state so remove the part already corrected by earlier measurements.
+         double innovation = (residual.get(i) - predictedChange) / innovationVariance;
+         double inverseVariance = 1.0 / innovationVariance;
+         for (int row = 0; row < size; row++)
+         {
+            stateChange[row] += PhTrans[row] * innovation;
+            int pRow = row * size;
+            double a = PhTrans[row];
+            for (int col = 0; col < size; col++)
+            {
+               // Multiply the entries of a first such that the result stays exactly symmetric.
+               P[pRow + col] -= a * PhTrans[col] * inverseVariance;
+            }
+         }
+      }
+
+      stageLatencies.next(EstimatorStage.COVARIANCE_UPDATE, EstimatorStage.STATE_UPDATE);
+      xPosterior.reshape(size, 1);
+      for (int row = 0; row < size; row++)
+      {
+         xPosterior.data[row] = xPrior.data[row] + stateChange[row];
+      }
+
+      stageLatencies.stop(EstimatorStage.STATE_UPDATE);
+
+      if (computeGain)
+      {
+         stageLatencies.start(EstimatorStage.GAIN);
+         K.reshape(size, measurements);
+         for (int row = 0; row < size; row++)
+         {
+            int pRow = row * size;
+            for (int i = 0; i < measurements; i++)
+            {
+               int hRow = i * size;
+               double sum = 0.0;
+               for (int col = 0; col < size; col++)
+               {
+                  sum += P[pRow + col] * h[hRow + col];
+               }
+               K.data[row * measurements + i] = sum / R.get(i);
+            }
+         }
+         stageLatencies.stop(EstimatorStage.GAIN);
+      }
+      else
+      {
+         K.reshape(size, 0);
+      }
+
+      return true;
+   }
+}
@@ -0,0 +1,204 @@
+package us.ihmc.ekf.filter;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+
+/**
+ * Records the latency of every {@link EstimatorStage} of the estimator tick in a {@link LatencyHistogram}. Unlike an
+ * {@code ExecutionTimer} this keeps the full distribution so a regression in the tail latency can be attributed to a
+ * stage.
+ * <p>
+ * Recording does not allocate. The p50, p99, p99.9, and maximum of every stage are written to the registry in
+ * microseconds every {@link #publishTicks} ticks rather than every tick since computing the percentiles iterates the
+ * histogram. Setting {@code dumpStageLatencies} prints all stages at the end of the next tick.
+ * </p>
+ * <p>
+ * All methods must be called from the estimator thread. A stage that was not run in a tick is not recorded so the
+ * number of samples of the stages can differ, e.g. the covariance update is skipped in ticks without measurement.
+ * </p>
+ * <p>
+ * Components that can be used with and without latency recording use the instance of {@link #getDisabled()} by
+ * default which records nothing. This avoids checking for a missing instance at every stage.
+ * </p>
+ */
+public class StageLatencies
+{
+   private static final int publishTicks = 1000;
+
+   private static final EstimatorStage[] stages = EstimatorStage.values();
+
+   private final LatencyHistogram[] histograms = new LatencyHistogram[stages.length];
+   private final long[] startTimes = new long[stages.length];
+
+   private final YoDouble[] p50 = new YoDouble[stages.length];
+   private final YoDouble[] p99 = new YoDouble[stages.length];
+   private final YoDouble[] p999 = new YoDouble[stages.length];
+   private final YoDouble[] max = new YoDouble[stages.length];
+   private final YoBoolean dump;
+
+   private int ticksSincePublish = 0;
+
+   private static final StageLatencies disabled = new DisabledStageLatencies();
+
+   /**
+    * @return a shared instance that records nothing and has no variables in a registry.
+    */
+   public static StageLatencies getDisabled()
+   {
+      return disabled;
+   }
+
+   /**
+    * Creates the latencies of the disabled instance without variables.
+    */
+   private StageLatencies()
+   {
+      for (int index = 0; index < stages.length; index++)
+      {
+         histograms[index] = new LatencyHistogram();
+      }
+      dump = null;
+   }
+
+   public StageLatencies(YoVariableRegistry parentRegistry)
+   {
+      YoVariableRegistry registry = new YoVariableRegistry(getClass().getSimpleName());
+      parentRegistry.addChild(registry);
+
+      for (EstimatorStage stage : stages)
+      {
+         int index = stage.ordinal();
+         String name = stage.getCamelCaseName();
+         histograms[index] = new LatencyHistogram();
+         p50[index] = new YoDouble(name + "LatencyP50", registry);
+         p99[index] = new YoDouble(name + "LatencyP99", registry);
+         p999[index] = new YoDouble(name + "LatencyP999", registry);
+         max[index] = new YoDouble(name + "LatencyMax", registry);
+      }
+      dump = new YoBoolean("dumpStageLatencies", registry);
+   }
+
+   /**
+    * Marks the start of a stage. Must be followed by {@link #stop(EstimatorStage)} in the same tick.
+    */
+   public void start(EstimatorStage stage)
+   {
+      startTimes[stage.ordinal()] = System.nanoTime();
+   }
+
+   /**
+    * Records the time since the last {@link #start(EstimatorStage)} of the stage.
+    */
+   public void stop(EstimatorStage stage)
+   {
+      int index = stage.ordinal();
+      histograms[index].record(System.nanoTime() - startTimes[index]);
+   }
+
+   /**
+    * Stops the first stage and starts the second one with a single clock read. Use for consecutive stages.
+    */
+   public void next(EstimatorStage stageToStop, EstimatorStage stageToStart)
+   {
+      long time = System.nanoTime();
+      int index = stageToStop.ordinal();
+      histograms[index].record(time - startTimes[index]);
+      startTimes[stageToStart.ordinal()] = time;
+   }
+
+   /**
+    * Must be called once at the end of every tick. Updates the registry periodically and dumps the latencies if
+    * requested.
+    */
+   public void update()
+   {
+      if (++ticksSincePublish >= publishTicks)
+      {
+         publish();
+      }
+
+      if (dump.getValue())
+      {
+         dump.set(false);
+         publish();
+         print();
+      }
+   }
+
+   private void publish()
+   {
+      ticksSincePublish = 0;
+      for (int index = 0; index < stages.length; index++)
+      {
+         LatencyHistogram histogram = histograms[index];
+         p50[index].set(histogram.getValueAtPercentile(50.0) * 1.0e-3);
+         p99[index].set(histogram.getValueAtPercentile(99.0) * 1.0e-3);
+         p999[index].set(histogram.getValueAtPercentile(99.9) * 1.0e-3);
+         max[index].set(histogram.getMax() * 1.0e-3);
+      }
+   }
+
+   /**
+    * Prints the latency distribution of all stages.
+    */
+   public void print()
+   {
+      PrintTools.info("Latencies of the estimator stages:");
+      for (EstimatorStage stage : stages)
+      {
+         PrintTools.info("   " + stage.getCamelCaseName() + ": " + histograms[stage.ordinal()].getSummary());
+      }
+   }
+
+   public LatencyHistogram getHistogram(EstimatorStage stage)
+   {
+      return histograms[stage.ordinal()];
+   }
+
+   /**
+    * Removes all recorded latencies, e.g. after the startup of the estimator.
+    */
+   public void reset()
+   {
+      for (LatencyHistogram histogram : histograms)
+      {
+         histogram.reset();
+      }
+      publish();
+   }
+
+   private static class DisabledStageLatencies extends StageLatencies
+   {
+      @Override
+      public void start(EstimatorStage stage)
+      {
+      }
+
+      @Override
+      public void stop(EstimatorStage stage)
+      {
+      }
+
+      @Override
+      public void next(EstimatorStage stageToStop, EstimatorStage stageToStart)
+      {
+      }
+
+      @Override
+      public void update()
+      {
+      }
+
+      @Override
+      public void print()
+      {
+      }
+
+      @Override
+      public void reset()
+      {
+      }
+   }
+}
@@ -1,20 +1,36 @@
 package us.ihmc.ekf.filter;
 
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 
 import org.ejml.data.DenseMatrix64F;
 import org.ejml.ops.CommonOps;
 
-import us.ihmc.commons.PrintTools;
 import us.ihmc.ekf.filter.sensor.ComposedSensor;
 import us.ihmc.ekf.filter.sensor.Sensor;
 import us.ihmc.ekf.filter.state.ComposedState;
 import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.euclid.referenceFrame.FrameQuaternion;
+import us.ihmc.euclid.tuple3D.Vector3D;
+import us.ihmc.euclid.tuple4D.Quaternion;
 import us.ihmc.robotics.time.ExecutionTimer;
+import us.ihmc.yoVariables.parameters.BooleanParameter;
+import us.ihmc.yoVariables.parameters.IntegerParameter;
+import us.ihmc.yoVariables.providers.BooleanProvider;
+import us.ihmc.yoVariables.providers.IntegerProvider;
 import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoInteger;
 
 public class StateEstimator
 {
+   /** The time budget for the calibration of a single update strategy in seconds. */
+   public static final double CALIBRATION_TIME_PER_STRATEGY = 0.1;
+   private static final int MIN_CALIBRATION_ITERATIONS = 3;
+   private static final int MAX_CALIBRATION_ITERATIONS = 100;
+
    private final RobotState robotState;
 
    private final ComposedState state;
@@ -22,11 +38,78 @@ public class StateEstimator
 
    private final ExecutionTimer predictionTimer;
    private final ExecutionTimer correctionTimer;
+   private final ExecutionTimer delayedCorrectionTimer;
+   /** The latency distribution of the stages of the prediction and correction. */
+   private final StageLatencies stageLatencies;
+   /** Runtime warnings are reported here instead of being printed on the estimator thread. */
+   private final DiagnosticRing diagnosticRing = DiagnosticRing.getDefault();
+
+   private final FilterMatrixOps filterMatrixOps;
+   private final MeasurementGate measurementGate;
+
+   /** The implementations of all update strategies indexed by the ordinal of their type. */
+   private final MeasurementUpdate[] measurementUpdates;
+   private final YoEnum<UpdateStrategyType> updateStrategy;
+   /** The time of a correction with each update strategy measured by {@link #calibrateUpdateStrategy()}. */
+   private final YoDouble[] updateStrategyCalibrationTimes;
+
+   /**
+    * Used instead of the selected update strategy if the sensor states (e.g. the IMU biases) are consider states.
+    * See {@link ConsiderMeasurementUpdate}.
+    */
+   private final MeasurementUpdate considerUpdate;
+   private final BooleanProvider considerSensorStates;
+   /** If the sensor states are consider states they are still corrected every this many ticks. Zero disables this. */
+   private final IntegerProvider sensorStateUpdateTicks;
+
+   /** Runs the covariance math of the sensor states at a lower rate if enabled. */
+   private final MultiRatePartition multiRatePartition;
+   /** The covariance of the sensor states is predicted and corrected every this many ticks. One disables this. */
+   private final IntegerProvider slowStateTicks;
+   /** Whether only the robot state covariance is updated in this tick. */
+   private boolean fastTick = false;
+
+   /** Skips the covariance math once the gain converged for a constant model. */
+   private final SteadyStateGain steadyStateGain;
+
+   /** Propagates the covariance only every few ticks if enabled and reuses the gain in between. */
+   private final CovarianceDecimation covarianceDecimation;
 
-   private final FilterMatrixOps filterMatrixOps = new FilterMatrixOps();
+   /** Counts the estimator ticks to schedule the sensors that are updated at a lower rate than the estimator. */
+   private long tick = 0;
+
+   /** Past filter ticks used to fuse delayed measurements. Will be {@code null} if no history is kept. */
+   private final FilterHistory history;
+   /** Keeps the last ticks in memory to dump them on an anomaly. Will be {@code null} unless enabled. */
+   private FilterFlightRecorder flightRecorder = null;
+   private final YoInteger droppedDelayedMeasurements;
 
    public StateEstimator(List<Sensor> sensors, RobotState robotState, YoVariableRegistry registry)
    {
+      this(sensors, robotState, 0, registry);
+   }
+
+   /**
+    * Creates a new estimator that is able to fuse measurements that arrive with a delay of up to
+    * {@code historyDepth - 1} ticks (see {@link #correctDelayed(Sensor, int)}).
+    *
+    * @param historyDepth the number of past ticks to store. Zero disables delayed measurements.
+    */
+   public StateEstimator(List<Sensor> sensors, RobotState robotState, int historyDepth, YoVariableRegistry registry)
+   {
+      this(sensors, robotState, historyDepth, new EjmlFilterMatrixOps(), registry);
+   }
+
+   /**
+    * Creates a new estimator that uses the provided matrix operations. This allows to pick the fastest linear algebra
+    * implementation for a robot (see {@link FilterMatrixOpsType}).
+    *
+    * @param historyDepth the number of past ticks to store. Zero disables delayed measurements.
+    * @param filterMatrixOps the matrix operations used by the filter.
+    */
+   public StateEstimator(List<Sensor> sensors, RobotState robotState, int historyDepth, FilterMatrixOps filterMatrixOps, YoVariableRegistry registry)
+   {
+      this.filterMatrixOps = filterMatrixOps;
       this.robotState = robotState;
       this.state = new ComposedState();
       this.sensor = new ComposedSensor(sensors, robotState.getSize());
@@ -39,12 +122,52 @@ public class StateEstimator
 
       predictionTimer = new ExecutionTimer(getClass().getSimpleName() + "Prediction", registry);
       correctionTimer = new ExecutionTimer(getClass().getSimpleName() + "Correction", registry);
+      measurementGate = new MeasurementGate(sensor, registry);
+      stageLatencies = new StageLatencies(registry);
+
+      UpdateStrategyType[] updateStrategyTypes = UpdateStrategyType.values();
+      measurementUpdates = new MeasurementUpdate[updateStrategyTypes.length];
+      updateStrategyCalibrationTimes = new YoDouble[updateStrategyTypes.length];
+      for (UpdateStrategyType type : updateStrategyTypes)
+      {
+         measurementUpdates[type.ordinal()] = type.create(filterMatrixOps);
+         measurementUpdates[type.ordinal()].setStageLatencies(stageLatencies);
+         updateStrategyCalibrationTimes[type.ordinal()] = new YoDouble(type.name().toLowerCase() + "UpdateCalibrationTime", registry);
+      }
+      updateStrategy = new YoEnum<>("updateStrategy", registry, UpdateStrategyType.class);
+      updateStrategy.set(UpdateStrategyType.BATCHED);
+
+      considerUpdate = new ConsiderMeasurementUpdate(filterMatrixOps, robotState.getSize());
+      considerUpdate.setStageLatencies(stageLatencies);
+      considerSensorStates = new BooleanParameter("considerSensorStates", registry, false);
+      sensorStateUpdateTicks = new IntegerParameter("sensorStateUpdateTicks", registry, 0);
+
+      multiRatePartition = new MultiRatePartition(filterMatrixOps, robotState.getSize());
+      slowStateTicks = new IntegerParameter("slowStateTicks", registry, 1);
+
+      steadyStateGain = new SteadyStateGain(registry);
+      covarianceDecimation = new CovarianceDecimation(filterMatrixOps, registry);
+
+      if (historyDepth > 0)
+      {
+         // At construction all sensors are active so this is the largest possible measurement.
+         history = new FilterHistory(historyDepth, state.getSize(), sensor.getMeasurementSize());
+         delayedCorrectionTimer = new ExecutionTimer(getClass().getSimpleName() + "DelayedCorrection", registry);
+         droppedDelayedMeasurements = new YoInteger("droppedDelayedMeasurements", registry);
+      }
+      else
+      {
+         history = null;
+         delayedCorrectionTimer = null;
+         droppedDelayedMeasurements = null;
+      }
    }
 
    private final DenseMatrix64F F = new DenseMatrix64F(0, 0);
    private final DenseMatrix64F Q = new DenseMatrix64F(0, 0);
    private final DenseMatrix64F H = new DenseMatrix64F(0, 0);
    private final DenseMatrix64F R = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Rdiagonal = new DenseMatrix64F(0, 0);
    private final DenseMatrix64F K = new DenseMatrix64F(0, 0);
    private final DenseMatrix64F residual = new DenseMatrix64F(0, 0);
 
@@ -56,47 +179,733 @@ public class StateEstimator
    public void predict()
    {
       predictionTimer.startMeasurement();
+      PredictionEvent event = new PredictionEvent();
+      event.begin();
 
       // State prediction.
+      stageLatencies.start(EstimatorStage.STATE_PREDICT);
       state.predict();
 
       // Get linearized plant model and predict error covariance.
+      stageLatencies.next(EstimatorStage.STATE_PREDICT, EstimatorStage.FQ_ASSEMBLY);
       state.getFMatrix(F);
       state.getQMatrix(Q);
-      filterMatrixOps.predictErrorCovariance(Pprior, F, Pposterior, Q);
+      stageLatencies.next(EstimatorStage.FQ_ASSEMBLY, EstimatorStage.COVARIANCE_PREDICT);
+      fastTick = isFastTick();
+      if (steadyStateGain.checkPredictionModel(F, Q))
+      {
+         // In the fixed gain mode the error covariance is constant.
+         covarianceDecimation.reset();
+      }
+      else if (covarianceDecimation.skipPrediction())
+      {
+         // The gain of the last covariance update is reused in this tick.
+      }
+      else if (fastTick)
+      {
+         multiRatePartition.predictFast(Pprior, F, Pposterior, Q);
+      }
+      else
+      {
+         multiRatePartition.synchronize(Pposterior);
+         covarianceDecimation.predictErrorCovariance(Pprior, F, Pposterior, Q);
+      }
+      stageLatencies.stop(EstimatorStage.COVARIANCE_PREDICT);
 
+      if (event.shouldCommit())
+      {
+         event.tick = tick;
+         event.stateSize = state.getSize();
+         event.covarianceTrace = CommonOps.trace(Pprior);
+         event.commit();
+      }
       predictionTimer.stopMeasurement();
    }
 
    public void correct()
    {
       correctionTimer.startMeasurement();
+      CorrectionEvent event = new CorrectionEvent();
+      event.begin();
+
+      // Select the sensors that provide a measurement in this tick.
+      stageLatencies.start(EstimatorStage.JACOBIAN_ASSEMBLY);
+      long currentTick = tick++;
+      int measurementSize = sensor.setActiveSensors(currentTick);
+      int gatedSensors = 0;
+      boolean diagonalR = true;
+      boolean inversionFailed = false;
+      if (measurementSize > 0)
+      {
+         // From the sensor get the linearized measurement model and the measurement residual
+         sensor.assembleFullJacobian(H, residual, robotState);
 
-      // From the sensor get the linearized measurement model and the measurement residual
-      sensor.assembleFullJacobian(H, residual, robotState);
+         // Remove sensors with a measurement that is inconsistent with the predicted state.
+         if (measurementGate.isEnabled())
+         {
+            if (fastTick)
+            {
+               // The gate needs the innovation covariance so the covariance of the sensor states must be up to date.
+               multiRatePartition.synchronize(Pprior);
+            }
+            measurementSize = measurementGate.gate(sensor, Pprior, H, residual);
+            gatedSensors = measurementGate.getRejectedSensors();
+         }
+      }
 
-      // Compute the kalman gain and correct the state
-      sensor.getRMatrix(R);
-      if (!filterMatrixOps.computeKalmanGain(K, Pprior, H, R))
+      // If there is no measurement only integrate.
+      if (measurementSize == 0)
       {
-         PrintTools.info("Inversion failed integrating only.");
-         correctionTimer.stopMeasurement();
-         return;
+         if (flightRecorder != null)
+         {
+            state.getStateVector(Xprior);
+            Rdiagonal.reshape(0, 1);
+         }
+         stageLatencies.stop(EstimatorStage.JACOBIAN_ASSEMBLY);
+         steadyStateGain.reset();
+         predictSkippedCovariance();
+         integrateOnly();
       }
-      state.getStateVector(Xprior);
-      filterMatrixOps.updateState(Xposterior, K, residual, Xprior);
+      else
+      {
+         // Correct the state and error covariance. If the measurement noise is uncorrelated use the faster
+         // implementations that do not require a dense R matrix.
+         diagonalR = sensor.isRMatrixDiagonal();
+         if (diagonalR)
+         {
+            Rdiagonal.reshape(sensor.getMeasurementSize(), 1);
+            sensor.getRMatrixDiagonal(Rdiagonal, 0);
+         }
+         else
+         {
+            sensor.getRMatrix(R);
+         }
 
-      // Update the error covariance.
-      filterMatrixOps.updateErrorCovariance(Pposterior, K, H, R, Pprior);
+         state.getStateVector(Xprior);
+         stageLatencies.stop(EstimatorStage.JACOBIAN_ASSEMBLY);
+         DenseMatrix64F measurementNoise = diagonalR ? Rdiagonal : R;
+         boolean success;
+         if (steadyStateGain.isActive() && steadyStateGain.checkMeasurementModel(H, measurementNoise))
+         {
+            // The gain converged: only correct the state.
+            stageLatencies.start(EstimatorStage.STATE_UPDATE);
+            K.set(steadyStateGain.getGain());
+            filterMatrixOps.updateState(Xposterior, K, residual, Xprior);
+            stageLatencies.stop(EstimatorStage.STATE_UPDATE);
+            success = true;
+         }
+         else if (covarianceDecimation.isSkipping() && correctStateWithLastGain())
+         {
+            // The covariance is updated every few ticks: correct the state with the last gain.
+            success = true;
+         }
+         else if (fastTick)
+         {
+            // The partitioned update is recorded as a covariance update since it dominates its cost.
+            steadyStateGain.reset();
+            stageLatencies.start(EstimatorStage.COVARIANCE_UPDATE);
+            success = multiRatePartition.correctFast(Xposterior, Pposterior, K, Xprior, Pprior, H, residual, measurementNoise, diagonalR);
+            stageLatencies.stop(EstimatorStage.COVARIANCE_UPDATE);
+         }
+         else
+         {
+            predictSkippedCovariance();
+            success = getMeasurementUpdate(diagonalR, currentTick).update(Xposterior, Pposterior, K, Xprior, Pprior, H, residual, measurementNoise,
+                                                                          diagonalR, isGainNeeded());
+            if (success)
+            {
+               steadyStateGain.update(F, Q, H, measurementNoise, K);
+               covarianceDecimation.update(Pprior, H, measurementNoise, diagonalR, residual, K);
+            }
+         }
 
-      // Update the state data structure after the correction step.
-      state.setStateVector(Xposterior);
+         if (success)
+         {
+            // Update the state data structure after the correction step.
+            state.setStateVector(Xposterior);
+         }
+         else
+         {
+            diagnosticRing.report(DiagnosticEvent.INVERSION_FAILURE, currentTick, measurementSize);
+            commitInversionFailureEvent(currentTick, measurementSize, false);
+            steadyStateGain.reset();
+            covarianceDecimation.reset();
+            if (flightRecorder != null)
+            {
+               // Record the measurement that could not be used before it is discarded.
+               K.reshape(state.getSize(), 0);
+               flightRecorder.record(currentTick, Xprior, Pprior, H, measurementNoise, diagonalR, residual, K, Xprior, true);
+               inversionFailed = true;
+            }
+            integrateOnly();
+         }
+      }
+
+      if (history != null || flightRecorder != null)
+      {
+         // The state might contain error states that are reset when setting the state so get it again.
+         state.getStateVector(Xposterior);
+      }
+      if (history != null)
+      {
+         storeHistory(diagonalR);
+      }
+      if (flightRecorder != null && !inversionFailed)
+      {
+         flightRecorder.record(currentTick, Xprior, Pprior, H, diagonalR ? Rdiagonal : R, diagonalR, residual, K, Xposterior, false);
+      }
 
+      stageLatencies.update();
+      if (event.shouldCommit())
+      {
+         event.tick = currentTick;
+         event.stateSize = state.getSize();
+         event.measurementSize = measurementSize;
+         event.gatedSensors = gatedSensors;
+         event.updateStrategy = updateStrategy.getEnumValue().name();
+         event.covarianceTrace = CommonOps.trace(Pposterior);
+         event.commit();
+      }
       correctionTimer.stopMeasurement();
    }
 
+   private final DenseMatrix64F historyResidual = new DenseMatrix64F(0, 1);
+   private final DenseMatrix64F historyInnovationCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F historyInnovationCovarianceInverse = new DenseMatrix64F(0, 0);
+   private final FrameQuaternion rootOrientation = new FrameQuaternion();
+
+   /**
+    * Stores this tick in the history. The inverse of the innovation covariance is only needed by delayed corrections
+    * but it is computed here since the prior error covariance of the tick is not kept.
+    */
+   private void storeHistory(boolean diagonalR)
+   {
+      int measurementSize = H.getNumRows();
+      historyResidual.reshape(measurementSize, 1);
+      historyInnovationCovarianceInverse.reshape(measurementSize, measurementSize);
+      if (measurementSize > 0)
+      {
+         System.arraycopy(residual.data, 0, historyResidual.data, 0, measurementSize);
+         historyInnovationCovariance.reshape(measurementSize, measurementSize);
+         filterMatrixOps.computeABAtrans(historyInnovationCovariance, H, Pprior);
+         if (diagonalR)
+         {
+            for (int i = 0; i < measurementSize; i++)
+            {
+               historyInnovationCovariance.add(i, i, Rdiagonal.get(i));
+            }
+         }
+         else
+         {
+            CommonOps.addEquals(historyInnovationCovariance, R);
+         }
+         if (!filterMatrixOps.invertMatrix(historyInnovationCovarianceInverse, historyInnovationCovariance))
+         {
+            CommonOps.fill(historyInnovationCovarianceInverse, 0.0);
+         }
+      }
+
+      if (robotState.isFloating())
+      {
+         robotState.getPoseState().getOrientation(rootOrientation);
+         history.store(F, K, H, historyResidual, historyInnovationCovarianceInverse, Xposterior, Pposterior, rootOrientation);
+      }
+      else
+      {
+         history.store(F, K, H, historyResidual, historyInnovationCovarianceInverse, Xposterior, Pposterior, null);
+      }
+   }
+
+   /**
+    * If the covariance prediction was skipped in this tick but the last gain can not be reused the covariance is
+    * propagated over all ticks since the last covariance update (see {@link CovarianceDecimation}).
+    */
+   private void predictSkippedCovariance()
+   {
+      if (covarianceDecimation.isSkipping())
+      {
+         stageLatencies.start(EstimatorStage.COVARIANCE_PREDICT);
+         covarianceDecimation.predictErrorCovariance(Pprior, F, Pposterior, Q);
+         stageLatencies.stop(EstimatorStage.COVARIANCE_PREDICT);
+      }
+   }
+
+   private void commitInversionFailureEvent(long failedTick, int measurementSize, boolean delayed)
+   {
+      InversionFailureEvent event = new InversionFailureEvent();
+      if (event.shouldCommit())
+      {
+         event.tick = failedTick;
+         event.stateSize = state.getSize();
+         event.measurementSize = measurementSize;
+         event.delayed = delayed;
+         event.commit();
+      }
+   }
+
+   private boolean correctStateWithLastGain()
+   {
+      stageLatencies.start(EstimatorStage.STATE_UPDATE);
+      boolean corrected = covarianceDecimation.correctState(Xposterior, K, Xprior, H, residual);
+      stageLatencies.stop(EstimatorStage.STATE_UPDATE);
+      return corrected;
+   }
+
+   /**
+    * Whether the upcoming tick only corrects the robot state (see {@link MultiRatePartition}). The sensor states are
+    * corrected in every tick that is a multiple of the {@code slowStateTicks} parameter. In the other ticks they are
+    * consider states. This is disabled while the covariance decimation is enabled.
+    */
+   private boolean isFastTick()
+   {
+      int ticksPerSlowUpdate = slowStateTicks.getValue();
+      return ticksPerSlowUpdate > 1 && !covarianceDecimation.isEnabled() && robotState.getSize() < state.getSize() && tick % ticksPerSlowUpdate != 0;
+   }
+
+   /**
+    * Returns the implementation of the selected update strategy or the batched update if the selected one does not
+    * support the measurement noise of this tick. If the sensor states are consider states the consider update is
+    * used unless this is one of the ticks in which the sensor states are corrected.
+    */
+   private MeasurementUpdate getMeasurementUpdate(boolean diagonalR, long currentTick)
+   {
+      if (considerSensorStates.getValue() && robotState.getSize() < state.getSize())
+      {
+         int ticksPerUpdate = sensorStateUpdateTicks.getValue();
+         if (ticksPerUpdate <= 0 || currentTick % ticksPerUpdate != 0)
+         {
+            return considerUpdate;
+         }
+      }
+
+      MeasurementUpdate measurementUpdate = measurementUpdates[updateStrategy.getEnumValue().ordinal()];
+      if (!diagonalR && !measurementUpdate.supportsDenseR())
+      {
+         return measurementUpdates[UpdateStrategyType.BATCHED.ordinal()];
+      }
+      return measurementUpdate;
+   }
+
+   /**
+    * Whether the kalman gain of a correction is used after the correction, e.g. to store it in the history. If not
+    * the update strategies can skip computing it.
+    */
+   private boolean isGainNeeded()
+   {
+      return history != null || steadyStateGain.isEnabled() || covarianceDecimation.isEnabled();
+   }
+
+   private void integrateOnly()
+   {
+      Pposterior.set(Pprior);
+      K.reshape(state.getSize(), 0);
+      H.reshape(0, state.getSize());
+   }
+
+   private final DenseMatrix64F delayedH = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F delayedR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F delayedResidual = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F delayedK = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F stateChange = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F crossCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F propagatedCrossCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F observedCrossCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F weightedCrossCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F innovationCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F innovationCovarianceInverse = new DenseMatrix64F(0, 0);
+   private final Quaternion orientationChange = new Quaternion();
+   private final Vector3D rotationVectorChange = new Vector3D();
+
+   /**
+    * Corrects the current state with a measurement that was taken {@code ticksOfDelay} estimator ticks ago. This
+    * must be called after {@link #correct()} and requires the estimator to keep a history of past ticks.
+    * <p>
+    * The measurement is fused as if it was processed at the tick it was taken in (after the regular correction of
+    * that tick). The cross covariance of the current state and the delayed measurement is obtained by propagating
+    * {@code P(s) * H'} through the stored {@code (I - K * H) * F} of all following ticks. The corrections of these
+    * ticks did not contain the delayed measurement so the residual and innovation covariance of the delayed
+    * measurement are smoothed with the stored residuals and innovation covariances of these ticks. This is exact for
+    * linear systems and costs {@code O(ticksOfDelay * n^2 * m)} for a state of size {@code n} and a measurement of
+    * size {@code m}. Neither the past states nor the sensor models need to be re-evaluated.
+    * </p>
+    * <p>
+    * The sensor computes its residual with the current robot state. It is moved to the time of the measurement
+    * using the linearized measurement model {@code r(s) = r(k) + H * (x(k) - x(s))} where the change of the orientation
+    * of a floating base is computed from the stored orientations. The sensor should be registered with zero ticks per
+    * update (see {@link Sensor#setTicksPerUpdate(int)}) such that it is not used in the regular correction and the
+    * measurement must be set in the sensor before calling this method.
+    * </p>
+    *
+    * @param delayedSensor the sensor holding the delayed measurement. Must be one of the estimator sensors.
+    * @param ticksOfDelay the number of estimator ticks that have passed since the measurement was taken.
+    * @return whether the measurement was used. Measurements older than the history or rejected as outliers are
+    *         dropped.
+    */
+   public boolean correctDelayed(Sensor delayedSensor, int ticksOfDelay)
+   {
+      if (history == null)
+      {
+         throw new RuntimeException("This estimator does not keep a history. Can not handle delayed measurements.");
+      }
+      if (ticksOfDelay < 0 || ticksOfDelay >= history.getNumberOfStoredTicks())
+      {
+         droppedDelayedMeasurements.increment();
+         return false;
+      }
+
+      delayedCorrectionTimer.startMeasurement();
+
+      // The delayed correction needs the full error covariance. If the covariance update was skipped in this tick
+      // use the propagated prior.
+      multiRatePartition.synchronize(Pposterior);
+      if (covarianceDecimation.isSkipping())
+      {
+         covarianceDecimation.predictErrorCovariance(Pprior, F, Pposterior, Q);
+         Pposterior.set(Pprior);
+      }
+
+      // Get the linearized measurement model and the residual using the current state.
+      sensor.setActiveSensor(delayedSensor);
+      sensor.assembleFullJacobian(delayedH, delayedResidual, robotState);
+
+      // Move the residual to the time the measurement was taken.
+      computeStateChange(ticksOfDelay);
+      CommonOps.multAdd(delayedH, stateChange, delayedResidual);
+
+      // Drop the measurement if it is inconsistent with the state at the time it was taken.
+      DenseMatrix64F delayedCovariance = history.getCovariance(ticksOfDelay);
+      if (measurementGate.isEnabled() && measurementGate.gate(sensor, delayedCovariance, delayedH, delayedResidual) == 0)
+      {
+         delayedCorrectionTimer.stopMeasurement();
+         return false;
+      }
+      sensor.getRMatrix(delayedR);
+
+      // Compute the innovation covariance and the cross covariance at the time of the measurement.
+      crossCovariance.reshape(state.getSize(), delayedH.getNumRows());
+      CommonOps.multTransB(delayedCovariance, delayedH, crossCovariance);
+      innovationCovariance.reshape(delayedH.getNumRows(), delayedH.getNumRows());
+      CommonOps.mult(delayedH, crossCovariance, innovationCovariance);
+      CommonOps.add(innovationCovariance, delayedR, innovationCovariance);
+
+      // Propagate the cross covariance to the current tick: G(i) = (I - K(i) * H(i)) * F(i) * G(i-1)
+      // The residual and innovation covariance are smoothed with the measurements of the following ticks using
+      // U(i) = H(i) * F(i) * G(i-1):
+      //   r = r - U(i)' * inv(S(i)) * r(i)
+      //   S = S - U(i)' * inv(S(i)) * U(i)
+      for (int age = ticksOfDelay - 1; age >= 0; age--)
+      {
+         DenseMatrix64F Fi = history.getFMatrix(age);
+         DenseMatrix64F Ki = history.getKalmanGain(age);
+         DenseMatrix64F Hi = history.getMeasurementJacobian(age);
+
+         propagatedCrossCovariance.reshape(crossCovariance.getNumRows(), crossCovariance.getNumCols());
+         CommonOps.mult(Fi, crossCovariance, propagatedCrossCovariance);
+         if (Hi.getNumRows() > 0)
+         {
+            observedCrossCovariance.reshape(Hi.getNumRows(), crossCovariance.getNumCols());
+            CommonOps.mult(Hi, propagatedCrossCovariance, observedCrossCovariance);
+            weightedCrossCovariance.reshape(Hi.getNumRows(), crossCovariance.getNumCols());
+            CommonOps.mult(history.getInnovationCovarianceInverse(age), observedCrossCovariance, weightedCrossCovariance);
+            CommonOps.multAddTransA(-1.0, observedCrossCovariance, weightedCrossCovariance, innovationCovariance);
+            CommonOps.multAddTransA(-1.0, weightedCrossCovariance, history.getResidual(age), delayedResidual);
+            CommonOps.multAdd(-1.0, Ki, observedCrossCovariance, propagatedCrossCovariance);
+         }
+         crossCovariance.set(propagatedCrossCovariance);
+      }
+
+      if (!filterMatrixOps.invertMatrix(innovationCovarianceInverse, innovationCovariance))
+      {
+         diagnosticRing.report(DiagnosticEvent.DELAYED_INVERSION_FAILURE, tick - 1, delayedH.getNumRows(), ticksOfDelay);
+         commitInversionFailureEvent(tick - 1 - ticksOfDelay, delayedH.getNumRows(), true);
+         droppedDelayedMeasurements.increment();
+         delayedCorrectionTimer.stopMeasurement();
+         return false;
+      }
+
+      // Correct the current state and error covariance.
+      delayedK.reshape(crossCovariance.getNumRows(), innovationCovarianceInverse.getNumCols());
+      CommonOps.mult(crossCovariance, innovationCovarianceInverse, delayedK);
+      state.getStateVector(Xprior);
+      filterMatrixOps.updateState(Xposterior, delayedK, delayedResidual, Xprior);
+      CommonOps.multAddTransB(-1.0, delayedK, crossCovariance, Pposterior);
+      state.setStateVector(Xposterior);
+      steadyStateGain.reset();
+      covarianceDecimation.reset();
+
+      state.getStateVector(Xposterior);
+      if (robotState.isFloating())
+      {
+         robotState.getPoseState().getOrientation(rootOrientation);
+         history.updateNewest(Xposterior, Pposterior, rootOrientation);
+      }
+      else
+      {
+         history.updateNewest(Xposterior, Pposterior, null);
+      }
+
+      delayedCorrectionTimer.stopMeasurement();
+      return true;
+   }
+
+   /**
+    * Computes {@code x(k) - x(s)} for the stored state of the tick {@code ticksOfDelay} ticks ago. The orientation of
+    * a floating base is an error state that is reset in every correction so its entries in the stored state vectors
+    * are zero. Its change is the rotation vector between the stored orientations: {@code q(k) = exp(delta) * q(s)}
+    * (see {@link us.ihmc.ekf.filter.state.PoseState#add}).
+    */
+   private void computeStateChange(int ticksOfDelay)
+   {
+      stateChange.reshape(state.getSize(), 1);
+      CommonOps.subtract(history.getStateVector(0), history.getStateVector(ticksOfDelay), stateChange);
+      if (robotState.isFloating())
+      {
+         orientationChange.set(history.getRootOrientation(0));
+         orientationChange.multiplyConjugateOther(history.getRootOrientation(ticksOfDelay));
+         orientationChange.getRotationVector(rotationVectorChange);
+         rotationVectorChange.get(robotState.findOrientationIndex(), stateChange);
+      }
+   }
+
+   /**
+    * Selects the strategy used to compute the correction of the filter. All strategies give the same result up to
+    * numerical precision but differ in their computation time (see {@link UpdateStrategyType}).
+    */
+   public void setUpdateStrategy(UpdateStrategyType updateStrategyType)
+   {
+      updateStrategy.set(updateStrategyType);
+   }
+
+   public UpdateStrategyType getUpdateStrategy()
+   {
+      return updateStrategy.getEnumValue();
+   }
+
+   private final DenseMatrix64F calibrationH = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F calibrationResidual = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F calibrationR = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F calibrationXprior = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F calibrationK = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F calibrationXposterior = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F calibrationPposterior = new DenseMatrix64F(0, 0);
+
+   /**
+    * Measures the time of a correction with each update strategy and selects the fastest one. This must be called
+    * once after the parameters were loaded and before the periodic estimator ticks start as it takes up to
+    * {@link #CALIBRATION_TIME_PER_STRATEGY} seconds per strategy.
+    * <p>
+    * The calibration uses the sensors that are scheduled in the next tick and the current error covariance so it runs
+    * with the sizes, the sparsity, and the parameters the estimator is actually used with. The sensor models are
+    * evaluated once with the current state and whatever measurement the sensors hold as the timing does not depend
+    * on the measured values. The state and covariance of the filter are not
+    * modified. The measured times and the selected strategy are stored in the registry.
+    * </p>
+    *
+    * @return the selected update strategy.
+    */
+   public UpdateStrategyType calibrateUpdateStrategy()
+   {
+      int measurementSize = sensor.setActiveSensors(tick);
+      if (measurementSize == 0)
+      {
+         return updateStrategy.getEnumValue();
+      }
+
+      sensor.assembleFullJacobian(calibrationH, calibrationResidual, robotState);
+      boolean diagonalR = sensor.isRMatrixDiagonal();
+      if (diagonalR)
+      {
+         calibrationR.reshape(measurementSize, 1);
+         sensor.getRMatrixDiagonal(calibrationR, 0);
+      }
+      else
+      {
+         sensor.getRMatrix(calibrationR);
+      }
+      state.getStateVector(calibrationXprior);
+      multiRatePartition.synchronize(Pposterior);
+
+      UpdateStrategyType fastest = UpdateStrategyType.BATCHED;
+      double fastestTime = Double.POSITIVE_INFINITY;
+      for (UpdateStrategyType type : UpdateStrategyType.values())
+      {
+         MeasurementUpdate measurementUpdate = measurementUpdates[type.ordinal()];
+         YoDouble calibrationTime = updateStrategyCalibrationTimes[type.ordinal()];
+         if (!diagonalR && !measurementUpdate.supportsDenseR())
+         {
+            calibrationTime.set(Double.NaN);
+            continue;
+         }
+
+         calibrationTime.set(measureUpdateTime(measurementUpdate, diagonalR));
+         if (calibrationTime.getDoubleValue() < fastestTime)
+         {
+            fastestTime = calibrationTime.getDoubleValue();
+            fastest = type;
+         }
+      }
+
+      updateStrategy.set(fastest);
+      // The calibration ran the updates outside of the regular estimator ticks.
+      stageLatencies.reset();
+      return fastest;
+   }
+
+   /**
+    * Runs the update repeatedly for about half of the time budget as a warmup followed by the timed runs. Returns
+    * the fastest run in seconds as it is the least affected by other load on the machine.
+    */
+   private double measureUpdateTime(MeasurementUpdate measurementUpdate, boolean diagonalR)
+   {
+      long budget = (long) (CALIBRATION_TIME_PER_STRATEGY * 1.0e9 / 2.0);
+      long fastest = Long.MAX_VALUE;
+      boolean computeGain = isGainNeeded();
+
+      for (int phase = 0; phase < 2; phase++)
+      {
+         long phaseStart = System.nanoTime();
+         for (int i = 0; i < MAX_CALIBRATION_ITERATIONS; i++)
+         {
+            long start = System.nanoTime();
+            boolean success = measurementUpdate.update(calibrationXposterior, calibrationPposterior, calibrationK, calibrationXprior, Pposterior,
+                                                       calibrationH, calibrationResidual, calibrationR, diagonalR, computeGain);
+            long end = System.nanoTime();
+            if (!success)
+            {
+               return Double.POSITIVE_INFINITY;
+            }
+
+            if (phase == 1)
+            {
+               fastest = Math.min(fastest, end - start);
+            }
+            if (i + 1 >= MIN_CALIBRATION_ITERATIONS && end - phaseStart > budget)
+            {
+               break;
+            }
+         }
+      }
+
+      return fastest * 1.0e-9;
+   }
+
+   /**
+    * Provides the latency distribution of the stages of the estimator ticks. The caller can record additional stages
+    * that are run outside of the estimator, e.g. {@link EstimatorStage#SENSOR_READ}.
+    */
+   public StageLatencies getStageLatencies()
+   {
+      return stageLatencies;
+   }
+
+   /**
+    * Enables the parallel evaluation of the thread safe sensor models in the correction. See
+    * {@link ComposedSensor#setWorkerPool(WorkerPool)} for which sensors are evaluated in parallel.
+    *
+    * @param workerPool the pool to use or {@code null} to evaluate the sensors sequentially.
+    */
+   public void setSensorWorkerPool(WorkerPool workerPool)
+   {
+      sensor.setWorkerPool(workerPool);
+   }
+
+   /**
+    * Starts recording the matrices of every correction in memory and writes the last ticks to a file if the filter
+    * fails to invert the innovation covariance, the state becomes invalid, or a measurement is far from its prediction
+    * (see {@link FilterFlightRecorder}). This adds copies of the matrices and the computation of the normalized
+    * innovation squared to every tick.
+    *
+    * @param depth the number of ticks kept in memory.
+    * @param directory the directory the dumps are written to.
+    * @param registry the registry the parameters of the recorder are added to.
+    */
+   public void enableFlightRecorder(int depth, Path directory, YoVariableRegistry registry)
+   {
+      if (flightRecorder != null)
+      {
+         throw new RuntimeException("The flight recorder is already enabled.");
+      }
+      flightRecorder = new FilterFlightRecorder(depth, state.getSize(), getMaximumMeasurementSize(), directory, registry);
+   }
+
+   /**
+    * @return the flight recorder or {@code null} if it was not enabled.
+    */
+   public FilterFlightRecorder getFlightRecorder()
+   {
+      return flightRecorder;
+   }
+
+   /**
+    * Provides the number of estimator ticks that have been completed. This is used to schedule sensors that are
+    * updated at a lower rate than the estimator (see {@link Sensor#setTicksPerUpdate(int)}).
+    *
+    * @return the number of corrections that were performed or skipped.
+    */
+   public long getTick()
+   {
+      return tick;
+   }
+
    public void getCovariance(DenseMatrix64F covarianceToPack)
    {
+      multiRatePartition.synchronize(Pposterior);
       covarianceToPack.set(Pposterior);
    }
+
+   /**
+    * Packs the diagonal of the error covariance. Unlike {@link #getCovariance(DenseMatrix64F)} this does not bring the
+    * covariance of the sensor states up to date if the {@link MultiRatePartition} skipped their update in the last
+    * ticks so it is cheap enough to be called in every tick.
+    *
+    * @param diagonalToPack the vector containing the variances of all states.
+    */
+   public void getCovarianceDiagonal(DenseMatrix64F diagonalToPack)
+   {
+      int size = Pposterior.getNumRows();
+      diagonalToPack.reshape(size, 1);
+      for (int i = 0; i < size; i++)
+      {
+         diagonalToPack.set(i, Pposterior.get(i, i));
+      }
+   }
+
+   /**
+    * Provides the size of the measurement if all sensors provide a measurement in the same tick.
+    */
+   public int getMaximumMeasurementSize()
+   {
+      int size = 0;
+      for (int sensorIdx = 0; sensorIdx < sensor.getNumberOfSensors(); sensorIdx++)
+      {
+         size += sensor.getSensor(sensorIdx).getMeasurementSize();
+      }
+      return size;
+   }
+
+   /**
+    * Packs the measurement residual of the last correction with a fixed layout: the rows of all sensors are in the
+    * order the sensors were passed to the estimator (see {@link #getMaximumMeasurementSize()}). The rows of sensors
+    * that did not provide a measurement or were rejected in the last correction are set to {@link Double#NaN}.
+    *
+    * @param residualToPack the residual of all sensors.
+    */
+   public void getResidual(DenseMatrix64F residualToPack)
+   {
+      residualToPack.reshape(getMaximumMeasurementSize(), 1);
+      int startIndex = 0;
+      for (int sensorIdx = 0; sensorIdx < sensor.getNumberOfSensors(); sensorIdx++)
+      {
+         int size = sensor.getSensor(sensorIdx).getMeasurementSize();
+         if (sensor.isSensorActive(sensorIdx))
+         {
+            System.arraycopy(residual.data, sensor.getMeasurementStartIndex(sensorIdx), residualToPack.data, startIndex, size);
+         }
+         else
+         {
+            Arrays.fill(residualToPack.data, startIndex, startIndex + size, Double.NaN);
+         }
+         startIndex += size;
+      }
+   }
 }
@@ -0,0 +1,187 @@
+package us.ihmc.ekf.filter;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.yoVariables.parameters.BooleanParameter;
+import us.ihmc.yoVariables.parameters.DoubleParameter;
+import us.ihmc.yoVariables.parameters.IntegerParameter;
+import us.ihmc.yoVariables.providers.BooleanProvider;
+import us.ihmc.yoVariables.providers.DoubleProvider;
+import us.ihmc.yoVariables.providers.IntegerProvider;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoInteger;
+
+/**
+ * Detects when the kalman gain of the filter has converged to its steady state value such that the covariance math
+ * can be skipped.
+ * <p>
+ * If the linearized models {@code F}, {@code Q}, {@code H}, and {@code R} do not change between ticks, e.g. for a
+ * fixed base robot with only joint position sensors, the error covariance converges to the solution of the discrete
+ * algebraic Riccati equation and the gain to a constant. Once the gain changed less than the tolerance for the
+ * configured number of consecutive ticks the filter switches to a fixed gain mode: the covariance is neither
+ * predicted nor updated and the correction is only {@code x = x + K * r}. The models are still compared to the ones
+ * the gain was computed for in every tick and the filter reverts to the full update as soon as any of them changes,
+ * e.g. when a parameter is modified or a sensor is added or removed from the measurement.
+ * </p>
+ */
+public class SteadyStateGain
+{
+   private final BooleanProvider enable;
+   private final DoubleProvider tolerance;
+   private final IntegerProvider convergedTicksToActivate;
+
+   private final YoBoolean active;
+   private final YoInteger convergedTicks;
+
+   /** The models and gain of the last full tick. */
+   private final DenseMatrix64F F = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F Q = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F H = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F R = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F K = new DenseMatrix64F(0, 0);
+   private boolean hasReference = false;
+
+   public SteadyStateGain(YoVariableRegistry registry)
+   {
+      enable = new BooleanParameter("enableSteadyStateGain", registry, false);
+      tolerance = new DoubleParameter("steadyStateGainTolerance", registry, 1.0e-10);
+      convergedTicksToActivate = new IntegerParameter("steadyStateGainTicks", registry, 100);
+
+      active = new YoBoolean("steadyStateGainActive", registry);
+      convergedTicks = new YoInteger("steadyStateGainConvergedTicks", registry);
+   }
+
+   /**
+    * Whether the fixed gain mode is enabled. If so the full filter must compute the gain in every tick.
+    */
+   public boolean isEnabled()
+   {
+      return enable.getValue();
+   }
+
+   /**
+    * Whether the filter is in fixed gain mode. If so {@link #getGain()} provides the gain to use.
+    */
+   public boolean isActive()
+   {
+      return active.getValue();
+   }
+
+   public DenseMatrix64F getGain()
+   {
+      return K;
+   }
+
+   /**
+    * Checks whether the prediction model is the one the steady state gain was computed for. Reverts to the full
+    * filter if not.
+    *
+    * @return whether the fixed gain mode is still active.
+    */
+   public boolean checkPredictionModel(DenseMatrix64F F, DenseMatrix64F Q)
+   {
+      if (active.getValue() && (!enable.getValue() || !isIdentical(F, this.F) || !isIdentical(Q, this.Q)))
+      {
+         reset();
+      }
+      return active.getValue();
+   }
+
+   /**
+    * Checks whether the measurement model is the one the steady state gain was computed for. Reverts to the full
+    * filter if not.
+    *
+    * @return whether the fixed gain mode is still active.
+    */
+   public boolean checkMeasurementModel(DenseMatrix64F H, DenseMatrix64F R)
+   {
+      if (active.getValue() && (!isIdentical(H, this.H) || !isIdentical(R, this.R)))
+      {
+         reset();
+      }
+      return active.getValue();
+   }
+
+   /**
+    * Must be called after every full filter tick with the models and gain of that tick. Switches to the fixed gain
+    * mode once the gain has converged.
+    */
+   public void update(DenseMatrix64F F, DenseMatrix64F Q, DenseMatrix64F H, DenseMatrix64F R, DenseMatrix64F K)
+   {
+      if (!enable.getValue())
+      {
+         reset();
+         return;
+      }
+
+      boolean modelUnchanged = hasReference && isIdentical(F, this.F) && isIdentical(Q, this.Q) && isIdentical(H, this.H) && isIdentical(R, this.R);
+      if (modelUnchanged && K.getNumCols() > 0 && hasConverged(K, this.K, tolerance.getValue()))
+      {
+         convergedTicks.increment();
+      }
+      else
+      {
+         convergedTicks.set(0);
+      }
+
+      this.F.set(F);
+      this.Q.set(Q);
+      this.H.set(H);
+      this.R.set(R);
+      this.K.set(K);
+      hasReference = true;
+
+      if (convergedTicks.getIntegerValue() >= convergedTicksToActivate.getValue())
+      {
+         active.set(true);
+      }
+   }
+
+   /**
+    * Reverts to the full filter and restarts the convergence detection.
+    */
+   public void reset()
+   {
+      active.set(false);
+      convergedTicks.set(0);
+      hasReference = false;
+   }
+
+   /**
+    * Whether the largest change of an entry of the gain is below the tolerance relative to the largest entry.
+    */
+   private static boolean hasConverged(DenseMatrix64F K, DenseMatrix64F previousK, double tolerance)
+   {
+      if (K.getNumRows() != previousK.getNumRows() || K.getNumCols() != previousK.getNumCols())
+      {
+         return false;
+      }
+
+      double maxEntry = 0.0;
+      double maxChange = 0.0;
+      for (int i = 0; i < K.getNumElements(); i++)
+      {
+         maxEntry = Math.max(maxEntry, Math.abs(K.data[i]));
+         maxChange = Math.max(maxChange, Math.abs(K.data[i] - previousK.data[i]));
+      }
+      return maxChange <= tolerance * maxEntry;
+   }
+
+   private static boolean isIdentical(DenseMatrix64F A, DenseMatrix64F B)
+   {
+      if (A.getNumRows() != B.getNumRows() || A.getNumCols() != B.getNumCols())
+      {
+         return false;
+      }
+
+      for (int i = 0; i < A.getNumElements(); i++)
+      {
+         if (A.data[i] != B.data[i])
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+}
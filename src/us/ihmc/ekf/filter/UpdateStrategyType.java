@@ -0,0 +1,38 @@
+package us.ihmc.ekf.filter;
+
+/**
+ * The available implementations of the {@link MeasurementUpdate}. Which one is the fastest depends on the size of
+ * the state, the size of the measurement, and on the sparsity of the measurement jacobian of a robot. The
+ * {@link StateEstimator} can pick the fastest one before the periodic ticks start (see
+ * {@link StateEstimator#calibrateUpdateStrategy()}).
+ */
+public enum UpdateStrategyType
+{
+   /** The standard update with the Joseph form (see {@link BatchedMeasurementUpdate}). */
+   BATCHED,
+   /** One scalar measurement at a time (see {@link SequentialMeasurementUpdate}). Requires a diagonal R. */
+   SEQUENTIAL,
+   /** The information form of the update (see {@link InformationMeasurementUpdate}). */
+   INFORMATION;
+
+   /**
+    * Creates a new instance of the measurement update of this type.
+    *
+    * @param filterMatrixOps the matrix operations used by the update.
+    * @return the new measurement update.
+    */
+   public MeasurementUpdate create(FilterMatrixOps filterMatrixOps)
+   {
+      switch (this)
+      {
+      case BATCHED:
+         return new BatchedMeasurementUpdate(filterMatrixOps);
+      case SEQUENTIAL:
+         return new SequentialMeasurementUpdate();
+      case INFORMATION:
+         return new InformationMeasurementUpdate(filterMatrixOps);
+      default:
+         throw new RuntimeException("Unknown type " + this);
+      }
+   }
+}
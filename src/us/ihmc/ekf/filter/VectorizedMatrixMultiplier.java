@@ -0,0 +1,138 @@
+package us.ihmc.ekf.filter;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.ejml.data.DenseMatrix64F;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * A {@link MatrixMultiplier} with product kernels that are shaped such that the just in time compiler can translate
+ * them to SIMD instructions.
+ * <p>
+ * The innermost loop of every kernel runs over contiguous entries of a row of the result and of rows of the right
+ * hand side without any dependency between iterations. This is the pattern the superword optimization of the HotSpot
+ * server compiler vectorizes for the SSE, AVX2 and AVX-512 instruction sets. Four rows of the right hand side are
+ * processed per pass to reduce the loads and stores of the result row. For {@code A * B'} the matrix {@code B} is
+ * transposed into a buffer first such that the same kernel can be used instead of a dot product that does not
+ * vectorize.
+ * </p>
+ * <p>
+ * The results are the same as with the scalar implementations up to the rounding of the summation order.
+ * </p>
+ */
+public class VectorizedMatrixMultiplier implements MatrixMultiplier
+{
+   private static final int UNROLL = 4;
+
+   private double[] transposeBuffer = new double[0];
+
+   /**
+    * Checks whether the running virtual machine vectorizes loops. This is the case for the HotSpot server compiler
+    * unless it was disabled with {@code -XX:-UseSuperWord}.
+    *
+    * @return whether the kernels of this multiplier are expected to be faster than scalar loops.
+    */
+   public static boolean isSupported()
+   {
+      try
+      {
+         HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+         return hotSpot != null && Boolean.parseBoolean(hotSpot.getVMOption("UseSuperWord").getValue());
+      }
+      catch (RuntimeException | LinkageError e)
+      {
+         // Not a HotSpot virtual machine or the option does not exist.
+         return false;
+      }
+   }
+
+   @Override
+   public void mult(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      if (A.getNumCols() != B.getNumRows())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+      result.reshape(A.getNumRows(), B.getNumCols());
+      mult(A.data, B.data, result.data, A.getNumRows(), A.getNumCols(), B.getNumCols());
+   }
+
+   @Override
+   public void multTransB(DenseMatrix64F A, DenseMatrix64F B, DenseMatrix64F result)
+   {
+      if (A.getNumCols() != B.getNumCols())
+      {
+         throw new RuntimeException("Matrix dimensions do not match.");
+      }
+
+      int inner = B.getNumCols();
+      int cols = B.getNumRows();
+      if (transposeBuffer.length < inner * cols)
+      {
+         transposeBuffer = new double[inner * cols];
+      }
+      transpose(B.data, transposeBuffer, cols, inner);
+
+      result.reshape(A.getNumRows(), cols);
+      mult(A.data, transposeBuffer, result.data, A.getNumRows(), inner, cols);
+   }
+
+   /**
+    * Computes {@code c = a * b} on row major arrays. The innermost loops are independent over {@code j} such that
+    * they can be vectorized.
+    */
+   private static void mult(double[] a, double[] b, double[] c, int rows, int inner, int cols)
+   {
+      Arrays.fill(c, 0, rows * cols, 0.0);
+      int unrolledInner = inner - inner % UNROLL;
+
+      for (int i = 0; i < rows; i++)
+      {
+         int cRow = i * cols;
+         int aRow = i * inner;
+
+         int k = 0;
+         for (; k < unrolledInner; k += UNROLL)
+         {
+            double a0 = a[aRow + k];
+            double a1 = a[aRow + k + 1];
+            double a2 = a[aRow + k + 2];
+            double a3 = a[aRow + k + 3];
+            int b0 = k * cols;
+            int b1 = b0 + cols;
+            int b2 = b1 + cols;
+            int b3 = b2 + cols;
+            for (int j = 0; j < cols; j++)
+            {
+               c[cRow + j] += a0 * b[b0 + j] + a1 * b[b1 + j] + a2 * b[b2 + j] + a3 * b[b3 + j];
+            }
+         }
+         for (; k < inner; k++)
+         {
+            double aik = a[aRow + k];
+            int bRow = k * cols;
+            for (int j = 0; j < cols; j++)
+            {
+               c[cRow + j] += aik * b[bRow + j];
+            }
+         }
+      }
+   }
+
+   /**
+    * Packs the transpose of the row major {@code rows x cols} matrix {@code a} into {@code aTrans}.
+    */
+   private static void transpose(double[] a, double[] aTrans, int rows, int cols)
+   {
+      for (int i = 0; i < rows; i++)
+      {
+         int aRow = i * cols;
+         for (int j = 0; j < cols; j++)
+         {
+            aTrans[j * rows + i] = a[aRow + j];
+         }
+      }
+   }
+}
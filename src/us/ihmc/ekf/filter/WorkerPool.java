@@ -0,0 +1,195 @@
+package us.ihmc.ekf.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed pool of worker threads to split the work of a filter tick into independent tasks.
+ * <p>
+ * The pool is meant for a real-time loop: the threads are created once and a call to
+ * {@link #run(Task, int)} does not allocate any memory. The calling thread takes part in the work and the call
+ * returns once all tasks are done. Idle workers spin for a short while before they park so that a pool that is
+ * used in every tick wakes up fast.
+ * </p>
+ * <p>
+ * Tasks are claimed by index from a shared counter. The counter is combined with the number of the run such that
+ * a worker that is late to finish a run can never claim a task of the following run. A new run is closed while the
+ * task is being set up so no worker can see a mix of the old and new run.
+ * </p>
+ */
+public class WorkerPool
+{
+   /** The number of times an idle worker checks for new work before parking. */
+   private static final int SPIN_ITERATIONS = 10000;
+   /** Marks a run that is being set up and can not be worked on yet. */
+   private static final long CLOSED = 0xFFFFFFFFL;
+
+   public interface Task
+   {
+      /**
+       * Performs the task with the given index. Tasks of the same run are executed concurrently and must only
+       * write to data that is not shared with other tasks of the run.
+       *
+       * @param taskIndex the index of the task between zero and the number of tasks of the run.
+       */
+      void run(int taskIndex);
+   }
+
+   private final Thread[] workers;
+
+   /** The upper 32 bits hold the number of the current run and the lower bits the index of the next task. */
+   private final AtomicLong runAndNextTask = new AtomicLong();
+   private final AtomicInteger completedTasks = new AtomicInteger();
+
+   private volatile Task task;
+   private volatile int numberOfTasks;
+   private volatile Throwable failure;
+   private volatile boolean running = true;
+
+   /**
+    * Creates and starts a new pool.
+    *
+    * @param name the prefix for the names of the threads.
+    * @param numberOfWorkers the number of threads in addition to the thread calling {@link #run(Task, int)}.
+    */
+   public WorkerPool(String name, int numberOfWorkers)
+   {
+      if (numberOfWorkers < 0)
+      {
+         throw new RuntimeException("Number of workers must not be negative. Got " + numberOfWorkers);
+      }
+
+      workers = new Thread[numberOfWorkers];
+      for (int i = 0; i < numberOfWorkers; i++)
+      {
+         workers[i] = new Thread(this::workerLoop, name + "Worker" + i);
+         workers[i].setDaemon(true);
+         workers[i].start();
+      }
+   }
+
+   /**
+    * The number of threads that are working on a run including the calling thread.
+    */
+   public int getParallelism()
+   {
+      return workers.length + 1;
+   }
+
+   /**
+    * Executes the tasks with index zero to {@code numberOfTasks - 1} and waits until they are done. Must only be
+    * called by one thread at a time.
+    *
+    * @param task the work to perform.
+    * @param numberOfTasks the number of tasks.
+    */
+   public void run(Task task, int numberOfTasks)
+   {
+      if (!running)
+      {
+         throw new RuntimeException("The worker pool was shut down.");
+      }
+      if (numberOfTasks <= 0)
+      {
+         return;
+      }
+
+      long run = (runAndNextTask.get() >>> 32) + 1;
+      runAndNextTask.set(run << 32 | CLOSED);
+
+      this.task = task;
+      this.numberOfTasks = numberOfTasks;
+      failure = null;
+      completedTasks.set(0);
+
+      runAndNextTask.set(run << 32);
+      for (int i = 0; i < workers.length; i++)
+      {
+         LockSupport.unpark(workers[i]);
+      }
+
+      work(run);
+      while (completedTasks.get() < numberOfTasks)
+      {
+         // Busy wait: the remaining tasks are being finished by the workers.
+      }
+
+      this.task = null;
+      if (failure != null)
+      {
+         throw new RuntimeException("A task of the worker pool failed.", failure);
+      }
+   }
+
+   /**
+    * Stops all workers. The pool can not be used afterwards.
+    */
+   public void shutdown()
+   {
+      running = false;
+      for (int i = 0; i < workers.length; i++)
+      {
+         LockSupport.unpark(workers[i]);
+      }
+   }
+
+   private void workerLoop()
+   {
+      long lastRun = 0;
+      int spins = 0;
+
+      while (running)
+      {
+         long current = runAndNextTask.get();
+         long run = current >>> 32;
+         if (run != lastRun && (current & CLOSED) != CLOSED)
+         {
+            lastRun = run;
+            spins = 0;
+            work(run);
+         }
+         else if (spins < SPIN_ITERATIONS)
+         {
+            spins++;
+         }
+         else
+         {
+            LockSupport.park(this);
+         }
+      }
+   }
+
+   private void work(long run)
+   {
+      Task task = this.task;
+      int numberOfTasks = this.numberOfTasks;
+
+      while (true)
+      {
+         long current = runAndNextTask.get();
+         long taskIndex = current & CLOSED;
+         if (current >>> 32 != run || taskIndex >= numberOfTasks)
+         {
+            return;
+         }
+         if (!runAndNextTask.compareAndSet(current, current + 1))
+         {
+            continue;
+         }
+
+         try
+         {
+            task.run((int) taskIndex);
+         }
+         catch (Throwable e)
+         {
+            failure = e;
+         }
+         finally
+         {
+            completedTasks.incrementAndGet();
+         }
+      }
+   }
+}
@@ -39,6 +39,8 @@ public abstract class BodyVelocitySensor extends Sensor
 {
    private static final int measurementSize = 3;
 
+   private final String sensorName;
+
    private final FrameVector3D measurement;
    private final BiasState biasState;
    private final DoubleProvider variance;
@@ -54,6 +56,7 @@ public abstract class BodyVelocitySensor extends Sensor
 
    public BodyVelocitySensor(String sensorName, double dt, RigidBody body, ReferenceFrame measurementFrame, boolean estimateBias, YoVariableRegistry registry)
    {
+      this.sensorName = sensorName;
       this.sqrtHz = 1.0 / Math.sqrt(dt);
 
       measurement = new FrameVector3D(measurementFrame);
@@ -98,6 +101,12 @@ public abstract class BodyVelocitySensor extends Sensor
       }
    }
 
+   @Override
+   public String getName()
+   {
+      return sensorName;
+   }
+
    @Override
    public int getMeasurementSize()
    {
@@ -105,29 +114,50 @@ public abstract class BodyVelocitySensor extends Sensor
    }
 
    @Override
-   public void getRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, RobotState robotState)
+   public void evaluateRobotModel(RobotState robotState)
    {
       robotJacobian.computeJacobianMatrix();
       robotJacobian.getJacobianMatrix(jacobianMatrix);
+      robotState.getStateVector(tempRobotState);
+   }
 
+   /**
+    * Only uses the data obtained in {@link #evaluateRobotModel(RobotState)} so it can be evaluated concurrently with
+    * other sensors.
+    */
+   @Override
+   public boolean isThreadSafe()
+   {
+      return true;
+   }
+
+   @Override
+   public void packRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, int startRow, RobotState robotState)
+   {
       packRelevantJacobianPart(jacobianRelevantPart, jacobianMatrix);
-      FilterTools.insertForVelocity(jacobianToPack, oneDofJointNames, jacobianRelevantPart, robotState);
+      FilterTools.insertForVelocity(jacobianToPack, startRow, oneDofJointNames, jacobianRelevantPart, robotState);
 
       // Compute the sensor measurement based on the robot state:
-      residualToPack.reshape(measurementSize, 1);
-      robotState.getStateVector(tempRobotState);
-      CommonOps.mult(jacobianToPack, tempRobotState, residualToPack);
+      for (int i = 0; i < measurementSize; i++)
+      {
+         double expectedMeasurement = 0.0;
+         for (int j = 0; j < tempRobotState.getNumRows(); j++)
+         {
+            expectedMeasurement += jacobianToPack.unsafe_get(startRow + i, j) * tempRobotState.get(j);
+         }
+         residualToPack.set(startRow + i, -expectedMeasurement);
+      }
 
       // Compute the residual considering the sensor bias and the current measurement:
-      residualToPack.set(0, measurement.getX() - residualToPack.get(0));
-      residualToPack.set(1, measurement.getY() - residualToPack.get(1));
-      residualToPack.set(2, measurement.getZ() - residualToPack.get(2));
+      residualToPack.add(startRow + 0, 0, measurement.getX());
+      residualToPack.add(startRow + 1, 0, measurement.getY());
+      residualToPack.add(startRow + 2, 0, measurement.getZ());
 
       if (biasState != null)
       {
-         residualToPack.set(0, residualToPack.get(0) - biasState.getBias(0));
-         residualToPack.set(1, residualToPack.get(1) - biasState.getBias(1));
-         residualToPack.set(2, residualToPack.get(2) - biasState.getBias(2));
+         residualToPack.add(startRow + 0, 0, -biasState.getBias(0));
+         residualToPack.add(startRow + 1, 0, -biasState.getBias(1));
+         residualToPack.add(startRow + 2, 0, -biasState.getBias(2));
       }
    }
 
@@ -139,8 +169,36 @@ public abstract class BodyVelocitySensor extends Sensor
       CommonOps.scale(variance.getValue() * sqrtHz, matrixToPack);
    }
 
+   @Override
+   public boolean isRMatrixDiagonal()
+   {
+      return true;
+   }
+
+   @Override
+   public void getRMatrixDiagonal(DenseMatrix64F diagonalToPack, int startIndex)
+   {
+      double value = variance.getValue() * sqrtHz;
+      for (int i = 0; i < measurementSize; i++)
+      {
+         diagonalToPack.set(startIndex + i, value);
+      }
+   }
+
    public void setMeasurement(Vector3DReadOnly measurement)
    {
       this.measurement.set(measurement);
    }
+
+   @Override
+   public void getMeasurement(DenseMatrix64F measurementToPack, int startIndex)
+   {
+      measurement.get(startIndex, measurementToPack);
+   }
+
+   @Override
+   public void setMeasurement(DenseMatrix64F measurement, int startIndex)
+   {
+      this.measurement.set(startIndex, measurement);
+   }
 }
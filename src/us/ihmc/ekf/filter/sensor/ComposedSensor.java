@@ -3,11 +3,14 @@ package us.ihmc.ekf.filter.sensor;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.ejml.data.DenseMatrix64F;
 import org.ejml.ops.CommonOps;
 
+import us.ihmc.ekf.filter.FilterTools;
+import us.ihmc.ekf.filter.WorkerPool;
 import us.ihmc.ekf.filter.state.ComposedState;
 import us.ihmc.ekf.filter.state.RobotState;
 import us.ihmc.ekf.filter.state.State;
@@ -15,14 +18,25 @@ import us.ihmc.ekf.filter.state.State;
 public class ComposedSensor extends Sensor
 {
    private final List<ImmutablePair<MutableInt, Sensor>> subSensorList = new ArrayList<>();
+   private final List<MutableBoolean> activeSensors = new ArrayList<>();
+   private int measurementSize = 0;
    private final ComposedState sensorState = new ComposedState();
 
-   private final DenseMatrix64F tempJacobian = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F tempResidual = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F tempRMatrix = new DenseMatrix64F(0, 0);
    private final int robotStateSize;
 
-   private final DenseMatrix64F tempRobotJacobian = new DenseMatrix64F(0, 0);
-   private final DenseMatrix64F tempSensorJacobian = new DenseMatrix64F(0, 0);
+   /** Set whenever the active sensors change such that the sensor part of the jacobian needs to be rewritten. */
+   private boolean layoutChanged = true;
+   private DenseMatrix64F lastJacobian = null;
+
+   /** If set the thread safe sub-sensors are evaluated in parallel using this pool. */
+   private WorkerPool workerPool = null;
+   private int[] parallelSensorIndices = new int[0];
+   private final WorkerPool.Task packTask = this::packSubSensor;
+   private DenseMatrix64F jacobianForWorkers;
+   private DenseMatrix64F residualForWorkers;
+   private int startRowForWorkers;
+   private RobotState robotStateForWorkers;
 
    public ComposedSensor(List<Sensor> sensors, int robotStateSize)
    {
@@ -37,12 +51,158 @@ public class ComposedSensor extends Sensor
    public int addSensor(Sensor sensorToAdd)
    {
       int stateIndex = subSensorList.size();
-      int oldSize = getMeasurementSize();
-      subSensorList.add(new ImmutablePair<>(new MutableInt(oldSize), sensorToAdd));
+      subSensorList.add(new ImmutablePair<>(new MutableInt(measurementSize), sensorToAdd));
+      activeSensors.add(new MutableBoolean(true));
+      parallelSensorIndices = new int[subSensorList.size()];
       sensorState.addState(sensorToAdd.getSensorState());
+      measurementSize += sensorToAdd.getMeasurementSize();
+      layoutChanged = true;
       return stateIndex;
    }
 
+   /**
+    * Selects the sub-sensors that provide a measurement in the given estimator tick (see
+    * {@link Sensor#isUpdateDue(long)}). The measurement of this sensor (the rows of the jacobian, the residual, and the
+    * measurement covariance) will only contain the active sub-sensors until this method is called again. The sensor
+    * state is not affected: the states of inactive sensors remain in the filter but are not observed.
+    *
+    * @param tick the estimator tick that is about to be corrected.
+    * @return the size of the measurement in this tick.
+    */
+   public int setActiveSensors(long tick)
+   {
+      measurementSize = 0;
+
+      for (int i = 0; i < subSensorList.size(); i++)
+      {
+         ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
+         Sensor subSensor = pair.getRight();
+         boolean active = subSensor.isUpdateDue(tick);
+
+         layoutChanged |= activeSensors.get(i).booleanValue() != active;
+         activeSensors.get(i).setValue(active);
+         pair.getLeft().setValue(measurementSize);
+         if (active)
+         {
+            measurementSize += subSensor.getMeasurementSize();
+         }
+      }
+
+      return measurementSize;
+   }
+
+   /**
+    * Selects a single sub-sensor to be used in the measurement of this sensor. This is used to correct the filter
+    * with a measurement that was not scheduled with the regular estimator tick.
+    *
+    * @param subSensor the sensor to use. Must have been added to this sensor.
+    * @return the size of the measurement.
+    */
+   public int setActiveSensor(Sensor subSensor)
+   {
+      boolean found = false;
+
+      for (int i = 0; i < subSensorList.size(); i++)
+      {
+         ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
+         boolean active = pair.getRight() == subSensor;
+
+         layoutChanged |= activeSensors.get(i).booleanValue() != active;
+         activeSensors.get(i).setValue(active);
+         pair.getLeft().setValue(0);
+         found |= active;
+      }
+
+      if (!found)
+      {
+         throw new RuntimeException("The sensor is not part of this composed sensor.");
+      }
+
+      measurementSize = subSensor.getMeasurementSize();
+      return measurementSize;
+   }
+
+   public int getNumberOfSensors()
+   {
+      return subSensorList.size();
+   }
+
+   public Sensor getSensor(int sensorIndex)
+   {
+      return subSensorList.get(sensorIndex).getRight();
+   }
+
+   /**
+    * Whether the sub-sensor with the given index is part of the current measurement.
+    */
+   public boolean isSensorActive(int sensorIndex)
+   {
+      return activeSensors.get(sensorIndex).isTrue();
+   }
+
+   /**
+    * Provides the index of the first row of the sub-sensor with the given index in the current measurement. This is
+    * only meaningful if the sensor is active.
+    */
+   public int getMeasurementStartIndex(int sensorIndex)
+   {
+      return subSensorList.get(sensorIndex).getLeft().intValue();
+   }
+
+   /**
+    * Removes active sub-sensors from the current measurement after the jacobian and residual have been assembled (see
+    * {@link #assembleFullJacobian(DenseMatrix64F, DenseMatrix64F, RobotState)}). The rows of the remaining sensors
+    * are moved up in place such that the sensor models do not need to be evaluated again. The measurement
+    * covariance must be obtained after calling this method.
+    *
+    * @param sensorsToRemove flags the sub-sensors to remove from the measurement by index.
+    * @param jacobian the full measurement jacobian (modified).
+    * @param residual the measurement residual (modified).
+    * @return the size of the remaining measurement.
+    */
+   public int removeSensors(boolean[] sensorsToRemove, DenseMatrix64F jacobian, DenseMatrix64F residual)
+   {
+      int cols = jacobian.getNumCols();
+      int newMeasurementSize = 0;
+
+      for (int i = 0; i < subSensorList.size(); i++)
+      {
+         if (activeSensors.get(i).isFalse())
+         {
+            continue;
+         }
+
+         ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
+         if (sensorsToRemove[i])
+         {
+            activeSensors.get(i).setFalse();
+            layoutChanged = true;
+            continue;
+         }
+
+         int oldStartIndex = pair.getLeft().intValue();
+         int size = pair.getRight().getMeasurementSize();
+         if (oldStartIndex != newMeasurementSize)
+         {
+            System.arraycopy(jacobian.data, oldStartIndex * cols, jacobian.data, newMeasurementSize * cols, size * cols);
+            System.arraycopy(residual.data, oldStartIndex, residual.data, newMeasurementSize, size);
+         }
+         pair.getLeft().setValue(newMeasurementSize);
+         newMeasurementSize += size;
+      }
+
+      measurementSize = newMeasurementSize;
+      jacobian.reshape(measurementSize, cols);
+      residual.reshape(measurementSize, 1);
+      return measurementSize;
+   }
+
+   @Override
+   public String getName()
+   {
+      return getClass().getSimpleName();
+   }
+
    @Override
    public State getSensorState()
    {
@@ -52,51 +212,109 @@ public class ComposedSensor extends Sensor
    @Override
    public int getMeasurementSize()
    {
-      if (subSensorList.isEmpty())
-      {
-         return 0;
-      }
+      return measurementSize;
+   }
 
-      ImmutablePair<MutableInt, Sensor> lastSubState = subSensorList.get(subSensorList.size() - 1);
-      return lastSubState.getLeft().intValue() + lastSubState.getRight().getMeasurementSize();
+   /**
+    * Enables the parallel evaluation of the sub-sensors that are thread safe (see {@link Sensor#isThreadSafe()}). The
+    * robot model is evaluated for all active sub-sensors on the calling thread first (see
+    * {@link Sensor#evaluateRobotModel(RobotState)}) and the sub-sensors that are not thread safe are packed. Then each
+    * of the thread safe sub-sensors packs its own rows of the measurement jacobian and residual on one of the threads
+    * of the pool. The result is identical to the sequential evaluation.
+    *
+    * @param workerPool the pool used to evaluate the sub-sensors or {@code null} to evaluate them sequentially.
+    */
+   public void setWorkerPool(WorkerPool workerPool)
+   {
+      this.workerPool = workerPool;
    }
 
    @Override
-   public void getRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, RobotState robotState)
+   public void packRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, int startRow, RobotState robotState)
    {
-      jacobianToPack.reshape(getMeasurementSize(), robotStateSize);
-      CommonOps.fill(jacobianToPack, 0.0);
-
-      residualToPack.reshape(getMeasurementSize(), 1);
-      CommonOps.fill(residualToPack, 0.0);
+      if (workerPool != null)
+      {
+         packRobotJacobianAndResidualInParallel(jacobianToPack, residualToPack, startRow, robotState);
+         return;
+      }
 
       for (int i = 0; i < subSensorList.size(); i++)
       {
+         if (activeSensors.get(i).isFalse())
+         {
+            continue;
+         }
+
          ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
-         int startIndex = pair.getLeft().intValue();
-         Sensor subSensor = pair.getRight();
+         pair.getRight().evaluateRobotModel(robotState);
+         pair.getRight().packRobotJacobianAndResidual(jacobianToPack, residualToPack, startRow + pair.getLeft().intValue(), robotState);
+      }
+   }
+
+   private void packRobotJacobianAndResidualInParallel(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, int startRow,
+                                                       RobotState robotState)
+   {
+      int numberOfParallelSensors = 0;
+      for (int i = 0; i < subSensorList.size(); i++)
+      {
+         if (activeSensors.get(i).isFalse())
+         {
+            continue;
+         }
 
-         subSensor.getRobotJacobianAndResidual(tempJacobian, tempResidual, robotState);
-         CommonOps.insert(tempJacobian, jacobianToPack, startIndex, 0);
-         CommonOps.insert(tempResidual, residualToPack, startIndex, 0);
+         ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
+         pair.getRight().evaluateRobotModel(robotState);
+         if (pair.getRight().isThreadSafe())
+         {
+            parallelSensorIndices[numberOfParallelSensors++] = i;
+         }
+         else
+         {
+            pair.getRight().packRobotJacobianAndResidual(jacobianToPack, residualToPack, startRow + pair.getLeft().intValue(), robotState);
+         }
       }
+
+      jacobianForWorkers = jacobianToPack;
+      residualForWorkers = residualToPack;
+      startRowForWorkers = startRow;
+      robotStateForWorkers = robotState;
+
+      workerPool.run(packTask, numberOfParallelSensors);
+
+      jacobianForWorkers = null;
+      residualForWorkers = null;
+      robotStateForWorkers = null;
+   }
+
+   private void packSubSensor(int taskIndex)
+   {
+      ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(parallelSensorIndices[taskIndex]);
+      int startRow = startRowForWorkers + pair.getLeft().intValue();
+      pair.getRight().packRobotJacobianAndResidual(jacobianForWorkers, residualForWorkers, startRow, robotStateForWorkers);
    }
 
    @Override
    public void getSensorJacobian(DenseMatrix64F jacobianToPack)
    {
       jacobianToPack.reshape(getMeasurementSize(), sensorState.getSize());
-      CommonOps.fill(jacobianToPack, 0.0);
+      jacobianToPack.zero();
+      packSensorJacobian(jacobianToPack, 0, 0);
+   }
 
+   @Override
+   public void packSensorJacobian(DenseMatrix64F jacobianToPack, int startRow, int startCol)
+   {
       for (int i = 0; i < subSensorList.size(); i++)
       {
-         ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
-         int startIndexMeasurement = pair.getLeft().intValue();
-         Sensor subSensor = pair.getRight();
-         int startIndexSensor = sensorState.getStartIndex(i);
+         if (activeSensors.get(i).isFalse() || subSensorList.get(i).getRight().getSensorState().getSize() == 0)
+         {
+            continue;
+         }
 
-         subSensor.getSensorJacobian(tempJacobian);
-         CommonOps.insert(tempJacobian, jacobianToPack, startIndexMeasurement, startIndexSensor);
+         ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
+         int startIndexMeasurement = startRow + pair.getLeft().intValue();
+         int startIndexSensor = startCol + sensorState.getStartIndex(i);
+         pair.getRight().packSensorJacobian(jacobianToPack, startIndexMeasurement, startIndexSensor);
       }
    }
 
@@ -108,22 +326,70 @@ public class ComposedSensor extends Sensor
 
       for (int i = 0; i < subSensorList.size(); i++)
       {
+         if (activeSensors.get(i).isFalse())
+         {
+            continue;
+         }
+
          ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
          int startIndex = pair.getLeft().intValue();
          Sensor subSensor = pair.getRight();
 
-         subSensor.getRMatrix(tempJacobian);
-         CommonOps.insert(tempJacobian, matrixToPack, startIndex, startIndex);
+         subSensor.getRMatrix(tempRMatrix);
+         CommonOps.insert(tempRMatrix, matrixToPack, startIndex, startIndex);
       }
    }
 
-   public void assembleFullJacobian(DenseMatrix64F matrixToPack, DenseMatrix64F residualToPack, RobotState robotState)
+   @Override
+   public boolean isRMatrixDiagonal()
+   {
+      for (int i = 0; i < subSensorList.size(); i++)
+      {
+         if (activeSensors.get(i).isTrue() && !subSensorList.get(i).getRight().isRMatrixDiagonal())
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   @Override
+   public void getRMatrixDiagonal(DenseMatrix64F diagonalToPack, int startIndex)
    {
-      getRobotJacobianAndResidual(tempRobotJacobian, residualToPack, robotState);
-      getSensorJacobian(tempSensorJacobian);
-      matrixToPack.reshape(getMeasurementSize(), robotStateSize + sensorState.getSize());
-      CommonOps.insert(tempRobotJacobian, matrixToPack, 0, 0);
-      CommonOps.insert(tempSensorJacobian, matrixToPack, 0, robotStateSize);
+      for (int i = 0; i < subSensorList.size(); i++)
+      {
+         if (activeSensors.get(i).isFalse())
+         {
+            continue;
+         }
+
+         ImmutablePair<MutableInt, Sensor> pair = subSensorList.get(i);
+         pair.getRight().getRMatrixDiagonal(diagonalToPack, startIndex + pair.getLeft().intValue());
+      }
    }
 
+   /**
+    * Packs the full measurement jacobian {@code H} and the residual of all active sub-sensors. The jacobian is
+    * written in place: the robot part is packed by the sub-sensors directly into their rows. The part of the
+    * jacobian that corresponds to the sensor states is only rewritten if the set of active sensors changed since
+    * the last call or if a different matrix is passed in.
+    */
+   public void assembleFullJacobian(DenseMatrix64F matrixToPack, DenseMatrix64F residualToPack, RobotState robotState)
+   {
+      int rows = getMeasurementSize();
+      int cols = robotStateSize + sensorState.getSize();
+
+      if (layoutChanged || matrixToPack != lastJacobian || matrixToPack.getNumRows() != rows || matrixToPack.getNumCols() != cols)
+      {
+         matrixToPack.reshape(rows, cols);
+         FilterTools.setZero(matrixToPack, 0, rows, robotStateSize, sensorState.getSize());
+         packSensorJacobian(matrixToPack, 0, robotStateSize);
+         lastJacobian = matrixToPack;
+         layoutChanged = false;
+      }
+
+      residualToPack.reshape(rows, 1);
+      packRobotJacobianAndResidual(matrixToPack, residualToPack, 0, robotState);
+   }
 }
@@ -1,7 +1,6 @@
 package us.ihmc.ekf.filter.sensor;
 
 import org.ejml.data.DenseMatrix64F;
-import org.ejml.ops.CommonOps;
 
 import us.ihmc.ekf.filter.FilterTools;
 import us.ihmc.ekf.filter.state.JointState;
@@ -35,12 +34,30 @@ public class JointPositionSensor extends Sensor
       rawMeasurement = new YoDouble(FilterTools.stringToPrefix(jointName) + "raw", registry);
    }
 
+   @Override
+   public String getName()
+   {
+      return FilterTools.stringToPrefix(jointName) + "JointPosition";
+   }
+
    public void setJointPositionMeasurement(double jointPosition)
    {
       measurement = jointPosition;
       rawMeasurement.set(measurement);
    }
 
+   @Override
+   public void getMeasurement(DenseMatrix64F measurementToPack, int startIndex)
+   {
+      measurementToPack.set(startIndex, measurement);
+   }
+
+   @Override
+   public void setMeasurement(DenseMatrix64F measurement, int startIndex)
+   {
+      setJointPositionMeasurement(measurement.get(startIndex));
+   }
+
    @Override
    public int getMeasurementSize()
    {
@@ -48,15 +65,22 @@ public class JointPositionSensor extends Sensor
    }
 
    @Override
-   public void getRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, RobotState robotState)
+   public void packRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, int startRow, RobotState robotState)
    {
-      jacobianToPack.reshape(measurementSize, robotState.getSize());
-      CommonOps.fill(jacobianToPack, 0.0);
-      jacobianToPack.set(0, robotState.findJointPositionIndex(jointName), 1.0);
+      FilterTools.setZero(jacobianToPack, startRow, measurementSize, 0, robotState.getSize());
+      jacobianToPack.set(startRow, robotState.findJointPositionIndex(jointName), 1.0);
 
-      residualToPack.reshape(measurementSize, 1);
       JointState jointState = robotState.getJointState(jointName);
-      residualToPack.set(0, measurement - jointState.getQ());
+      residualToPack.set(startRow, measurement - jointState.getQ());
+   }
+
+   /**
+    * This sensor only reads the robot state so it can be evaluated concurrently with other sensors.
+    */
+   @Override
+   public boolean isThreadSafe()
+   {
+      return true;
    }
 
    @Override
@@ -65,4 +89,16 @@ public class JointPositionSensor extends Sensor
       matrixToPack.reshape(measurementSize, measurementSize);
       matrixToPack.set(0, 0, jointPositionVariance.getValue() * sqrtHz);
    }
+
+   @Override
+   public boolean isRMatrixDiagonal()
+   {
+      return true;
+   }
+
+   @Override
+   public void getRMatrixDiagonal(DenseMatrix64F diagonalToPack, int startIndex)
+   {
+      diagonalToPack.set(startIndex, jointPositionVariance.getValue() * sqrtHz);
+   }
 }
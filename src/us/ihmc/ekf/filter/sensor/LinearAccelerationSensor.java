@@ -30,6 +30,8 @@ public class LinearAccelerationSensor extends Sensor
 {
    private static final int measurementSize = 3;
 
+   private final String sensorName;
+
    private final BiasState biasState;
 
    private final GeometricJacobianCalculator robotJacobian = new GeometricJacobianCalculator();
@@ -84,6 +86,7 @@ public class LinearAccelerationSensor extends Sensor
    public LinearAccelerationSensor(String sensorName, double dt, RigidBody body, ReferenceFrame measurementFrame, boolean estimateBias,
                                    YoVariableRegistry registry)
    {
+      this.sensorName = sensorName;
       this.dt = dt;
       this.sqrtHz = 1.0 / Math.sqrt(dt);
       this.measurementFrame = measurementFrame;
@@ -132,12 +135,52 @@ public class LinearAccelerationSensor extends Sensor
       }
    }
 
+   @Override
+   public String getName()
+   {
+      return sensorName;
+   }
+
    @Override
    public int getMeasurementSize()
    {
       return measurementSize;
    }
 
+   @Override
+   public void evaluateRobotModel(RobotState robotState)
+   {
+      robotState.getStateVector(tempRobotState);
+      robotJacobian.computeJacobianMatrix();
+      robotJacobian.computeConvectiveTerm();
+      robotJacobian.getJacobianMatrix(jacobianMatrix);
+      robotJacobian.getConvectiveTerm(convectiveTerm);
+
+      robotJacobian.getEndEffector().getBodyFixedFrame().getTwistOfFrame(sensorTwist);
+      sensorTwist.changeFrame(measurementFrame);
+
+      gravityTerm.setIncludingFrame(ReferenceFrame.getWorldFrame(), 0.0, 0.0, robotState.getGravity());
+      gravityTerm.changeFrame(measurementFrame);
+
+      if (robotState.isFloating())
+      {
+         ReferenceFrame rootFrame = robotJacobian.getJointsFromBaseToEndEffector().get(0).getFrameAfterJoint();
+         ReferenceFrame baseFrame = robotJacobian.getJointsFromBaseToEndEffector().get(0).getFrameBeforeJoint();
+         rootFrame.getTransformToDesiredFrame(rootToMeasurement, measurementFrame);
+         baseFrame.getTransformToDesiredFrame(rootTransform, rootFrame);
+      }
+   }
+
+   /**
+    * Only uses the data obtained in {@link #evaluateRobotModel(RobotState)} so it can be evaluated concurrently with
+    * other sensors.
+    */
+   @Override
+   public boolean isThreadSafe()
+   {
+      return true;
+   }
+
    /**
     * The measured acceleration is
     * <p>
@@ -146,12 +189,8 @@ public class LinearAccelerationSensor extends Sensor
     * </p>
     */
    @Override
-   public void getRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, RobotState robotState)
+   public void packRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, int startRow, RobotState robotState)
    {
-      robotState.getStateVector(tempRobotState);
-      robotJacobian.computeJacobianMatrix();
-      robotJacobian.computeConvectiveTerm();
-      robotJacobian.getJacobianMatrix(jacobianMatrix);
       CommonOps.extract(jacobianMatrix, 0, 3, 0, jacobianMatrix.getNumCols(), jacobianAngularPart, 0, 0);
       CommonOps.extract(jacobianMatrix, 3, 6, 0, jacobianMatrix.getNumCols(), jacobianLinearPart, 0, 0);
 
@@ -162,32 +201,24 @@ public class LinearAccelerationSensor extends Sensor
       linearJointTerm.setIncludingFrame(measurementFrame, 3, jointAccelerationTerm);
 
       // Jd * qd
-      robotJacobian.getConvectiveTerm(convectiveTerm);
       linearConvectiveTerm.setIncludingFrame(measurementFrame, 3, convectiveTerm);
 
       // w x v
-      robotJacobian.getEndEffector().getBodyFixedFrame().getTwistOfFrame(sensorTwist);
-      sensorTwist.changeFrame(measurementFrame);
       centrifugalTerm.setToZero(measurementFrame);
       sensorTwist.getAngularPart(sensorAngularVelocity);
       sensorTwist.getLinearPart(sensorLinearVelocity);
       centrifugalTerm.cross(sensorAngularVelocity, sensorLinearVelocity);
 
-      // R * g
-      gravityTerm.setIncludingFrame(ReferenceFrame.getWorldFrame(), 0.0, 0.0, robotState.getGravity());
-      gravityTerm.changeFrame(measurementFrame);
-
       // Compute the residual by substracting all terms from the measurement:
-      residualToPack.reshape(measurementSize, 1);
-      residualToPack.set(0, measurement.getX() - linearJointTerm.getX() - linearConvectiveTerm.getX() - centrifugalTerm.getX() - gravityTerm.getX());
-      residualToPack.set(1, measurement.getY() - linearJointTerm.getY() - linearConvectiveTerm.getY() - centrifugalTerm.getY() - gravityTerm.getY());
-      residualToPack.set(2, measurement.getZ() - linearJointTerm.getZ() - linearConvectiveTerm.getZ() - centrifugalTerm.getZ() - gravityTerm.getZ());
+      residualToPack.set(startRow + 0, measurement.getX() - linearJointTerm.getX() - linearConvectiveTerm.getX() - centrifugalTerm.getX() - gravityTerm.getX());
+      residualToPack.set(startRow + 1, measurement.getY() - linearJointTerm.getY() - linearConvectiveTerm.getY() - centrifugalTerm.getY() - gravityTerm.getY());
+      residualToPack.set(startRow + 2, measurement.getZ() - linearJointTerm.getZ() - linearConvectiveTerm.getZ() - centrifugalTerm.getZ() - gravityTerm.getZ());
 
       if (biasState != null)
       {
-         residualToPack.set(0, residualToPack.get(0) - biasState.getBias(0));
-         residualToPack.set(1, residualToPack.get(1) - biasState.getBias(1));
-         residualToPack.set(2, residualToPack.get(2) - biasState.getBias(2));
+         residualToPack.add(startRow + 0, 0, -biasState.getBias(0));
+         residualToPack.add(startRow + 1, 0, -biasState.getBias(1));
+         residualToPack.add(startRow + 2, 0, -biasState.getBias(2));
       }
 
       // Now for assembling the linearized measurement model:
@@ -218,22 +249,24 @@ public class LinearAccelerationSensor extends Sensor
       gravityTermLinearization.zero();
       if (robotState.isFloating())
       {
-         ReferenceFrame rootFrame = robotJacobian.getJointsFromBaseToEndEffector().get(0).getFrameAfterJoint();
-         ReferenceFrame baseFrame = robotJacobian.getJointsFromBaseToEndEffector().get(0).getFrameBeforeJoint();
-         rootFrame.getTransformToDesiredFrame(rootToMeasurement, measurementFrame);
-         baseFrame.getTransformToDesiredFrame(rootTransform, rootFrame);
-
          gravityPart.setToTildeForm(gravityTerm);
          gravityPart.multiply(rootToMeasurement.getRotationMatrix());
          gravityPart.multiply(rootTransform.getRotationMatrix());
          gravityPart.get(0, robotState.findOrientationIndex(), gravityTermLinearization);
       }
 
-      // Add all linearizations together:
-      jacobianToPack.set(linearJointTermLinearization);
-      CommonOps.add(jacobianToPack, convectiveTermLinearization, jacobianToPack);
-      CommonOps.add(jacobianToPack, centrifugalTermLinearization, jacobianToPack);
-      CommonOps.add(jacobianToPack, gravityTermLinearization, jacobianToPack);
+      // Add all linearizations together and write them to the rows of this sensor:
+      for (int i = 0; i < measurementSize; i++)
+      {
+         for (int j = 0; j < robotState.getSize(); j++)
+         {
+            double value = linearJointTermLinearization.unsafe_get(i, j);
+            value += convectiveTermLinearization.unsafe_get(i, j);
+            value += centrifugalTermLinearization.unsafe_get(i, j);
+            value += gravityTermLinearization.unsafe_get(i, j);
+            jacobianToPack.unsafe_set(startRow + i, j, value);
+         }
+      }
    }
 
    @Override
@@ -244,11 +277,40 @@ public class LinearAccelerationSensor extends Sensor
       CommonOps.scale(variance.getValue() * sqrtHz, matrixToPack);
    }
 
+   @Override
+   public boolean isRMatrixDiagonal()
+   {
+      return true;
+   }
+
+   @Override
+   public void getRMatrixDiagonal(DenseMatrix64F diagonalToPack, int startIndex)
+   {
+      double value = variance.getValue() * sqrtHz;
+      for (int i = 0; i < measurementSize; i++)
+      {
+         diagonalToPack.set(startIndex + i, value);
+      }
+   }
+
    public void setMeasurement(Vector3DReadOnly measurement)
    {
       this.measurement.setIncludingFrame(robotJacobian.getJacobianFrame(), measurement);
    }
 
+   @Override
+   public void getMeasurement(DenseMatrix64F measurementToPack, int startIndex)
+   {
+      measurement.get(startIndex, measurementToPack);
+   }
+
+   @Override
+   public void setMeasurement(DenseMatrix64F measurement, int startIndex)
+   {
+      this.measurement.setIncludingFrame(robotJacobian.getJacobianFrame(), measurement.get(startIndex), measurement.get(startIndex + 1),
+                                        measurement.get(startIndex + 2));
+   }
+
    /**
     * This linearizes the cross product {@code f(qd)=[A*qd]x[L*qd]} around {@code qd0}. This allows a first
     * order approximation of:
@@ -1,6 +1,7 @@
 package us.ihmc.ekf.filter.sensor;
 
 import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
 
 import us.ihmc.ekf.filter.state.BiasState;
 import us.ihmc.ekf.filter.state.EmptyState;
@@ -23,6 +24,19 @@ public abstract class Sensor
    /** A default sensor state. */
    private static final State EMPTY_STATE = new EmptyState();
 
+   /** The number of estimator ticks between two measurements of this sensor. */
+   private int ticksPerUpdate = 1;
+
+   private final DenseMatrix64F tempSensorJacobian = new DenseMatrix64F(0, 0);
+
+   /**
+    * Provides the name of this sensor. It is used to name variables that the filter creates for this sensor and
+    * must therefore be unique among the sensors of an estimator.
+    *
+    * @return the name of the sensor.
+    */
+   public abstract String getName();
+
    /**
     * Returns the sensor specific state that is added to the filter to be estimated. Usually this will be a
     * {@link BiasState} that is used with the {@link AngularVelocitySensor} for example.
@@ -52,6 +66,22 @@ public abstract class Sensor
       jacobianToPack.reshape(0, 0);
    }
 
+   /**
+    * Writes the sensor part of the {@code H} matrix (see {@link #getSensorJacobian(DenseMatrix64F)}) into the
+    * provided matrix at the given position. The measurement jacobian with respect to the sensor state is usually
+    * constant so this is only called by the filter if the layout of the measurement changes. Elements of the block
+    * that are not written are expected to be zero.
+    *
+    * @param jacobianToPack the full {@code H} matrix of the filter.
+    * @param startRow the index of the first row of this sensor in the measurement.
+    * @param startCol the index of the sensor state of this sensor in the filter state.
+    */
+   public void packSensorJacobian(DenseMatrix64F jacobianToPack, int startRow, int startCol)
+   {
+      getSensorJacobian(tempSensorJacobian);
+      CommonOps.insert(tempSensorJacobian, jacobianToPack, startRow, startCol);
+   }
+
    /**
     * Provides the size of the measurement. E.g. a {@link JointPositionSensor} has size 1 while a body
     * {@link AngularVelocitySensor} has size 3.
@@ -60,6 +90,40 @@ public abstract class Sensor
     */
    public abstract int getMeasurementSize();
 
+   /**
+    * This method provides the estimator with the current measurement residual as well as the linearized
+    * measurement matrix. See {@link #packRobotJacobianAndResidual(DenseMatrix64F, DenseMatrix64F, int, RobotState)}.
+    *
+    * @param jacobianToPack the part of the {@code H} matrix corresponding to the robot state.
+    * @param residualToPack the measurement residual.
+    * @param robotState is the up to date state of the robot.
+    */
+   public void getRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, RobotState robotState)
+   {
+      jacobianToPack.reshape(getMeasurementSize(), robotState.getSize());
+      residualToPack.reshape(getMeasurementSize(), 1);
+      evaluateRobotModel(robotState);
+      packRobotJacobianAndResidual(jacobianToPack, residualToPack, 0, robotState);
+   }
+
+   /**
+    * Reads the data this sensor needs from the robot model and the robot state, e.g. the jacobian of the body the
+    * sensor is attached to. This is called in every tick the sensor is used before
+    * {@link #packRobotJacobianAndResidual(DenseMatrix64F, DenseMatrix64F, int, RobotState)}. It is always called on
+    * the estimator thread.
+    * <p>
+    * The reference frames of the robot model are not thread safe even if they are up to date: they cache their
+    * transforms when they are first queried in a tick and change frames using temporary transforms they own. The
+    * same applies to the state vector of the robot state. A sensor that is thread safe (see {@link #isThreadSafe()})
+    * must do all such queries here. By default this does nothing.
+    * </p>
+    *
+    * @param robotState is the up to date state of the robot.
+    */
+   public void evaluateRobotModel(RobotState robotState)
+   {
+   }
+
    /**
     * This method provides the estimator with the current measurement residual as well as the linearized
     * measurement matrix.
@@ -67,16 +131,36 @@ public abstract class Sensor
     * The linearized measurement equation of the filter is {@code z = H * x + v}. The {@code x} vector is the full
     * estimator state containing the robot state. This method needs to pack the part of the {@code H} matrix that
     * corresponds to the robot state. In addition the measurement residual must be computed and packed by this
-    * method. A up to date robot model used by this sensor, the provided {@code robotState}, as well as any sensor
-    * state (see {@link #getSensorState()}) can be used for this purpose. The measurement residual is computed as
+    * method. The data obtained from the robot model in {@link #evaluateRobotModel(RobotState)}, the provided
+    * {@code robotState}, as well as any sensor state (see {@link #getSensorState()}) can be used for this purpose. The measurement residual is computed as
     * {@code r = z - h(x)} where {@code h(x)} is the (possibly nonlinear) function to compute the expected measurement
     * from the state {@code x}.
     * </p>
-    * @param jacobianToPack the part of the {@code H} matrix corresponding to the robot state.
+    * <p>
+    * The provided matrices are already sized for the full measurement of the filter. This sensor must write its rows
+    * starting at {@code startRow} directly into them: all elements in the columns {@code 0} to
+    * {@code robotState.getSize() - 1} of those rows must be set. No other elements may be modified.
+    * </p>
+    * @param jacobianToPack the {@code H} matrix. The part corresponding to the robot state will be modified.
     * @param residualToPack the measurement residual.
+    * @param startRow the index of the first row of this sensor in the measurement.
     * @param robotState is the up to date state of the robot.
     */
-   public abstract void getRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, RobotState robotState);
+   public abstract void packRobotJacobianAndResidual(DenseMatrix64F jacobianToPack, DenseMatrix64F residualToPack, int startRow, RobotState robotState);
+
+   /**
+    * Whether {@link #packRobotJacobianAndResidual(DenseMatrix64F, DenseMatrix64F, int, RobotState)} may run
+    * concurrently with the one of other sensors of the same estimator (see
+    * {@link ComposedSensor#setWorkerPool(us.ihmc.ekf.filter.WorkerPool)}). This requires that the sensor does not
+    * modify any data that is shared with other sensors. Sensors that use the robot model must query it in
+    * {@link #evaluateRobotModel(RobotState)} and only use their own data when packing the jacobian and residual.
+    *
+    * @return whether the sensor can be evaluated concurrently with other sensors. By default this is {@code false}.
+    */
+   public boolean isThreadSafe()
+   {
+      return false;
+   }
 
    /**
     * This method packs the covariance of the observation noise {@code v}. As this value might not be constant
@@ -85,4 +169,98 @@ public abstract class Sensor
     * @param noiseCovarianceToPack the covariance of the measurement noise.
     */
    public abstract void getRMatrix(DenseMatrix64F noiseCovarianceToPack);
+
+   /**
+    * Whether the measurement noise of this sensor is uncorrelated, i.e. the {@code R} matrix is diagonal. Sensors
+    * that return {@code true} must also implement {@link #getRMatrixDiagonal(DenseMatrix64F, int)}. This allows the
+    * filter to avoid assembling and multiplying a dense {@code R} matrix in every estimation tick.
+    *
+    * @return whether the covariance of the measurement noise is diagonal.
+    */
+   public boolean isRMatrixDiagonal()
+   {
+      return false;
+   }
+
+   /**
+    * Packs the diagonal of the covariance of the observation noise {@code v} into the provided vector. This is only
+    * called if {@link #isRMatrixDiagonal()} returns {@code true}. The vector has already the correct size and this
+    * sensor must only write to the elements {@code startIndex} to {@code startIndex + getMeasurementSize() - 1}.
+    *
+    * @param diagonalToPack the vector containing the diagonal of the measurement noise covariance.
+    * @param startIndex the index of the first element of this sensor in the vector.
+    */
+   public void getRMatrixDiagonal(DenseMatrix64F diagonalToPack, int startIndex)
+   {
+      throw new RuntimeException(getClass().getSimpleName() + " does not provide a diagonal R matrix.");
+   }
+
+   /**
+    * Packs the current raw measurement of this sensor into the provided vector, e.g. to record it. The vector has
+    * already the correct size and this sensor must only write to the elements {@code startIndex} to
+    * {@code startIndex + getMeasurementSize() - 1}.
+    *
+    * @param measurementToPack the vector containing the measurement.
+    * @param startIndex the index of the first element of this sensor in the vector.
+    */
+   public void getMeasurement(DenseMatrix64F measurementToPack, int startIndex)
+   {
+      throw new RuntimeException(getClass().getSimpleName() + " does not provide its measurement.");
+   }
+
+   /**
+    * Sets the raw measurement of this sensor from the provided vector, e.g. to replay a recorded measurement. This is
+    * the inverse of {@link #getMeasurement(DenseMatrix64F, int)}.
+    *
+    * @param measurement the vector containing the measurement.
+    * @param startIndex the index of the first element of this sensor in the vector.
+    */
+   public void setMeasurement(DenseMatrix64F measurement, int startIndex)
+   {
+      throw new RuntimeException(getClass().getSimpleName() + " does not support setting its measurement.");
+   }
+
+   /**
+    * Sets the rate at which this sensor provides measurements in multiples of the estimator tick. E.g. a sensor that
+    * is updated at 30Hz in an estimator running at 1kHz would use 33 ticks per update. The estimator will still
+    * predict the state in every tick but will only use this sensor for the correction in ticks that are a multiple
+    * of this value. By default sensors are used in every estimator tick.
+    * <p>
+    * A value of zero marks an asynchronous sensor that is never scheduled by the estimator. Such a sensor is only
+    * used when the estimator is explicitly asked to correct with it, e.g. for measurements that arrive with a delay
+    * (see {@link us.ihmc.ekf.filter.StateEstimator#correctDelayed(Sensor, int)}).
+    * </p>
+    *
+    * @param ticksPerUpdate the number of estimator ticks between two measurements of this sensor.
+    */
+   public void setTicksPerUpdate(int ticksPerUpdate)
+   {
+      if (ticksPerUpdate < 0)
+      {
+         throw new RuntimeException("Ticks per update must not be negative. Got " + ticksPerUpdate);
+      }
+      this.ticksPerUpdate = ticksPerUpdate;
+   }
+
+   /**
+    * Provides the number of estimator ticks between two measurements of this sensor. See
+    * {@link #setTicksPerUpdate(int)}.
+    *
+    * @return the number of estimator ticks between two measurements of this sensor.
+    */
+   public int getTicksPerUpdate()
+   {
+      return ticksPerUpdate;
+   }
+
+   /**
+    * Whether this sensor provides a measurement in the given estimator tick.
+    *
+    * @param tick the number of the estimator tick.
+    * @return whether the sensor should be used for the correction in that tick.
+    */
+   public boolean isUpdateDue(long tick)
+   {
+      return ticksPerUpdate > 0 && tick % ticksPerUpdate == 0;
+   }
 }
@@ -120,6 +120,14 @@ public class RobotState extends ComposedState implements RobotStateIndexProvider
       return jointStatesByName.get(jointName);
    }
 
+   /**
+    * @return the state of the floating base or {@code null} if the robot is not floating.
+    */
+   public PoseState getPoseState()
+   {
+      return poseState;
+   }
+
    @Override
    public int findJointPositionIndex(String jointName)
    {
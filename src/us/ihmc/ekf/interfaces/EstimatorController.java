@@ -1,60 +1,95 @@
 package us.ihmc.ekf.interfaces;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Path;
 
 import org.ejml.data.DenseMatrix64F;
 
-import us.ihmc.ekf.filter.StateEstimator;
-import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.ekf.filter.FilterMatrixOpsType;
+import us.ihmc.ekf.filter.StageLatencies;
+import us.ihmc.ekf.filter.state.RobotStateIndexProvider;
 import us.ihmc.robotics.time.ExecutionTimer;
 import us.ihmc.simulationConstructionSetTools.robotController.SimpleRobotController;
-import us.ihmc.yoVariables.variable.YoDouble;
 
+/**
+ * Drives the {@link EstimatorCore} from the controller callback of a simulation: every {@link #doControl()} is one
+ * estimator tick.
+ */
 public class EstimatorController extends SimpleRobotController
 {
-   private final FullRobotModel fullRobotModel;
-   private final RobotSensorReader sensorReader;
-   private final StateEstimator estimator;
-   private final RobotState robotState;
-
-   private final DenseMatrix64F stateVector = new DenseMatrix64F(1, 1);
-   private final List<YoDouble> yoState = new ArrayList<>();
+   private final EstimatorCore estimatorCore;
 
    private final ExecutionTimer timer = new ExecutionTimer(getClass().getSimpleName(), registry);
 
    public EstimatorController(RobotSensorReader sensorReader, FullRobotModel fullRobotModel, double dt)
    {
-      robotState = new RobotState(fullRobotModel, dt, registry);
-      this.sensorReader = sensorReader;
-      this.fullRobotModel = fullRobotModel;
-      estimator = new StateEstimator(sensorReader.getSensors(), robotState, registry);
+      estimatorCore = new EstimatorCore(sensorReader, fullRobotModel, dt, registry);
+   }
 
-      for (int stateIdx = 0; stateIdx < robotState.getSize(); stateIdx++)
-      {
-         yoState.add(new YoDouble("x" + stateIdx, registry));
-      }
+   public EstimatorController(RobotSensorReader sensorReader, FullRobotModel fullRobotModel, double dt, FilterMatrixOpsType filterMatrixOpsType,
+                              boolean autotuneUpdateStrategy)
+   {
+      estimatorCore = new EstimatorCore(sensorReader, fullRobotModel, dt, filterMatrixOpsType, autotuneUpdateStrategy, registry);
    }
 
    @Override
    public void doControl()
    {
+      // The parameters are loaded once the simulation started so the calibration can not run in the constructor.
+      estimatorCore.calibrate();
       timer.startMeasurement();
+      estimatorCore.update();
+      timer.stopMeasurement();
+   }
 
-      sensorReader.read();
+   public EstimatorCore getEstimatorCore()
+   {
+      return estimatorCore;
+   }
 
-      estimator.predict();
-      robotState.setFullRobotModelFromState(fullRobotModel);
+   /**
+    * See {@link EstimatorCore#startTelemetry(Path)}.
+    */
+   public void startTelemetry(Path file) throws IOException
+   {
+      estimatorCore.startTelemetry(file);
+   }
 
-      estimator.correct();
-      robotState.setFullRobotModelFromState(fullRobotModel);
+   public void stopTelemetry() throws IOException
+   {
+      estimatorCore.stopTelemetry();
+   }
 
-      robotState.getStateVector(stateVector);
-      for (int stateIdx = 0; stateIdx < robotState.getSize(); stateIdx++)
-      {
-         yoState.get(stateIdx).set(stateVector.get(stateIdx));
-      }
+   /**
+    * See {@link EstimatorCore#enableFlightRecorder(Path)}.
+    */
+   public void enableFlightRecorder(Path directory)
+   {
+      estimatorCore.enableFlightRecorder(directory);
+   }
 
-      timer.stopMeasurement();
+   public void getStateVector(DenseMatrix64F stateVectorToPack)
+   {
+      estimatorCore.getStateVector(stateVectorToPack);
+   }
+
+   public void getCovariance(DenseMatrix64F covarianceToPack)
+   {
+      estimatorCore.getCovariance(covarianceToPack);
+   }
+
+   public EstimatorStatePublisher getStatePublisher()
+   {
+      return estimatorCore.getStatePublisher();
+   }
+
+   public StageLatencies getStageLatencies()
+   {
+      return estimatorCore.getStageLatencies();
+   }
+
+   public RobotStateIndexProvider getRobotStateIndexProvider()
+   {
+      return estimatorCore.getRobotStateIndexProvider();
    }
 }
@@ -0,0 +1,307 @@
+package us.ihmc.ekf.interfaces;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.ekf.filter.EstimatorStage;
+import us.ihmc.ekf.filter.FilterDump;
+import us.ihmc.ekf.filter.FilterFlightRecorder;
+import us.ihmc.ekf.filter.FilterMatrixOpsType;
+import us.ihmc.ekf.filter.StageLatencies;
+import us.ihmc.ekf.filter.StateEstimator;
+import us.ihmc.ekf.filter.WorkerPool;
+import us.ihmc.ekf.filter.sensor.Sensor;
+import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.ekf.filter.state.RobotStateIndexProvider;
+import us.ihmc.robotics.screwTheory.OneDoFJoint;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
+
+/**
+ * Runs the estimator for a robot: every call to {@link #update()} reads the sensors, predicts and corrects the
+ * estimate, writes it to the {@link FullRobotModel}, and publishes it (see {@link #getStatePublisher()}).
+ * <p>
+ * This class does not depend on a simulation and does not schedule itself. It is driven by the
+ * {@link EstimatorController} inside a simulation or by the {@link EstimatorRuntime} on its own thread.
+ * </p>
+ * <p>
+ * Every tick is a flight recorder event ({@code us.ihmc.ekf.EstimatorTick}) next to the prediction, correction, and
+ * outlier events of the {@link StateEstimator}. This allows correlating slow ticks with garbage collection, safepoints,
+ * and thread scheduling in a recording. Disabled events cost almost nothing.
+ * </p>
+ */
+public class EstimatorCore implements PeriodicEstimator
+{
+   // The number of threads in addition to the controller thread used to evaluate the thread safe sensors (see
+   // Sensor.isThreadSafe()). Zero disables this.
+   private static final int sensorWorkerThreads = 3;
+   // The linear algebra implementation used by the estimator and the number of threads in addition to the controller
+   // thread used by it if it is a parallel implementation.
+   private static final FilterMatrixOpsType filterMatrixOpsType = FilterMatrixOpsType.EJML;
+   private static final int filterMatrixOpsWorkerThreads = 3;
+   // Whether calibrate() measures the time of the update strategies and selects the fastest one. If not the batched
+   // update is used. The calibration takes a few tenths of a second.
+   private static final boolean autotuneUpdateStrategy = true;
+   // The number of ticks kept in memory by the filter flight recorder if it is enabled.
+   private static final int flightRecorderDepth = 500;
+
+   private final FullRobotModel fullRobotModel;
+   private final RobotSensorReader sensorReader;
+   private final StateEstimator estimator;
+   private final RobotState robotState;
+   private final StageLatencies stageLatencies;
+   private final YoVariableRegistry registry;
+   private final boolean calibrateUpdateStrategy;
+   private boolean calibrated = false;
+
+   private final DenseMatrix64F stateVector = new DenseMatrix64F(1, 1);
+   private final List<YoDouble> yoState = new ArrayList<>();
+   private final EstimatorStatePublisher statePublisher;
+
+   private TelemetryWriter telemetryWriter = null;
+   private double[] telemetryValues;
+   private final DenseMatrix64F covarianceDiagonal = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F residual = new DenseMatrix64F(0, 0);
+
+   public EstimatorCore(RobotSensorReader sensorReader, FullRobotModel fullRobotModel, double dt, YoVariableRegistry registry)
+   {
+      this(sensorReader, fullRobotModel, dt, filterMatrixOpsType, autotuneUpdateStrategy, registry);
+   }
+
+   public EstimatorCore(RobotSensorReader sensorReader, FullRobotModel fullRobotModel, double dt, FilterMatrixOpsType filterMatrixOpsType,
+                        boolean autotuneUpdateStrategy, YoVariableRegistry registry)
+   {
+      robotState = new RobotState(fullRobotModel, dt, registry);
+      this.registry = registry;
+      this.sensorReader = sensorReader;
+      this.fullRobotModel = fullRobotModel;
+      estimator = new StateEstimator(sensorReader.getSensors(), robotState, 0, filterMatrixOpsType.create(filterMatrixOpsWorkerThreads), registry);
+      if (sensorWorkerThreads > 0)
+      {
+         estimator.setSensorWorkerPool(new WorkerPool(getClass().getSimpleName() + "Sensor", sensorWorkerThreads));
+      }
+      calibrateUpdateStrategy = autotuneUpdateStrategy;
+      stageLatencies = estimator.getStageLatencies();
+
+      for (int stateIdx = 0; stateIdx < robotState.getSize(); stateIdx++)
+      {
+         yoState.add(new YoDouble("x" + stateIdx, registry));
+      }
+
+      List<String> jointNames = new ArrayList<>();
+      for (OneDoFJoint joint : fullRobotModel.getBodyJointsInOrder())
+      {
+         jointNames.add(joint.getName());
+      }
+      statePublisher = new EstimatorStatePublisher(robotState, jointNames);
+   }
+
+   /**
+    * Selects the fastest update strategy of the estimator if enabled (see
+    * {@link StateEstimator#calibrateUpdateStrategy()}). Must be called once after the parameters were loaded and
+    * before the first {@link #update()}. Later calls have no effect.
+    */
+   @Override
+   public void calibrate()
+   {
+      if (calibrated)
+      {
+         return;
+      }
+
+      calibrated = true;
+      if (calibrateUpdateStrategy)
+      {
+         // The sensors are not read: this would consume a tick of a sensor log. The timing does not depend on the
+         // measured values.
+         updateFullRobotModel();
+         estimator.calibrateUpdateStrategy();
+      }
+   }
+
+   /**
+    * Performs one estimator tick.
+    */
+   @Override
+   public void update()
+   {
+      EstimatorTickEvent event = new EstimatorTickEvent();
+      event.begin();
+      long startTime = System.nanoTime();
+
+      stageLatencies.start(EstimatorStage.SENSOR_READ);
+      sensorReader.read();
+      stageLatencies.stop(EstimatorStage.SENSOR_READ);
+
+      estimator.predict();
+      updateFullRobotModel();
+      long predictionTime = System.nanoTime();
+
+      estimator.correct();
+      updateFullRobotModel();
+      long correctionTime = System.nanoTime();
+
+      robotState.getStateVector(stateVector);
+      if (telemetryWriter == null)
+      {
+         // The telemetry contains the state so the copy into the registry is only needed without it.
+         for (int stateIdx = 0; stateIdx < robotState.getSize(); stateIdx++)
+         {
+            yoState.get(stateIdx).set(stateVector.get(stateIdx));
+         }
+      }
+
+      estimator.getCovarianceDiagonal(covarianceDiagonal);
+      statePublisher.publish(estimator.getTick(), startTime, covarianceDiagonal);
+      if (telemetryWriter != null)
+      {
+         publishTelemetry(startTime, predictionTime, correctionTime);
+      }
+
+      if (event.shouldCommit())
+      {
+         event.tick = estimator.getTick();
+         event.stateSize = robotState.getSize();
+         event.commit();
+      }
+   }
+
+   private void updateFullRobotModel()
+   {
+      stageLatencies.start(EstimatorStage.MODEL_UPDATE);
+      robotState.setFullRobotModelFromState(fullRobotModel);
+      stageLatencies.stop(EstimatorStage.MODEL_UPDATE);
+   }
+
+   /**
+    * Starts writing the robot state, the diagonal of the error covariance, the measurement residual, and the times
+    * of the prediction and correction of every tick to a telemetry file (see {@link TelemetryWriter}). The file is
+    * written by a background thread: the estimator only copies the values into a ring buffer. While the telemetry is
+    * active the state is not copied into the {@code x<i>} variables of the registry.
+    *
+    * @param file the telemetry file. An existing file is overwritten.
+    */
+   public void startTelemetry(Path file) throws IOException
+   {
+      if (telemetryWriter != null)
+      {
+         throw new RuntimeException("Telemetry was already started.");
+      }
+
+      List<String> columnNames = new ArrayList<>();
+      for (int stateIdx = 0; stateIdx < robotState.getSize(); stateIdx++)
+      {
+         columnNames.add(yoState.get(stateIdx).getName());
+      }
+      estimator.getCovarianceDiagonal(covarianceDiagonal);
+      for (int stateIdx = 0; stateIdx < covarianceDiagonal.getNumRows(); stateIdx++)
+      {
+         columnNames.add("P" + stateIdx);
+      }
+      for (Sensor sensor : sensorReader.getSensors())
+      {
+         for (int row = 0; row < sensor.getMeasurementSize(); row++)
+         {
+            columnNames.add(sensor.getName() + "Residual" + row);
+         }
+      }
+      columnNames.add("predictionTime");
+      columnNames.add("correctionTime");
+
+      telemetryValues = new double[columnNames.size()];
+      telemetryWriter = new TelemetryWriter(file, columnNames);
+   }
+
+   /**
+    * Writes the remaining ticks and closes the telemetry file.
+    */
+   public void stopTelemetry() throws IOException
+   {
+      if (telemetryWriter != null)
+      {
+         telemetryWriter.close();
+         telemetryWriter = null;
+      }
+   }
+
+   /**
+    * Keeps the matrices of the last {@value #flightRecorderDepth} corrections in memory and writes them to a file in
+    * the provided directory if the filter misbehaves (see {@link FilterFlightRecorder}). The dumps can be inspected and
+    * replayed with {@link FilterDump}.
+    *
+    * @param directory the directory the dumps are written to.
+    */
+   public void enableFlightRecorder(Path directory)
+   {
+      estimator.enableFlightRecorder(flightRecorderDepth, directory, registry);
+   }
+
+   private void publishTelemetry(long startTime, long predictionTime, long correctionTime)
+   {
+      int index = 0;
+      System.arraycopy(stateVector.data, 0, telemetryValues, index, robotState.getSize());
+      index += robotState.getSize();
+
+      System.arraycopy(covarianceDiagonal.data, 0, telemetryValues, index, covarianceDiagonal.getNumRows());
+      index += covarianceDiagonal.getNumRows();
+
+      estimator.getResidual(residual);
+      System.arraycopy(residual.data, 0, telemetryValues, index, residual.getNumRows());
+      index += residual.getNumRows();
+
+      telemetryValues[index++] = (predictionTime - startTime) * 1.0e-9;
+      telemetryValues[index++] = (correctionTime - predictionTime) * 1.0e-9;
+
+      telemetryWriter.publish(estimator.getTick(), startTime, telemetryValues);
+   }
+
+   public void getStateVector(DenseMatrix64F stateVectorToPack)
+   {
+      robotState.getStateVector(stateVectorToPack);
+   }
+
+   public void getCovariance(DenseMatrix64F covarianceToPack)
+   {
+      estimator.getCovariance(covarianceToPack);
+   }
+
+   /**
+    * Provides the estimate of the last tick to other threads. Unlike the {@link FullRobotModel} passed to the
+    * estimator the snapshots of the publisher can be read from any thread.
+    */
+   public EstimatorStatePublisher getStatePublisher()
+   {
+      return statePublisher;
+   }
+
+   /**
+    * Provides the location of the robot states in the state vector and covariance, e.g. to compare the estimate to
+    * the ground truth in a simulation.
+    */
+   public RobotStateIndexProvider getRobotStateIndexProvider()
+   {
+      return robotState;
+   }
+
+   /**
+    * Provides the latency distribution of the stages of the estimator ticks. They are also written to the registry
+    * periodically and can be printed with {@link StageLatencies#print()}.
+    */
+   public StageLatencies getStageLatencies()
+   {
+      return stageLatencies;
+   }
+
+   /**
+    * @return the number of completed estimator ticks.
+    */
+   @Override
+   public long getTick()
+   {
+      return estimator.getTick();
+   }
+}
@@ -0,0 +1,234 @@
+package us.ihmc.ekf.interfaces;
+
+import java.util.concurrent.locks.LockSupport;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.ekf.filter.DiagnosticEvent;
+import us.ihmc.ekf.filter.DiagnosticRing;
+import us.ihmc.ekf.filter.LatencyHistogram;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoInteger;
+
+/**
+ * Runs the {@link EstimatorCore} or another {@link PeriodicEstimator} periodically on its own thread without a
+ * simulation. This allows running the estimator on a robot where the sensors are read by a {@link RobotSensorReader}
+ * and the results are consumed through the {@link EstimatorStatePublisher}.
+ * <p>
+ * The loop waits for the next tick by parking the thread until shortly before the deadline and spinning for the
+ * remaining time. Parking alone wakes up too late by tens of microseconds while spinning alone occupies a core. The
+ * delay of the start of every tick with respect to its deadline is recorded as the jitter. If a tick ends after the
+ * deadline of the next tick it is counted as an overrun and the ticks that were missed entirely are skipped rather than
+ * run back to back. Overruns and failures are reported to the {@link DiagnosticRing}.
+ * </p>
+ */
+public class EstimatorRuntime
+{
+   // The thread is parked until this long before the deadline and spins afterwards.
+   private static final long spinThresholdNanos = 100000L;
+
+   private final PeriodicEstimator estimator;
+   private final long periodNanos;
+
+   private final YoVariableRegistry registry = new YoVariableRegistry(getClass().getSimpleName());
+   private final YoInteger overruns = new YoInteger("estimatorOverruns", registry);
+   private final YoInteger skippedTicks = new YoInteger("estimatorSkippedTicks", registry);
+
+   private final LatencyHistogram jitter = new LatencyHistogram();
+   private final LatencyHistogram executionTime = new LatencyHistogram();
+   private final DiagnosticRing diagnosticRing = DiagnosticRing.getDefault();
+
+   private Thread thread = null;
+   private volatile boolean running = false;
+   private volatile RuntimeException failure = null;
+
+   /**
+    * @param estimator the estimator to run.
+    * @param dt the period of the estimator in seconds.
+    */
+   public EstimatorRuntime(PeriodicEstimator estimator, double dt)
+   {
+      if (dt <= 0.0)
+      {
+         throw new RuntimeException("The period must be positive. Got " + dt);
+      }
+      this.estimator = estimator;
+      periodNanos = Math.round(dt * 1.0e9);
+   }
+
+   /**
+    * Starts running the estimator on a new thread until {@link #stop()} is called or a tick fails. The estimator is
+    * calibrated on the calling thread before (see {@link PeriodicEstimator#calibrate()}).
+    */
+   public synchronized void start()
+   {
+      if (thread != null)
+      {
+         throw new RuntimeException("The estimator runtime is already running.");
+      }
+
+      estimator.calibrate();
+      failure = null;
+      running = true;
+      thread = new Thread(() -> runTicks(Long.MAX_VALUE), getClass().getSimpleName());
+      thread.setPriority(Thread.MAX_PRIORITY);
+      thread.start();
+   }
+
+   /**
+    * Stops the estimator thread after the current tick and waits for it to finish.
+    *
+    * @throws RuntimeException if a tick of the estimator failed.
+    */
+   public synchronized void stop()
+   {
+      if (thread == null)
+      {
+         return;
+      }
+
+      running = false;
+      try
+      {
+         thread.join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      thread = null;
+
+      if (failure != null)
+      {
+         throw new RuntimeException("The estimator failed.", failure);
+      }
+   }
+
+   /**
+    * Runs the estimator on the calling thread for the given number of ticks. Must not be called while the estimator
+    * runs on its own thread. The estimator is calibrated before the first tick (see
+    * {@link PeriodicEstimator#calibrate()}).
+    */
+   public synchronized void run(long numberOfTicks)
+   {
+      if (thread != null)
+      {
+         throw new RuntimeException("The estimator runtime is already running.");
+      }
+
+      estimator.calibrate();
+      failure = null;
+      running = true;
+      runTicks(numberOfTicks);
+      running = false;
+
+      if (failure != null)
+      {
+         throw failure;
+      }
+   }
+
+   private void runTicks(long numberOfTicks)
+   {
+      long deadline = System.nanoTime() + periodNanos;
+      for (long tick = 0; tick < numberOfTicks && running; tick++)
+      {
+         waitUntil(deadline);
+         long start = System.nanoTime();
+         jitter.record(start - deadline);
+
+         try
+         {
+            estimator.update();
+         }
+         catch (RuntimeException e)
+         {
+            failure = e;
+            running = false;
+            diagnosticRing.report(DiagnosticEvent.ESTIMATOR_FAILURE, estimator.getTick());
+            return;
+         }
+
+         long end = System.nanoTime();
+         executionTime.record(end - start);
+
+         deadline += periodNanos;
+         if (end > deadline)
+         {
+            overruns.increment();
+            long missedTicks = (end - deadline) / periodNanos;
+            if (missedTicks > 0)
+            {
+               skippedTicks.add((int) missedTicks);
+               deadline += missedTicks * periodNanos;
+            }
+            diagnosticRing.report(DiagnosticEvent.ESTIMATOR_OVERRUN, estimator.getTick(), (end - start) * 1.0e-3, missedTicks);
+         }
+      }
+   }
+
+   private static void waitUntil(long deadline)
+   {
+      while (true)
+      {
+         long remaining = deadline - System.nanoTime();
+         if (remaining <= 0L)
+         {
+            return;
+         }
+         if (remaining > spinThresholdNanos)
+         {
+            LockSupport.parkNanos(remaining - spinThresholdNanos);
+         }
+      }
+   }
+
+   public boolean isRunning()
+   {
+      return running;
+   }
+
+   public YoVariableRegistry getRegistry()
+   {
+      return registry;
+   }
+
+   /**
+    * @return the number of ticks that ended after the deadline of the next tick.
+    */
+   public int getOverruns()
+   {
+      return overruns.getIntegerValue();
+   }
+
+   /**
+    * @return the number of ticks that were skipped because of overruns.
+    */
+   public int getSkippedTicks()
+   {
+      return skippedTicks.getIntegerValue();
+   }
+
+   /**
+    * @return the delay of the start of the ticks with respect to their deadline.
+    */
+   public LatencyHistogram getJitter()
+   {
+      return jitter;
+   }
+
+   /**
+    * @return the time it took to execute the ticks.
+    */
+   public LatencyHistogram getExecutionTime()
+   {
+      return executionTime;
+   }
+
+   public void printStatistics()
+   {
+      PrintTools.info("Estimator runtime at " + String.format("%.0f", 1.0e9 / periodNanos) + " Hz: " + getOverruns() + " overruns, " + getSkippedTicks()
+            + " skipped ticks");
+      PrintTools.info("   Jitter: " + jitter.getSummary());
+      PrintTools.info("   Execution time: " + executionTime.getSummary());
+   }
+}
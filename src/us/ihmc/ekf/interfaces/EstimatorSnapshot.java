@@ -0,0 +1,196 @@
+package us.ihmc.ekf.interfaces;
+
+import java.util.Arrays;
+
+import us.ihmc.euclid.tuple3D.Point3D;
+import us.ihmc.euclid.tuple3D.Vector3D;
+import us.ihmc.euclid.tuple3D.interfaces.Point3DReadOnly;
+import us.ihmc.euclid.tuple3D.interfaces.Vector3DReadOnly;
+import us.ihmc.euclid.tuple4D.Quaternion;
+import us.ihmc.euclid.tuple4D.interfaces.QuaternionReadOnly;
+
+/**
+ * The estimate of a single estimator tick as published by the {@link EstimatorStatePublisher}. The layout of a
+ * snapshot (the joints and the number of covariance terms) is fixed at creation so a snapshot can be copied without
+ * allocating. Snapshots are obtained from {@link EstimatorStatePublisher#createSnapshot()} and filled with
+ * {@link EstimatorStatePublisher#getLatest(EstimatorSnapshot)}.
+ * <p>
+ * The base velocities are expressed in the body frame of the base, the pose in world frame. For robots without a
+ * floating base the pose and base velocities are zero.
+ * </p>
+ */
+public class EstimatorSnapshot
+{
+   private long tick = -1;
+   private long timestamp = Long.MIN_VALUE;
+
+   private final Quaternion orientation = new Quaternion();
+   private final Point3D position = new Point3D();
+   private final Vector3D angularVelocity = new Vector3D();
+   private final Vector3D linearVelocity = new Vector3D();
+
+   private final String[] jointNames;
+   private final double[] q;
+   private final double[] qd;
+   private final double[] qdd;
+
+   private final String[] covarianceNames;
+   private final double[] covarianceTerms;
+
+   EstimatorSnapshot(String[] jointNames, String[] covarianceNames)
+   {
+      this.jointNames = jointNames;
+      this.covarianceNames = covarianceNames;
+      q = new double[jointNames.length];
+      qd = new double[jointNames.length];
+      qdd = new double[jointNames.length];
+      covarianceTerms = new double[covarianceNames.length];
+   }
+
+   /**
+    * Copies the other snapshot into this one. The snapshots must have the same layout.
+    */
+   public void set(EstimatorSnapshot other)
+   {
+      if (other.jointNames != jointNames || other.covarianceNames != covarianceNames)
+      {
+         throw new RuntimeException("Can not copy snapshots of different layouts.");
+      }
+
+      tick = other.tick;
+      timestamp = other.timestamp;
+      orientation.set(other.orientation);
+      position.set(other.position);
+      angularVelocity.set(other.angularVelocity);
+      linearVelocity.set(other.linearVelocity);
+      System.arraycopy(other.q, 0, q, 0, q.length);
+      System.arraycopy(other.qd, 0, qd, 0, qd.length);
+      System.arraycopy(other.qdd, 0, qdd, 0, qdd.length);
+      System.arraycopy(other.covarianceTerms, 0, covarianceTerms, 0, covarianceTerms.length);
+   }
+
+   void setTick(long tick, long timestamp)
+   {
+      this.tick = tick;
+      this.timestamp = timestamp;
+   }
+
+   void setJointState(int jointIndex, double q, double qd, double qdd)
+   {
+      this.q[jointIndex] = q;
+      this.qd[jointIndex] = qd;
+      this.qdd[jointIndex] = qdd;
+   }
+
+   void setCovarianceTerm(int index, double value)
+   {
+      covarianceTerms[index] = value;
+   }
+
+   Quaternion getOrientationForUpdate()
+   {
+      return orientation;
+   }
+
+   Point3D getPositionForUpdate()
+   {
+      return position;
+   }
+
+   Vector3D getAngularVelocityForUpdate()
+   {
+      return angularVelocity;
+   }
+
+   Vector3D getLinearVelocityForUpdate()
+   {
+      return linearVelocity;
+   }
+
+   /**
+    * @return the estimator tick of this snapshot or {@code -1} if nothing was published yet.
+    */
+   public long getTick()
+   {
+      return tick;
+   }
+
+   /**
+    * @return the time at which the estimator tick of this snapshot started in nanoseconds.
+    */
+   public long getTimestamp()
+   {
+      return timestamp;
+   }
+
+   public QuaternionReadOnly getOrientation()
+   {
+      return orientation;
+   }
+
+   public Point3DReadOnly getPosition()
+   {
+      return position;
+   }
+
+   public Vector3DReadOnly getAngularVelocity()
+   {
+      return angularVelocity;
+   }
+
+   public Vector3DReadOnly getLinearVelocity()
+   {
+      return linearVelocity;
+   }
+
+   public int getNumberOfJoints()
+   {
+      return jointNames.length;
+   }
+
+   public String getJointName(int jointIndex)
+   {
+      return jointNames[jointIndex];
+   }
+
+   /**
+    * @return the index of the joint in this snapshot or {@code -1} if the joint is not part of it.
+    */
+   public int findJointIndex(String jointName)
+   {
+      return Arrays.asList(jointNames).indexOf(jointName);
+   }
+
+   public double getJointPosition(int jointIndex)
+   {
+      return q[jointIndex];
+   }
+
+   public double getJointVelocity(int jointIndex)
+   {
+      return qd[jointIndex];
+   }
+
+   public double getJointAcceleration(int jointIndex)
+   {
+      return qdd[jointIndex];
+   }
+
+   public int getNumberOfCovarianceTerms()
+   {
+      return covarianceTerms.length;
+   }
+
+   /**
+    * @return a description of the covariance term, e.g. the state it is the variance of.
+    */
+   public String getCovarianceName(int index)
+   {
+      return covarianceNames[index];
+   }
+
+   public double getCovarianceTerm(int index)
+   {
+      return covarianceTerms[index];
+   }
+}
@@ -0,0 +1,190 @@
+package us.ihmc.ekf.interfaces;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.ekf.filter.state.JointState;
+import us.ihmc.ekf.filter.state.PoseState;
+import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.euclid.referenceFrame.FramePoint3D;
+import us.ihmc.euclid.referenceFrame.FrameQuaternion;
+import us.ihmc.euclid.referenceFrame.FrameVector3D;
+
+/**
+ * Makes the estimate available to other threads. The estimator thread writes a {@link EstimatorSnapshot} of the
+ * robot state at the end of every tick with {@link #publish(long, long, DenseMatrix64F)}. Any number of reader threads
+ * can copy the latest snapshot with {@link #getLatest(EstimatorSnapshot)} instead of reading the {@link RobotState} or
+ * the {@link FullRobotModel} that the estimator modifies in place.
+ * <p>
+ * The snapshots are written to three buffers in turn. Writing a buffer takes its write lock which is never contended
+ * since readers only use optimistic reads: a reader copies the latest buffer and validates that it was not written
+ * while copying. A buffer is only written again two ticks after it was published so readers retry very rarely. The
+ * estimator thread never blocks and neither side allocates.
+ * </p>
+ * <p>
+ * Besides the pose and joint states the snapshots contain the variances of the base orientation and position and of
+ * the joint positions.
+ * </p>
+ */
+public class EstimatorStatePublisher
+{
+   private static final int numberOfBuffers = 3;
+
+   private final PoseState poseState;
+   private final JointState[] jointStates;
+   private final String[] jointNames;
+   private final int[] covarianceIndices;
+   private final String[] covarianceNames;
+
+   private final EstimatorSnapshot[] buffers = new EstimatorSnapshot[numberOfBuffers];
+   private final StampedLock[] locks = new StampedLock[numberOfBuffers];
+   private volatile int latest = -1;
+   private int next = 0;
+
+   private final FrameQuaternion orientation = new FrameQuaternion();
+   private final FramePoint3D position = new FramePoint3D();
+   private final FrameVector3D angularVelocity = new FrameVector3D();
+   private final FrameVector3D linearVelocity = new FrameVector3D();
+
+   /**
+    * @param robotState the state of the estimator.
+    * @param jointNames the joints to publish in the order they appear in the snapshots.
+    */
+   public EstimatorStatePublisher(RobotState robotState, List<String> jointNames)
+   {
+      poseState = robotState.getPoseState();
+      this.jointNames = jointNames.toArray(new String[jointNames.size()]);
+      jointStates = new JointState[jointNames.size()];
+
+      List<Integer> indices = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      if (robotState.isFloating())
+      {
+         addVectorVariances(robotState.findOrientationIndex(), "orientation", indices, names);
+         addVectorVariances(robotState.findPositionIndex(), "position", indices, names);
+      }
+      for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+      {
+         String jointName = jointNames.get(jointIdx);
+         jointStates[jointIdx] = robotState.getJointState(jointName);
+         if (jointStates[jointIdx] == null)
+         {
+            throw new RuntimeException("The estimator has no state for joint " + jointName);
+         }
+         indices.add(robotState.findJointPositionIndex(jointName));
+         names.add(jointName + "Position");
+      }
+      covarianceIndices = indices.stream().mapToInt(Integer::intValue).toArray();
+      covarianceNames = names.toArray(new String[names.size()]);
+
+      for (int i = 0; i < numberOfBuffers; i++)
+      {
+         buffers[i] = createSnapshot();
+         locks[i] = new StampedLock();
+      }
+   }
+
+   private static void addVectorVariances(int startIndex, String name, List<Integer> indices, List<String> names)
+   {
+      indices.add(startIndex + 0);
+      indices.add(startIndex + 1);
+      indices.add(startIndex + 2);
+      names.add(name + "X");
+      names.add(name + "Y");
+      names.add(name + "Z");
+   }
+
+   /**
+    * Creates a new snapshot with the layout of the published snapshots. Every reader thread should use its own.
+    */
+   public EstimatorSnapshot createSnapshot()
+   {
+      return new EstimatorSnapshot(jointNames, covarianceNames);
+   }
+
+   /**
+    * Writes the current estimate to the next buffer and makes it the latest snapshot. Must only be called from the
+    * estimator thread.
+    *
+    * @param tick the number of the estimator tick.
+    * @param timestamp the time at which the tick started in nanoseconds.
+    * @param covarianceDiagonal the diagonal of the error covariance of the estimator.
+    */
+   public void publish(long tick, long timestamp, DenseMatrix64F covarianceDiagonal)
+   {
+      int index = next;
+      EstimatorSnapshot snapshot = buffers[index];
+      StampedLock lock = locks[index];
+
+      long stamp = lock.writeLock();
+      try
+      {
+         snapshot.setTick(tick, timestamp);
+
+         if (poseState != null)
+         {
+            poseState.getOrientation(orientation);
+            poseState.getPosition(position);
+            poseState.getAngularVelocity(angularVelocity);
+            poseState.getLinearVelocity(linearVelocity);
+            snapshot.getOrientationForUpdate().set(orientation);
+            snapshot.getPositionForUpdate().set(position);
+            snapshot.getAngularVelocityForUpdate().set(angularVelocity);
+            snapshot.getLinearVelocityForUpdate().set(linearVelocity);
+         }
+
+         for (int jointIdx = 0; jointIdx < jointStates.length; jointIdx++)
+         {
+            JointState jointState = jointStates[jointIdx];
+            snapshot.setJointState(jointIdx, jointState.getQ(), jointState.getQd(), jointState.getQdd());
+         }
+
+         for (int i = 0; i < covarianceIndices.length; i++)
+         {
+            int stateIndex = covarianceIndices[i];
+            snapshot.setCovarianceTerm(i, covarianceDiagonal.get(stateIndex));
+         }
+      }
+      finally
+      {
+         lock.unlockWrite(stamp);
+      }
+
+      latest = index;
+      next = (index + 1) % numberOfBuffers;
+   }
+
+   /**
+    * Copies the latest published snapshot. Can be called from any thread and never blocks the estimator.
+    *
+    * @param snapshotToPack the snapshot to copy to. Must be created by {@link #createSnapshot()}.
+    * @return whether a snapshot was published yet. If not the provided snapshot is not modified.
+    */
+   public boolean getLatest(EstimatorSnapshot snapshotToPack)
+   {
+      while (true)
+      {
+         int index = latest;
+         if (index < 0)
+         {
+            return false;
+         }
+
+         StampedLock lock = locks[index];
+         long stamp = lock.tryOptimisticRead();
+         if (stamp != 0L)
+         {
+            snapshotToPack.set(buffers[index]);
+            if (lock.validate(stamp))
+            {
+               return true;
+            }
+         }
+         // The estimator wrote this buffer while it was copied. Try again with the latest one.
+         Thread.yield();
+      }
+   }
+}
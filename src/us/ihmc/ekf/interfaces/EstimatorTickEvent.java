@@ -0,0 +1,26 @@
+package us.ihmc.ekf.interfaces;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a complete estimator tick including reading the sensors and publishing the estimate. See
+ * {@link EstimatorCore#update()}.
+ */
+@Name("us.ihmc.ekf.EstimatorTick")
+@Label("Estimator Tick")
+@Category({"IHMC", "State Estimator"})
+@Description("A complete tick of the estimator")
+@StackTrace(false)
+final class EstimatorTickEvent extends Event
+{
+   @Label("Tick")
+   long tick;
+
+   @Label("State Size")
+   int stateSize;
+}
@@ -29,7 +29,7 @@ public class MeasurementCorruptor
    private static final double angularVelocityRandomWalk = 1.0e-7;
    private static final double linearAccelerationRandomWalk = 1.0e-6;
 
-   private final Random random = new Random(1L);
+   private final Random random;
 
    private final List<JointPositionSensor> jointPositionSensors = new ArrayList<>();
    private final List<OneDegreeOfFreedomJoint> simulatedJoints = new ArrayList<>();
@@ -48,9 +48,19 @@ public class MeasurementCorruptor
    private final double sqrtHz;
 
    public MeasurementCorruptor(double dt)
+   {
+      this(dt, 1L);
+   }
+
+   /**
+    * Creates a new corruptor with the provided seed for the random noise such that independent simulations of the
+    * same robot see different measurement noise.
+    */
+   public MeasurementCorruptor(double dt, long seed)
    {
       // ~31.6 for 1Khz
       sqrtHz = 1.0 / Math.sqrt(dt);
+      random = new Random(seed);
    }
 
    public void addJointPositionSensor(JointPositionSensor sensor, OneDegreeOfFreedomJoint simulatedJoint)
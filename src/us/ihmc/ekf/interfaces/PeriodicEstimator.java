@@ -0,0 +1,23 @@
+package us.ihmc.ekf.interfaces;
+
+/**
+ * An estimator that is ticked periodically by the {@link EstimatorRuntime}. The {@link EstimatorCore} is the
+ * implementation used on robots.
+ */
+public interface PeriodicEstimator
+{
+   /**
+    * Prepares the estimator once before the first tick. Called on the thread that starts the runtime.
+    */
+   public abstract void calibrate();
+
+   /**
+    * Performs one estimator tick.
+    */
+   public abstract void update();
+
+   /**
+    * @return the number of completed estimator ticks.
+    */
+   public abstract long getTick();
+}
@@ -0,0 +1,157 @@
+package us.ihmc.ekf.interfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import us.ihmc.ekf.filter.sensor.Sensor;
+
+/**
+ * The binary format of the sensor logs written by the {@link SensorLogRecorder} and read by the
+ * {@link SensorLogReader}. All values are little endian.
+ * <p>
+ * The log starts with a header:
+ * <ul>
+ * <li>{@code int} magic number and {@code int} format version,</li>
+ * <li>{@code long} number of recorded ticks. This is updated after every tick so a log stays readable if the
+ * recording is not closed properly,</li>
+ * <li>{@code int} number of sensors followed by the {@code int} length of the UTF-8 name, the name, and the
+ * {@code int} measurement size of each sensor.</li>
+ * </ul>
+ * The header is padded to a multiple of eight bytes. It is followed by one fixed size record per tick: the
+ * {@code long} timestamp in nanoseconds followed by the {@code double} measurements of all sensors in the order of the
+ * header.
+ * </p>
+ * <p>
+ * The records are memory mapped in regions of whole records so no record crosses the boundary of a mapping.
+ * </p>
+ */
+final class SensorLogFormat
+{
+   static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+   static final int defaultTicksPerRegion = 1 << 16;
+
+   private static final int magicNumber = 0x4c464b45; // "EKFL"
+   private static final int version = 1;
+   static final int tickCountPosition = 8;
+   private static final int fixedHeaderSize = 20;
+   private static final int timestampSize = Long.BYTES;
+
+   private SensorLogFormat()
+   {
+   }
+
+   /**
+    * @return the size of the record of a single tick in bytes.
+    */
+   static int computeRecordSize(int measurementSize)
+   {
+      return timestampSize + measurementSize * Double.BYTES;
+   }
+
+   /**
+    * Writes the header for the provided sensors with a tick count of zero to the beginning of the channel.
+    *
+    * @return the position of the first record.
+    */
+   static long writeHeader(FileChannel channel, List<Sensor> sensors) throws IOException
+   {
+      List<byte[]> names = new ArrayList<>();
+      int headerSize = fixedHeaderSize;
+      for (int sensorIdx = 0; sensorIdx < sensors.size(); sensorIdx++)
+      {
+         byte[] name = sensors.get(sensorIdx).getName().getBytes(StandardCharsets.UTF_8);
+         names.add(name);
+         headerSize += Integer.BYTES + name.length + Integer.BYTES;
+      }
+      int dataStart = align(headerSize);
+
+      ByteBuffer header = ByteBuffer.allocate(dataStart).order(byteOrder);
+      header.putInt(magicNumber);
+      header.putInt(version);
+      header.putLong(0L);
+      header.putInt(sensors.size());
+      for (int sensorIdx = 0; sensorIdx < sensors.size(); sensorIdx++)
+      {
+         header.putInt(names.get(sensorIdx).length);
+         header.put(names.get(sensorIdx));
+         header.putInt(sensors.get(sensorIdx).getMeasurementSize());
+      }
+      header.rewind();
+
+      channel.truncate(0L);
+      writeFully(channel, header, 0L);
+      return dataStart;
+   }
+
+   /**
+    * Reads the header of a log and packs the names and measurement sizes of the recorded sensors.
+    *
+    * @return the position of the first record.
+    */
+   static long readHeader(FileChannel channel, List<String> sensorNamesToPack, List<Integer> measurementSizesToPack) throws IOException
+   {
+      ByteBuffer fixedHeader = readFully(channel, 0L, fixedHeaderSize);
+      if (fixedHeader.getInt() != magicNumber)
+      {
+         throw new RuntimeException("Not a sensor log.");
+      }
+      int logVersion = fixedHeader.getInt();
+      if (logVersion != version)
+      {
+         throw new RuntimeException("Unsupported sensor log version " + logVersion + ". Expected " + version);
+      }
+      fixedHeader.getLong();
+      int numberOfSensors = fixedHeader.getInt();
+
+      long position = fixedHeaderSize;
+      for (int sensorIdx = 0; sensorIdx < numberOfSensors; sensorIdx++)
+      {
+         int nameLength = readFully(channel, position, Integer.BYTES).getInt();
+         position += Integer.BYTES;
+         ByteBuffer name = readFully(channel, position, nameLength);
+         position += nameLength;
+         sensorNamesToPack.add(new String(name.array(), StandardCharsets.UTF_8));
+         measurementSizesToPack.add(readFully(channel, position, Integer.BYTES).getInt());
+         position += Integer.BYTES;
+      }
+
+      return align(position);
+   }
+
+   static long readTickCount(FileChannel channel) throws IOException
+   {
+      return readFully(channel, tickCountPosition, Long.BYTES).getLong();
+   }
+
+   static int align(long size)
+   {
+      return (int) ((size + Long.BYTES - 1) / Long.BYTES * Long.BYTES);
+   }
+
+   static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(size).order(byteOrder);
+      while (buffer.hasRemaining())
+      {
+         if (channel.read(buffer, position + buffer.position()) < 0)
+         {
+            throw new RuntimeException("Unexpected end of the file.");
+         }
+      }
+      buffer.flip();
+      return buffer;
+   }
+
+   static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         channel.write(buffer, position + buffer.position());
+      }
+   }
+}
@@ -0,0 +1,196 @@
+package us.ihmc.ekf.interfaces;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.ekf.filter.sensor.Sensor;
+
+/**
+ * Replays a log written by the {@link SensorLogRecorder}. Every call to {@link #read()} sets the measurements of the
+ * sensors to the values of the next recorded tick. The log is memory mapped and reading a tick does not allocate so
+ * the estimator can be run on the recorded data as fast as possible.
+ * <p>
+ * The sensors are created by the user in the same way as for the recording, e.g. by creating the sensor reader that
+ * was used for the recording without reading from it. They are matched to the recorded sensors by name.
+ * </p>
+ */
+public class SensorLogReader implements RobotSensorReader, AutoCloseable
+{
+   private final List<Sensor> sensors;
+   private final Sensor[] recordedSensors;
+   private final int[] startIndices;
+   private final DenseMatrix64F measurement;
+
+   private final FileChannel channel;
+   private final long numberOfTicks;
+   private final long dataStart;
+   private final long recordSize;
+   private final long regionSize;
+
+   private MappedByteBuffer region;
+   private long regionStart;
+   private long tick = 0;
+   private long timestamp = Long.MIN_VALUE;
+
+   public SensorLogReader(Path file, List<Sensor> sensors) throws IOException
+   {
+      this(file, sensors, SensorLogFormat.defaultTicksPerRegion);
+   }
+
+   /**
+    * Opens a sensor log for replay.
+    *
+    * @param file the log file.
+    * @param sensors the sensors to replay the measurements to. Must match the recorded sensors.
+    * @param ticksPerRegion the number of ticks that are memory mapped at once.
+    */
+   public SensorLogReader(Path file, List<Sensor> sensors, int ticksPerRegion) throws IOException
+   {
+      if (ticksPerRegion < 1)
+      {
+         throw new RuntimeException("Need at least one tick per region. Got " + ticksPerRegion);
+      }
+
+      this.sensors = sensors;
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+
+      List<String> sensorNames = new ArrayList<>();
+      List<Integer> measurementSizes = new ArrayList<>();
+      dataStart = SensorLogFormat.readHeader(channel, sensorNames, measurementSizes);
+      numberOfTicks = SensorLogFormat.readTickCount(channel);
+
+      if (sensorNames.size() != sensors.size())
+      {
+         throw new RuntimeException("The log contains " + sensorNames.size() + " sensors but " + sensors.size() + " sensors were provided.");
+      }
+      recordedSensors = new Sensor[sensorNames.size()];
+      startIndices = new int[sensorNames.size()];
+      int measurementSize = 0;
+      for (int sensorIdx = 0; sensorIdx < sensorNames.size(); sensorIdx++)
+      {
+         Sensor sensor = findSensor(sensorNames.get(sensorIdx));
+         if (sensor.getMeasurementSize() != measurementSizes.get(sensorIdx).intValue())
+         {
+            throw new RuntimeException("Sensor " + sensor.getName() + " has measurement size " + sensor.getMeasurementSize() + " but the log has size "
+                  + measurementSizes.get(sensorIdx));
+         }
+         recordedSensors[sensorIdx] = sensor;
+         startIndices[sensorIdx] = measurementSize;
+         measurementSize += sensor.getMeasurementSize();
+      }
+      measurement = new DenseMatrix64F(measurementSize, 1);
+
+      recordSize = SensorLogFormat.computeRecordSize(measurementSize);
+      if (channel.size() < dataStart + numberOfTicks * recordSize)
+      {
+         throw new RuntimeException("The sensor log is shorter than its " + numberOfTicks + " ticks.");
+      }
+      regionSize = recordSize * ticksPerRegion;
+      regionStart = dataStart - regionSize;
+   }
+
+   private Sensor findSensor(String name)
+   {
+      for (int sensorIdx = 0; sensorIdx < sensors.size(); sensorIdx++)
+      {
+         if (sensors.get(sensorIdx).getName().equals(name))
+         {
+            return sensors.get(sensorIdx);
+         }
+      }
+      throw new RuntimeException("Could not find sensor " + name + " of the log in the provided sensors.");
+   }
+
+   @Override
+   public void read()
+   {
+      if (!hasRemainingTicks())
+      {
+         throw new RuntimeException("Reached the end of the sensor log after " + numberOfTicks + " ticks.");
+      }
+      if (region == null || !region.hasRemaining())
+      {
+         mapNextRegion();
+      }
+
+      timestamp = region.getLong();
+      for (int i = 0; i < measurement.getNumElements(); i++)
+      {
+         measurement.set(i, region.getDouble());
+      }
+      for (int sensorIdx = 0; sensorIdx < recordedSensors.length; sensorIdx++)
+      {
+         recordedSensors[sensorIdx].setMeasurement(measurement, startIndices[sensorIdx]);
+      }
+
+      tick++;
+   }
+
+   private void mapNextRegion()
+   {
+      regionStart += regionSize;
+      long size = Math.min(regionSize, dataStart + numberOfTicks * recordSize - regionStart);
+      try
+      {
+         region = channel.map(MapMode.READ_ONLY, regionStart, size);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException("Failed to map the sensor log.", e);
+      }
+      region.order(SensorLogFormat.byteOrder);
+   }
+
+   /**
+    * @return whether there are ticks left to replay.
+    */
+   public boolean hasRemainingTicks()
+   {
+      return tick < numberOfTicks;
+   }
+
+   /**
+    * @return the total number of ticks in the log.
+    */
+   public long getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   /**
+    * @return the number of ticks replayed so far.
+    */
+   public long getTick()
+   {
+      return tick;
+   }
+
+   /**
+    * @return the recorded timestamp of the last replayed tick in nanoseconds.
+    */
+   public long getTimestamp()
+   {
+      return timestamp;
+   }
+
+   @Override
+   public List<Sensor> getSensors()
+   {
+      return sensors;
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      region = null;
+      channel.close();
+   }
+}
@@ -0,0 +1,165 @@
+package us.ihmc.ekf.interfaces;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.ekf.filter.sensor.Sensor;
+
+/**
+ * Wraps a {@link RobotSensorReader} and records the measurements of all its sensors in every tick to a binary
+ * memory mapped log (see {@link SensorLogFormat}). The log can be replayed through the estimator with a
+ * {@link SensorLogReader}, e.g. to reproduce an issue observed on the robot or to benchmark changes to the estimator
+ * on real data.
+ * <p>
+ * Recording a tick copies the measurements into the mapped log without allocating. Only when a mapped region of the
+ * log is full the next region is mapped.
+ * </p>
+ */
+public class SensorLogRecorder implements RobotSensorReader, AutoCloseable
+{
+   private final RobotSensorReader sensorReader;
+   private final List<Sensor> sensors;
+   private final int[] startIndices;
+   private final DenseMatrix64F measurement;
+
+   private final FileChannel channel;
+   private final MappedByteBuffer header;
+   private final long dataStart;
+   private final int recordSize;
+   private final long regionSize;
+
+   private MappedByteBuffer region;
+   private long regionStart;
+   private long ticks = 0;
+
+   public SensorLogRecorder(RobotSensorReader sensorReader, Path file) throws IOException
+   {
+      this(sensorReader, file, SensorLogFormat.defaultTicksPerRegion);
+   }
+
+   /**
+    * Creates a new recorder that overwrites the provided file.
+    *
+    * @param sensorReader provides the measurements that are recorded.
+    * @param file the log file.
+    * @param ticksPerRegion the number of ticks that are memory mapped at once.
+    */
+   public SensorLogRecorder(RobotSensorReader sensorReader, Path file, int ticksPerRegion) throws IOException
+   {
+      if (ticksPerRegion < 1)
+      {
+         throw new RuntimeException("Need at least one tick per region. Got " + ticksPerRegion);
+      }
+
+      this.sensorReader = sensorReader;
+      sensors = sensorReader.getSensors();
+      startIndices = new int[sensors.size()];
+      int measurementSize = 0;
+      for (int sensorIdx = 0; sensorIdx < sensors.size(); sensorIdx++)
+      {
+         startIndices[sensorIdx] = measurementSize;
+         measurementSize += sensors.get(sensorIdx).getMeasurementSize();
+      }
+      measurement = new DenseMatrix64F(measurementSize, 1);
+
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      dataStart = SensorLogFormat.writeHeader(channel, sensors);
+      header = channel.map(MapMode.READ_WRITE, 0L, SensorLogFormat.tickCountPosition + Long.BYTES);
+      header.order(SensorLogFormat.byteOrder);
+      recordSize = SensorLogFormat.computeRecordSize(measurementSize);
+      regionSize = (long) recordSize * ticksPerRegion;
+      regionStart = dataStart - regionSize;
+      mapNextRegion();
+   }
+
+   @Override
+   public void read()
+   {
+      sensorReader.read();
+      record(System.nanoTime());
+   }
+
+   /**
+    * Records the current measurements of all sensors. This is called by {@link #read()} with the current time and
+    * can be used directly if the measurements are read elsewhere.
+    *
+    * @param timestamp the time of the measurements in nanoseconds.
+    */
+   public void record(long timestamp)
+   {
+      if (region == null)
+      {
+         throw new RuntimeException("The sensor log was closed.");
+      }
+      if (!region.hasRemaining())
+      {
+         mapNextRegion();
+      }
+
+      for (int sensorIdx = 0; sensorIdx < sensors.size(); sensorIdx++)
+      {
+         sensors.get(sensorIdx).getMeasurement(measurement, startIndices[sensorIdx]);
+      }
+
+      region.putLong(timestamp);
+      for (int i = 0; i < measurement.getNumElements(); i++)
+      {
+         region.putDouble(measurement.get(i));
+      }
+
+      ticks++;
+      header.putLong(SensorLogFormat.tickCountPosition, ticks);
+   }
+
+   private void mapNextRegion()
+   {
+      regionStart += regionSize;
+      try
+      {
+         region = channel.map(MapMode.READ_WRITE, regionStart, regionSize);
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException("Failed to extend the sensor log.", e);
+      }
+      region.order(SensorLogFormat.byteOrder);
+   }
+
+   /**
+    * @return the number of ticks recorded so far.
+    */
+   public long getNumberOfTicks()
+   {
+      return ticks;
+   }
+
+   @Override
+   public List<Sensor> getSensors()
+   {
+      return sensors;
+   }
+
+   /**
+    * Removes the unused part of the last mapped region from the file and closes the log.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (region == null)
+      {
+         return;
+      }
+      region.force();
+      header.force();
+      region = null;
+      channel.truncate(dataStart + ticks * recordSize);
+      channel.close();
+   }
+}
@@ -26,6 +26,12 @@ public class SimulationSensorReader implements RobotSensorReader
 {
    private static final boolean estimateBiases = true;
    private static final boolean addSimulatedNoise = true;
+   public static final long defaultNoiseSeed = 1L;
+
+   // The rates of the sensors in multiples of the estimator tick:
+   private static final int jointPositionTicksPerUpdate = 1;
+   private static final int imuTicksPerUpdate = 1;
+   private static final int baseVelocityTicksPerUpdate = 1;
 
    private final YoVariableRegistry registry = new YoVariableRegistry(getClass().getSimpleName());
 
@@ -37,6 +43,14 @@ public class SimulationSensorReader implements RobotSensorReader
    private final MeasurementCorruptor measurementCorruptor;
 
    public SimulationSensorReader(RobotFromDescription robot, FullRobotModel fullRobotModel, double dt, boolean addBaseVelocitySensor)
+   {
+      this(robot, fullRobotModel, dt, addBaseVelocitySensor, defaultNoiseSeed);
+   }
+
+   /**
+    * Creates a new sensor reader that uses the provided seed for the simulated measurement noise.
+    */
+   public SimulationSensorReader(RobotFromDescription robot, FullRobotModel fullRobotModel, double dt, boolean addBaseVelocitySensor, long noiseSeed)
    {
       addJointPositionSensorsRecursive(dt, robot.getRootJoints().get(0), jointPositionSensors, registry);
       jointPositionSensors.stream().forEach(s -> allSensors.add(s.getRight()));
@@ -50,12 +64,14 @@ public class SimulationSensorReader implements RobotSensorReader
       {
          RigidBody baseBody = fullRobotModel.getRootJoint().getSuccessor();
          String sensorName = FilterTools.stringToPrefix(baseBody.getName()) + "LinearVelocity";
-         allSensors.add(new LinearVelocitySensor(sensorName, dt, baseBody, baseBody.getBodyFixedFrame(), false, registry));
+         LinearVelocitySensor baseVelocitySensor = new LinearVelocitySensor(sensorName, dt, baseBody, baseBody.getBodyFixedFrame(), false, registry);
+         baseVelocitySensor.setTicksPerUpdate(baseVelocityTicksPerUpdate);
+         allSensors.add(baseVelocitySensor);
       }
 
       if (addSimulatedNoise)
       {
-         measurementCorruptor = new MeasurementCorruptor(dt);
+         measurementCorruptor = new MeasurementCorruptor(dt, noiseSeed);
          jointPositionSensors.forEach(pair -> measurementCorruptor.addJointPositionSensor(pair.getRight(), pair.getLeft()));
          angularVelocitySensors.forEach(pair -> measurementCorruptor.addAngularVelocitySensor(pair.getRight(), pair.getLeft(), registry));
          linearAccelerationSensors.forEach(pair -> measurementCorruptor.addLinearAccelerationSensor(pair.getRight(), pair.getLeft(), registry));
@@ -83,10 +99,12 @@ public class SimulationSensorReader implements RobotSensorReader
 
       AngularVelocitySensor angularVelocitySensor = new AngularVelocitySensor(FilterTools.stringToPrefix(imuName) + "AngularVelocity", dt, imuBody, imuFrame,
                                                                               estimateBiases, registry);
+      angularVelocitySensor.setTicksPerUpdate(imuTicksPerUpdate);
       angularVelocitySensors.add(new ImmutablePair<IMUMount, AngularVelocitySensor>(imuMount, angularVelocitySensor));
 
       LinearAccelerationSensor linearAccelerationSensor = new LinearAccelerationSensor(FilterTools.stringToPrefix(imuName) + "LinearAcceleration", dt, imuBody,
                                                                                        imuFrame, estimateBiases, registry);
+      linearAccelerationSensor.setTicksPerUpdate(imuTicksPerUpdate);
       linearAccelerationSensors.add(new ImmutablePair<>(imuMount, linearAccelerationSensor));
 
       PrintTools.info("Created IMU Sensor '" + imuName + "'");
@@ -100,6 +118,7 @@ public class SimulationSensorReader implements RobotSensorReader
          PinJoint pinJoint = (PinJoint) joint;
          String jointName = pinJoint.getName();
          JointPositionSensor sensor = new JointPositionSensor(jointName, dt, registry);
+         sensor.setTicksPerUpdate(jointPositionTicksPerUpdate);
          sensors.add(new ImmutablePair<>(pinJoint, sensor));
          PrintTools.info("Created joint position sensor for '" + jointName + "'");
       }
@@ -0,0 +1,127 @@
+package us.ihmc.ekf.interfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The binary format of the telemetry files written by the {@link TelemetryWriter} and read by the
+ * {@link TelemetryReader}. All values are little endian.
+ * <p>
+ * The file starts with a header:
+ * <ul>
+ * <li>{@code int} magic number and {@code int} format version,</li>
+ * <li>{@code long} number of written ticks. This is updated after every batch of ticks that is written,</li>
+ * <li>{@code int} number of ticks per block and {@code int} number of value columns followed by the {@code int}
+ * length of the UTF-8 name and the name of each column.</li>
+ * </ul>
+ * The header is padded to a multiple of eight bytes. It is followed by blocks of a fixed number of ticks. Within a
+ * block the data is stored column by column: first the {@code long} tick numbers, then the {@code long} timestamps in
+ * nanoseconds, and then the {@code double} values of each column. This allows reading single columns of a long
+ * recording without touching the others. The last block is padded to the full block size.
+ * </p>
+ */
+final class TelemetryFormat
+{
+   private static final int magicNumber = 0x54464b45; // "EKFT"
+   private static final int version = 1;
+   static final int tickCountPosition = 8;
+   private static final int fixedHeaderSize = 24;
+
+   private TelemetryFormat()
+   {
+   }
+
+   /**
+    * @return the size of a block in bytes.
+    */
+   static long computeBlockSize(int ticksPerBlock, int numberOfColumns)
+   {
+      return (long) ticksPerBlock * (2 + numberOfColumns) * Long.BYTES;
+   }
+
+   /**
+    * @return the position of the first value of the column relative to the start of the block. The tick numbers are
+    *         column {@code -2} and the timestamps are column {@code -1}.
+    */
+   static int computeColumnOffset(int column, int ticksPerBlock)
+   {
+      return (column + 2) * ticksPerBlock * Long.BYTES;
+   }
+
+   /**
+    * Writes the header with a tick count of zero to the beginning of the channel.
+    *
+    * @return the position of the first block.
+    */
+   static long writeHeader(FileChannel channel, int ticksPerBlock, List<String> columnNames) throws IOException
+   {
+      long dataStart = computeDataStart(columnNames);
+
+      ByteBuffer header = ByteBuffer.allocate((int) dataStart).order(SensorLogFormat.byteOrder);
+      header.putInt(magicNumber);
+      header.putInt(version);
+      header.putLong(0L);
+      header.putInt(ticksPerBlock);
+      header.putInt(columnNames.size());
+      for (int column = 0; column < columnNames.size(); column++)
+      {
+         byte[] name = columnNames.get(column).getBytes(StandardCharsets.UTF_8);
+         header.putInt(name.length);
+         header.put(name);
+      }
+      header.rewind();
+
+      channel.truncate(0L);
+      SensorLogFormat.writeFully(channel, header, 0L);
+      return dataStart;
+   }
+
+   /**
+    * Reads the header of a telemetry file and packs the names of the value columns.
+    *
+    * @return the number of ticks per block.
+    */
+   static int readHeader(FileChannel channel, List<String> columnNamesToPack) throws IOException
+   {
+      ByteBuffer fixedHeader = SensorLogFormat.readFully(channel, 0L, fixedHeaderSize);
+      if (fixedHeader.getInt() != magicNumber)
+      {
+         throw new RuntimeException("Not a telemetry file.");
+      }
+      int fileVersion = fixedHeader.getInt();
+      if (fileVersion != version)
+      {
+         throw new RuntimeException("Unsupported telemetry version " + fileVersion + ". Expected " + version);
+      }
+      fixedHeader.getLong();
+      int ticksPerBlock = fixedHeader.getInt();
+      int numberOfColumns = fixedHeader.getInt();
+
+      long position = fixedHeaderSize;
+      for (int column = 0; column < numberOfColumns; column++)
+      {
+         int nameLength = SensorLogFormat.readFully(channel, position, Integer.BYTES).getInt();
+         position += Integer.BYTES;
+         columnNamesToPack.add(new String(SensorLogFormat.readFully(channel, position, nameLength).array(), StandardCharsets.UTF_8));
+         position += nameLength;
+      }
+
+      return ticksPerBlock;
+   }
+
+   /**
+    * @return the position of the first block.
+    */
+   static long computeDataStart(List<String> columnNames)
+   {
+      long headerSize = fixedHeaderSize;
+      for (int column = 0; column < columnNames.size(); column++)
+      {
+         headerSize += Integer.BYTES + columnNames.get(column).getBytes(StandardCharsets.UTF_8).length;
+      }
+      return SensorLogFormat.align(headerSize);
+   }
+}
@@ -0,0 +1,115 @@
+package us.ihmc.ekf.interfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the columns of a telemetry file written by the {@link TelemetryWriter} for post-analysis. Since the file is
+ * stored in blocks of columns, reading a single column only reads the parts of the file that contain it.
+ */
+public class TelemetryReader implements AutoCloseable
+{
+   private final FileChannel channel;
+   private final List<String> columnNames = new ArrayList<>();
+   private final int ticksPerBlock;
+   private final long numberOfTicks;
+   private final long dataStart;
+   private final long blockSize;
+
+   public TelemetryReader(Path file) throws IOException
+   {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+      ticksPerBlock = TelemetryFormat.readHeader(channel, columnNames);
+      numberOfTicks = SensorLogFormat.readFully(channel, TelemetryFormat.tickCountPosition, Long.BYTES).getLong();
+      dataStart = TelemetryFormat.computeDataStart(columnNames);
+      blockSize = TelemetryFormat.computeBlockSize(ticksPerBlock, columnNames.size());
+
+      if (numberOfTicks > Integer.MAX_VALUE)
+      {
+         throw new RuntimeException("The telemetry file has too many ticks to read a column into an array: " + numberOfTicks);
+      }
+   }
+
+   public List<String> getColumnNames()
+   {
+      return Collections.unmodifiableList(columnNames);
+   }
+
+   public long getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   /**
+    * @return the tick numbers of all written ticks.
+    */
+   public long[] readTicks() throws IOException
+   {
+      return readLongColumn(-2);
+   }
+
+   /**
+    * @return the timestamps of all written ticks in nanoseconds.
+    */
+   public long[] readTimestamps() throws IOException
+   {
+      return readLongColumn(-1);
+   }
+
+   /**
+    * @param columnName the name of the value column.
+    * @return the values of the column of all written ticks.
+    */
+   public double[] readColumn(String columnName) throws IOException
+   {
+      int column = columnNames.indexOf(columnName);
+      if (column < 0)
+      {
+         throw new RuntimeException("The telemetry file has no column " + columnName);
+      }
+
+      double[] values = new double[(int) numberOfTicks];
+      for (int blockStartTick = 0; blockStartTick < numberOfTicks; blockStartTick += ticksPerBlock)
+      {
+         ByteBuffer buffer = readColumnOfBlock(column, blockStartTick);
+         for (int tick = blockStartTick; buffer.hasRemaining(); tick++)
+         {
+            values[tick] = buffer.getDouble();
+         }
+      }
+      return values;
+   }
+
+   private long[] readLongColumn(int column) throws IOException
+   {
+      long[] values = new long[(int) numberOfTicks];
+      for (int blockStartTick = 0; blockStartTick < numberOfTicks; blockStartTick += ticksPerBlock)
+      {
+         ByteBuffer buffer = readColumnOfBlock(column, blockStartTick);
+         for (int tick = blockStartTick; buffer.hasRemaining(); tick++)
+         {
+            values[tick] = buffer.getLong();
+         }
+      }
+      return values;
+   }
+
+   private ByteBuffer readColumnOfBlock(int column, int blockStartTick) throws IOException
+   {
+      int ticksInBlock = (int) Math.min(ticksPerBlock, numberOfTicks - blockStartTick);
+      long position = dataStart + blockStartTick / ticksPerBlock * blockSize + TelemetryFormat.computeColumnOffset(column, ticksPerBlock);
+      return SensorLogFormat.readFully(channel, position, ticksInBlock * Long.BYTES);
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      channel.close();
+   }
+}
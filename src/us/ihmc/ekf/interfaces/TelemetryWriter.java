@@ -0,0 +1,240 @@
+package us.ihmc.ekf.interfaces;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import us.ihmc.ekf.filter.DiagnosticEvent;
+import us.ihmc.ekf.filter.DiagnosticRing;
+
+/**
+ * Writes a fixed set of values per tick to a block columnar memory mapped file (see {@link TelemetryFormat}) without
+ * blocking the thread that provides the values.
+ * <p>
+ * The control thread copies the values of a tick into a preallocated ring buffer with {@link #publish(long, long, double[])}.
+ * A background thread moves the ticks from the ring buffer into the file. If the background thread falls behind and
+ * the ring buffer is full the tick is dropped rather than waiting (see {@link #getDroppedTicks()}). Only one thread
+ * may publish.
+ * </p>
+ * <p>
+ * Dropped ticks and a failure of the background thread are reported to the {@link DiagnosticRing}. If writing failed
+ * {@link #close()} throws the error.
+ * </p>
+ */
+public class TelemetryWriter implements AutoCloseable
+{
+   public static final int defaultRingCapacity = 1 << 12;
+   public static final int defaultTicksPerBlock = 1 << 10;
+   private static final long pollPeriodNanos = 1000000L;
+
+   private final int numberOfColumns;
+   private final int ringMask;
+   private final long[] ringTicks;
+   private final long[] ringTimestamps;
+   private final double[] ringValues;
+
+   // The number of ticks published by the control thread and written by the background thread.
+   private final AtomicLong published = new AtomicLong();
+   private final AtomicLong written = new AtomicLong();
+   private long droppedTicks = 0;
+
+   private final FileChannel channel;
+   private final MappedByteBuffer header;
+   private final int ticksPerBlock;
+   private final long blockSize;
+   private long blockStart;
+   private MappedByteBuffer block;
+   private int tickInBlock;
+
+   private final Thread writerThread;
+   private volatile boolean running = true;
+   private volatile IOException failure = null;
+   private final DiagnosticRing diagnosticRing = DiagnosticRing.getDefault();
+
+   public TelemetryWriter(Path file, List<String> columnNames) throws IOException
+   {
+      this(file, columnNames, defaultRingCapacity, defaultTicksPerBlock);
+   }
+
+   /**
+    * Creates a new telemetry file and starts the background thread writing to it.
+    *
+    * @param file the file to write to. An existing file is overwritten.
+    * @param columnNames the names of the values of each tick.
+    * @param ringCapacity the number of ticks the ring buffer can hold. Must be a power of two.
+    * @param ticksPerBlock the number of ticks per block of the file.
+    */
+   public TelemetryWriter(Path file, List<String> columnNames, int ringCapacity, int ticksPerBlock) throws IOException
+   {
+      if (ringCapacity < 1 || Integer.bitCount(ringCapacity) != 1)
+      {
+         throw new RuntimeException("The ring capacity must be a power of two. Got " + ringCapacity);
+      }
+      if (ticksPerBlock < 1)
+      {
+         throw new RuntimeException("Need at least one tick per block. Got " + ticksPerBlock);
+      }
+      blockSize = TelemetryFormat.computeBlockSize(ticksPerBlock, columnNames.size());
+      if (blockSize > Integer.MAX_VALUE)
+      {
+         throw new RuntimeException("A block of " + ticksPerBlock + " ticks exceeds the maximum size of a mapping.");
+      }
+
+      numberOfColumns = columnNames.size();
+      ringMask = ringCapacity - 1;
+      ringTicks = new long[ringCapacity];
+      ringTimestamps = new long[ringCapacity];
+      ringValues = new double[ringCapacity * numberOfColumns];
+
+      this.ticksPerBlock = ticksPerBlock;
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long dataStart = TelemetryFormat.writeHeader(channel, ticksPerBlock, columnNames);
+      header = channel.map(MapMode.READ_WRITE, 0L, TelemetryFormat.tickCountPosition + Long.BYTES);
+      header.order(SensorLogFormat.byteOrder);
+      blockStart = dataStart - blockSize;
+      tickInBlock = ticksPerBlock;
+
+      writerThread = new Thread(this::writeTicks, getClass().getSimpleName());
+      writerThread.setDaemon(true);
+      writerThread.start();
+   }
+
+   /**
+    * Copies the values of a tick into the ring buffer. Does not block or allocate.
+    *
+    * @param tick the number of the tick.
+    * @param timestamp the time of the tick in nanoseconds.
+    * @param values the values of all columns.
+    * @return whether the tick was accepted. If {@code false} the ring buffer was full and the tick was dropped.
+    */
+   public boolean publish(long tick, long timestamp, double[] values)
+   {
+      if (values.length != numberOfColumns)
+      {
+         throw new RuntimeException("Expected " + numberOfColumns + " values but got " + values.length);
+      }
+
+      long sequence = published.get();
+      if (sequence - written.get() > ringMask)
+      {
+         droppedTicks++;
+         diagnosticRing.report(DiagnosticEvent.TELEMETRY_TICK_DROPPED, tick, droppedTicks);
+         return false;
+      }
+
+      int slot = (int) (sequence & ringMask);
+      ringTicks[slot] = tick;
+      ringTimestamps[slot] = timestamp;
+      System.arraycopy(values, 0, ringValues, slot * numberOfColumns, numberOfColumns);
+      published.lazySet(sequence + 1);
+      return true;
+   }
+
+   /**
+    * @return the number of ticks that were dropped because the ring buffer was full.
+    */
+   public long getDroppedTicks()
+   {
+      return droppedTicks;
+   }
+
+   private void writeTicks()
+   {
+      try
+      {
+         while (true)
+         {
+            // Check before draining so all ticks published before closing are written.
+            boolean stop = !running;
+            long available = published.get();
+            long next = written.get();
+            if (next < available)
+            {
+               for (; next < available; next++)
+               {
+                  writeTick((int) (next & ringMask));
+                  written.lazySet(next + 1);
+               }
+               header.putLong(TelemetryFormat.tickCountPosition, next);
+            }
+            else if (stop)
+            {
+               break;
+            }
+            else
+            {
+               LockSupport.parkNanos(pollPeriodNanos);
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         failure = e;
+         diagnosticRing.report(DiagnosticEvent.TELEMETRY_FAILURE, -1L, written.get());
+      }
+   }
+
+   private void writeTick(int slot) throws IOException
+   {
+      if (tickInBlock == ticksPerBlock)
+      {
+         blockStart += blockSize;
+         block = channel.map(MapMode.READ_WRITE, blockStart, blockSize);
+         block.order(SensorLogFormat.byteOrder);
+         tickInBlock = 0;
+      }
+
+      int index = tickInBlock * Long.BYTES;
+      block.putLong(TelemetryFormat.computeColumnOffset(-2, ticksPerBlock) + index, ringTicks[slot]);
+      block.putLong(TelemetryFormat.computeColumnOffset(-1, ticksPerBlock) + index, ringTimestamps[slot]);
+      int valueStart = slot * numberOfColumns;
+      for (int column = 0; column < numberOfColumns; column++)
+      {
+         block.putDouble(TelemetryFormat.computeColumnOffset(column, ticksPerBlock) + index, ringValues[valueStart + column]);
+      }
+      tickInBlock++;
+   }
+
+   /**
+    * Writes all published ticks, stops the background thread, and closes the file.
+    *
+    * @throws IOException if writing the file failed.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (!running)
+      {
+         return;
+      }
+      running = false;
+      LockSupport.unpark(writerThread);
+      try
+      {
+         writerThread.join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      if (block != null)
+      {
+         block.force();
+      }
+      header.force();
+      block = null;
+      channel.close();
+
+      if (failure != null)
+      {
+         throw failure;
+      }
+   }
+}
@@ -0,0 +1,165 @@
+package us.ihmc.ekf.robots;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+/**
+ * Accumulates the estimation error of groups of states over the ticks of a simulation. For every group it provides
+ * <ul>
+ * <li>the RMS error over all states of the group and all ticks,</li>
+ * <li>the average normalized estimation error squared {@code e' * P^-1 * e / n} where {@code P} is the block of the
+ * estimator covariance of the group and {@code n} the number of states in the group. A consistent estimator has a
+ * value close to one: larger values mean the estimator is overconfident,</li>
+ * <li>the convergence time: the time after which the RMS error of the group stayed below the threshold of the group
+ * (see {@link EstimatorStateGroup#getConvergenceThreshold()}).</li>
+ * </ul>
+ */
+public class EstimationErrorStatistics
+{
+   private final double dt;
+
+   private final List<EstimatorStateGroup> groups = new ArrayList<>();
+   private final Map<EstimatorStateGroup, int[]> indices = new EnumMap<>(EstimatorStateGroup.class);
+   private final Map<EstimatorStateGroup, GroupStatistics> statistics = new EnumMap<>(EstimatorStateGroup.class);
+
+   private long ticks = 0;
+
+   private final DenseMatrix64F groupError = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F groupCovariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F weightedError = new DenseMatrix64F(0, 0);
+
+   /**
+    * @param dt the time between two calls to {@link #update(DenseMatrix64F, DenseMatrix64F)} in seconds.
+    */
+   public EstimationErrorStatistics(double dt)
+   {
+      this.dt = dt;
+   }
+
+   /**
+    * Adds a group of states to evaluate.
+    *
+    * @param group the group.
+    * @param stateIndices the indices of the states of the group in the error vector and covariance.
+    */
+   public void addGroup(EstimatorStateGroup group, int[] stateIndices)
+   {
+      if (indices.containsKey(group))
+      {
+         throw new RuntimeException("Group " + group + " was already added.");
+      }
+      groups.add(group);
+      indices.put(group, stateIndices);
+      statistics.put(group, new GroupStatistics());
+   }
+
+   /**
+    * Evaluates the error of one tick.
+    *
+    * @param error the difference between the true and the estimated state.
+    * @param covariance the covariance of the estimator. May be larger than the error if the estimator has additional
+    *           states at the end of the state vector.
+    */
+   public void update(DenseMatrix64F error, DenseMatrix64F covariance)
+   {
+      for (int groupIdx = 0; groupIdx < groups.size(); groupIdx++)
+      {
+         EstimatorStateGroup group = groups.get(groupIdx);
+         int[] groupIndices = indices.get(group);
+         GroupStatistics groupStatistics = statistics.get(group);
+         int size = groupIndices.length;
+
+         groupError.reshape(size, 1);
+         groupCovariance.reshape(size, size);
+         double squaredError = 0.0;
+         for (int i = 0; i < size; i++)
+         {
+            groupError.set(i, error.get(groupIndices[i]));
+            squaredError += groupError.get(i) * groupError.get(i);
+            for (int j = 0; j < size; j++)
+            {
+               groupCovariance.set(i, j, covariance.get(groupIndices[i], groupIndices[j]));
+            }
+         }
+
+         double meanSquaredError = squaredError / size;
+         groupStatistics.sumMeanSquaredError += meanSquaredError;
+         if (Math.sqrt(meanSquaredError) > group.getConvergenceThreshold())
+         {
+            groupStatistics.lastTickAboveThreshold = ticks;
+         }
+
+         weightedError.reshape(size, 1);
+         if (CommonOps.solve(groupCovariance, groupError, weightedError))
+         {
+            double nees = 0.0;
+            for (int i = 0; i < size; i++)
+            {
+               nees += groupError.get(i) * weightedError.get(i);
+            }
+            groupStatistics.sumNees += nees / size;
+            groupStatistics.neesTicks++;
+         }
+      }
+
+      ticks++;
+   }
+
+   public List<EstimatorStateGroup> getGroups()
+   {
+      return groups;
+   }
+
+   public long getNumberOfTicks()
+   {
+      return ticks;
+   }
+
+   /**
+    * @return the RMS error of the group over all its states and ticks.
+    */
+   public double getRmsError(EstimatorStateGroup group)
+   {
+      return ticks > 0 ? Math.sqrt(statistics.get(group).sumMeanSquaredError / ticks) : 0.0;
+   }
+
+   /**
+    * @return the average normalized estimation error squared per state of the group. Ticks in which the covariance of
+    *         the group was singular are not considered.
+    */
+   public double getAverageNees(EstimatorStateGroup group)
+   {
+      GroupStatistics groupStatistics = statistics.get(group);
+      return groupStatistics.neesTicks > 0 ? groupStatistics.sumNees / groupStatistics.neesTicks : Double.NaN;
+   }
+
+   /**
+    * @return whether the RMS error of the group was below its threshold in the last tick.
+    */
+   public boolean hasConverged(EstimatorStateGroup group)
+   {
+      return ticks > 0 && statistics.get(group).lastTickAboveThreshold < ticks - 1;
+   }
+
+   /**
+    * @return the time after which the RMS error of the group stayed below its threshold in seconds. If the group did
+    *         not converge this is the total time.
+    */
+   public double getConvergenceTime(EstimatorStateGroup group)
+   {
+      return (statistics.get(group).lastTickAboveThreshold + 1) * dt;
+   }
+
+   private static class GroupStatistics
+   {
+      private double sumMeanSquaredError = 0.0;
+      private double sumNees = 0.0;
+      private long neesTicks = 0;
+      private long lastTickAboveThreshold = -1;
+   }
+}
@@ -0,0 +1,37 @@
+package us.ihmc.ekf.robots;
+
+/**
+ * Groups of robot states that are evaluated together when comparing the estimate to the ground truth of a
+ * simulation (see {@link EstimationErrorStatistics}).
+ */
+public enum EstimatorStateGroup
+{
+   JOINT_POSITION("rad", 1.0e-2),
+   JOINT_VELOCITY("rad/s", 1.0e-1),
+   BASE_ORIENTATION("rad", 1.0e-2),
+   BASE_ANGULAR_VELOCITY("rad/s", 1.0e-1),
+   BASE_POSITION("m", 1.0e-2),
+   BASE_LINEAR_VELOCITY("m/s", 1.0e-1);
+
+   private final String unit;
+   private final double convergenceThreshold;
+
+   private EstimatorStateGroup(String unit, double convergenceThreshold)
+   {
+      this.unit = unit;
+      this.convergenceThreshold = convergenceThreshold;
+   }
+
+   public String getUnit()
+   {
+      return unit;
+   }
+
+   /**
+    * The group is considered converged once the RMS error of its states stays below this value.
+    */
+   public double getConvergenceThreshold()
+   {
+      return convergenceThreshold;
+   }
+}
@@ -0,0 +1,152 @@
+package us.ihmc.ekf.robots;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.ekf.filter.FilterMatrixOpsType;
+import us.ihmc.ekf.interfaces.EstimatorController;
+import us.ihmc.ekf.interfaces.FullRobotModel;
+import us.ihmc.ekf.interfaces.SimulationSensorReader;
+import us.ihmc.ekf.robots.flyingBox.FlyingBoxRobot;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmController;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmRobot;
+import us.ihmc.simulationConstructionSetTools.robotController.SimpleRobotController;
+import us.ihmc.simulationconstructionset.FloatingRootJointRobot;
+import us.ihmc.simulationconstructionset.UnreasonableAccelerationException;
+import us.ihmc.yoVariables.parameters.XmlParameterReader;
+
+/**
+ * Runs two estimators with different {@link FilterMatrixOpsType}s side by side on the same simulated robot without
+ * a graphical user interface. Both estimators see the exact same sensor data. Prints the average time of an estimator
+ * tick for both and the difference between the estimated states and covariances.
+ * <p>
+ * This is meant to check whether a reduced precision implementation such as {@link FilterMatrixOpsType#FLOAT} is
+ * accurate enough for a robot and how much faster it is.
+ * </p>
+ */
+public class FilterPrecisionComparison
+{
+   private static final double dt = 0.001;
+   private static final double duration = 4.0;
+   // Ticks at the start of the simulation that are not timed to give the JIT a chance to compile the filter.
+   private static final int warmupTicks = 500;
+
+   private static final FilterMatrixOpsType referenceType = FilterMatrixOpsType.EJML;
+   private static final FilterMatrixOpsType testType = FilterMatrixOpsType.FLOAT;
+
+   public static void main(String[] args) throws IOException, UnreasonableAccelerationException
+   {
+      SimpleArmRobot simpleArmRobot = new SimpleArmRobot();
+      FloatingRootJointRobot simpleArm = simpleArmRobot.getRobot();
+      compare(SimpleArmRobot.robotName, simpleArm, simpleArmRobot.createFullRobotModel(), simpleArmRobot.createFullRobotModel(),
+              new SimpleArmController(simpleArm), true);
+
+      FlyingBoxRobot flyingBoxRobot = new FlyingBoxRobot();
+      compare(FlyingBoxRobot.robotName, flyingBoxRobot.getRobot(), flyingBoxRobot.createFullRobotModel(), flyingBoxRobot.createFullRobotModel(), null,
+              false);
+   }
+
+   private static void compare(String name, FloatingRootJointRobot robot, FullRobotModel referenceModel, FullRobotModel testModel,
+                               SimpleRobotController motionController, boolean addBaseVelocitySensor)
+         throws IOException, UnreasonableAccelerationException
+   {
+      EstimatorController referenceEstimator = createEstimator(robot, referenceModel, referenceType, addBaseVelocitySensor);
+      EstimatorController testEstimator = createEstimator(robot, testModel, testType, addBaseVelocitySensor);
+
+      DenseMatrix64F referenceState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F testState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F referenceCovariance = new DenseMatrix64F(0, 0);
+      DenseMatrix64F testCovariance = new DenseMatrix64F(0, 0);
+
+      long referenceNanos = 0;
+      long testNanos = 0;
+      double maxStateError = 0.0;
+      double sumSquaredStateError = 0.0;
+      double maxRelativeCovarianceError = 0.0;
+
+      int ticks = (int) Math.round(duration / dt);
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         if (motionController != null)
+         {
+            motionController.doControl();
+         }
+         robot.doDynamicsAndIntegrate(dt);
+
+         long start = System.nanoTime();
+         referenceEstimator.doControl();
+         long referenceEnd = System.nanoTime();
+         testEstimator.doControl();
+         long testEnd = System.nanoTime();
+
+         if (tick >= warmupTicks)
+         {
+            referenceNanos += referenceEnd - start;
+            testNanos += testEnd - referenceEnd;
+         }
+
+         referenceEstimator.getStateVector(referenceState);
+         testEstimator.getStateVector(testState);
+         double squaredStateError = 0.0;
+         for (int i = 0; i < referenceState.getNumElements(); i++)
+         {
+            double error = testState.get(i) - referenceState.get(i);
+            maxStateError = Math.max(maxStateError, Math.abs(error));
+            squaredStateError += error * error;
+         }
+         sumSquaredStateError += squaredStateError / referenceState.getNumElements();
+
+         referenceEstimator.getCovariance(referenceCovariance);
+         testEstimator.getCovariance(testCovariance);
+         maxRelativeCovarianceError = Math.max(maxRelativeCovarianceError, computeRelativeError(referenceCovariance, testCovariance));
+      }
+
+      int timedTicks = Math.max(ticks - warmupTicks, 1);
+      double referenceMicros = referenceNanos * 1.0e-3 / timedTicks;
+      double testMicros = testNanos * 1.0e-3 / timedTicks;
+
+      PrintTools.info(name + " (" + referenceState.getNumElements() + " states, " + ticks + " ticks):");
+      PrintTools.info("   " + referenceType + ": " + String.format("%.2f", referenceMicros) + " us per tick");
+      PrintTools.info("   " + testType + ": " + String.format("%.2f", testMicros) + " us per tick (speedup "
+            + String.format("%.2f", referenceMicros / testMicros) + ")");
+      PrintTools.info("   State error: max " + String.format("%.3e", maxStateError) + ", rms " + String.format("%.3e", Math.sqrt(sumSquaredStateError / ticks)));
+      PrintTools.info("   Covariance error: max relative " + String.format("%.3e", maxRelativeCovarianceError));
+   }
+
+   private static EstimatorController createEstimator(FloatingRootJointRobot robot, FullRobotModel fullRobotModel, FilterMatrixOpsType type,
+                                                      boolean addBaseVelocitySensor)
+         throws IOException
+   {
+      fullRobotModel.initialize(robot);
+      SimulationSensorReader sensorReader = new SimulationSensorReader(robot, fullRobotModel, dt, addBaseVelocitySensor);
+      // Use the same update strategy for both estimators such that only the matrix operations differ.
+      EstimatorController estimatorController = new EstimatorController(sensorReader, fullRobotModel, dt, type, false);
+
+      estimatorController.getYoVariableRegistry().addChild(sensorReader.getRegistry());
+      try (InputStream parameterFile = FilterPrecisionComparison.class.getClassLoader().getResourceAsStream("parameters.xml"))
+      {
+         XmlParameterReader parameterReader = new XmlParameterReader(parameterFile);
+         parameterReader.readParametersInRegistry(estimatorController.getYoVariableRegistry());
+      }
+      return estimatorController;
+   }
+
+   /**
+    * Computes the largest absolute difference between the entries of the two matrices relative to the largest
+    * absolute entry of the reference.
+    */
+   private static double computeRelativeError(DenseMatrix64F reference, DenseMatrix64F test)
+   {
+      double maxReference = 0.0;
+      double maxError = 0.0;
+      for (int i = 0; i < reference.getNumElements(); i++)
+      {
+         maxReference = Math.max(maxReference, Math.abs(reference.get(i)));
+         maxError = Math.max(maxError, Math.abs(test.get(i) - reference.get(i)));
+      }
+      return maxReference > 0.0 ? maxError / maxReference : maxError;
+   }
+}
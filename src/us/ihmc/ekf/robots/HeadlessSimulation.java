@@ -0,0 +1,380 @@
+package us.ihmc.ekf.robots;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.ekf.filter.state.RobotStateIndexProvider;
+import us.ihmc.ekf.interfaces.EstimatorController;
+import us.ihmc.ekf.interfaces.FullRobotModel;
+import us.ihmc.ekf.interfaces.RobotSensorReader;
+import us.ihmc.ekf.interfaces.SensorLogRecorder;
+import us.ihmc.ekf.interfaces.SimulationSensorReader;
+import us.ihmc.ekf.robots.fixedBaseArm.FixedBaseArmRobot;
+import us.ihmc.ekf.robots.flyingBox.FlyingBoxRobot;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmController;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmRobot;
+import us.ihmc.euclid.referenceFrame.FrameVector3D;
+import us.ihmc.euclid.transform.RigidBodyTransform;
+import us.ihmc.euclid.tuple3D.Vector3D;
+import us.ihmc.euclid.tuple3D.interfaces.Tuple3DReadOnly;
+import us.ihmc.euclid.tuple4D.Quaternion;
+import us.ihmc.robotics.screwTheory.OneDoFJoint;
+import us.ihmc.robotics.screwTheory.SixDoFJoint;
+import us.ihmc.simulationConstructionSetTools.robotController.SimpleRobotController;
+import us.ihmc.simulationconstructionset.FloatingJoint;
+import us.ihmc.simulationconstructionset.FloatingRootJointRobot;
+import us.ihmc.simulationconstructionset.OneDegreeOfFreedomJoint;
+import us.ihmc.simulationconstructionset.RobotFromDescription;
+import us.ihmc.simulationconstructionset.UnreasonableAccelerationException;
+import us.ihmc.yoVariables.parameters.XmlParameterReader;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+
+/**
+ * Steps a simulated robot together with its motion controller and the {@link EstimatorController} as fast as
+ * possible without a {@link us.ihmc.simulationconstructionset.SimulationConstructionSet} and without graphics. This
+ * allows to run long scenarios on machines without a display, e.g. in regression tests.
+ * <p>
+ * The controllers are called in the same order as in the simulations of the robots: the estimator first, then the
+ * motion controller, followed by the integration of the robot dynamics. After each estimator tick the estimated
+ * state is compared to the ground truth of the simulated robot (see {@link EstimationErrorStatistics}). At the end
+ * the number of ticks per second, the share of the time spent in the estimator, and the estimation errors are
+ * available.
+ * </p>
+ * <p>
+ * Optionally the measurements of all estimator ticks are recorded to a sensor log (see {@link SensorLogRecorder})
+ * that can be replayed with the {@link SensorLogReplay}.
+ * </p>
+ */
+public class HeadlessSimulation implements AutoCloseable
+{
+   private static final double simulationDT = 0.001;
+   private static final int ticksPerEstimatorTick = 1;
+   static final double estimatorDT = simulationDT * ticksPerEstimatorTick;
+   private static final double defaultDuration = 60.0;
+
+   private final String name;
+   private final RobotFromDescription robot;
+   private final SimpleRobotController motionController;
+   private final EstimatorController estimatorController;
+   private final SensorLogRecorder sensorLogRecorder;
+
+   private final SixDoFJoint estimatedRootJoint;
+   private final FloatingJoint robotRootJoint;
+   private final OneDoFJoint[] estimatedJoints;
+   private final OneDegreeOfFreedomJoint[] robotJoints;
+
+   private final RobotStateIndexProvider indexProvider;
+   private final EstimationErrorStatistics errorStatistics;
+
+   private long ticks = 0;
+   private long simulationNanos = 0;
+   private long estimatorNanos = 0;
+
+   private final DenseMatrix64F estimatedState = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F covariance = new DenseMatrix64F(0, 0);
+   private final DenseMatrix64F error = new DenseMatrix64F(0, 0);
+   private final RigidBodyTransform estimatedTransform = new RigidBodyTransform();
+   private final RigidBodyTransform trueTransform = new RigidBodyTransform();
+   private final Quaternion estimatedOrientation = new Quaternion();
+   private final Quaternion orientationError = new Quaternion();
+   private final Vector3D rotationVector = new Vector3D();
+   private final Vector3D trueVelocity = new Vector3D();
+   private final FrameVector3D trueLinearVelocityInWorld = new FrameVector3D();
+
+   /**
+    * Creates a new headless simulation of the provided robot.
+    *
+    * @param name the name of the scenario used when printing the results.
+    * @param robot the simulated robot providing the sensor data and the ground truth.
+    * @param fullRobotModel the model of the robot the estimator writes its estimate to.
+    * @param motionController the controller moving the robot or {@code null} if the robot is not controlled.
+    * @param addBaseVelocitySensor whether the estimator uses a base velocity sensor (see {@link SimulationSensorReader}).
+    */
+   public HeadlessSimulation(String name, RobotFromDescription robot, FullRobotModel fullRobotModel, SimpleRobotController motionController,
+                             boolean addBaseVelocitySensor)
+         throws IOException
+   {
+      this(name, robot, fullRobotModel, motionController, addBaseVelocitySensor, SimulationSensorReader.defaultNoiseSeed);
+   }
+
+   /**
+    * Creates a new headless simulation of the provided robot with the provided seed for the simulated sensor noise.
+    * Simulations that only differ in the seed can be used to evaluate the estimator statistically.
+    */
+   public HeadlessSimulation(String name, RobotFromDescription robot, FullRobotModel fullRobotModel, SimpleRobotController motionController,
+                             boolean addBaseVelocitySensor, long noiseSeed)
+         throws IOException
+   {
+      this(name, robot, fullRobotModel, motionController, addBaseVelocitySensor, noiseSeed, null);
+   }
+
+   /**
+    * Creates a new headless simulation that records the measurements of the estimator to the provided sensor log.
+    * The log is complete once the simulation is closed.
+    *
+    * @param sensorLogFile the file to record to or {@code null} to not record.
+    */
+   public HeadlessSimulation(String name, RobotFromDescription robot, FullRobotModel fullRobotModel, SimpleRobotController motionController,
+                             boolean addBaseVelocitySensor, long noiseSeed, Path sensorLogFile)
+         throws IOException
+   {
+      this.name = name;
+      this.robot = robot;
+      this.motionController = motionController;
+
+      fullRobotModel.initialize(robot);
+      SimulationSensorReader sensorReader = new SimulationSensorReader(robot, fullRobotModel, estimatorDT, addBaseVelocitySensor, noiseSeed);
+      RobotSensorReader estimatorSensorReader = sensorReader;
+      if (sensorLogFile != null)
+      {
+         sensorLogRecorder = new SensorLogRecorder(sensorReader, sensorLogFile);
+         estimatorSensorReader = sensorLogRecorder;
+      }
+      else
+      {
+         sensorLogRecorder = null;
+      }
+      estimatorController = new EstimatorController(estimatorSensorReader, fullRobotModel, estimatorDT);
+
+      estimatorController.getYoVariableRegistry().addChild(sensorReader.getRegistry());
+      readParameters(estimatorController.getYoVariableRegistry());
+      // Calibrate outside of the timed ticks so the ticks per second are not affected.
+      estimatorController.getEstimatorCore().calibrate();
+
+      estimatedRootJoint = fullRobotModel.getRootJoint();
+      robotRootJoint = robot instanceof FloatingRootJointRobot ? ((FloatingRootJointRobot) robot).getRootJoint() : null;
+      estimatedJoints = fullRobotModel.getBodyJointsInOrder();
+      robotJoints = new OneDegreeOfFreedomJoint[estimatedJoints.length];
+      for (int jointIdx = 0; jointIdx < estimatedJoints.length; jointIdx++)
+      {
+         robotJoints[jointIdx] = robot.getOneDegreeOfFreedomJoint(estimatedJoints[jointIdx].getName());
+      }
+
+      indexProvider = estimatorController.getRobotStateIndexProvider();
+      errorStatistics = new EstimationErrorStatistics(estimatorDT);
+      if (estimatedJoints.length > 0)
+      {
+         int[] jointPositionIndices = new int[estimatedJoints.length];
+         int[] jointVelocityIndices = new int[estimatedJoints.length];
+         for (int jointIdx = 0; jointIdx < estimatedJoints.length; jointIdx++)
+         {
+            jointPositionIndices[jointIdx] = indexProvider.findJointPositionIndex(estimatedJoints[jointIdx].getName());
+            jointVelocityIndices[jointIdx] = indexProvider.findJointVelocityIndex(estimatedJoints[jointIdx].getName());
+         }
+         errorStatistics.addGroup(EstimatorStateGroup.JOINT_POSITION, jointPositionIndices);
+         errorStatistics.addGroup(EstimatorStateGroup.JOINT_VELOCITY, jointVelocityIndices);
+      }
+      if (indexProvider.isFloating() && robotRootJoint != null)
+      {
+         errorStatistics.addGroup(EstimatorStateGroup.BASE_ORIENTATION, vectorIndices(indexProvider.findOrientationIndex()));
+         errorStatistics.addGroup(EstimatorStateGroup.BASE_ANGULAR_VELOCITY, vectorIndices(indexProvider.findAngularVelocityIndex()));
+         errorStatistics.addGroup(EstimatorStateGroup.BASE_POSITION, vectorIndices(indexProvider.findPositionIndex()));
+         errorStatistics.addGroup(EstimatorStateGroup.BASE_LINEAR_VELOCITY, vectorIndices(indexProvider.findLinearVelocityIndex()));
+      }
+   }
+
+   /**
+    * Sets the parameters in the provided registry to the values of the parameter file used in all simulations.
+    */
+   static void readParameters(YoVariableRegistry registry) throws IOException
+   {
+      try (InputStream parameterFile = HeadlessSimulation.class.getClassLoader().getResourceAsStream("parameters.xml"))
+      {
+         XmlParameterReader parameterReader = new XmlParameterReader(parameterFile);
+         parameterReader.readParametersInRegistry(registry);
+      }
+   }
+
+   private static int[] vectorIndices(int startIndex)
+   {
+      return new int[] {startIndex, startIndex + 1, startIndex + 2};
+   }
+
+   /**
+    * Simulates the robot for the provided duration. Can be called repeatedly to continue the simulation. The results
+    * accumulate over all calls.
+    *
+    * @param duration the simulated time in seconds.
+    */
+   public void simulate(double duration) throws UnreasonableAccelerationException
+   {
+      long ticksToSimulate = Math.round(duration / simulationDT);
+      for (long tick = 0; tick < ticksToSimulate; tick++)
+      {
+         long start = System.nanoTime();
+         boolean estimatorTick = ticks % ticksPerEstimatorTick == 0;
+         if (estimatorTick)
+         {
+            estimatorController.doControl();
+         }
+         long estimatorEnd = System.nanoTime();
+
+         // Compare to the ground truth before the robot moves on. This is excluded from the timing.
+         if (estimatorTick)
+         {
+            accumulateErrors();
+         }
+
+         long controllerStart = System.nanoTime();
+         if (motionController != null)
+         {
+            motionController.doControl();
+         }
+         robot.doDynamicsAndIntegrate(simulationDT);
+         long end = System.nanoTime();
+
+         estimatorNanos += estimatorEnd - start;
+         simulationNanos += (estimatorEnd - start) + (end - controllerStart);
+         ticks++;
+      }
+   }
+
+   /**
+    * Computes the difference between the true and the estimated robot state in the representation of the estimator
+    * state vector. For the orientation this is the rotation vector of the error rotation in world frame that the
+    * estimator would add to its orientation.
+    */
+   private void accumulateErrors()
+   {
+      estimatorController.getStateVector(estimatedState);
+      estimatorController.getCovariance(covariance);
+      error.reshape(indexProvider.getSize(), 1);
+      CommonOps.fill(error, 0.0);
+
+      for (int jointIdx = 0; jointIdx < estimatedJoints.length; jointIdx++)
+      {
+         String jointName = estimatedJoints[jointIdx].getName();
+         setError(indexProvider.findJointPositionIndex(jointName), robotJoints[jointIdx].getQ());
+         setError(indexProvider.findJointVelocityIndex(jointName), robotJoints[jointIdx].getQD());
+      }
+
+      if (indexProvider.isFloating() && robotRootJoint != null)
+      {
+         estimatedRootJoint.getJointTransform3D(estimatedTransform);
+         robotRootJoint.getTransformToWorld(trueTransform);
+
+         trueTransform.getRotation(orientationError);
+         estimatedTransform.getRotation(estimatedOrientation);
+         orientationError.multiplyConjugateOther(estimatedOrientation);
+         orientationError.getRotationVector(rotationVector);
+         rotationVector.get(indexProvider.findOrientationIndex(), error);
+
+         setError(indexProvider.findAngularVelocityIndex(), robotRootJoint.getAngularVelocityInBody());
+         setError(indexProvider.findPositionIndex(), trueTransform.getTranslationVector());
+         robotRootJoint.getVelocity(trueLinearVelocityInWorld);
+         trueVelocity.set(trueLinearVelocityInWorld);
+         trueTransform.inverseTransform(trueVelocity);
+         setError(indexProvider.findLinearVelocityIndex(), trueVelocity);
+      }
+
+      errorStatistics.update(error, covariance);
+   }
+
+   private void setError(int index, double trueValue)
+   {
+      error.set(index, trueValue - estimatedState.get(index));
+   }
+
+   private void setError(int startIndex, Tuple3DReadOnly trueValue)
+   {
+      setError(startIndex + 0, trueValue.getX());
+      setError(startIndex + 1, trueValue.getY());
+      setError(startIndex + 2, trueValue.getZ());
+   }
+
+   /**
+    * @return the number of simulation ticks per second of computation time.
+    */
+   public double getTicksPerSecond()
+   {
+      return simulationNanos > 0 ? ticks / (simulationNanos * 1.0e-9) : 0.0;
+   }
+
+   /**
+    * @return how much faster than real time the simulation ran.
+    */
+   public double getRealTimeFactor()
+   {
+      return getTicksPerSecond() * simulationDT;
+   }
+
+   /**
+    * @return the fraction of the computation time that was spent in the estimator.
+    */
+   public double getEstimatorTimeShare()
+   {
+      return simulationNanos > 0 ? (double) estimatorNanos / simulationNanos : 0.0;
+   }
+
+   public EstimatorController getEstimatorController()
+   {
+      return estimatorController;
+   }
+
+   /**
+    * @return the estimation errors of all estimator ticks so far.
+    */
+   public EstimationErrorStatistics getErrorStatistics()
+   {
+      return errorStatistics;
+   }
+
+   /**
+    * Completes the sensor log if the measurements are recorded.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (sensorLogRecorder != null)
+      {
+         sensorLogRecorder.close();
+      }
+   }
+
+   public void printResults()
+   {
+      PrintTools.info(name + " (" + ticks + " ticks, " + String.format("%.1f", ticks * simulationDT) + " s):");
+      PrintTools.info("   " + String.format("%.0f", getTicksPerSecond()) + " ticks per second (" + String.format("%.1f", getRealTimeFactor())
+            + " times real time), " + String.format("%.1f", 100.0 * getEstimatorTimeShare()) + "% in the estimator");
+      for (EstimatorStateGroup group : errorStatistics.getGroups())
+      {
+         String convergence = errorStatistics.hasConverged(group) ? String.format("%.3f", errorStatistics.getConvergenceTime(group)) + " s" : "not converged";
+         PrintTools.info("   " + group + ": RMS error " + String.format("%.3e", errorStatistics.getRmsError(group)) + " " + group.getUnit() + ", NEES "
+               + String.format("%.2f", errorStatistics.getAverageNees(group)) + ", convergence " + convergence);
+      }
+   }
+
+   /**
+    * Runs all robots headless and prints the results.
+    *
+    * @param args optionally the simulated duration per robot in seconds.
+    */
+   public static void main(String[] args) throws IOException, UnreasonableAccelerationException
+   {
+      double duration = args.length > 0 ? Double.parseDouble(args[0]) : defaultDuration;
+
+      SimpleArmRobot simpleArmRobot = new SimpleArmRobot();
+      FloatingRootJointRobot simpleArm = simpleArmRobot.getRobot();
+      HeadlessSimulation simpleArmSimulation = new HeadlessSimulation(SimpleArmRobot.robotName, simpleArm, simpleArmRobot.createFullRobotModel(),
+                                                                      new SimpleArmController(simpleArm), true);
+      simpleArmSimulation.simulate(duration);
+      simpleArmSimulation.printResults();
+
+      FlyingBoxRobot flyingBoxRobot = new FlyingBoxRobot();
+      HeadlessSimulation flyingBoxSimulation = new HeadlessSimulation(FlyingBoxRobot.robotName, flyingBoxRobot.getRobot(),
+                                                                      flyingBoxRobot.createFullRobotModel(), null, false);
+      flyingBoxSimulation.simulate(duration);
+      flyingBoxSimulation.printResults();
+
+      FixedBaseArmRobot fixedBaseArmRobot = new FixedBaseArmRobot();
+      HeadlessSimulation fixedBaseArmSimulation = new HeadlessSimulation(FixedBaseArmRobot.robotName, fixedBaseArmRobot.getRobot(),
+                                                                         fixedBaseArmRobot.createFullRobotModel(), null, false);
+      fixedBaseArmSimulation.simulate(duration);
+      fixedBaseArmSimulation.printResults();
+   }
+}
@@ -0,0 +1,232 @@
+package us.ihmc.ekf.robots;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.ekf.robots.flyingBox.FlyingBoxRobot;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmController;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmRobot;
+import us.ihmc.simulationconstructionset.FloatingRootJointRobot;
+
+/**
+ * Runs many independent {@link HeadlessSimulation}s of the same scenario in parallel. Every run has its own robot,
+ * full robot model, estimator, and measurement noise seed so the runs only differ in the simulated sensor noise. The
+ * {@link EstimationErrorStatistics} of all runs are aggregated per state group.
+ * <p>
+ * This allows to characterize a change to the estimator or its tuning statistically: the mean and spread of the RMS
+ * error, the consistency of the covariance (NEES), and the convergence time over many noise realizations.
+ * </p>
+ */
+public class MonteCarloSimulation
+{
+   private static final int defaultNumberOfRuns = 100;
+   private static final double defaultDuration = 10.0;
+
+   /**
+    * Creates the simulation of a single run.
+    */
+   public interface SimulationFactory
+   {
+      /**
+       * @param noiseSeed the seed for the simulated sensor noise of this run.
+       * @return a new simulation that does not share any state with other simulations.
+       */
+      HeadlessSimulation create(long noiseSeed) throws IOException;
+   }
+
+   private final String name;
+   private final SimulationFactory simulationFactory;
+   private final int threads;
+
+   private final List<EstimationErrorStatistics> results = new ArrayList<>();
+   private double wallTime = 0.0;
+
+   /**
+    * Creates a new Monte Carlo simulation that uses one thread per available processor.
+    */
+   public MonteCarloSimulation(String name, SimulationFactory simulationFactory)
+   {
+      this(name, simulationFactory, Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Creates a new Monte Carlo simulation.
+    *
+    * @param name the name of the scenario used when printing the results.
+    * @param simulationFactory creates the simulation for each run.
+    * @param threads the number of runs that are simulated in parallel.
+    */
+   public MonteCarloSimulation(String name, SimulationFactory simulationFactory, int threads)
+   {
+      if (threads < 1)
+      {
+         throw new RuntimeException("Need at least one thread. Got " + threads);
+      }
+
+      this.name = name;
+      this.simulationFactory = simulationFactory;
+      this.threads = threads;
+   }
+
+   /**
+    * Simulates the runs with the seeds {@code firstSeed} to {@code firstSeed + numberOfRuns - 1} and adds their
+    * results to the results of previous calls. Blocks until all runs are done.
+    *
+    * @param numberOfRuns the number of independent runs.
+    * @param firstSeed the noise seed of the first run.
+    * @param duration the simulated time of each run in seconds.
+    */
+   public void simulate(int numberOfRuns, long firstSeed, double duration)
+   {
+      AtomicInteger threadCount = new AtomicInteger();
+      ExecutorService executor = Executors.newFixedThreadPool(threads, runnable ->
+      {
+         Thread thread = new Thread(runnable, getClass().getSimpleName() + "Worker" + threadCount.getAndIncrement());
+         thread.setDaemon(true);
+         return thread;
+      });
+
+      long start = System.nanoTime();
+      try
+      {
+         List<Future<EstimationErrorStatistics>> futures = new ArrayList<>();
+         for (int run = 0; run < numberOfRuns; run++)
+         {
+            long seed = firstSeed + run;
+            futures.add(executor.submit(() ->
+            {
+               HeadlessSimulation simulation;
+               // The robots and models share reference frame and description code that is not meant to be used
+               // concurrently so only the simulation itself runs in parallel.
+               synchronized (MonteCarloSimulation.class)
+               {
+                  simulation = simulationFactory.create(seed);
+               }
+               simulation.simulate(duration);
+               return simulation.getErrorStatistics();
+            }));
+         }
+
+         for (Future<EstimationErrorStatistics> future : futures)
+         {
+            results.add(future.get());
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException("Interrupted while waiting for the runs of " + name, e);
+      }
+      catch (ExecutionException e)
+      {
+         throw new RuntimeException("A run of " + name + " failed.", e.getCause());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+      wallTime += (System.nanoTime() - start) * 1.0e-9;
+   }
+
+   /**
+    * @return the error statistics of all runs so far.
+    */
+   public List<EstimationErrorStatistics> getResults()
+   {
+      return results;
+   }
+
+   /**
+    * Prints the statistics over all runs per state group: the mean and standard deviation of the RMS error, the mean
+    * NEES per state, and the mean and worst convergence time of the runs that converged.
+    */
+   public void printResults()
+   {
+      if (results.isEmpty())
+      {
+         PrintTools.info(name + ": no runs.");
+         return;
+      }
+
+      PrintTools.info(name + " (" + results.size() + " runs on " + threads + " threads in " + String.format("%.1f", wallTime) + " s):");
+      for (EstimatorStateGroup group : results.get(0).getGroups())
+      {
+         double sumRms = 0.0;
+         double sumSquaredRms = 0.0;
+         double sumNees = 0.0;
+         int neesRuns = 0;
+         double sumConvergenceTime = 0.0;
+         double maxConvergenceTime = 0.0;
+         int convergedRuns = 0;
+
+         for (EstimationErrorStatistics result : results)
+         {
+            double rms = result.getRmsError(group);
+            sumRms += rms;
+            sumSquaredRms += rms * rms;
+
+            double nees = result.getAverageNees(group);
+            if (!Double.isNaN(nees))
+            {
+               sumNees += nees;
+               neesRuns++;
+            }
+
+            if (result.hasConverged(group))
+            {
+               double convergenceTime = result.getConvergenceTime(group);
+               sumConvergenceTime += convergenceTime;
+               maxConvergenceTime = Math.max(maxConvergenceTime, convergenceTime);
+               convergedRuns++;
+            }
+         }
+
+         int runs = results.size();
+         double meanRms = sumRms / runs;
+         double standardDeviationRms = Math.sqrt(Math.max(sumSquaredRms / runs - meanRms * meanRms, 0.0));
+         String nees = neesRuns > 0 ? String.format("%.2f", sumNees / neesRuns) : "n/a";
+         String convergence = convergedRuns > 0 ? String.format("%.3f", sumConvergenceTime / convergedRuns) + " s (max "
+               + String.format("%.3f", maxConvergenceTime) + " s)" : "none";
+
+         PrintTools.info("   " + group + ": RMS error " + String.format("%.3e", meanRms) + " +- " + String.format("%.1e", standardDeviationRms) + " "
+               + group.getUnit() + ", NEES " + nees + ", converged " + convergedRuns + "/" + runs + " in " + convergence);
+      }
+   }
+
+   /**
+    * Runs the simple arm and the flying box with many noise seeds and prints the results.
+    *
+    * @param args optionally the number of runs and the simulated duration per run in seconds.
+    */
+   public static void main(String[] args)
+   {
+      int numberOfRuns = args.length > 0 ? Integer.parseInt(args[0]) : defaultNumberOfRuns;
+      double duration = args.length > 1 ? Double.parseDouble(args[1]) : defaultDuration;
+
+      MonteCarloSimulation simpleArm = new MonteCarloSimulation(SimpleArmRobot.robotName, seed ->
+      {
+         SimpleArmRobot simpleArmRobot = new SimpleArmRobot();
+         FloatingRootJointRobot robot = simpleArmRobot.getRobot();
+         return new HeadlessSimulation(SimpleArmRobot.robotName, robot, simpleArmRobot.createFullRobotModel(), new SimpleArmController(robot), true,
+                                       seed);
+      });
+      simpleArm.simulate(numberOfRuns, 0L, duration);
+
+      MonteCarloSimulation flyingBox = new MonteCarloSimulation(FlyingBoxRobot.robotName, seed ->
+      {
+         FlyingBoxRobot flyingBoxRobot = new FlyingBoxRobot();
+         return new HeadlessSimulation(FlyingBoxRobot.robotName, flyingBoxRobot.getRobot(), flyingBoxRobot.createFullRobotModel(), null, false, seed);
+      });
+      flyingBox.simulate(numberOfRuns, 0L, duration);
+
+      simpleArm.printResults();
+      flyingBox.printResults();
+   }
+}
@@ -0,0 +1,149 @@
+package us.ihmc.ekf.robots;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.ekf.interfaces.EstimatorController;
+import us.ihmc.ekf.interfaces.EstimatorRuntime;
+import us.ihmc.ekf.interfaces.FullRobotModel;
+import us.ihmc.ekf.interfaces.SensorLogReader;
+import us.ihmc.ekf.interfaces.SimulationSensorReader;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmController;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmRobot;
+import us.ihmc.simulationconstructionset.FloatingRootJointRobot;
+import us.ihmc.simulationconstructionset.UnreasonableAccelerationException;
+
+/**
+ * Runs the {@link EstimatorController} on a sensor log recorded with a
+ * {@link us.ihmc.ekf.interfaces.SensorLogRecorder} as fast as possible. Since the replay does not simulate the robot
+ * this measures the speed of the estimator alone and allows to reproduce the estimate of a recording. The log can
+ * also be replayed at the rate it was recorded with an {@link EstimatorRuntime} to measure the timing of the loop.
+ */
+public class SensorLogReplay
+{
+   private static final double defaultDuration = 60.0;
+
+   private final SensorLogReader sensorLogReader;
+   private final EstimatorController estimatorController;
+
+   private long replayNanos = 0;
+
+   /**
+    * Creates a new replay of the provided log.
+    *
+    * @param sensorLogFile the recorded log.
+    * @param sensorReader creates the sensors the log was recorded with. It is not read from.
+    * @param fullRobotModel the model of the robot the estimator writes its estimate to.
+    */
+   public SensorLogReplay(Path sensorLogFile, SimulationSensorReader sensorReader, FullRobotModel fullRobotModel) throws IOException
+   {
+      sensorLogReader = new SensorLogReader(sensorLogFile, sensorReader.getSensors());
+      estimatorController = new EstimatorController(sensorLogReader, fullRobotModel, HeadlessSimulation.estimatorDT);
+      estimatorController.getYoVariableRegistry().addChild(sensorReader.getRegistry());
+      HeadlessSimulation.readParameters(estimatorController.getYoVariableRegistry());
+   }
+
+   /**
+    * Runs the estimator on all remaining ticks of the log.
+    */
+   public void replay()
+   {
+      long start = System.nanoTime();
+      while (sensorLogReader.hasRemainingTicks())
+      {
+         estimatorController.doControl();
+      }
+      replayNanos += System.nanoTime() - start;
+   }
+
+   /**
+    * Runs the estimator on all remaining ticks of the log at the rate of the estimator on the calling thread.
+    */
+   public void replayInRealTime()
+   {
+      EstimatorRuntime runtime = new EstimatorRuntime(estimatorController.getEstimatorCore(), HeadlessSimulation.estimatorDT);
+      runtime.run(sensorLogReader.getNumberOfTicks() - sensorLogReader.getTick());
+      runtime.printStatistics();
+   }
+
+   public EstimatorController getEstimatorController()
+   {
+      return estimatorController;
+   }
+
+   /**
+    * @return how much faster than real time the estimator ran on the log.
+    */
+   public double getRealTimeFactor()
+   {
+      return replayNanos > 0 ? sensorLogReader.getTick() * HeadlessSimulation.estimatorDT / (replayNanos * 1.0e-9) : 0.0;
+   }
+
+   public void printResults()
+   {
+      double ticksPerSecond = replayNanos > 0 ? sensorLogReader.getTick() / (replayNanos * 1.0e-9) : 0.0;
+      PrintTools.info("Replayed " + sensorLogReader.getTick() + " ticks: " + String.format("%.0f", ticksPerSecond) + " ticks per second ("
+            + String.format("%.1f", getRealTimeFactor()) + " times real time)");
+      estimatorController.getStageLatencies().print();
+   }
+
+   public void close() throws IOException
+   {
+      sensorLogReader.close();
+   }
+
+   /**
+    * Records a headless simulation of the simple arm, replays the log, and compares the final estimates.
+    *
+    * @param args optionally the recorded duration in seconds and {@code realtime} to replay at the rate of the
+    *           estimator.
+    */
+   public static void main(String[] args) throws IOException, UnreasonableAccelerationException
+   {
+      double duration = args.length > 0 ? Double.parseDouble(args[0]) : defaultDuration;
+      boolean realTime = args.length > 1 && args[1].equals("realtime");
+      Path sensorLogFile = Files.createTempFile(SimpleArmRobot.robotName, ".log");
+
+      DenseMatrix64F recordedEstimate = new DenseMatrix64F(0, 0);
+      SimpleArmRobot simpleArmRobot = new SimpleArmRobot();
+      FloatingRootJointRobot simpleArm = simpleArmRobot.getRobot();
+      try (HeadlessSimulation simulation = new HeadlessSimulation(SimpleArmRobot.robotName, simpleArm, simpleArmRobot.createFullRobotModel(),
+                                                                  new SimpleArmController(simpleArm), true, SimulationSensorReader.defaultNoiseSeed,
+                                                                  sensorLogFile))
+      {
+         simulation.simulate(duration);
+         simulation.printResults();
+         simulation.getEstimatorController().getStateVector(recordedEstimate);
+      }
+      PrintTools.info("Recorded " + Files.size(sensorLogFile) + " bytes to " + sensorLogFile);
+
+      // The replay uses a new robot in its initial configuration to create the sensors and the estimator.
+      SimpleArmRobot replayRobot = new SimpleArmRobot();
+      FullRobotModel fullRobotModel = replayRobot.createFullRobotModel();
+      fullRobotModel.initialize(replayRobot.getRobot());
+      SimulationSensorReader sensorReader = new SimulationSensorReader(replayRobot.getRobot(), fullRobotModel, HeadlessSimulation.estimatorDT, true);
+      SensorLogReplay replay = new SensorLogReplay(sensorLogFile, sensorReader, fullRobotModel);
+      if (realTime)
+      {
+         replay.replayInRealTime();
+      }
+      else
+      {
+         replay.replay();
+         replay.printResults();
+      }
+      replay.close();
+
+      DenseMatrix64F replayedEstimate = new DenseMatrix64F(0, 0);
+      replay.getEstimatorController().getStateVector(replayedEstimate);
+      CommonOps.subtractEquals(replayedEstimate, recordedEstimate);
+      PrintTools.info("Largest difference of the final estimate to the recording: " + CommonOps.elementMaxAbs(replayedEstimate));
+
+      Files.delete(sensorLogFile);
+   }
+}
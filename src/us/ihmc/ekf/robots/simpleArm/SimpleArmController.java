@@ -13,7 +13,8 @@ import us.ihmc.yoVariables.variable.YoDouble;
 
 public class SimpleArmController extends SimpleRobotController
 {
-   private static final Random random = new Random(4924982L);
+   // Every controller uses the same trajectory and can be created on any thread.
+   private final Random random = new Random(4924982L);
 
    private final YoDouble time;
 
@@ -54,12 +55,12 @@ public class SimpleArmController extends SimpleRobotController
       }
    }
 
-   private static double nextDouble(double minMaxValue)
+   private double nextDouble(double minMaxValue)
    {
       return 2.0 * minMaxValue * (random.nextDouble() - 0.5);
    }
 
-   private static double nextAbsDouble(double maxValue)
+   private double nextAbsDouble(double maxValue)
    {
       return maxValue * random.nextDouble();
    }
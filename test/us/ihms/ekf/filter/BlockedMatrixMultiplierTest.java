@@ -0,0 +1,47 @@
+package us.ihms.ekf.filter;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.BlockedMatrixMultiplier;
+import us.ihmc.ekf.filter.WorkerPool;
+
+public class BlockedMatrixMultiplierTest
+{
+   private static final double EPSILON = 1.0e-12;
+
+   @Test
+   public void testAgainstCommonOps()
+   {
+      Random random = new Random(8134L);
+      WorkerPool workerPool = new WorkerPool(getClass().getSimpleName(), 3);
+
+      // Use a small block size and no threshold such that the blocked implementation is used for all sizes.
+      BlockedMatrixMultiplier multiplier = new BlockedMatrixMultiplier(workerPool, 7, 0);
+      DenseMatrix64F actual = new DenseMatrix64F(0, 0);
+
+      for (int i = 0; i < 100; i++)
+      {
+         int rows = random.nextInt(40) + 1;
+         int inner = random.nextInt(40) + 1;
+         int cols = random.nextInt(40) + 1;
+
+         DenseMatrix64F A = FilterMatrixOpsTest.createRandomMatrix(rows, inner, random, -1.0, 1.0);
+         DenseMatrix64F B = FilterMatrixOpsTest.createRandomMatrix(inner, cols, random, -1.0, 1.0);
+         DenseMatrix64F expected = new DenseMatrix64F(rows, cols);
+         CommonOps.mult(A, B, expected);
+         multiplier.mult(A, B, actual);
+         StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+
+         DenseMatrix64F Btrans = FilterMatrixOpsTest.createRandomMatrix(cols, inner, random, -1.0, 1.0);
+         CommonOps.multTransB(A, Btrans, expected);
+         multiplier.multTransB(A, Btrans, actual);
+         StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+      }
+
+      workerPool.shutdown();
+   }
+}
@@ -0,0 +1,95 @@
+package us.ihms.ekf.filter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.CovarianceDecimation;
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
+import us.ihmc.ekf.filter.FilterMatrixOps;
+import us.ihmc.ekf.filter.UpdateStrategyType;
+import us.ihmc.yoVariables.parameters.DefaultParameterReader;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoInteger;
+
+public class CovarianceDecimationTest
+{
+   private static final double EPSILON = 1.0e-9;
+
+   private final FilterMatrixOps filterMatrixOps = new EjmlFilterMatrixOps();
+
+   @Test
+   public void testDecimatedPrediction()
+   {
+      Random random = new Random(6172L);
+      int size = 12;
+      int measurements = 4;
+      int decimationTicks = 7;
+
+      YoVariableRegistry registry = new YoVariableRegistry(getClass().getSimpleName());
+      CovarianceDecimation covarianceDecimation = new CovarianceDecimation(filterMatrixOps, registry);
+      new DefaultParameterReader().readParametersInRegistry(registry);
+      ((YoInteger) registry.getVariable("covarianceDecimationTicks")).set(decimationTicks);
+      YoBoolean degraded = (YoBoolean) registry.getVariable("covarianceDecimationDegraded");
+
+      DenseMatrix64F F = FilterMatrixOpsTest.createRandomMatrix(size, size, random, -0.1, 0.1);
+      for (int i = 0; i < size; i++)
+      {
+         F.add(i, i, 1.0);
+      }
+      DenseMatrix64F Q = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.0, 1.0);
+      DenseMatrix64F A = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+      DenseMatrix64F Pinitial = new DenseMatrix64F(size, size);
+      CommonOps.multTransB(A, A, Pinitial);
+      DenseMatrix64F H = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F Rdiagonal = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, 0.1, 10.0);
+      DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -0.1, 0.1);
+      DenseMatrix64F x = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+      // Without a gain the first tick must be a full update.
+      DenseMatrix64F Pprior = new DenseMatrix64F(0, 0);
+      DenseMatrix64F Pposterior = new DenseMatrix64F(0, 0);
+      DenseMatrix64F K = new DenseMatrix64F(0, 0);
+      DenseMatrix64F xPosterior = new DenseMatrix64F(0, 0);
+      assertFalse(covarianceDecimation.skipPrediction());
+      covarianceDecimation.predictErrorCovariance(Pprior, F, Pinitial, Q);
+      assertTrue(UpdateStrategyType.BATCHED.create(filterMatrixOps).update(xPosterior, Pposterior, K, x, Pprior, H, residual, Rdiagonal, true, true));
+      covarianceDecimation.update(Pprior, H, Rdiagonal, true, residual, K);
+
+      // The following ticks reuse the gain.
+      for (int tick = 1; tick < decimationTicks; tick++)
+      {
+         assertTrue(covarianceDecimation.skipPrediction());
+         assertTrue(covarianceDecimation.correctState(xPosterior, K, x, H, residual));
+      }
+      assertFalse(covarianceDecimation.skipPrediction());
+
+      // The prediction over all ticks since the last update must match the individual predictions.
+      DenseMatrix64F expectedPprior = new DenseMatrix64F(Pposterior);
+      DenseMatrix64F temp = new DenseMatrix64F(0, 0);
+      for (int tick = 0; tick < decimationTicks; tick++)
+      {
+         filterMatrixOps.predictErrorCovariance(temp, F, expectedPprior, Q);
+         expectedPprior.set(temp);
+      }
+      covarianceDecimation.predictErrorCovariance(Pprior, F, Pposterior, Q);
+      StateEstimatorTest.assertMatricesEqual(expectedPprior, Pprior, EPSILON);
+      covarianceDecimation.update(Pprior, H, Rdiagonal, true, residual, K);
+      assertFalse(degraded.getValue());
+
+      // Inconsistent residuals must revert to updating the covariance every tick.
+      DenseMatrix64F largeResidual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, 100.0, 200.0);
+      for (int tick = 1; tick < decimationTicks && covarianceDecimation.skipPrediction(); tick++)
+      {
+         covarianceDecimation.correctState(xPosterior, K, x, H, largeResidual);
+      }
+      assertTrue(degraded.getValue());
+      assertFalse(covarianceDecimation.skipPrediction());
+   }
+}
@@ -0,0 +1,96 @@
+package us.ihms.ekf.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.DiagnosticEvent;
+import us.ihmc.ekf.filter.DiagnosticRing;
+
+public class DiagnosticRingTest
+{
+   @Test
+   public void testReportAndDrain()
+   {
+      DiagnosticRing ring = new DiagnosticRing(4);
+      List<String> drained = new ArrayList<>();
+      DiagnosticRing.DiagnosticConsumer consumer = (event, tick, timestamp, firstValue, secondValue) -> drained.add(event.format(tick, firstValue,
+                                                                                                                               secondValue));
+
+      for (int round = 0; round < 3; round++)
+      {
+         Assert.assertTrue(ring.report(DiagnosticEvent.INVERSION_FAILURE, round, 6.0));
+         Assert.assertTrue(ring.report(DiagnosticEvent.DELAYED_INVERSION_FAILURE, round, 3.0, 2.0));
+         Assert.assertEquals(2, ring.drain(consumer));
+         Assert.assertEquals(DiagnosticEvent.INVERSION_FAILURE.format(round, 6.0, Double.NaN), drained.get(2 * round));
+         Assert.assertEquals(DiagnosticEvent.DELAYED_INVERSION_FAILURE.format(round, 3.0, 2.0), drained.get(2 * round + 1));
+      }
+      Assert.assertEquals(0, ring.drain(consumer));
+
+      // A full ring drops the new events and keeps the old ones.
+      for (int i = 0; i < 6; i++)
+      {
+         Assert.assertEquals(i < 4, ring.report(DiagnosticEvent.ESTIMATOR_OVERRUN, i, 1500.0, 1.0));
+      }
+      Assert.assertEquals(2, ring.getLostEvents());
+      drained.clear();
+      Assert.assertEquals(4, ring.drain(consumer));
+      Assert.assertEquals(DiagnosticEvent.ESTIMATOR_OVERRUN.format(3, 1500.0, 1.0), drained.get(3));
+   }
+
+   @Test
+   public void testConcurrentProducers() throws InterruptedException
+   {
+      DiagnosticRing ring = new DiagnosticRing(64);
+      int producers = 4;
+      int eventsPerProducer = 100000;
+
+      Thread[] threads = new Thread[producers];
+      for (int producer = 0; producer < producers; producer++)
+      {
+         int producerIndex = producer;
+         threads[producer] = new Thread(() ->
+         {
+            for (int i = 0; i < eventsPerProducer; i++)
+            {
+               ring.report(DiagnosticEvent.ESTIMATOR_OVERRUN, i, producerIndex, i);
+            }
+         });
+         threads[producer].start();
+      }
+
+      // Every drained event must be complete and the events of a producer must arrive in order.
+      long[] lastTicks = new long[producers];
+      Arrays.fill(lastTicks, -1L);
+      long[] received = new long[1];
+      String[] failure = new String[1];
+      DiagnosticRing.DiagnosticConsumer consumer = (event, tick, timestamp, firstValue, secondValue) ->
+      {
+         int producer = (int) firstValue;
+         if (event != DiagnosticEvent.ESTIMATOR_OVERRUN || tick != (long) secondValue || tick <= lastTicks[producer])
+         {
+            failure[0] = "Inconsistent event from producer " + producer + " at tick " + tick;
+         }
+         lastTicks[producer] = tick;
+         received[0]++;
+      };
+
+      boolean producing = true;
+      while (producing)
+      {
+         producing = false;
+         for (Thread thread : threads)
+         {
+            producing |= thread.isAlive();
+         }
+         ring.drain(consumer);
+      }
+      ring.drain(consumer);
+
+      Assert.assertNull(failure[0]);
+      Assert.assertEquals(producers * eventsPerProducer, received[0] + ring.getLostEvents());
+   }
+}
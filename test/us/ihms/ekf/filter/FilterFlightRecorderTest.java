@@ -0,0 +1,172 @@
+package us.ihms.ekf.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
+import us.ihmc.ekf.filter.FilterDump;
+import us.ihmc.ekf.filter.FilterFlightRecorder;
+import us.ihmc.ekf.filter.MeasurementGate;
+import us.ihmc.ekf.filter.MeasurementUpdate;
+import us.ihmc.ekf.filter.UpdateStrategyType;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+
+public class FilterFlightRecorderTest
+{
+   private static final double EPSILON = 1.0e-12;
+   private static final long DUMP_TIMEOUT_MILLIS = 10000;
+
+   @Test
+   public void testDumpAndReplayOnNisSpike() throws IOException, InterruptedException
+   {
+      Random random = new Random(6203L);
+      int size = 6;
+      int measurements = 3;
+      int depth = 8;
+      int spikeTick = 12;
+
+      DenseMatrix64F P = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.5, 2.0);
+      DenseMatrix64F H = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F Rdiagonal = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, 0.5, 1.0);
+      MeasurementUpdate measurementUpdate = UpdateStrategyType.BATCHED.create(new EjmlFilterMatrixOps());
+
+      Path directory = Files.createTempDirectory(getClass().getSimpleName());
+      FilterFlightRecorder recorder = new FilterFlightRecorder(depth, size, measurements, directory, new YoVariableRegistry("Test"));
+      try
+      {
+         // Record until a quarter of the depth after the spike so the recorder starts writing the dump.
+         List<DenseMatrix64F> priors = new ArrayList<>();
+         List<DenseMatrix64F> posteriors = new ArrayList<>();
+         List<DenseMatrix64F> residuals = new ArrayList<>();
+         for (int tick = 0; tick <= spikeTick + depth / 4; tick++)
+         {
+            DenseMatrix64F xPrior = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+            double residualMagnitude = tick == spikeTick ? 100.0 : 0.1;
+            DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -residualMagnitude, residualMagnitude);
+            DenseMatrix64F xPosterior = new DenseMatrix64F(0, 0);
+            DenseMatrix64F Pposterior = new DenseMatrix64F(0, 0);
+            DenseMatrix64F K = new DenseMatrix64F(0, 0);
+            assertTrue(measurementUpdate.update(xPosterior, Pposterior, K, xPrior, P, H, residual, Rdiagonal, true, true));
+            recorder.record(tick, xPrior, P, H, Rdiagonal, true, residual, K, xPosterior, false);
+            priors.add(xPrior);
+            posteriors.add(xPosterior);
+            residuals.add(residual);
+         }
+
+         waitForDumps(recorder, 1);
+         Path file = recorder.getLastDumpFile();
+         FilterDump dump = new FilterDump(file);
+         assertEquals(FilterFlightRecorder.Trigger.NIS_SPIKE, dump.getTrigger());
+         assertEquals(spikeTick, dump.getTriggerTick());
+         assertEquals(size, dump.getStateSize());
+         assertEquals(depth, dump.getNumberOfTicks());
+
+         DenseMatrix64F xPosterior = new DenseMatrix64F(0, 0);
+         DenseMatrix64F Pposterior = new DenseMatrix64F(0, 0);
+         DenseMatrix64F K = new DenseMatrix64F(0, 0);
+         int firstTick = priors.size() - depth;
+         for (int index = 0; index < dump.getNumberOfTicks(); index++)
+         {
+            int tick = firstTick + index;
+            assertEquals(tick, dump.getTick(index));
+            assertTrue(dump.isMeasurementNoiseDiagonal(index));
+            StateEstimatorTest.assertMatricesEqual(priors.get(tick), dump.getStatePrior(index), EPSILON);
+            StateEstimatorTest.assertMatricesEqual(P, dump.getCovariancePrior(index), EPSILON);
+            StateEstimatorTest.assertMatricesEqual(posteriors.get(tick), dump.getStatePosterior(index), EPSILON);
+            StateEstimatorTest.assertMatricesEqual(H, dump.getMeasurementJacobian(index), EPSILON);
+            StateEstimatorTest.assertMatricesEqual(Rdiagonal, dump.getMeasurementNoise(index), EPSILON);
+            StateEstimatorTest.assertMatricesEqual(residuals.get(tick), dump.getResidual(index), EPSILON);
+
+            double threshold = MeasurementGate.computeChiSquareThreshold(measurements, 10.0);
+            assertEquals(tick == spikeTick, dump.getNis(index) > threshold);
+
+            // Replaying the correction must reproduce the recorded result.
+            assertTrue(dump.replayCorrection(index, measurementUpdate, xPosterior, Pposterior, K));
+            StateEstimatorTest.assertMatricesEqual(dump.getStatePosterior(index), xPosterior, EPSILON);
+            StateEstimatorTest.assertMatricesEqual(dump.getKalmanGain(index), K, EPSILON);
+         }
+      }
+      finally
+      {
+         recorder.close();
+         deleteDirectory(directory);
+      }
+   }
+
+   @Test
+   public void testDumpOnInvalidState() throws IOException, InterruptedException
+   {
+      int size = 4;
+      int depth = 4;
+      int invalidTick = 5;
+
+      Path directory = Files.createTempDirectory(getClass().getSimpleName());
+      FilterFlightRecorder recorder = new FilterFlightRecorder(depth, size, 2, directory, new YoVariableRegistry("Test"));
+      try
+      {
+         // Ticks without a measurement are recorded with an empty jacobian.
+         DenseMatrix64F P = new DenseMatrix64F(size, size);
+         DenseMatrix64F H = new DenseMatrix64F(0, size);
+         DenseMatrix64F R = new DenseMatrix64F(0, 1);
+         DenseMatrix64F residual = new DenseMatrix64F(0, 1);
+         DenseMatrix64F K = new DenseMatrix64F(size, 0);
+         DenseMatrix64F x = new DenseMatrix64F(size, 1);
+         for (int tick = 0; tick <= invalidTick + depth / 4; tick++)
+         {
+            x.set(0, tick == invalidTick ? Double.NaN : tick);
+            recorder.record(tick, x, P, H, R, true, residual, K, x, false);
+         }
+
+         waitForDumps(recorder, 1);
+         FilterDump dump = new FilterDump(recorder.getLastDumpFile());
+         assertEquals(FilterFlightRecorder.Trigger.INVALID_STATE, dump.getTrigger());
+         assertEquals(invalidTick, dump.getTriggerTick());
+         assertEquals(depth, dump.getNumberOfTicks());
+         for (int index = 0; index < dump.getNumberOfTicks(); index++)
+         {
+            long tick = invalidTick + depth / 4 - depth + 1 + index;
+            assertEquals(tick, dump.getTick(index));
+            assertEquals(0, dump.getMeasurementJacobian(index).getNumRows());
+            assertEquals(tick == invalidTick ? Double.NaN : tick, dump.getStatePosterior(index).get(0), 0.0);
+         }
+      }
+      finally
+      {
+         recorder.close();
+         deleteDirectory(directory);
+      }
+   }
+
+   private static void waitForDumps(FilterFlightRecorder recorder, int dumps) throws InterruptedException
+   {
+      long deadline = System.currentTimeMillis() + DUMP_TIMEOUT_MILLIS;
+      while (recorder.getCompletedDumps() < dumps)
+      {
+         assertTrue("Dump was not written in time.", System.currentTimeMillis() < deadline);
+         Thread.sleep(1);
+      }
+   }
+
+   private static void deleteDirectory(Path directory) throws IOException
+   {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+      {
+         for (Path file : files)
+         {
+            Files.delete(file);
+         }
+      }
+      Files.delete(directory);
+   }
+}
@@ -0,0 +1,115 @@
+package us.ihms.ekf.filter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.ekf.filter.FilterMatrixOps;
+import us.ihmc.ekf.filter.FilterMatrixOpsType;
+
+/**
+ * Compares the time of a full filter tick (prediction, kalman gain, state and covariance update) between the
+ * {@link FilterMatrixOpsType}s for a range of state sizes. The measurement size is a quarter of the state size.
+ * <p>
+ * Every combination is warmed up before it is timed and the median of several repetitions is reported to reduce the
+ * influence of the just in time compiler and of the garbage collector.
+ * </p>
+ */
+public class FilterMatrixOpsBenchmark
+{
+   private static final int[] stateSizes = {20, 60, 120, 240};
+   private static final int workerThreads = 3;
+   private static final int warmupIterations = 200;
+   private static final int repetitions = 9;
+   private static final double secondsPerRepetition = 0.2;
+
+   public static void main(String[] args)
+   {
+      Random random = new Random(2871L);
+
+      for (int size : stateSizes)
+      {
+         int measurements = size / 4;
+         DenseMatrix64F F = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+         DenseMatrix64F P = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.1, 1.1);
+         DenseMatrix64F Q = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.1, 1.1);
+         DenseMatrix64F H = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+         DenseMatrix64F Rdiagonal = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, 0.1, 1.1);
+         DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -1.0, 1.0);
+         DenseMatrix64F x = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+         PrintTools.info("State size " + size + ", measurement size " + measurements + ":");
+         for (FilterMatrixOpsType type : FilterMatrixOpsType.values())
+         {
+            FilterMatrixOps ops = type.create(workerThreads);
+            Tick tick = new Tick(ops, F, P, Q, H, Rdiagonal, residual, x);
+            double micros = measure(tick);
+            PrintTools.info("   " + type + ": " + String.format("%.1f", micros) + " us per tick");
+         }
+      }
+   }
+
+   /**
+    * Returns the median time of a tick in microseconds.
+    */
+   private static double measure(Tick tick)
+   {
+      for (int i = 0; i < warmupIterations; i++)
+      {
+         tick.run();
+      }
+
+      // Estimate the number of ticks per repetition from a single timed tick.
+      long start = System.nanoTime();
+      tick.run();
+      long nanosPerTick = Math.max(System.nanoTime() - start, 1);
+      int ticksPerRepetition = (int) Math.max(1, Math.min(Integer.MAX_VALUE, secondsPerRepetition * 1.0e9 / nanosPerTick));
+
+      double[] micros = new double[repetitions];
+      for (int repetition = 0; repetition < repetitions; repetition++)
+      {
+         start = System.nanoTime();
+         for (int i = 0; i < ticksPerRepetition; i++)
+         {
+            tick.run();
+         }
+         micros[repetition] = (System.nanoTime() - start) * 1.0e-3 / ticksPerRepetition;
+      }
+
+      Arrays.sort(micros);
+      return micros[repetitions / 2];
+   }
+
+   private static class Tick
+   {
+      private final FilterMatrixOps ops;
+      private final DenseMatrix64F F, P, Q, H, Rdiagonal, residual, x;
+      private final DenseMatrix64F Pprior = new DenseMatrix64F(0, 0);
+      private final DenseMatrix64F K = new DenseMatrix64F(0, 0);
+      private final DenseMatrix64F xPosterior = new DenseMatrix64F(0, 0);
+      private final DenseMatrix64F Pposterior = new DenseMatrix64F(0, 0);
+
+      public Tick(FilterMatrixOps ops, DenseMatrix64F F, DenseMatrix64F P, DenseMatrix64F Q, DenseMatrix64F H, DenseMatrix64F Rdiagonal,
+                  DenseMatrix64F residual, DenseMatrix64F x)
+      {
+         this.ops = ops;
+         this.F = F;
+         this.P = P;
+         this.Q = Q;
+         this.H = H;
+         this.Rdiagonal = Rdiagonal;
+         this.residual = residual;
+         this.x = x;
+      }
+
+      public void run()
+      {
+         ops.predictErrorCovariance(Pprior, F, P, Q);
+         ops.computeKalmanGainDiagonalR(K, Pprior, H, Rdiagonal);
+         ops.updateState(xPosterior, K, residual, x);
+         ops.updateErrorCovarianceDiagonalR(Pposterior, K, H, Rdiagonal, Pprior);
+      }
+   }
+}
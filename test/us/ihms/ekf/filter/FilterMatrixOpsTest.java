@@ -6,9 +6,11 @@ import static org.junit.Assert.fail;
 import java.util.Random;
 
 import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
 import org.ejml.simple.SimpleMatrix;
 import org.junit.Test;
 
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
 import us.ihmc.ekf.filter.FilterMatrixOps;
 import us.ihmc.euclid.tools.EuclidCoreRandomTools;
 
@@ -16,7 +18,7 @@ public class FilterMatrixOpsTest
 {
    private static final double EPSILON = 1.0e-15;
 
-   private final FilterMatrixOps filterMatrixOps = new FilterMatrixOps();
+   private final FilterMatrixOps filterMatrixOps = new EjmlFilterMatrixOps();
 
    @Test
    public void testPredictErrorCovariance()
@@ -117,6 +119,75 @@ public class FilterMatrixOpsTest
       StateEstimatorTest.assertMatricesEqual(resultSimple.getMatrix(), result, EPSILON);
    }
 
+   @Test
+   public void testComputeKalmanGainDiagonalR()
+   {
+      // Test this against the implementation using a dense R matrix.
+      int size = 10;
+      int measurements = 4;
+      Random random = new Random(2359L);
+      DenseMatrix64F P = createRandomDiagonalMatrix(size, random, 1.0, 10000.0);
+      DenseMatrix64F H = createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F R = createRandomDiagonalMatrix(measurements, random, 0.0, 100.0);
+      DenseMatrix64F Rdiagonal = new DenseMatrix64F(measurements, 1);
+      CommonOps.extractDiag(R, Rdiagonal);
+      DenseMatrix64F expected = new DenseMatrix64F(0, 0);
+      DenseMatrix64F result = new DenseMatrix64F(0, 0);
+
+      assertTrue(filterMatrixOps.computeKalmanGain(expected, P, H, R));
+      assertTrue(filterMatrixOps.computeKalmanGainDiagonalR(result, P, H, Rdiagonal));
+
+      StateEstimatorTest.assertMatricesEqual(expected, result, EPSILON);
+   }
+
+   @Test
+   public void testUpdateErrorCovarianceDiagonalR()
+   {
+      // Test this against the implementation using a dense R matrix.
+      int size = 10;
+      int measurements = 4;
+      Random random = new Random(2359L);
+
+      DenseMatrix64F P = createRandomDiagonalMatrix(size, random, 1.0, 10000.0);
+      DenseMatrix64F H = createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F K = createRandomMatrix(size, measurements, random, -1.0, 1.0);
+      DenseMatrix64F R = createRandomDiagonalMatrix(measurements, random, 0.0, 100.0);
+      DenseMatrix64F Rdiagonal = new DenseMatrix64F(measurements, 1);
+      CommonOps.extractDiag(R, Rdiagonal);
+      DenseMatrix64F expected = new DenseMatrix64F(0, 0);
+      DenseMatrix64F result = new DenseMatrix64F(0, 0);
+
+      filterMatrixOps.updateErrorCovariance(expected, K, H, R, P);
+      filterMatrixOps.updateErrorCovarianceDiagonalR(result, K, H, Rdiagonal, P);
+
+      StateEstimatorTest.assertMatricesEqual(expected, result, 1.0e-9);
+   }
+
+   @Test
+   public void testUpdateErrorCovarianceExpanded()
+   {
+      // Test this against the Joseph form which is also valid for any gain.
+      int size = 10;
+      int measurements = 4;
+      Random random = new Random(2359L);
+
+      DenseMatrix64F P = createRandomDiagonalMatrix(size, random, 1.0, 10000.0);
+      DenseMatrix64F H = createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F K = createRandomMatrix(size, measurements, random, -1.0, 1.0);
+      DenseMatrix64F R = createRandomDiagonalMatrix(measurements, random, 0.0, 100.0);
+      DenseMatrix64F Rdiagonal = new DenseMatrix64F(measurements, 1);
+      CommonOps.extractDiag(R, Rdiagonal);
+      DenseMatrix64F expected = new DenseMatrix64F(0, 0);
+      DenseMatrix64F result = new DenseMatrix64F(0, 0);
+
+      filterMatrixOps.updateErrorCovariance(expected, K, H, R, P);
+      filterMatrixOps.updateErrorCovarianceExpanded(result, K, H, R, P);
+      StateEstimatorTest.assertMatricesEqual(expected, result, 1.0e-9);
+
+      filterMatrixOps.updateErrorCovarianceExpandedDiagonalR(result, K, H, Rdiagonal, P);
+      StateEstimatorTest.assertMatricesEqual(expected, result, 1.0e-9);
+   }
+
    public static DenseMatrix64F createRandomDiagonalMatrix(int size, Random random, double min, double max)
    {
       DenseMatrix64F ret = new DenseMatrix64F(size, size);
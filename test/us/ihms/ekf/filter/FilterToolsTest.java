@@ -0,0 +1,70 @@
+package us.ihms.ekf.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.FilterTools;
+import us.ihmc.ekf.filter.state.JointState;
+import us.ihmc.ekf.filter.state.PoseState;
+import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.euclid.referenceFrame.ReferenceFrame;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+
+public class FilterToolsTest
+{
+   private static final double DT = 0.001;
+
+   @Test
+   public void testInsertWithStartRow()
+   {
+      Random random = new Random(5830L);
+      YoVariableRegistry registry = new YoVariableRegistry("Test");
+      List<String> jointNames = Arrays.asList("Joint0", "Joint1", "Joint2", "Joint3");
+      List<JointState> jointStates = new ArrayList<>();
+      for (String jointName : jointNames)
+      {
+         jointStates.add(new JointState(jointName, DT, registry));
+      }
+      PoseState poseState = new PoseState("Body", DT, ReferenceFrame.getWorldFrame(), registry);
+      RobotState robotState = new RobotState(poseState, jointStates, registry);
+
+      // Only some of the joints such that some columns of the robot state are not affected by the inserted matrix.
+      List<String> insertedJointNames = Arrays.asList("Joint3", "Joint1");
+      int rows = 3;
+      int startRow = 2;
+      DenseMatrix64F matrixToInsert = FilterMatrixOpsTest.createRandomMatrix(rows, 6 + insertedJointNames.size(), random, -1.0, 1.0);
+      DenseMatrix64F expected = new DenseMatrix64F(0, 0);
+
+      // The overload with a start row must only write the rows of the inserted matrix and the columns of the robot state.
+      DenseMatrix64F initial = FilterMatrixOpsTest.createRandomMatrix(startRow + rows + 2, robotState.getSize() + 4, random, -1.0, 1.0);
+      DenseMatrix64F matrixToPack = new DenseMatrix64F(initial);
+      FilterTools.insertForVelocity(expected, insertedJointNames, matrixToInsert, robotState);
+      FilterTools.insertForVelocity(matrixToPack, startRow, insertedJointNames, matrixToInsert, robotState);
+      assertInserted(expected, initial, matrixToPack, startRow);
+
+      matrixToPack.set(initial);
+      FilterTools.insertForAcceleration(expected, insertedJointNames, matrixToInsert, robotState);
+      FilterTools.insertForAcceleration(matrixToPack, startRow, insertedJointNames, matrixToInsert, robotState);
+      assertInserted(expected, initial, matrixToPack, startRow);
+   }
+
+   private static void assertInserted(DenseMatrix64F expected, DenseMatrix64F initial, DenseMatrix64F actual, int startRow)
+   {
+      for (int row = 0; row < actual.getNumRows(); row++)
+      {
+         for (int col = 0; col < actual.getNumCols(); col++)
+         {
+            boolean inserted = row >= startRow && row < startRow + expected.getNumRows() && col < expected.getNumCols();
+            double expectedValue = inserted ? expected.get(row - startRow, col) : initial.get(row, col);
+            assertEquals(expectedValue, actual.get(row, col), 0.0);
+         }
+      }
+   }
+}
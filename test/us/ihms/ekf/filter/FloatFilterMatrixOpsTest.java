@@ -0,0 +1,93 @@
+package us.ihms.ekf.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
+import us.ihmc.ekf.filter.FilterMatrixOps;
+import us.ihmc.ekf.filter.FloatFilterMatrixOps;
+
+public class FloatFilterMatrixOpsTest
+{
+   // The single precision results are compared relative to the largest entry of the expected matrix.
+   private static final double RELATIVE_EPSILON = 1.0e-5;
+
+   private final FilterMatrixOps expectedOps = new EjmlFilterMatrixOps();
+   private final FilterMatrixOps filterMatrixOps = new FloatFilterMatrixOps();
+
+   @Test
+   public void testAgainstEjml()
+   {
+      // Test all operations against the EJML implementation.
+      int size = 15;
+      int measurements = 6;
+      Random random = new Random(6491L);
+
+      DenseMatrix64F P = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 1.0, 100.0);
+      DenseMatrix64F F = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+      DenseMatrix64F Q = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.0, 1.0);
+      DenseMatrix64F H = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F R = FilterMatrixOpsTest.createRandomDiagonalMatrix(measurements, random, 0.1, 10.0);
+      DenseMatrix64F Rdiagonal = new DenseMatrix64F(measurements, 1);
+      CommonOps.extractDiag(R, Rdiagonal);
+      DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -1.0, 1.0);
+      DenseMatrix64F x = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+      DenseMatrix64F expected = new DenseMatrix64F(0, 0);
+      DenseMatrix64F actual = new DenseMatrix64F(0, 0);
+
+      expectedOps.predictErrorCovariance(expected, F, P, Q);
+      filterMatrixOps.predictErrorCovariance(actual, F, P, Q);
+      assertMatricesEqualRelative(expected, actual, RELATIVE_EPSILON);
+      DenseMatrix64F Pprior = new DenseMatrix64F(expected);
+
+      DenseMatrix64F K = new DenseMatrix64F(0, 0);
+      assertTrue(expectedOps.computeKalmanGain(expected, Pprior, H, R));
+      assertTrue(filterMatrixOps.computeKalmanGain(K, Pprior, H, R));
+      assertMatricesEqualRelative(expected, K, RELATIVE_EPSILON);
+
+      assertTrue(expectedOps.computeKalmanGainDiagonalR(expected, Pprior, H, Rdiagonal));
+      assertTrue(filterMatrixOps.computeKalmanGainDiagonalR(actual, Pprior, H, Rdiagonal));
+      assertMatricesEqualRelative(expected, actual, RELATIVE_EPSILON);
+
+      // The state update is done in double precision.
+      expectedOps.updateState(expected, K, residual, x);
+      filterMatrixOps.updateState(actual, K, residual, x);
+      StateEstimatorTest.assertMatricesEqual(expected, actual, 1.0e-12);
+
+      expectedOps.updateErrorCovariance(expected, K, H, R, Pprior);
+      filterMatrixOps.updateErrorCovariance(actual, K, H, R, Pprior);
+      assertMatricesEqualRelative(expected, actual, RELATIVE_EPSILON);
+
+      expectedOps.updateErrorCovarianceDiagonalR(expected, K, H, Rdiagonal, Pprior);
+      filterMatrixOps.updateErrorCovarianceDiagonalR(actual, K, H, Rdiagonal, Pprior);
+      assertMatricesEqualRelative(expected, actual, RELATIVE_EPSILON);
+
+      expectedOps.updateErrorCovarianceExpanded(expected, K, H, R, Pprior);
+      filterMatrixOps.updateErrorCovarianceExpanded(actual, K, H, R, Pprior);
+      assertMatricesEqualRelative(expected, actual, RELATIVE_EPSILON);
+
+      expectedOps.updateErrorCovarianceExpandedDiagonalR(expected, K, H, Rdiagonal, Pprior);
+      filterMatrixOps.updateErrorCovarianceExpandedDiagonalR(actual, K, H, Rdiagonal, Pprior);
+      assertMatricesEqualRelative(expected, actual, RELATIVE_EPSILON);
+   }
+
+   private static void assertMatricesEqualRelative(DenseMatrix64F expected, DenseMatrix64F actual, double relativeEpsilon)
+   {
+      assertEquals(expected.getNumRows(), actual.getNumRows());
+      assertEquals(expected.getNumCols(), actual.getNumCols());
+
+      double scale = 0.0;
+      for (int i = 0; i < expected.getNumElements(); i++)
+      {
+         scale = Math.max(scale, Math.abs(expected.get(i)));
+      }
+      StateEstimatorTest.assertMatricesEqual(expected, actual, relativeEpsilon * scale);
+   }
+}
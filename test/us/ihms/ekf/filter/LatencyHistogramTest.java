@@ -0,0 +1,73 @@
+package us.ihms.ekf.filter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.LatencyHistogram;
+
+public class LatencyHistogramTest
+{
+   @Test
+   public void testPercentiles()
+   {
+      Random random = new Random(4821L);
+      LatencyHistogram histogram = new LatencyHistogram();
+      long[] values = new long[100000];
+      for (int i = 0; i < values.length; i++)
+      {
+         // Mostly short durations with a long tail.
+         values[i] = (long) (Math.exp(random.nextGaussian() * 2.0 + 10.0));
+         histogram.record(values[i]);
+      }
+      Arrays.sort(values);
+
+      Assert.assertEquals(values.length, histogram.getCount());
+      Assert.assertEquals(values[0], histogram.getMin());
+      Assert.assertEquals(values[values.length - 1], histogram.getMax());
+      for (double percentile : new double[] {1.0, 50.0, 90.0, 99.0, 99.9, 99.99, 100.0})
+      {
+         long expected = values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+         long actual = histogram.getValueAtPercentile(percentile);
+         // The reported value is the upper end of the bucket so it is never smaller than the exact value.
+         Assert.assertTrue(actual >= expected);
+         Assert.assertTrue(actual <= expected * (1.0 + 1.0 / 128.0));
+      }
+   }
+
+   @Test
+   public void testSmallValuesAreExact()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long value = 0; value < 200; value++)
+      {
+         histogram.record(value);
+      }
+      Assert.assertEquals(99, histogram.getValueAtPercentile(50.0));
+      Assert.assertEquals(199, histogram.getValueAtPercentile(100.0));
+      Assert.assertEquals(99.5, histogram.getMean(), 1.0e-12);
+   }
+
+   @Test
+   public void testAddAndReset()
+   {
+      LatencyHistogram first = new LatencyHistogram();
+      LatencyHistogram second = new LatencyHistogram();
+      first.record(1000L);
+      second.record(-5L);
+      second.record(1L << 45);
+      first.add(second);
+
+      Assert.assertEquals(3, first.getCount());
+      Assert.assertEquals(0L, first.getMin());
+      Assert.assertEquals(1L << 45, first.getMax());
+      Assert.assertEquals(1L << 45, first.getValueAtPercentile(100.0));
+
+      first.reset();
+      Assert.assertEquals(0, first.getCount());
+      Assert.assertEquals(0L, first.getMin());
+      Assert.assertEquals(0L, first.getValueAtPercentile(99.0));
+   }
+}
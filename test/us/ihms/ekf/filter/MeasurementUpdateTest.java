@@ -0,0 +1,139 @@
+package us.ihms.ekf.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.ConsiderMeasurementUpdate;
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
+import us.ihmc.ekf.filter.FilterMatrixOps;
+import us.ihmc.ekf.filter.MeasurementUpdate;
+import us.ihmc.ekf.filter.UpdateStrategyType;
+
+public class MeasurementUpdateTest
+{
+   private static final double EPSILON = 1.0e-9;
+
+   private final FilterMatrixOps filterMatrixOps = new EjmlFilterMatrixOps();
+
+   @Test
+   public void testStrategiesAgainstBatched()
+   {
+      // All strategies must give the same result as the batched update for a linear measurement.
+      Random random = new Random(3751L);
+      int size = 18;
+      int measurements = 7;
+
+      DenseMatrix64F P = createRandomCovariance(size, random);
+      DenseMatrix64F H = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      // Make the jacobian sparse such that the sequential update has to handle zero entries.
+      for (int i = 0; i < H.getNumElements(); i++)
+      {
+         if (random.nextDouble() < 0.5)
+         {
+            H.set(i, 0.0);
+         }
+      }
+      DenseMatrix64F R = FilterMatrixOpsTest.createRandomDiagonalMatrix(measurements, random, 0.1, 10.0);
+      DenseMatrix64F Rdiagonal = new DenseMatrix64F(measurements, 1);
+      CommonOps.extractDiag(R, Rdiagonal);
+      DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -1.0, 1.0);
+      DenseMatrix64F x = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+      DenseMatrix64F expectedX = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedP = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedK = new DenseMatrix64F(0, 0);
+      MeasurementUpdate batched = UpdateStrategyType.BATCHED.create(filterMatrixOps);
+      assertTrue(batched.update(expectedX, expectedP, expectedK, x, P, H, residual, Rdiagonal, true, true));
+
+      DenseMatrix64F actualX = new DenseMatrix64F(0, 0);
+      DenseMatrix64F actualP = new DenseMatrix64F(0, 0);
+      DenseMatrix64F actualK = new DenseMatrix64F(0, 0);
+      for (UpdateStrategyType type : UpdateStrategyType.values())
+      {
+         MeasurementUpdate measurementUpdate = type.create(filterMatrixOps);
+         assertTrue(measurementUpdate.update(actualX, actualP, actualK, x, P, H, residual, Rdiagonal, true, true));
+         StateEstimatorTest.assertMatricesEqual(expectedX, actualX, EPSILON);
+         StateEstimatorTest.assertMatricesEqual(expectedP, actualP, EPSILON);
+         StateEstimatorTest.assertMatricesEqual(expectedK, actualK, EPSILON);
+
+         if (measurementUpdate.supportsDenseR())
+         {
+            assertTrue(measurementUpdate.update(actualX, actualP, actualK, x, P, H, residual, R, false, true));
+            StateEstimatorTest.assertMatricesEqual(expectedX, actualX, EPSILON);
+            StateEstimatorTest.assertMatricesEqual(expectedP, actualP, EPSILON);
+            StateEstimatorTest.assertMatricesEqual(expectedK, actualK, EPSILON);
+         }
+      }
+   }
+
+   @Test
+   public void testConsiderUpdate()
+   {
+      Random random = new Random(9014L);
+      int size = 16;
+      int considerStart = 10;
+      int measurements = 5;
+
+      DenseMatrix64F P = createRandomCovariance(size, random);
+      DenseMatrix64F H = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F R = FilterMatrixOpsTest.createRandomDiagonalMatrix(measurements, random, 0.1, 10.0);
+      DenseMatrix64F Rdiagonal = new DenseMatrix64F(measurements, 1);
+      CommonOps.extractDiag(R, Rdiagonal);
+      DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -1.0, 1.0);
+      DenseMatrix64F x = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+      // Without consider states the update must match the batched update.
+      DenseMatrix64F expectedX = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedP = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedK = new DenseMatrix64F(0, 0);
+      assertTrue(UpdateStrategyType.BATCHED.create(filterMatrixOps).update(expectedX, expectedP, expectedK, x, P, H, residual, R, false, true));
+
+      DenseMatrix64F actualX = new DenseMatrix64F(0, 0);
+      DenseMatrix64F actualP = new DenseMatrix64F(0, 0);
+      DenseMatrix64F actualK = new DenseMatrix64F(0, 0);
+      assertTrue(new ConsiderMeasurementUpdate(filterMatrixOps, size).update(actualX, actualP, actualK, x, P, H, residual, R, false, true));
+      StateEstimatorTest.assertMatricesEqual(expectedX, actualX, EPSILON);
+      StateEstimatorTest.assertMatricesEqual(expectedP, actualP, EPSILON);
+      StateEstimatorTest.assertMatricesEqual(expectedK, actualK, EPSILON);
+
+      // The consider states and their covariance must not change. The covariance must match the Joseph form with the
+      // same gain.
+      MeasurementUpdate considerUpdate = new ConsiderMeasurementUpdate(filterMatrixOps, considerStart);
+      assertTrue(considerUpdate.update(actualX, actualP, actualK, x, P, H, residual, Rdiagonal, true, true));
+      for (int i = considerStart; i < size; i++)
+      {
+         assertEquals(x.get(i), actualX.get(i), 0.0);
+         for (int j = 0; j < measurements; j++)
+         {
+            assertEquals(0.0, actualK.get(i, j), 0.0);
+         }
+         for (int j = considerStart; j < size; j++)
+         {
+            assertEquals(P.get(i, j), actualP.get(i, j), EPSILON);
+         }
+      }
+      filterMatrixOps.updateErrorCovarianceDiagonalR(expectedP, actualK, H, Rdiagonal, P);
+      StateEstimatorTest.assertMatricesEqual(expectedP, actualP, EPSILON);
+   }
+
+   /**
+    * Creates a random symmetric positive definite matrix with correlations between the states.
+    */
+   private static DenseMatrix64F createRandomCovariance(int size, Random random)
+   {
+      DenseMatrix64F A = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+      DenseMatrix64F covariance = new DenseMatrix64F(size, size);
+      CommonOps.multTransB(A, A, covariance);
+      for (int i = 0; i < size; i++)
+      {
+         covariance.add(i, i, 1.0);
+      }
+      return covariance;
+   }
+}
@@ -0,0 +1,204 @@
+package us.ihms.ekf.filter;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.ejml.ops.NormOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
+import us.ihmc.ekf.filter.FilterMatrixOps;
+import us.ihmc.ekf.filter.FilterTools;
+import us.ihmc.ekf.filter.MultiRatePartition;
+
+public class MultiRatePartitionTest
+{
+   private static final double EPSILON = 1.0e-9;
+
+   private final FilterMatrixOps filterMatrixOps = new EjmlFilterMatrixOps();
+
+   @Test
+   public void testAgainstFullFilter()
+   {
+      // If the slow states are not observed the fast covariance and the cross covariance must match the full filter.
+      // The slow states and their covariance are only predicted while the full filter corrects them through the cross
+      // covariance.
+      Random random = new Random(4102L);
+      int fastSize = 9;
+      int slowSize = 6;
+      int size = fastSize + slowSize;
+      int measurements = 4;
+      int ticks = 10;
+
+      DenseMatrix64F F = new DenseMatrix64F(size, size);
+      CommonOps.insert(FilterMatrixOpsTest.createRandomMatrix(fastSize, random, -1.0, 1.0), F, 0, 0);
+      CommonOps.insert(FilterMatrixOpsTest.createRandomMatrix(slowSize, random, -1.0, 1.0), F, fastSize, fastSize);
+      DenseMatrix64F Q = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.0, 1.0);
+      DenseMatrix64F H = new DenseMatrix64F(measurements, size);
+      CommonOps.insert(FilterMatrixOpsTest.createRandomMatrix(measurements, fastSize, random, -1.0, 1.0), H, 0, 0);
+      DenseMatrix64F Rdiagonal = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, 0.1, 10.0);
+      DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -1.0, 1.0);
+      DenseMatrix64F xInitial = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+      DenseMatrix64F A = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+      DenseMatrix64F Pinitial = new DenseMatrix64F(size, size);
+      CommonOps.multTransB(A, A, Pinitial);
+
+      DenseMatrix64F expectedPprior = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedP = new DenseMatrix64F(Pinitial);
+      DenseMatrix64F expectedX = new DenseMatrix64F(xInitial);
+      DenseMatrix64F xPrior = new DenseMatrix64F(size, 1);
+      DenseMatrix64F K = new DenseMatrix64F(0, 0);
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         CommonOps.mult(F, expectedX, xPrior);
+         filterMatrixOps.predictErrorCovariance(expectedPprior, F, expectedP, Q);
+         assertTrue(filterMatrixOps.computeKalmanGainDiagonalR(K, expectedPprior, H, Rdiagonal));
+         filterMatrixOps.updateState(expectedX, K, residual, xPrior);
+         filterMatrixOps.updateErrorCovarianceDiagonalR(expectedP, K, H, Rdiagonal, expectedPprior);
+      }
+
+      MultiRatePartition partition = new MultiRatePartition(filterMatrixOps, fastSize);
+      DenseMatrix64F Pprior = new DenseMatrix64F(0, 0);
+      DenseMatrix64F P = new DenseMatrix64F(Pinitial);
+      DenseMatrix64F x = new DenseMatrix64F(xInitial);
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         CommonOps.mult(F, x, xPrior);
+         partition.predictFast(Pprior, F, P, Q);
+         assertTrue(partition.correctFast(x, P, K, xPrior, Pprior, H, residual, Rdiagonal, true));
+      }
+      partition.synchronize(P);
+
+      // The fast and cross covariance as well as the fast states match the full filter.
+      DenseMatrix64F expectedBlock = new DenseMatrix64F(fastSize, size);
+      DenseMatrix64F actualBlock = new DenseMatrix64F(fastSize, size);
+      CommonOps.extract(expectedP, 0, fastSize, 0, size, expectedBlock, 0, 0);
+      CommonOps.extract(P, 0, fastSize, 0, size, actualBlock, 0, 0);
+      StateEstimatorTest.assertMatricesEqual(expectedBlock, actualBlock, EPSILON);
+      DenseMatrix64F expectedFastState = new DenseMatrix64F(fastSize, 1);
+      DenseMatrix64F actualFastState = new DenseMatrix64F(fastSize, 1);
+      CommonOps.extract(expectedX, 0, fastSize, 0, 1, expectedFastState, 0, 0);
+      CommonOps.extract(x, 0, fastSize, 0, 1, actualFastState, 0, 0);
+      StateEstimatorTest.assertMatricesEqual(expectedFastState, actualFastState, EPSILON);
+
+      // The slow states and their covariance are the prediction without any correction.
+      DenseMatrix64F Fss = new DenseMatrix64F(slowSize, slowSize);
+      DenseMatrix64F Qss = new DenseMatrix64F(slowSize, slowSize);
+      DenseMatrix64F predictedPss = new DenseMatrix64F(slowSize, slowSize);
+      DenseMatrix64F predictedXs = new DenseMatrix64F(slowSize, 1);
+      DenseMatrix64F tempPss = new DenseMatrix64F(slowSize, slowSize);
+      DenseMatrix64F tempXs = new DenseMatrix64F(slowSize, 1);
+      CommonOps.extract(F, fastSize, size, fastSize, size, Fss, 0, 0);
+      CommonOps.extract(Q, fastSize, size, fastSize, size, Qss, 0, 0);
+      CommonOps.extract(Pinitial, fastSize, size, fastSize, size, predictedPss, 0, 0);
+      CommonOps.extract(xInitial, fastSize, size, 0, 1, predictedXs, 0, 0);
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         filterMatrixOps.predictErrorCovariance(tempPss, Fss, predictedPss, Qss);
+         predictedPss.set(tempPss);
+         CommonOps.mult(Fss, predictedXs, tempXs);
+         predictedXs.set(tempXs);
+      }
+      DenseMatrix64F actualPss = new DenseMatrix64F(slowSize, slowSize);
+      DenseMatrix64F actualXs = new DenseMatrix64F(slowSize, 1);
+      CommonOps.extract(P, fastSize, size, fastSize, size, actualPss, 0, 0);
+      CommonOps.extract(x, fastSize, size, 0, 1, actualXs, 0, 0);
+      StateEstimatorTest.assertMatricesEqual(predictedPss, actualPss, EPSILON * CommonOps.elementMaxAbs(predictedPss));
+      StateEstimatorTest.assertMatricesEqual(predictedXs, actualXs, EPSILON * CommonOps.elementMaxAbs(predictedXs));
+
+      // The full filter corrected the slow states through the cross covariance: the slow states deviate from it and
+      // the variance of every slow state is larger than in the full filter.
+      DenseMatrix64F expectedPss = new DenseMatrix64F(slowSize, slowSize);
+      DenseMatrix64F expectedXs = new DenseMatrix64F(slowSize, 1);
+      CommonOps.extract(expectedP, fastSize, size, fastSize, size, expectedPss, 0, 0);
+      CommonOps.extract(expectedX, fastSize, size, 0, 1, expectedXs, 0, 0);
+      CommonOps.subtract(actualXs, expectedXs, tempXs);
+      assertTrue(NormOps.normF(tempXs) > 1.0e-3 * NormOps.normF(expectedXs));
+      for (int i = 0; i < slowSize; i++)
+      {
+         assertTrue(actualPss.get(i, i) > expectedPss.get(i, i));
+      }
+   }
+
+   @Test
+   public void testObservedSlowStates()
+   {
+      // If the slow states are observed on fast ticks, e.g. the bias of an IMU, they are consider states: the fast
+      // states are corrected taking the slow covariance into account and the slow states are not corrected.
+      Random random = new Random(7734L);
+      int fastSize = 9;
+      int slowSize = 6;
+      int size = fastSize + slowSize;
+      int measurements = 4;
+      int ticks = 10;
+
+      DenseMatrix64F F = new DenseMatrix64F(size, size);
+      CommonOps.insert(FilterMatrixOpsTest.createRandomMatrix(fastSize, random, -1.0, 1.0), F, 0, 0);
+      CommonOps.insert(FilterMatrixOpsTest.createRandomMatrix(slowSize, random, -1.0, 1.0), F, fastSize, fastSize);
+      DenseMatrix64F Q = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.0, 1.0);
+      DenseMatrix64F Hobserved = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F Hunobserved = new DenseMatrix64F(Hobserved);
+      FilterTools.setZero(Hunobserved, 0, measurements, fastSize, slowSize);
+      DenseMatrix64F Rdiagonal = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, 0.1, 10.0);
+      DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -1.0, 1.0);
+      DenseMatrix64F xInitial = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+      DenseMatrix64F A = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+      DenseMatrix64F Pinitial = new DenseMatrix64F(size, size);
+      CommonOps.multTransB(A, A, Pinitial);
+
+      // Every third tick the slow states are not observed such that both kinds of fast ticks are mixed.
+      DenseMatrix64F[] Hs = new DenseMatrix64F[ticks];
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         Hs[tick] = tick % 3 == 2 ? Hunobserved : Hobserved;
+      }
+
+      // The reference zeroes the gain of the slow states of the full filter and uses the Joseph form that is valid
+      // for any gain. The optimal filter is used to check that the estimate is not overconfident.
+      DenseMatrix64F Pprior = new DenseMatrix64F(0, 0);
+      DenseMatrix64F xPrior = new DenseMatrix64F(size, 1);
+      DenseMatrix64F K = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedP = new DenseMatrix64F(Pinitial);
+      DenseMatrix64F expectedX = new DenseMatrix64F(xInitial);
+      DenseMatrix64F optimalP = new DenseMatrix64F(Pinitial);
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         CommonOps.mult(F, expectedX, xPrior);
+         filterMatrixOps.predictErrorCovariance(Pprior, F, expectedP, Q);
+         assertTrue(filterMatrixOps.computeKalmanGainDiagonalR(K, Pprior, Hs[tick], Rdiagonal));
+         FilterTools.setZero(K, fastSize, slowSize, 0, measurements);
+         filterMatrixOps.updateState(expectedX, K, residual, xPrior);
+         filterMatrixOps.updateErrorCovarianceDiagonalR(expectedP, K, Hs[tick], Rdiagonal, Pprior);
+
+         filterMatrixOps.predictErrorCovariance(Pprior, F, optimalP, Q);
+         assertTrue(filterMatrixOps.computeKalmanGainDiagonalR(K, Pprior, Hs[tick], Rdiagonal));
+         filterMatrixOps.updateErrorCovarianceDiagonalR(optimalP, K, Hs[tick], Rdiagonal, Pprior);
+      }
+
+      MultiRatePartition partition = new MultiRatePartition(filterMatrixOps, fastSize);
+      DenseMatrix64F P = new DenseMatrix64F(Pinitial);
+      DenseMatrix64F x = new DenseMatrix64F(xInitial);
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         CommonOps.mult(F, x, xPrior);
+         partition.predictFast(Pprior, F, P, Q);
+         assertTrue(partition.correctFast(x, P, K, xPrior, Pprior, Hs[tick], residual, Rdiagonal, true));
+      }
+      partition.synchronize(P);
+
+      double scale = CommonOps.elementMaxAbs(expectedP);
+      StateEstimatorTest.assertMatricesEqual(expectedP, P, EPSILON * scale);
+      StateEstimatorTest.assertMatricesEqual(expectedX, x, EPSILON * CommonOps.elementMaxAbs(expectedX));
+
+      // Ignoring the slow states when computing the gain would make the filter more confident than the optimal one.
+      for (int i = 0; i < size; i++)
+      {
+         assertTrue(P.get(i, i) >= optimalP.get(i, i) - EPSILON * scale);
+      }
+   }
+}
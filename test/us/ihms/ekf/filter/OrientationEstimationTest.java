@@ -5,6 +5,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.ejml.ops.NormOps;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -22,12 +25,15 @@ import us.ihmc.euclid.referenceFrame.tools.EuclidFrameRandomTools;
 import us.ihmc.euclid.tools.EuclidCoreRandomTools;
 import us.ihmc.euclid.transform.RigidBodyTransform;
 import us.ihmc.euclid.tuple3D.Vector3D;
+import us.ihmc.euclid.tuple4D.Quaternion;
+import us.ihmc.euclid.tuple4D.interfaces.QuaternionReadOnly;
 import us.ihmc.robotics.screwTheory.RigidBody;
 import us.ihmc.robotics.screwTheory.ScrewTools;
 import us.ihmc.robotics.screwTheory.SixDoFJoint;
 import us.ihmc.robotics.screwTheory.Twist;
 import us.ihmc.yoVariables.parameters.DefaultParameterReader;
 import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
 
 public class OrientationEstimationTest
 {
@@ -113,6 +119,141 @@ public class OrientationEstimationTest
       Assert.assertEquals(expectedPitch, actualPitch, BODY_ORIENTATION_EPSILON);
    }
 
+   @Test
+   public void testDelayedAccelerationMeasurement()
+   {
+      int measurementTick = 100;
+      int ticksOfDelay = 20;
+      double rollRate = 1.0;
+      double rollError = 0.05;
+
+      // Run one estimator that fuses an acceleration measurement in the tick it was taken and one that fuses it a few
+      // ticks later. The body is rolling so the orientation changes while the measurement is delayed.
+      FloatingBodyEstimator inOrder = new FloatingBodyEstimator("InOrder", rollRate, ticksOfDelay + 1);
+      FloatingBodyEstimator delayed = new FloatingBodyEstimator("Delayed", rollRate, ticksOfDelay + 1);
+
+      Vector3D accelerationMeasurement = new Vector3D();
+      FrameQuaternion inOrderOrientation = new FrameQuaternion();
+      FrameQuaternion delayedOrientation = new FrameQuaternion();
+      FrameQuaternion orientationWithoutMeasurement = new FrameQuaternion();
+      DenseMatrix64F covarianceWithoutMeasurement = new DenseMatrix64F(0, 0);
+      for (int i = 0; i <= measurementTick + ticksOfDelay; i++)
+      {
+         inOrder.update();
+         delayed.update();
+
+         if (i == measurementTick)
+         {
+            // The gravity is measured as if the body was rolled a bit further than estimated.
+            inOrder.poseState.getOrientation(inOrderOrientation);
+            RotationMatrix trueOrientation = new RotationMatrix(inOrderOrientation);
+            trueOrientation.prependRollRotation(rollError);
+            accelerationMeasurement.set(0.0, 0.0, RobotState.GRAVITY);
+            trueOrientation.inverseTransform(accelerationMeasurement);
+
+            inOrder.accelerationSensor.setMeasurement(accelerationMeasurement);
+            Assert.assertTrue(inOrder.estimator.correctDelayed(inOrder.accelerationSensor, 0));
+            inOrder.updateRobot();
+         }
+      }
+
+      delayed.poseState.getOrientation(orientationWithoutMeasurement);
+      delayed.estimator.getCovariance(covarianceWithoutMeasurement);
+      delayed.accelerationSensor.setMeasurement(accelerationMeasurement);
+      Assert.assertTrue(delayed.estimator.correctDelayed(delayed.accelerationSensor, ticksOfDelay));
+      delayed.updateRobot();
+
+      // The model is non-linear so the result is not the same. However, the delayed correction of the orientation and
+      // covariance must be close to the one of the measurement that was fused in order.
+      inOrder.poseState.getOrientation(inOrderOrientation);
+      delayed.poseState.getOrientation(delayedOrientation);
+      double inOrderCorrection = computeAngle(inOrderOrientation, orientationWithoutMeasurement);
+      Assert.assertTrue(inOrderCorrection > 1.0e-3);
+      Assert.assertEquals(0.0, computeAngle(delayedOrientation, inOrderOrientation), 0.1 * inOrderCorrection);
+
+      DenseMatrix64F inOrderCovariance = new DenseMatrix64F(0, 0);
+      DenseMatrix64F delayedCovariance = new DenseMatrix64F(0, 0);
+      inOrder.estimator.getCovariance(inOrderCovariance);
+      delayed.estimator.getCovariance(delayedCovariance);
+      CommonOps.subtract(covarianceWithoutMeasurement, inOrderCovariance, covarianceWithoutMeasurement);
+      CommonOps.subtract(delayedCovariance, inOrderCovariance, delayedCovariance);
+      Assert.assertEquals(0.0, NormOps.normF(delayedCovariance), 0.1 * NormOps.normF(covarianceWithoutMeasurement));
+   }
+
+   private static double computeAngle(QuaternionReadOnly orientationA, QuaternionReadOnly orientationB)
+   {
+      Quaternion difference = new Quaternion(orientationA);
+      difference.multiplyConjugateOther(orientationB);
+      Vector3D rotationVector = new Vector3D();
+      difference.getRotationVector(rotationVector);
+      return rotationVector.length();
+   }
+
+   /**
+    * A single floating body with an IMU. The body is rolling at a constant rate and the velocity and angular velocity
+    * are measured in every tick. The accurate acceleration sensor is only used when calling
+    * {@link StateEstimator#correctDelayed(Sensor, int)}.
+    */
+   private static class FloatingBodyEstimator
+   {
+      private final SixDoFJoint rootJoint;
+      private final PoseState poseState;
+      private final LinearAccelerationSensor accelerationSensor;
+      private final StateEstimator estimator;
+
+      private final RigidBodyTransform rootTransform = new RigidBodyTransform();
+      private final Twist rootTwist = new Twist();
+
+      public FloatingBodyEstimator(String name, double rollRate, int historyDepth)
+      {
+         RigidBody elevator = new RigidBody(name + "Elevator", worldFrame);
+         rootJoint = new SixDoFJoint(name + "FloatingJoint", elevator);
+         RigidBody body = ScrewTools.addRigidBody(name + "Body", rootJoint, 1.0, 1.0, 1.0, 1.0, new Vector3D());
+         ReferenceFrame bodyFrame = rootJoint.getFrameAfterJoint();
+
+         YoVariableRegistry registry = new YoVariableRegistry(name);
+         accelerationSensor = new LinearAccelerationSensor("LinearAcceleration", ESTIMATOR_DT, body, bodyFrame, false, registry);
+         AngularVelocitySensor angularVelocitySensor = new AngularVelocitySensor("AngularVelocity", ESTIMATOR_DT, body, bodyFrame, false, registry);
+         LinearVelocitySensor linearVelocitySensor = new LinearVelocitySensor("LinearVelocity", ESTIMATOR_DT, body, bodyFrame, false, registry);
+         accelerationSensor.setTicksPerUpdate(0);
+         angularVelocitySensor.setMeasurement(new Vector3D(rollRate, 0.0, 0.0));
+         linearVelocitySensor.setMeasurement(new Vector3D());
+
+         poseState = new PoseState(body.getName(), ESTIMATOR_DT, bodyFrame, registry);
+         RobotState robotState = new RobotState(poseState, Collections.emptyList(), registry);
+
+         List<Sensor> sensors = new ArrayList<>();
+         sensors.add(accelerationSensor);
+         sensors.add(angularVelocitySensor);
+         sensors.add(linearVelocitySensor);
+         estimator = new StateEstimator(sensors, robotState, historyDepth, registry);
+         loadParameters(registry);
+         ((YoDouble) registry.getVariable(accelerationSensor.getName() + "Variance")).set(1.0e-3);
+
+         Twist initialTwist = new Twist(bodyFrame, bodyFrame.getParent(), bodyFrame);
+         initialTwist.setAngularPartX(rollRate);
+         poseState.initialize(new RigidBodyTransform(), initialTwist);
+         updateRobot();
+      }
+
+      public void update()
+      {
+         estimator.predict();
+         updateRobot();
+         estimator.correct();
+         updateRobot();
+      }
+
+      public void updateRobot()
+      {
+         poseState.getTransform(rootTransform);
+         rootJoint.setPositionAndRotation(rootTransform);
+         poseState.getTwist(rootTwist);
+         rootJoint.setJointTwist(rootTwist);
+         rootJoint.updateFramesRecursively();
+      }
+   }
+
    private static void loadParameters(YoVariableRegistry registry)
    {
       new DefaultParameterReader().readParametersInRegistry(registry);
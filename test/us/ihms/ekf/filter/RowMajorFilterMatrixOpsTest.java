@@ -0,0 +1,102 @@
+package us.ihms.ekf.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
+import us.ihmc.ekf.filter.FilterMatrixOps;
+import us.ihmc.ekf.filter.RowMajorFilterMatrixOps;
+
+public class RowMajorFilterMatrixOpsTest
+{
+   private static final double EPSILON = 1.0e-8;
+
+   private final FilterMatrixOps expectedOps = new EjmlFilterMatrixOps();
+   private final FilterMatrixOps filterMatrixOps = new RowMajorFilterMatrixOps();
+
+   @Test
+   public void testAgainstEjml()
+   {
+      // Test all operations against the EJML implementation.
+      int size = 15;
+      int measurements = 6;
+      Random random = new Random(6491L);
+
+      DenseMatrix64F P = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 1.0, 100.0);
+      DenseMatrix64F F = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+      DenseMatrix64F Q = FilterMatrixOpsTest.createRandomDiagonalMatrix(size, random, 0.0, 1.0);
+      DenseMatrix64F H = FilterMatrixOpsTest.createRandomMatrix(measurements, size, random, -1.0, 1.0);
+      DenseMatrix64F R = FilterMatrixOpsTest.createRandomDiagonalMatrix(measurements, random, 0.1, 10.0);
+      DenseMatrix64F Rdiagonal = new DenseMatrix64F(measurements, 1);
+      CommonOps.extractDiag(R, Rdiagonal);
+      DenseMatrix64F residual = FilterMatrixOpsTest.createRandomMatrix(measurements, 1, random, -1.0, 1.0);
+      DenseMatrix64F x = FilterMatrixOpsTest.createRandomMatrix(size, 1, random, -1.0, 1.0);
+
+      DenseMatrix64F expected = new DenseMatrix64F(0, 0);
+      DenseMatrix64F actual = new DenseMatrix64F(0, 0);
+
+      expectedOps.predictErrorCovariance(expected, F, P, Q);
+      filterMatrixOps.predictErrorCovariance(actual, F, P, Q);
+      StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+      DenseMatrix64F Pprior = new DenseMatrix64F(expected);
+
+      DenseMatrix64F K = new DenseMatrix64F(0, 0);
+      assertTrue(expectedOps.computeKalmanGain(expected, Pprior, H, R));
+      assertTrue(filterMatrixOps.computeKalmanGain(K, Pprior, H, R));
+      StateEstimatorTest.assertMatricesEqual(expected, K, EPSILON);
+
+      assertTrue(expectedOps.computeKalmanGainDiagonalR(expected, Pprior, H, Rdiagonal));
+      assertTrue(filterMatrixOps.computeKalmanGainDiagonalR(actual, Pprior, H, Rdiagonal));
+      StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+
+      expectedOps.updateState(expected, K, residual, x);
+      filterMatrixOps.updateState(actual, K, residual, x);
+      StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+
+      expectedOps.updateErrorCovariance(expected, K, H, R, Pprior);
+      filterMatrixOps.updateErrorCovariance(actual, K, H, R, Pprior);
+      StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+
+      expectedOps.updateErrorCovarianceDiagonalR(expected, K, H, Rdiagonal, Pprior);
+      filterMatrixOps.updateErrorCovarianceDiagonalR(actual, K, H, Rdiagonal, Pprior);
+      StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+
+      expectedOps.updateErrorCovarianceExpanded(expected, K, H, R, Pprior);
+      filterMatrixOps.updateErrorCovarianceExpanded(actual, K, H, R, Pprior);
+      StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+
+      expectedOps.updateErrorCovarianceExpandedDiagonalR(expected, K, H, Rdiagonal, Pprior);
+      filterMatrixOps.updateErrorCovarianceExpandedDiagonalR(actual, K, H, Rdiagonal, Pprior);
+      StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+   }
+
+   @Test
+   public void testInvertMatrix()
+   {
+      Random random = new Random(1197L);
+      int size = 12;
+      DenseMatrix64F A = FilterMatrixOpsTest.createRandomMatrix(size, random, -1.0, 1.0);
+      DenseMatrix64F inverse = new DenseMatrix64F(0, 0);
+      DenseMatrix64F identity = new DenseMatrix64F(size, size);
+
+      assertTrue(filterMatrixOps.invertMatrix(inverse, A));
+      CommonOps.mult(A, inverse, identity);
+      for (int i = 0; i < size; i++)
+      {
+         for (int j = 0; j < size; j++)
+         {
+            assertEquals(i == j ? 1.0 : 0.0, identity.get(i, j), EPSILON);
+         }
+      }
+
+      DenseMatrix64F singular = new DenseMatrix64F(size, size);
+      assertFalse(filterMatrixOps.invertMatrix(inverse, singular));
+   }
+}
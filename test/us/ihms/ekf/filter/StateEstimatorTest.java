@@ -9,16 +9,27 @@ import org.ejml.ops.CommonOps;
 import org.junit.Assert;
 import org.junit.Test;
 
+import us.ihmc.ekf.filter.EjmlFilterMatrixOps;
+import us.ihmc.ekf.filter.EstimatorStage;
 import us.ihmc.ekf.filter.FilterMatrixOps;
+import us.ihmc.ekf.filter.FilterTools;
+import us.ihmc.ekf.filter.LatencyHistogram;
+import us.ihmc.ekf.filter.StageLatencies;
 import us.ihmc.ekf.filter.StateEstimator;
+import us.ihmc.ekf.filter.UpdateStrategyType;
 import us.ihmc.ekf.filter.sensor.ComposedSensor;
 import us.ihmc.ekf.filter.sensor.JointPositionSensor;
 import us.ihmc.ekf.filter.sensor.Sensor;
+import us.ihmc.ekf.filter.state.BiasState;
 import us.ihmc.ekf.filter.state.ComposedState;
 import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.ekf.filter.state.State;
 import us.ihmc.euclid.tools.EuclidCoreRandomTools;
 import us.ihmc.yoVariables.parameters.DefaultParameterReader;
 import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoInteger;
 
 public class StateEstimatorTest
 {
@@ -94,7 +105,7 @@ public class StateEstimatorTest
       DenseMatrix64F inverse = new DenseMatrix64F(0, 0);
       DenseMatrix64F Pinv = new DenseMatrix64F(0, 0);
 
-      FilterMatrixOps ops = new FilterMatrixOps();
+      FilterMatrixOps ops = new EjmlFilterMatrixOps();
       ops.invertMatrix(Rinv, R);
       CommonOps.transpose(H, Htranspose);
 
@@ -113,6 +124,487 @@ public class StateEstimatorTest
       assertMatricesEqual(P, actualCovariance, EPSILON);
    }
 
+   @Test
+   public void testSensorRates()
+   {
+      YoVariableRegistry registry = new YoVariableRegistry(getClass().getSimpleName());
+      Random random = new Random(4286L);
+      double dt = 0.001;
+      int slowSensorTicksPerUpdate = 10;
+
+      // Create a simple robot with two one dof joints. One is measured in every tick, the other one at a lower rate.
+      List<String> jointNames = new ArrayList<>();
+      jointNames.add("FastJoint");
+      jointNames.add("SlowJoint");
+
+      List<Sensor> sensors = new ArrayList<>();
+      DenseMatrix64F expectedState = new DenseMatrix64F(jointNames.size() * 3, 1);
+      for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+      {
+         String jointName = jointNames.get(jointIdx);
+         JointPositionSensor jointSensor = new JointPositionSensor(jointName, dt, registry);
+         double jointPosition = EuclidCoreRandomTools.nextDouble(random);
+         expectedState.set(3 * jointIdx, jointPosition);
+         jointSensor.setJointPositionMeasurement(jointPosition);
+         sensors.add(jointSensor);
+      }
+      sensors.get(1).setTicksPerUpdate(slowSensorTicksPerUpdate);
+
+      // The measurement should only contain the slow sensor in the ticks it is due.
+      ComposedSensor sensor = new ComposedSensor(sensors, jointNames.size() * 3);
+      for (int tick = 0; tick < 5 * slowSensorTicksPerUpdate; tick++)
+      {
+         int expectedMeasurementSize = tick % slowSensorTicksPerUpdate == 0 ? 2 : 1;
+         Assert.assertEquals(expectedMeasurementSize, sensor.setActiveSensors(tick));
+         Assert.assertEquals(expectedMeasurementSize, sensor.getMeasurementSize());
+      }
+
+      RobotState robotState = new RobotState(jointNames, dt, registry);
+      StateEstimator stateEstimator = new StateEstimator(sensors, robotState, registry);
+      new DefaultParameterReader().readParametersInRegistry(registry);
+
+      for (int i = 0; i < 6000; i++)
+      {
+         stateEstimator.predict();
+         stateEstimator.correct();
+      }
+      Assert.assertEquals(6000, stateEstimator.getTick());
+
+      // Both joints should have converged to the measured positions.
+      DenseMatrix64F actualState = new DenseMatrix64F(0, 0);
+      robotState.getStateVector(actualState);
+      assertMatricesEqual(expectedState, actualState, 1.0e-6);
+   }
+
+   @Test
+   public void testOutlierGating()
+   {
+      YoVariableRegistry registry = new YoVariableRegistry(getClass().getSimpleName());
+      Random random = new Random(9123L);
+      double dt = 0.001;
+
+      List<String> jointNames = new ArrayList<>();
+      jointNames.add("Joint0");
+      jointNames.add("Joint1");
+
+      List<JointPositionSensor> jointSensors = new ArrayList<>();
+      List<Sensor> sensors = new ArrayList<>();
+      DenseMatrix64F expectedState = new DenseMatrix64F(jointNames.size() * 3, 1);
+      for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+      {
+         String jointName = jointNames.get(jointIdx);
+         JointPositionSensor jointSensor = new JointPositionSensor(jointName, dt, registry);
+         double jointPosition = EuclidCoreRandomTools.nextDouble(random);
+         expectedState.set(3 * jointIdx, jointPosition);
+         jointSensor.setJointPositionMeasurement(jointPosition);
+         jointSensors.add(jointSensor);
+         sensors.add(jointSensor);
+      }
+
+      RobotState robotState = new RobotState(jointNames, dt, registry);
+      StateEstimator stateEstimator = new StateEstimator(sensors, robotState, registry);
+      new DefaultParameterReader().readParametersInRegistry(registry);
+      ((YoBoolean) registry.getVariable("enableOutlierGating")).set(true);
+
+      // The initial covariance is small so start the filter close to the measurement.
+      robotState.setStateVector(expectedState);
+      for (int i = 0; i < 6000; i++)
+      {
+         stateEstimator.predict();
+         stateEstimator.correct();
+      }
+      YoInteger rejectedMeasurements = (YoInteger) registry.getVariable(jointSensors.get(0).getName() + "RejectedMeasurements");
+      Assert.assertEquals(0, rejectedMeasurements.getIntegerValue());
+
+      // A single faulty measurement should be rejected and not affect the state.
+      jointSensors.get(0).setJointPositionMeasurement(expectedState.get(0) + 1.0e3);
+      stateEstimator.predict();
+      stateEstimator.correct();
+      jointSensors.get(0).setJointPositionMeasurement(expectedState.get(0));
+      Assert.assertEquals(1, rejectedMeasurements.getIntegerValue());
+
+      DenseMatrix64F actualState = new DenseMatrix64F(0, 0);
+      robotState.getStateVector(actualState);
+      assertMatricesEqual(expectedState, actualState, 1.0e-6);
+
+      // The sensor should be used again in the following ticks.
+      stateEstimator.predict();
+      stateEstimator.correct();
+      Assert.assertEquals(1, rejectedMeasurements.getIntegerValue());
+   }
+
+   @Test
+   public void testSteadyStateGain()
+   {
+      Random random = new Random(2290L);
+      double dt = 0.001;
+
+      List<String> jointNames = new ArrayList<>();
+      jointNames.add("Joint0");
+      jointNames.add("Joint1");
+      jointNames.add("Joint2");
+
+      // Run one estimator with and one without the steady state gain mode on the same measurements.
+      YoVariableRegistry fullRegistry = new YoVariableRegistry("Full");
+      YoVariableRegistry steadyStateRegistry = new YoVariableRegistry("SteadyState");
+      List<JointPositionSensor> fullSensors = new ArrayList<>();
+      List<JointPositionSensor> steadyStateSensors = new ArrayList<>();
+      for (String jointName : jointNames)
+      {
+         fullSensors.add(new JointPositionSensor(jointName, dt, fullRegistry));
+         steadyStateSensors.add(new JointPositionSensor(jointName, dt, steadyStateRegistry));
+      }
+
+      RobotState fullRobotState = new RobotState(jointNames, dt, fullRegistry);
+      RobotState steadyStateRobotState = new RobotState(jointNames, dt, steadyStateRegistry);
+      StateEstimator fullEstimator = new StateEstimator(new ArrayList<>(fullSensors), fullRobotState, fullRegistry);
+      StateEstimator steadyStateEstimator = new StateEstimator(new ArrayList<>(steadyStateSensors), steadyStateRobotState, steadyStateRegistry);
+      new DefaultParameterReader().readParametersInRegistry(fullRegistry);
+      new DefaultParameterReader().readParametersInRegistry(steadyStateRegistry);
+      ((YoBoolean) steadyStateRegistry.getVariable("enableSteadyStateGain")).set(true);
+      YoBoolean steadyStateGainActive = (YoBoolean) steadyStateRegistry.getVariable("steadyStateGainActive");
+
+      DenseMatrix64F fullState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F steadyState = new DenseMatrix64F(0, 0);
+      for (int i = 0; i < 6000; i++)
+      {
+         for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+         {
+            double jointPosition = Math.sin(0.001 * i + jointIdx) + 0.01 * random.nextGaussian();
+            fullSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+            steadyStateSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+         }
+
+         fullEstimator.predict();
+         fullEstimator.correct();
+         steadyStateEstimator.predict();
+         steadyStateEstimator.correct();
+      }
+
+      // The fixed gain mode must have been activated and give the same result as the full filter.
+      Assert.assertTrue(steadyStateGainActive.getValue());
+      fullRobotState.getStateVector(fullState);
+      steadyStateRobotState.getStateVector(steadyState);
+      assertMatricesEqual(fullState, steadyState, 1.0e-6);
+
+      DenseMatrix64F fullCovariance = new DenseMatrix64F(0, 0);
+      DenseMatrix64F steadyStateCovariance = new DenseMatrix64F(0, 0);
+      fullEstimator.getCovariance(fullCovariance);
+      steadyStateEstimator.getCovariance(steadyStateCovariance);
+      assertMatricesEqual(fullCovariance, steadyStateCovariance, 1.0e-6);
+
+      // Changing the process noise must revert to the full filter.
+      String varianceName = FilterTools.stringToPrefix(jointNames.get(0)) + "AccelerationVariance";
+      ((YoDouble) steadyStateRegistry.getVariable(varianceName)).set(2.0);
+      steadyStateEstimator.predict();
+      steadyStateEstimator.correct();
+      Assert.assertFalse(steadyStateGainActive.getValue());
+   }
+
+   @Test
+   public void testStageLatencies()
+   {
+      YoVariableRegistry registry = new YoVariableRegistry(getClass().getSimpleName());
+      double dt = 0.001;
+      int ticks = 2000;
+
+      List<String> jointNames = new ArrayList<>();
+      jointNames.add("Joint0");
+      List<Sensor> sensors = new ArrayList<>();
+      sensors.add(new JointPositionSensor(jointNames.get(0), dt, registry));
+
+      RobotState robotState = new RobotState(jointNames, dt, registry);
+      StateEstimator stateEstimator = new StateEstimator(sensors, robotState, registry);
+      new DefaultParameterReader().readParametersInRegistry(registry);
+      StageLatencies stageLatencies = stateEstimator.getStageLatencies();
+
+      for (int i = 0; i < ticks; i++)
+      {
+         stateEstimator.predict();
+         stateEstimator.correct();
+      }
+
+      // The batched update runs all filter stages once per tick. The stages outside of the filter are not recorded.
+      for (EstimatorStage stage : EstimatorStage.values())
+      {
+         boolean filterStage = stage != EstimatorStage.SENSOR_READ && stage != EstimatorStage.MODEL_UPDATE;
+         LatencyHistogram histogram = stageLatencies.getHistogram(stage);
+         Assert.assertEquals(filterStage ? ticks : 0, histogram.getCount());
+         Assert.assertTrue(histogram.getValueAtPercentile(50.0) <= histogram.getValueAtPercentile(99.0));
+         Assert.assertTrue(histogram.getValueAtPercentile(99.0) <= histogram.getMax());
+      }
+
+      stageLatencies.reset();
+      Assert.assertEquals(0, stageLatencies.getHistogram(EstimatorStage.GAIN).getCount());
+   }
+
+   @Test
+   public void testSlowStateTicks()
+   {
+      double dt = 0.001;
+      int slowStateTicks = 5;
+
+      List<String> jointNames = new ArrayList<>();
+      jointNames.add("Joint0");
+      jointNames.add("Joint1");
+
+      // Run one estimator that updates the sensor states every tick and one that updates them at a lower rate. The
+      // sensor states are not observed so both must give the same result.
+      YoVariableRegistry fullRegistry = new YoVariableRegistry("Full");
+      YoVariableRegistry multiRateRegistry = new YoVariableRegistry("MultiRate");
+      List<JointPositionSensor> fullSensors = new ArrayList<>();
+      List<JointPositionSensor> multiRateSensors = new ArrayList<>();
+      for (String jointName : jointNames)
+      {
+         fullSensors.add(new UnobservedBiasSensor(jointName, dt, fullRegistry));
+         multiRateSensors.add(new UnobservedBiasSensor(jointName, dt, multiRateRegistry));
+      }
+
+      RobotState fullRobotState = new RobotState(jointNames, dt, fullRegistry);
+      RobotState multiRateRobotState = new RobotState(jointNames, dt, multiRateRegistry);
+      StateEstimator fullEstimator = new StateEstimator(new ArrayList<>(fullSensors), fullRobotState, fullRegistry);
+      StateEstimator multiRateEstimator = new StateEstimator(new ArrayList<>(multiRateSensors), multiRateRobotState, multiRateRegistry);
+      new DefaultParameterReader().readParametersInRegistry(fullRegistry);
+      new DefaultParameterReader().readParametersInRegistry(multiRateRegistry);
+      ((YoInteger) multiRateRegistry.getVariable("slowStateTicks")).set(slowStateTicks);
+
+      DenseMatrix64F fullState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F multiRateState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F fullCovariance = new DenseMatrix64F(0, 0);
+      DenseMatrix64F multiRateCovariance = new DenseMatrix64F(0, 0);
+      for (int i = 0; i < 1000; i++)
+      {
+         for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+         {
+            double jointPosition = Math.sin(0.01 * i + jointIdx);
+            fullSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+            multiRateSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+         }
+
+         fullEstimator.predict();
+         fullEstimator.correct();
+         multiRateEstimator.predict();
+         multiRateEstimator.correct();
+
+         // Compare after full and after fast ticks. Reading the covariance brings the slow blocks up to date.
+         if (i % 7 == 0)
+         {
+            fullRobotState.getStateVector(fullState);
+            multiRateRobotState.getStateVector(multiRateState);
+            assertMatricesEqual(fullState, multiRateState, 1.0e-8);
+            for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+            {
+               fullSensors.get(jointIdx).getSensorState().getStateVector(fullState);
+               multiRateSensors.get(jointIdx).getSensorState().getStateVector(multiRateState);
+               assertMatricesEqual(fullState, multiRateState, 1.0e-8);
+            }
+            fullEstimator.getCovariance(fullCovariance);
+            multiRateEstimator.getCovariance(multiRateCovariance);
+            assertMatricesEqual(fullCovariance, multiRateCovariance, 1.0e-8);
+         }
+      }
+   }
+
+   @Test
+   public void testAutotuneUpdateStrategy()
+   {
+      double dt = 0.001;
+      List<String> jointNames = new ArrayList<>();
+      jointNames.add("Joint0");
+      jointNames.add("Joint1");
+      jointNames.add("Joint2");
+
+      // Run one estimator with the batched update and one that calibrates the update strategies.
+      YoVariableRegistry batchedRegistry = new YoVariableRegistry("Batched");
+      YoVariableRegistry autotuneRegistry = new YoVariableRegistry("Autotune");
+      List<JointPositionSensor> batchedSensors = new ArrayList<>();
+      List<JointPositionSensor> autotuneSensors = new ArrayList<>();
+      for (String jointName : jointNames)
+      {
+         batchedSensors.add(new JointPositionSensor(jointName, dt, batchedRegistry));
+         autotuneSensors.add(new JointPositionSensor(jointName, dt, autotuneRegistry));
+      }
+
+      RobotState batchedRobotState = new RobotState(jointNames, dt, batchedRegistry);
+      RobotState autotuneRobotState = new RobotState(jointNames, dt, autotuneRegistry);
+      StateEstimator batchedEstimator = new StateEstimator(new ArrayList<>(batchedSensors), batchedRobotState, batchedRegistry);
+      StateEstimator autotuneEstimator = new StateEstimator(new ArrayList<>(autotuneSensors), autotuneRobotState, autotuneRegistry);
+
+      new DefaultParameterReader().readParametersInRegistry(batchedRegistry);
+      new DefaultParameterReader().readParametersInRegistry(autotuneRegistry);
+      for (JointPositionSensor sensor : batchedSensors)
+      {
+         ((YoDouble) batchedRegistry.getVariable(sensor.getName() + "Variance")).set(0.5);
+      }
+      for (JointPositionSensor sensor : autotuneSensors)
+      {
+         ((YoDouble) autotuneRegistry.getVariable(sensor.getName() + "Variance")).set(0.5);
+      }
+
+      // The calibration runs once with the loaded parameters and the first measurement before the estimator ticks.
+      for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+      {
+         autotuneSensors.get(jointIdx).setJointPositionMeasurement(Math.sin(jointIdx));
+      }
+      UpdateStrategyType selected = autotuneEstimator.calibrateUpdateStrategy();
+      Assert.assertEquals(selected, autotuneEstimator.getUpdateStrategy());
+
+      // All strategies support the diagonal R of the joint sensors so all must have been timed.
+      double fastestTime = Double.POSITIVE_INFINITY;
+      for (UpdateStrategyType type : UpdateStrategyType.values())
+      {
+         double time = ((YoDouble) autotuneRegistry.getVariable(type.name().toLowerCase() + "UpdateCalibrationTime")).getDoubleValue();
+         Assert.assertTrue(time > 0.0 && time < Double.POSITIVE_INFINITY);
+         fastestTime = Math.min(fastestTime, time);
+      }
+      String selectedName = selected.name().toLowerCase() + "UpdateCalibrationTime";
+      Assert.assertEquals(fastestTime, ((YoDouble) autotuneRegistry.getVariable(selectedName)).getDoubleValue(), 0.0);
+
+      DenseMatrix64F batchedState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F autotuneState = new DenseMatrix64F(0, 0);
+      for (int i = 0; i < 100; i++)
+      {
+         for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+         {
+            double jointPosition = Math.sin(0.01 * i + jointIdx);
+            batchedSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+            autotuneSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+         }
+
+         batchedEstimator.predict();
+         batchedEstimator.correct();
+         autotuneEstimator.predict();
+         autotuneEstimator.correct();
+      }
+
+      // The calibration must not affect the estimate.
+      batchedRobotState.getStateVector(batchedState);
+      autotuneRobotState.getStateVector(autotuneState);
+      assertMatricesEqual(batchedState, autotuneState, 1.0e-8);
+   }
+
+   @Test
+   public void testDelayedMeasurement()
+   {
+      double dt = 0.001;
+      int measurementTick = 200;
+      int ticksOfDelay = 10;
+      double delayedMeasurement = 0.5;
+
+      List<String> jointNames = new ArrayList<>();
+      jointNames.add("Joint0");
+      jointNames.add("Joint1");
+
+      // Run one estimator that fuses an additional measurement of the second joint in the tick it was taken and one
+      // that fuses it a few ticks later. The joint model is linear so both must give the same result.
+      YoVariableRegistry inOrderRegistry = new YoVariableRegistry("InOrder");
+      YoVariableRegistry delayedRegistry = new YoVariableRegistry("Delayed");
+      List<JointPositionSensor> inOrderSensors = new ArrayList<>();
+      List<JointPositionSensor> delayedSensors = new ArrayList<>();
+      for (String jointName : jointNames)
+      {
+         inOrderSensors.add(new JointPositionSensor(jointName, dt, inOrderRegistry));
+         delayedSensors.add(new JointPositionSensor(jointName, dt, delayedRegistry));
+      }
+
+      // The additional sensor is accurate and only used when calling correctDelayed. It has its own registry since the
+      // joint already has a sensor.
+      YoVariableRegistry inOrderExtraRegistry = new YoVariableRegistry("Extra");
+      YoVariableRegistry delayedExtraRegistry = new YoVariableRegistry("Extra");
+      inOrderRegistry.addChild(inOrderExtraRegistry);
+      delayedRegistry.addChild(delayedExtraRegistry);
+      JointPositionSensor inOrderExtraSensor = new JointPositionSensor(jointNames.get(1), dt, inOrderExtraRegistry);
+      JointPositionSensor delayedExtraSensor = new JointPositionSensor(jointNames.get(1), dt, delayedExtraRegistry);
+      inOrderExtraSensor.setTicksPerUpdate(0);
+      delayedExtraSensor.setTicksPerUpdate(0);
+      List<Sensor> inOrderEstimatorSensors = new ArrayList<>(inOrderSensors);
+      List<Sensor> delayedEstimatorSensors = new ArrayList<>(delayedSensors);
+      inOrderEstimatorSensors.add(inOrderExtraSensor);
+      delayedEstimatorSensors.add(delayedExtraSensor);
+
+      RobotState inOrderRobotState = new RobotState(jointNames, dt, inOrderRegistry);
+      RobotState delayedRobotState = new RobotState(jointNames, dt, delayedRegistry);
+      StateEstimator inOrderEstimator = new StateEstimator(inOrderEstimatorSensors, inOrderRobotState, ticksOfDelay + 1, inOrderRegistry);
+      StateEstimator delayedEstimator = new StateEstimator(delayedEstimatorSensors, delayedRobotState, ticksOfDelay + 1, delayedRegistry);
+      new DefaultParameterReader().readParametersInRegistry(inOrderRegistry);
+      new DefaultParameterReader().readParametersInRegistry(delayedRegistry);
+      ((YoDouble) inOrderExtraRegistry.getVariable(inOrderExtraSensor.getName() + "Variance")).set(1.0e-3);
+      ((YoDouble) delayedExtraRegistry.getVariable(delayedExtraSensor.getName() + "Variance")).set(1.0e-3);
+
+      DenseMatrix64F inOrderState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F delayedState = new DenseMatrix64F(0, 0);
+      DenseMatrix64F inOrderCovariance = new DenseMatrix64F(0, 0);
+      DenseMatrix64F delayedCovariance = new DenseMatrix64F(0, 0);
+      for (int i = 0; i < measurementTick + ticksOfDelay + 50; i++)
+      {
+         for (int jointIdx = 0; jointIdx < jointNames.size(); jointIdx++)
+         {
+            double jointPosition = Math.sin(0.01 * i + jointIdx);
+            inOrderSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+            delayedSensors.get(jointIdx).setJointPositionMeasurement(jointPosition);
+         }
+
+         inOrderEstimator.predict();
+         inOrderEstimator.correct();
+         delayedEstimator.predict();
+         delayedEstimator.correct();
+
+         if (i == measurementTick)
+         {
+            inOrderExtraSensor.setJointPositionMeasurement(delayedMeasurement);
+            Assert.assertTrue(inOrderEstimator.correctDelayed(inOrderExtraSensor, 0));
+         }
+         if (i == measurementTick + ticksOfDelay)
+         {
+            // Make sure the measurement has an effect on the state before fusing it.
+            inOrderRobotState.getStateVector(inOrderState);
+            delayedRobotState.getStateVector(delayedState);
+            int positionIndex = inOrderRobotState.findJointPositionIndex(jointNames.get(1));
+            Assert.assertTrue(Math.abs(inOrderState.get(positionIndex) - delayedState.get(positionIndex)) > 1.0e-4);
+
+            delayedExtraSensor.setJointPositionMeasurement(delayedMeasurement);
+            Assert.assertTrue(delayedEstimator.correctDelayed(delayedExtraSensor, ticksOfDelay));
+         }
+
+         if (i < measurementTick || i >= measurementTick + ticksOfDelay)
+         {
+            inOrderRobotState.getStateVector(inOrderState);
+            delayedRobotState.getStateVector(delayedState);
+            assertMatricesEqual(inOrderState, delayedState, 1.0e-8);
+            inOrderEstimator.getCovariance(inOrderCovariance);
+            delayedEstimator.getCovariance(delayedCovariance);
+            assertMatricesEqual(inOrderCovariance, delayedCovariance, 1.0e-8);
+         }
+      }
+   }
+
+   /**
+    * A joint position sensor with a bias state that does not affect the measurement.
+    */
+   private static class UnobservedBiasSensor extends JointPositionSensor
+   {
+      private final BiasState biasState;
+
+      public UnobservedBiasSensor(String jointName, double dt, YoVariableRegistry registry)
+      {
+         super(jointName, dt, registry);
+         biasState = new BiasState(getName(), dt, registry);
+      }
+
+      @Override
+      public State getSensorState()
+      {
+         return biasState;
+      }
+
+      @Override
+      public void getSensorJacobian(DenseMatrix64F jacobianToPack)
+      {
+         jacobianToPack.reshape(getMeasurementSize(), biasState.getSize());
+         CommonOps.fill(jacobianToPack, 0.0);
+      }
+   }
+
    public static void assertMatricesEqual(DenseMatrix64F expectedState, DenseMatrix64F actualState, double epsilon)
    {
       Assert.assertEquals(expectedState.getNumRows(), actualState.getNumRows());
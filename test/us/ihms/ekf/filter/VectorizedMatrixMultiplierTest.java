@@ -0,0 +1,43 @@
+package us.ihms.ekf.filter;
+
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.VectorizedMatrixMultiplier;
+
+public class VectorizedMatrixMultiplierTest
+{
+   private static final double EPSILON = 1.0e-12;
+
+   @Test
+   public void testAgainstCommonOps()
+   {
+      Random random = new Random(5519L);
+
+      // The sizes include inner dimensions that are not a multiple of the unrolling.
+      VectorizedMatrixMultiplier multiplier = new VectorizedMatrixMultiplier();
+      DenseMatrix64F actual = new DenseMatrix64F(0, 0);
+
+      for (int i = 0; i < 100; i++)
+      {
+         int rows = random.nextInt(40) + 1;
+         int inner = random.nextInt(40) + 1;
+         int cols = random.nextInt(40) + 1;
+
+         DenseMatrix64F A = FilterMatrixOpsTest.createRandomMatrix(rows, inner, random, -1.0, 1.0);
+         DenseMatrix64F B = FilterMatrixOpsTest.createRandomMatrix(inner, cols, random, -1.0, 1.0);
+         DenseMatrix64F expected = new DenseMatrix64F(rows, cols);
+         CommonOps.mult(A, B, expected);
+         multiplier.mult(A, B, actual);
+         StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+
+         DenseMatrix64F Btrans = FilterMatrixOpsTest.createRandomMatrix(cols, inner, random, -1.0, 1.0);
+         CommonOps.multTransB(A, Btrans, expected);
+         multiplier.multTransB(A, Btrans, actual);
+         StateEstimatorTest.assertMatricesEqual(expected, actual, EPSILON);
+      }
+   }
+}
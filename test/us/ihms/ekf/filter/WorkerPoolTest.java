@@ -0,0 +1,53 @@
+package us.ihms.ekf.filter;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.WorkerPool;
+
+public class WorkerPoolTest
+{
+   @Test
+   public void testEachTaskIsExecutedOnce()
+   {
+      Random random = new Random(7281L);
+      WorkerPool pool = new WorkerPool(getClass().getSimpleName(), 3);
+      int[] executions = new int[50];
+
+      for (int run = 0; run < 1000; run++)
+      {
+         int numberOfTasks = random.nextInt(executions.length + 1);
+         pool.run(taskIndex -> executions[taskIndex]++, numberOfTasks);
+
+         for (int i = 0; i < executions.length; i++)
+         {
+            Assert.assertEquals(i < numberOfTasks ? 1 : 0, executions[i]);
+            executions[i] = 0;
+         }
+      }
+
+      pool.shutdown();
+   }
+
+   @Test(expected = RuntimeException.class)
+   public void testFailingTask()
+   {
+      WorkerPool pool = new WorkerPool(getClass().getSimpleName(), 2);
+      try
+      {
+         pool.run(taskIndex ->
+         {
+            if (taskIndex == 3)
+            {
+               throw new IllegalStateException();
+            }
+         }, 10);
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+   }
+}
@@ -0,0 +1,80 @@
+package us.ihms.ekf.interfaces;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import us.ihmc.ekf.interfaces.EstimatorRuntime;
+import us.ihmc.ekf.interfaces.PeriodicEstimator;
+
+public class EstimatorRuntimeTest
+{
+   private static final double DT = 0.002;
+
+   @Test
+   public void testOverruns()
+   {
+      int ticks = 50;
+      int slowTickInterval = 10;
+      // Every slow tick takes 3.5 periods such that it overruns and the next two deadlines are missed entirely.
+      long slowTickMillis = 7L;
+      SleepingEstimator estimator = new SleepingEstimator(slowTickInterval, slowTickMillis);
+      EstimatorRuntime runtime = new EstimatorRuntime(estimator, DT);
+
+      runtime.run(ticks);
+
+      // The missed ticks are skipped rather than run back to back so the estimator is ticked exactly as requested.
+      assertEquals(1, estimator.calibrations);
+      assertEquals(ticks, estimator.getTick());
+      int slowTicks = ticks / slowTickInterval;
+      // Other ticks can overrun on a loaded machine so only lower bounds are exact.
+      assertTrue("Overruns: " + runtime.getOverruns(), runtime.getOverruns() >= slowTicks);
+      assertTrue("Skipped ticks: " + runtime.getSkippedTicks(), runtime.getSkippedTicks() >= 2 * slowTicks);
+      assertEquals(ticks, runtime.getExecutionTime().getCount());
+   }
+
+   private static class SleepingEstimator implements PeriodicEstimator
+   {
+      private final int slowTickInterval;
+      private final long slowTickMillis;
+
+      private int calibrations = 0;
+      private long tick = 0;
+
+      public SleepingEstimator(int slowTickInterval, long slowTickMillis)
+      {
+         this.slowTickInterval = slowTickInterval;
+         this.slowTickMillis = slowTickMillis;
+      }
+
+      @Override
+      public void calibrate()
+      {
+         calibrations++;
+      }
+
+      @Override
+      public void update()
+      {
+         if (tick % slowTickInterval == slowTickInterval / 2)
+         {
+            try
+            {
+               Thread.sleep(slowTickMillis);
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+         }
+         tick++;
+      }
+
+      @Override
+      public long getTick()
+      {
+         return tick;
+      }
+   }
+}
@@ -0,0 +1,120 @@
+package us.ihms.ekf.interfaces;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.ekf.interfaces.EstimatorSnapshot;
+import us.ihmc.ekf.interfaces.EstimatorStatePublisher;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+
+public class EstimatorStatePublisherTest
+{
+   private static final double dt = 0.001;
+
+   @Test
+   public void testPublish()
+   {
+      List<String> jointNames = Arrays.asList("joint1", "joint2");
+      RobotState robotState = new RobotState(jointNames, dt, new YoVariableRegistry("TestRegistry"));
+      EstimatorStatePublisher publisher = new EstimatorStatePublisher(robotState, jointNames);
+      EstimatorSnapshot snapshot = publisher.createSnapshot();
+      assertFalse(publisher.getLatest(snapshot));
+
+      DenseMatrix64F state = new DenseMatrix64F(robotState.getSize(), 1);
+      for (int i = 0; i < state.getNumRows(); i++)
+      {
+         state.set(i, i);
+      }
+      robotState.setStateVector(state);
+      DenseMatrix64F covarianceDiagonal = new DenseMatrix64F(robotState.getSize(), 1);
+      CommonOps.add(state, 10.0, covarianceDiagonal);
+      publisher.publish(5, 1000L, covarianceDiagonal);
+
+      assertTrue(publisher.getLatest(snapshot));
+      assertEquals(5, snapshot.getTick());
+      assertEquals(1000L, snapshot.getTimestamp());
+      assertEquals(2, snapshot.getNumberOfJoints());
+      for (String jointName : jointNames)
+      {
+         int jointIndex = snapshot.findJointIndex(jointName);
+         assertEquals(jointName, snapshot.getJointName(jointIndex));
+         int stateIndex = robotState.findJointPositionIndex(jointName);
+         assertEquals(state.get(stateIndex), snapshot.getJointPosition(jointIndex), 0.0);
+         assertEquals(state.get(robotState.findJointVelocityIndex(jointName)), snapshot.getJointVelocity(jointIndex), 0.0);
+         assertEquals(state.get(robotState.findJointAccelerationIndex(jointName)), snapshot.getJointAcceleration(jointIndex), 0.0);
+         assertEquals(covarianceDiagonal.get(stateIndex), snapshot.getCovarianceTerm(jointIndex), 0.0);
+      }
+   }
+
+   @Test
+   public void testConcurrentReaders() throws InterruptedException
+   {
+      List<String> jointNames = Arrays.asList("joint1", "joint2", "joint3");
+      RobotState robotState = new RobotState(jointNames, dt, new YoVariableRegistry("TestRegistry"));
+      EstimatorStatePublisher publisher = new EstimatorStatePublisher(robotState, jointNames);
+      int ticks = 200000;
+
+      // Every value of a tick is set to the tick number so a snapshot is consistent if all its values are equal.
+      AtomicBoolean done = new AtomicBoolean(false);
+      AtomicReference<String> failure = new AtomicReference<>();
+      Thread[] readers = new Thread[3];
+      for (int readerIdx = 0; readerIdx < readers.length; readerIdx++)
+      {
+         readers[readerIdx] = new Thread(() ->
+         {
+            EstimatorSnapshot snapshot = publisher.createSnapshot();
+            long lastTick = -1;
+            while (!done.get())
+            {
+               if (!publisher.getLatest(snapshot))
+               {
+                  continue;
+               }
+               long tick = snapshot.getTick();
+               if (tick < lastTick)
+               {
+                  failure.set("Tick went backwards from " + lastTick + " to " + tick);
+               }
+               lastTick = tick;
+               for (int jointIdx = 0; jointIdx < snapshot.getNumberOfJoints(); jointIdx++)
+               {
+                  if (snapshot.getJointPosition(jointIdx) != tick || snapshot.getJointVelocity(jointIdx) != tick
+                        || snapshot.getJointAcceleration(jointIdx) != tick || snapshot.getCovarianceTerm(jointIdx) != tick)
+                  {
+                     failure.set("Inconsistent snapshot in tick " + tick);
+                  }
+               }
+            }
+         });
+         readers[readerIdx].start();
+      }
+
+      DenseMatrix64F state = new DenseMatrix64F(robotState.getSize(), 1);
+      DenseMatrix64F covarianceDiagonal = new DenseMatrix64F(robotState.getSize(), 1);
+      for (int tick = 0; tick < ticks; tick++)
+      {
+         CommonOps.fill(state, tick);
+         CommonOps.fill(covarianceDiagonal, tick);
+         robotState.setStateVector(state);
+         publisher.publish(tick, tick, covarianceDiagonal);
+      }
+      done.set(true);
+      for (Thread reader : readers)
+      {
+         reader.join();
+      }
+
+      assertEquals(null, failure.get());
+   }
+}
@@ -0,0 +1,117 @@
+package us.ihms.ekf.interfaces;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.sensor.JointPositionSensor;
+import us.ihmc.ekf.filter.sensor.Sensor;
+import us.ihmc.ekf.interfaces.RobotSensorReader;
+import us.ihmc.ekf.interfaces.SensorLogReader;
+import us.ihmc.ekf.interfaces.SensorLogRecorder;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+
+public class SensorLogTest
+{
+   private static final double dt = 0.001;
+
+   @Test
+   public void testRecordAndReplay() throws IOException
+   {
+      Random random = new Random(3921L);
+      int ticks = 17;
+      String[] jointNames = {"joint1", "joint2", "joint3"};
+
+      List<Sensor> recordedSensors = createSensors(jointNames);
+      RobotSensorReader sensorReader = new RobotSensorReader()
+      {
+         @Override
+         public void read()
+         {
+            for (Sensor sensor : recordedSensors)
+            {
+               ((JointPositionSensor) sensor).setJointPositionMeasurement(random.nextDouble());
+            }
+         }
+
+         @Override
+         public List<Sensor> getSensors()
+         {
+            return recordedSensors;
+         }
+      };
+
+      Path file = Files.createTempFile(getClass().getSimpleName(), ".log");
+      DenseMatrix64F expected = new DenseMatrix64F(ticks, jointNames.length);
+      long[] expectedTimestamps = new long[ticks];
+
+      // Use small regions so the recording and replay both cross the boundaries of mapped regions.
+      try (SensorLogRecorder recorder = new SensorLogRecorder(sensorReader, file, 5))
+      {
+         for (int tick = 0; tick < ticks; tick++)
+         {
+            sensorReader.read();
+            expectedTimestamps[tick] = 1000L * tick;
+            recorder.record(expectedTimestamps[tick]);
+            for (int sensorIdx = 0; sensorIdx < jointNames.length; sensorIdx++)
+            {
+               recordedSensors.get(sensorIdx).getMeasurement(expected, tick * jointNames.length + sensorIdx);
+            }
+         }
+         assertEquals(ticks, recorder.getNumberOfTicks());
+      }
+
+      // The replayed sensors may be in a different order than the recorded ones.
+      List<Sensor> replayedSensors = createSensors(jointNames);
+      Sensor firstSensor = replayedSensors.remove(0);
+      replayedSensors.add(firstSensor);
+      DenseMatrix64F actual = new DenseMatrix64F(1, 1);
+
+      try (SensorLogReader reader = new SensorLogReader(file, replayedSensors, 3))
+      {
+         assertEquals(ticks, reader.getNumberOfTicks());
+         for (int tick = 0; tick < ticks; tick++)
+         {
+            assertTrue(reader.hasRemainingTicks());
+            reader.read();
+            assertEquals(expectedTimestamps[tick], reader.getTimestamp());
+            for (int sensorIdx = 0; sensorIdx < jointNames.length; sensorIdx++)
+            {
+               findSensor(replayedSensors, recordedSensors.get(sensorIdx).getName()).getMeasurement(actual, 0);
+               assertEquals(expected.get(tick, sensorIdx), actual.get(0), 0.0);
+            }
+         }
+         assertFalse(reader.hasRemainingTicks());
+      }
+      finally
+      {
+         Files.delete(file);
+      }
+   }
+
+   private static List<Sensor> createSensors(String[] jointNames)
+   {
+      YoVariableRegistry registry = new YoVariableRegistry("TestRegistry");
+      List<Sensor> sensors = new ArrayList<>();
+      for (String jointName : jointNames)
+      {
+         sensors.add(new JointPositionSensor(jointName, dt, registry));
+      }
+      return sensors;
+   }
+
+   private static Sensor findSensor(List<Sensor> sensors, String name)
+   {
+      return sensors.stream().filter(sensor -> sensor.getName().equals(name)).findFirst().get();
+   }
+}
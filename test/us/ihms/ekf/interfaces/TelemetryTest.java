@@ -0,0 +1,70 @@
+package us.ihms.ekf.interfaces;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import us.ihmc.ekf.interfaces.TelemetryReader;
+import us.ihmc.ekf.interfaces.TelemetryWriter;
+
+public class TelemetryTest
+{
+   @Test
+   public void testWriteAndRead() throws IOException
+   {
+      int ticks = 10;
+      List<String> columnNames = Arrays.asList("a", "b", "c");
+      Path file = Files.createTempFile(getClass().getSimpleName(), ".log");
+
+      // Use small blocks so the ticks span several blocks with a partial last block.
+      try (TelemetryWriter writer = new TelemetryWriter(file, columnNames, 16, 4))
+      {
+         double[] values = new double[columnNames.size()];
+         for (int tick = 0; tick < ticks; tick++)
+         {
+            for (int column = 0; column < values.length; column++)
+            {
+               values[column] = tick + 0.1 * column;
+            }
+            assertTrue(writer.publish(tick + 100, 1000L * tick, values));
+         }
+         assertEquals(0, writer.getDroppedTicks());
+      }
+
+      try (TelemetryReader reader = new TelemetryReader(file))
+      {
+         assertEquals(columnNames, reader.getColumnNames());
+         assertEquals(ticks, reader.getNumberOfTicks());
+
+         long[] tickNumbers = reader.readTicks();
+         long[] timestamps = reader.readTimestamps();
+         for (int tick = 0; tick < ticks; tick++)
+         {
+            assertEquals(tick + 100, tickNumbers[tick]);
+            assertEquals(1000L * tick, timestamps[tick]);
+         }
+
+         for (int column = 0; column < columnNames.size(); column++)
+         {
+            double[] expected = new double[ticks];
+            for (int tick = 0; tick < ticks; tick++)
+            {
+               expected[tick] = tick + 0.1 * column;
+            }
+            assertArrayEquals(expected, reader.readColumn(columnNames.get(column)), 0.0);
+         }
+      }
+      finally
+      {
+         Files.delete(file);
+      }
+   }
+}
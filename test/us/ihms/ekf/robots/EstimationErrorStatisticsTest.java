@@ -0,0 +1,50 @@
+package us.ihms.ekf.robots;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.robots.EstimationErrorStatistics;
+import us.ihmc.ekf.robots.EstimatorStateGroup;
+
+public class EstimationErrorStatisticsTest
+{
+   private static final double EPSILON = 1.0e-12;
+
+   @Test
+   public void testStatistics()
+   {
+      double dt = 0.1;
+      EstimationErrorStatistics statistics = new EstimationErrorStatistics(dt);
+      EstimatorStateGroup group = EstimatorStateGroup.JOINT_POSITION;
+      statistics.addGroup(group, new int[] {0, 2});
+
+      // The covariance has an additional state that is not part of the error.
+      DenseMatrix64F covariance = new DenseMatrix64F(4, 4);
+      CommonOps.setIdentity(covariance);
+      covariance.set(0, 0, 4.0);
+      DenseMatrix64F error = new DenseMatrix64F(3, 1);
+
+      // First tick: large error above the convergence threshold.
+      error.set(0, 1.0);
+      error.set(1, 100.0);
+      error.set(2, 1.0);
+      statistics.update(error, covariance);
+      assertFalse(statistics.hasConverged(group));
+      assertEquals(1.0, statistics.getRmsError(group), EPSILON);
+      assertEquals((1.0 / 4.0 + 1.0) / 2.0, statistics.getAverageNees(group), EPSILON);
+
+      // Second tick: no error.
+      CommonOps.fill(error, 0.0);
+      statistics.update(error, covariance);
+      assertTrue(statistics.hasConverged(group));
+      assertEquals(dt, statistics.getConvergenceTime(group), EPSILON);
+      assertEquals(Math.sqrt(0.5), statistics.getRmsError(group), EPSILON);
+      assertEquals((1.0 / 4.0 + 1.0) / 4.0, statistics.getAverageNees(group), EPSILON);
+      assertEquals(2, statistics.getNumberOfTicks());
+   }
+}
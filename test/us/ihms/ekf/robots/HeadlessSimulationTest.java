@@ -0,0 +1,74 @@
+package us.ihms.ekf.robots;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import us.ihmc.ekf.robots.EstimationErrorStatistics;
+import us.ihmc.ekf.robots.EstimatorStateGroup;
+import us.ihmc.ekf.robots.HeadlessSimulation;
+import us.ihmc.ekf.robots.flyingBox.FlyingBoxRobot;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmController;
+import us.ihmc.ekf.robots.simpleArm.SimpleArmRobot;
+import us.ihmc.simulationconstructionset.FloatingRootJointRobot;
+import us.ihmc.simulationconstructionset.UnreasonableAccelerationException;
+
+public class HeadlessSimulationTest
+{
+   private static final double DURATION = 1.5;
+
+   // The estimators start at the true state so these bounds only catch a diverging or broken estimator.
+   private static final Map<EstimatorStateGroup, Double> maxRmsErrors = new EnumMap<>(EstimatorStateGroup.class);
+   static
+   {
+      maxRmsErrors.put(EstimatorStateGroup.JOINT_POSITION, 0.05);
+      maxRmsErrors.put(EstimatorStateGroup.JOINT_VELOCITY, 0.5);
+      maxRmsErrors.put(EstimatorStateGroup.BASE_ORIENTATION, 0.05);
+      maxRmsErrors.put(EstimatorStateGroup.BASE_ANGULAR_VELOCITY, 0.5);
+      maxRmsErrors.put(EstimatorStateGroup.BASE_POSITION, 0.1);
+      maxRmsErrors.put(EstimatorStateGroup.BASE_LINEAR_VELOCITY, 0.5);
+   }
+
+   @Test
+   public void testFlyingBox() throws IOException, UnreasonableAccelerationException
+   {
+      FlyingBoxRobot flyingBoxRobot = new FlyingBoxRobot();
+      try (HeadlessSimulation simulation = new HeadlessSimulation(FlyingBoxRobot.robotName, flyingBoxRobot.getRobot(),
+                                                                  flyingBoxRobot.createFullRobotModel(), null, false))
+      {
+         simulation.simulate(DURATION);
+         assertSimulation(simulation);
+      }
+   }
+
+   @Test
+   public void testSimpleArm() throws IOException, UnreasonableAccelerationException
+   {
+      SimpleArmRobot simpleArmRobot = new SimpleArmRobot();
+      FloatingRootJointRobot simpleArm = simpleArmRobot.getRobot();
+      try (HeadlessSimulation simulation = new HeadlessSimulation(SimpleArmRobot.robotName, simpleArm, simpleArmRobot.createFullRobotModel(),
+                                                                  new SimpleArmController(simpleArm), true))
+      {
+         simulation.simulate(DURATION);
+         assertSimulation(simulation);
+      }
+   }
+
+   private static void assertSimulation(HeadlessSimulation simulation)
+   {
+      assertTrue(simulation.getTicksPerSecond() > 0.0);
+
+      EstimationErrorStatistics errorStatistics = simulation.getErrorStatistics();
+      assertFalse(errorStatistics.getGroups().isEmpty());
+      for (EstimatorStateGroup group : errorStatistics.getGroups())
+      {
+         double rmsError = errorStatistics.getRmsError(group);
+         assertTrue(group + " RMS error " + rmsError + " " + group.getUnit(), rmsError < maxRmsErrors.get(group));
+      }
+   }
+}
@@ -0,0 +1,176 @@
+package us.ihms.ekf.sensor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import us.ihmc.ekf.filter.WorkerPool;
+import us.ihmc.ekf.filter.sensor.ComposedSensor;
+import us.ihmc.ekf.filter.sensor.Sensor;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihms.ekf.filter.StateEstimatorTest;
+
+public class ComposedSensorTest
+{
+   @Test
+   public void testParallelPackingMatchesSequential()
+   {
+      Random random = new Random(8134L);
+      MultiImuRobot robot = new MultiImuRobot(random, 6);
+
+      // Two identical sets of sensors: the sensors keep data between ticks so they can not be shared.
+      ComposedSensor sequentialSensor = new ComposedSensor(robot.createSensors(new YoVariableRegistry("Sequential")), robot.getRobotState().getSize());
+      List<Sensor> parallelSensors = robot.createSensors(new YoVariableRegistry("Parallel"));
+      for (Sensor sensor : parallelSensors)
+      {
+         // All sensors of the robot are packed in parallel.
+         assertTrue(sensor.getName(), sensor.isThreadSafe());
+      }
+      ComposedSensor parallelSensor = new ComposedSensor(parallelSensors, robot.getRobotState().getSize());
+      WorkerPool workerPool = new WorkerPool(getClass().getSimpleName(), 3);
+      parallelSensor.setWorkerPool(workerPool);
+
+      DenseMatrix64F sequentialH = new DenseMatrix64F(0, 0);
+      DenseMatrix64F sequentialResidual = new DenseMatrix64F(0, 0);
+      DenseMatrix64F parallelH = new DenseMatrix64F(0, 0);
+      DenseMatrix64F parallelResidual = new DenseMatrix64F(0, 0);
+      try
+      {
+         for (int tick = 0; tick < 100; tick++)
+         {
+            robot.setRandomState(random);
+            sequentialSensor.setActiveSensors(tick);
+            parallelSensor.setActiveSensors(tick);
+
+            // The parallel sensor goes first such that it is the one evaluating the frames after the robot moved.
+            parallelSensor.assembleFullJacobian(parallelH, parallelResidual, robot.getRobotState());
+            sequentialSensor.assembleFullJacobian(sequentialH, sequentialResidual, robot.getRobotState());
+
+            StateEstimatorTest.assertMatricesEqual(sequentialH, parallelH, 0.0);
+            StateEstimatorTest.assertMatricesEqual(sequentialResidual, parallelResidual, 0.0);
+         }
+      }
+      finally
+      {
+         workerPool.shutdown();
+      }
+   }
+
+   @Test
+   public void testAssembledJacobianMatchesSubSensors()
+   {
+      Random random = new Random(2291L);
+      MultiImuRobot robot = new MultiImuRobot(random, 5);
+      int robotStateSize = robot.getRobotState().getSize();
+
+      // The composed sensor is compared to a second set of sensors that are evaluated one by one.
+      List<Sensor> sensors = robot.createSensors(new YoVariableRegistry("Composed"));
+      List<Sensor> referenceSensors = robot.createSensors(new YoVariableRegistry("Reference"));
+      for (int i = 0; i < sensors.size(); i++)
+      {
+         // Different rates such that the active sensors change between ticks and sometimes remain the same.
+         sensors.get(i).setTicksPerUpdate(1 + i % 3);
+         referenceSensors.get(i).setTicksPerUpdate(1 + i % 3);
+      }
+      ComposedSensor composedSensor = new ComposedSensor(sensors, robotStateSize);
+
+      int numberOfSensors = referenceSensors.size();
+      int[] sensorStateStartIndices = new int[numberOfSensors];
+      for (int i = 1; i < numberOfSensors; i++)
+      {
+         sensorStateStartIndices[i] = sensorStateStartIndices[i - 1] + referenceSensors.get(i - 1).getSensorState().getSize();
+      }
+      int cols = robotStateSize + composedSensor.getSensorState().getSize();
+
+      List<DenseMatrix64F> robotJacobians = new ArrayList<>();
+      List<DenseMatrix64F> residuals = new ArrayList<>();
+      List<DenseMatrix64F> sensorJacobians = new ArrayList<>();
+      for (int i = 0; i < numberOfSensors; i++)
+      {
+         robotJacobians.add(new DenseMatrix64F(0, 0));
+         residuals.add(new DenseMatrix64F(0, 0));
+         sensorJacobians.add(new DenseMatrix64F(0, 0));
+      }
+
+      boolean[] active = new boolean[numberOfSensors];
+      boolean[] sensorsToRemove = new boolean[numberOfSensors];
+      DenseMatrix64F H = new DenseMatrix64F(0, 0);
+      DenseMatrix64F residual = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedH = new DenseMatrix64F(0, 0);
+      DenseMatrix64F expectedResidual = new DenseMatrix64F(0, 0);
+      for (int tick = 0; tick < 60; tick++)
+      {
+         robot.setRandomState(random);
+         composedSensor.setActiveSensors(tick);
+         composedSensor.assembleFullJacobian(H, residual, robot.getRobotState());
+
+         for (int i = 0; i < numberOfSensors; i++)
+         {
+            Sensor referenceSensor = referenceSensors.get(i);
+            active[i] = referenceSensor.isUpdateDue(tick);
+            assertEquals(active[i], composedSensor.isSensorActive(i));
+            if (active[i])
+            {
+               referenceSensor.getRobotJacobianAndResidual(robotJacobians.get(i), residuals.get(i), robot.getRobotState());
+               referenceSensor.getSensorJacobian(sensorJacobians.get(i));
+            }
+         }
+         assembleExpected(active, robotJacobians, residuals, sensorJacobians, sensorStateStartIndices, robotStateSize, cols, expectedH, expectedResidual);
+         StateEstimatorTest.assertMatricesEqual(expectedH, H, 0.0);
+         StateEstimatorTest.assertMatricesEqual(expectedResidual, residual, 0.0);
+
+         // Every other tick some sensors are removed from the measurement as done by the measurement gate.
+         if (tick % 2 == 1)
+         {
+            for (int i = 0; i < numberOfSensors; i++)
+            {
+               sensorsToRemove[i] = active[i] && random.nextInt(3) == 0;
+               active[i] &= !sensorsToRemove[i];
+            }
+            int measurementSize = composedSensor.removeSensors(sensorsToRemove, H, residual);
+            assembleExpected(active, robotJacobians, residuals, sensorJacobians, sensorStateStartIndices, robotStateSize, cols, expectedH,
+                             expectedResidual);
+            assertEquals(expectedResidual.getNumRows(), measurementSize);
+            StateEstimatorTest.assertMatricesEqual(expectedH, H, 0.0);
+            StateEstimatorTest.assertMatricesEqual(expectedResidual, residual, 0.0);
+         }
+      }
+   }
+
+   private static void assembleExpected(boolean[] active, List<DenseMatrix64F> robotJacobians, List<DenseMatrix64F> residuals,
+                                        List<DenseMatrix64F> sensorJacobians, int[] sensorStateStartIndices, int robotStateSize, int cols,
+                                        DenseMatrix64F expectedH, DenseMatrix64F expectedResidual)
+   {
+      int rows = 0;
+      for (int i = 0; i < active.length; i++)
+      {
+         rows += active[i] ? residuals.get(i).getNumRows() : 0;
+      }
+      expectedH.reshape(rows, cols);
+      expectedH.zero();
+      expectedResidual.reshape(rows, 1);
+
+      int row = 0;
+      for (int i = 0; i < active.length; i++)
+      {
+         if (!active[i])
+         {
+            continue;
+         }
+         CommonOps.insert(robotJacobians.get(i), expectedH, row, 0);
+         CommonOps.insert(residuals.get(i), expectedResidual, row, 0);
+         if (sensorJacobians.get(i).getNumElements() > 0)
+         {
+            CommonOps.insert(sensorJacobians.get(i), expectedH, row, robotStateSize + sensorStateStartIndices[i]);
+         }
+         row += residuals.get(i).getNumRows();
+      }
+   }
+}
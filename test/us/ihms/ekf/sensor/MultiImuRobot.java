@@ -0,0 +1,117 @@
+package us.ihms.ekf.sensor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.ekf.filter.sensor.AngularVelocitySensor;
+import us.ihmc.ekf.filter.sensor.JointPositionSensor;
+import us.ihmc.ekf.filter.sensor.LinearAccelerationSensor;
+import us.ihmc.ekf.filter.sensor.LinearVelocitySensor;
+import us.ihmc.ekf.filter.sensor.Sensor;
+import us.ihmc.ekf.filter.state.JointState;
+import us.ihmc.ekf.filter.state.PoseState;
+import us.ihmc.ekf.filter.state.RobotState;
+import us.ihmc.euclid.referenceFrame.ReferenceFrame;
+import us.ihmc.euclid.tools.EuclidCoreRandomTools;
+import us.ihmc.euclid.transform.RigidBodyTransform;
+import us.ihmc.euclid.tuple3D.Vector3D;
+import us.ihmc.robotics.screwTheory.RevoluteJoint;
+import us.ihmc.robotics.screwTheory.RigidBody;
+import us.ihmc.robotics.screwTheory.ScrewTools;
+import us.ihmc.robotics.screwTheory.SixDoFJoint;
+import us.ihmc.robotics.screwTheory.Twist;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+import us.ihms.ekf.filter.FilterMatrixOpsTest;
+
+/**
+ * A floating base with a chain of revolute joints. Every body carries an IMU and every joint has a position
+ * sensor.
+ */
+class MultiImuRobot
+{
+   private static final double DT = 0.001;
+
+   private final SixDoFJoint rootJoint;
+   private final List<RevoluteJoint> joints = new ArrayList<>();
+   private final List<RigidBody> bodies = new ArrayList<>();
+
+   private final PoseState poseState;
+   private final List<JointState> jointStates = new ArrayList<>();
+   private final RobotState robotState;
+
+   private final RigidBodyTransform rootTransform = new RigidBodyTransform();
+   private final Twist rootTwist = new Twist();
+   private final DenseMatrix64F stateVector = new DenseMatrix64F(0, 0);
+
+   public MultiImuRobot(Random random, int numberOfJoints)
+   {
+      YoVariableRegistry registry = new YoVariableRegistry("Robot");
+      RigidBody elevator = new RigidBody("Elevator", ReferenceFrame.getWorldFrame());
+      rootJoint = new SixDoFJoint("FloatingJoint", elevator);
+      RigidBody body = ScrewTools.addRigidBody("Pelvis", rootJoint, 0.1, 0.1, 0.1, 1.0, new Vector3D());
+      bodies.add(body);
+      poseState = new PoseState(body.getName(), DT, rootJoint.getFrameAfterJoint(), registry);
+
+      for (int i = 0; i < numberOfJoints; i++)
+      {
+         RigidBodyTransform jointOffset = new RigidBodyTransform();
+         jointOffset.setTranslation(EuclidCoreRandomTools.nextVector3D(random));
+         Vector3D jointAxis = EuclidCoreRandomTools.nextVector3DWithFixedLength(random, 1.0);
+         RevoluteJoint joint = ScrewTools.addRevoluteJoint("Joint" + i, body, jointOffset, jointAxis);
+         body = ScrewTools.addRigidBody("Body" + i, joint, 0.1, 0.1, 0.1, 1.0, new Vector3D());
+         joints.add(joint);
+         bodies.add(body);
+         jointStates.add(new JointState(joint.getName(), DT, registry));
+      }
+
+      robotState = new RobotState(poseState, jointStates, registry);
+   }
+
+   public List<Sensor> createSensors(YoVariableRegistry registry)
+   {
+      List<Sensor> sensors = new ArrayList<>();
+      for (int i = 0; i < bodies.size(); i++)
+      {
+         RigidBody body = bodies.get(i);
+         ReferenceFrame imuFrame = body.getBodyFixedFrame();
+         sensors.add(new LinearAccelerationSensor("Imu" + i + "LinearAcceleration", DT, body, imuFrame, false, registry));
+         sensors.add(new AngularVelocitySensor("Imu" + i + "AngularVelocity", DT, body, imuFrame, true, registry));
+         sensors.add(new LinearVelocitySensor("Imu" + i + "LinearVelocity", DT, body, imuFrame, false, registry));
+      }
+      for (RevoluteJoint joint : joints)
+      {
+         JointPositionSensor jointSensor = new JointPositionSensor(joint.getName(), DT, registry);
+         jointSensor.setJointPositionMeasurement(0.5);
+         sensors.add(jointSensor);
+      }
+      return sensors;
+   }
+
+   /**
+    * Sets the robot state to random values and updates the robot model accordingly.
+    */
+   public void setRandomState(Random random)
+   {
+      stateVector.set(FilterMatrixOpsTest.createRandomMatrix(robotState.getSize(), 1, random, -1.0, 1.0));
+      robotState.setStateVector(stateVector);
+
+      poseState.getTransform(rootTransform);
+      rootJoint.setPositionAndRotation(rootTransform);
+      poseState.getTwist(rootTwist);
+      rootJoint.setJointTwist(rootTwist);
+      for (int i = 0; i < joints.size(); i++)
+      {
+         joints.get(i).setQ(jointStates.get(i).getQ());
+         joints.get(i).setQd(jointStates.get(i).getQd());
+      }
+      rootJoint.updateFramesRecursively();
+   }
+
+   public RobotState getRobotState()
+   {
+      return robotState;
+   }
+}
@@ -0,0 +1,86 @@
+package us.ihms.ekf.sensor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.ejml.data.DenseMatrix64F;
+
+import us.ihmc.commons.PrintTools;
+import us.ihmc.ekf.filter.WorkerPool;
+import us.ihmc.ekf.filter.sensor.ComposedSensor;
+import us.ihmc.yoVariables.registry.YoVariableRegistry;
+
+/**
+ * Compares the time to assemble the measurement jacobian and residual of a {@link MultiImuRobot} when the sensors are
+ * packed sequentially and in parallel with a {@link WorkerPool} of different sizes (see
+ * {@link ComposedSensor#setWorkerPool(WorkerPool)}). The robot model is updated before every assembly but that is
+ * not part of the measured time.
+ * <p>
+ * Every combination is warmed up before it is timed and the median of several repetitions is reported to reduce the
+ * influence of the just in time compiler and of the garbage collector.
+ * </p>
+ */
+public class SensorPackingBenchmark
+{
+   private static final int[] numberOfJoints = {5, 15, 30};
+   private static final int[] workerThreads = {0, 1, 3};
+   private static final int warmupIterations = 500;
+   private static final int repetitions = 9;
+   private static final int ticksPerRepetition = 500;
+
+   public static void main(String[] args)
+   {
+      Random random = new Random(3381L);
+
+      for (int joints : numberOfJoints)
+      {
+         MultiImuRobot robot = new MultiImuRobot(random, joints);
+         PrintTools.info("Robot with " + joints + " joints and " + (joints + 1) + " IMUs:");
+         for (int threads : workerThreads)
+         {
+            ComposedSensor sensor = new ComposedSensor(robot.createSensors(new YoVariableRegistry("Benchmark")), robot.getRobotState().getSize());
+            WorkerPool workerPool = threads > 0 ? new WorkerPool(SensorPackingBenchmark.class.getSimpleName(), threads) : null;
+            sensor.setWorkerPool(workerPool);
+            double micros = measure(robot, sensor, random);
+            PrintTools.info("   " + (threads == 0 ? "sequential" : threads + " worker threads") + ": " + String.format("%.1f", micros) + " us per tick");
+            if (workerPool != null)
+            {
+               workerPool.shutdown();
+            }
+         }
+      }
+   }
+
+   /**
+    * Returns the median time of an assembly in microseconds.
+    */
+   private static double measure(MultiImuRobot robot, ComposedSensor sensor, Random random)
+   {
+      DenseMatrix64F H = new DenseMatrix64F(0, 0);
+      DenseMatrix64F residual = new DenseMatrix64F(0, 0);
+      sensor.setActiveSensors(0);
+
+      for (int i = 0; i < warmupIterations; i++)
+      {
+         robot.setRandomState(random);
+         sensor.assembleFullJacobian(H, residual, robot.getRobotState());
+      }
+
+      double[] micros = new double[repetitions];
+      for (int repetition = 0; repetition < repetitions; repetition++)
+      {
+         long nanos = 0;
+         for (int i = 0; i < ticksPerRepetition; i++)
+         {
+            robot.setRandomState(random);
+            long start = System.nanoTime();
+            sensor.assembleFullJacobian(H, residual, robot.getRobotState());
+            nanos += System.nanoTime() - start;
+         }
+         micros[repetition] = nanos * 1.0e-3 / ticksPerRepetition;
+      }
+
+      Arrays.sort(micros);
+      return micros[repetitions / 2];
+   }
+}